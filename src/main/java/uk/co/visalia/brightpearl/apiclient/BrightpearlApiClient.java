@@ -26,6 +26,14 @@ import uk.co.visalia.brightpearl.apiclient.account.UserCredentials;
 import uk.co.visalia.brightpearl.apiclient.auth.AppAuthorisation;
 import uk.co.visalia.brightpearl.apiclient.auth.PrivateAppIdentity;
 import uk.co.visalia.brightpearl.apiclient.auth.PublicAppIdentity;
+import uk.co.visalia.brightpearl.apiclient.circuitbreaker.CircuitBreakerPolicy;
+import uk.co.visalia.brightpearl.apiclient.circuitbreaker.CircuitBreakers;
+import uk.co.visalia.brightpearl.apiclient.client.JsonRequestEntity;
+import uk.co.visalia.brightpearl.apiclient.concurrency.BulkheadMetrics;
+import uk.co.visalia.brightpearl.apiclient.concurrency.BulkheadPolicy;
+import uk.co.visalia.brightpearl.apiclient.concurrency.Bulkheads;
+import uk.co.visalia.brightpearl.apiclient.concurrency.ConcurrencyLimitPolicy;
+import uk.co.visalia.brightpearl.apiclient.concurrency.ConcurrencyLimiter;
 import uk.co.visalia.brightpearl.apiclient.client.UserCredentialsWrapper;
 import uk.co.visalia.brightpearl.apiclient.client.adaptors.CalendarAdaptor;
 import uk.co.visalia.brightpearl.apiclient.client.adaptors.DateTimeAdaptor;
@@ -34,21 +42,32 @@ import uk.co.visalia.brightpearl.apiclient.client.multimessage.MultiMessageItem;
 import uk.co.visalia.brightpearl.apiclient.client.multimessage.MultiMessageResponse;
 import uk.co.visalia.brightpearl.apiclient.client.multimessage.MultiMessageResponseItem;
 import uk.co.visalia.brightpearl.apiclient.client.parsing.JsonWrapper;
+import uk.co.visalia.brightpearl.apiclient.client.parsing.JsonWrapperReader;
 import uk.co.visalia.brightpearl.apiclient.client.parsing.PartialSearchResponse;
 import uk.co.visalia.brightpearl.apiclient.exception.*;
+import uk.co.visalia.brightpearl.apiclient.hedging.HedgingPolicy;
+import uk.co.visalia.brightpearl.apiclient.hedging.RequestHedger;
 import uk.co.visalia.brightpearl.apiclient.http.*;
 import uk.co.visalia.brightpearl.apiclient.http.httpclient4.HttpClient4ClientFactoryBuilder;
 import uk.co.visalia.brightpearl.apiclient.multimessage.*;
+import uk.co.visalia.brightpearl.apiclient.ratelimit.AsyncRateLimiter;
 import uk.co.visalia.brightpearl.apiclient.ratelimit.NoOpRateLimiter;
 import uk.co.visalia.brightpearl.apiclient.ratelimit.RateLimiter;
 import uk.co.visalia.brightpearl.apiclient.request.*;
 import uk.co.visalia.brightpearl.apiclient.search.SearchColumn;
 import uk.co.visalia.brightpearl.apiclient.search.SearchResults;
+import uk.co.visalia.brightpearl.apiclient.util.Deadline;
+import uk.co.visalia.brightpearl.apiclient.util.Futures;
 import uk.co.visalia.brightpearl.apiclient.util.StringUtils;
 
 import java.lang.reflect.Field;
 import java.lang.reflect.Type;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
 
 /**
  * <p>
@@ -58,26 +77,46 @@ import java.util.*;
  * An instance is thread-safe assuming the instance of {@link uk.co.visalia.brightpearl.apiclient.http.ClientFactory} provided is
  * thread-safe, as all implementations provided with this library are. Instances are not specific to any account and can
  * be safely reused for multiple accounts.
+ * </p><p>
+ * Each blocking method has an async equivalent returning a {@link CompletableFuture}. When the
+ * {@link uk.co.visalia.brightpearl.apiclient.http.ClientFactory} also implements {@link uk.co.visalia.brightpearl.apiclient.http.AsyncClientFactory}
+ * requests are sent without blocking any thread, otherwise blocking clients are run on the async executor. The futures
+ * returned complete exceptionally with the same exceptions the blocking methods would throw.
  * </p>
  */
 public final class BrightpearlApiClient {
 
     private static final String MULTIMESSAGE_TEMPLATE = "%s/public-api/%s/multi-message";
     private static final String MULTIMESSAGE_SERVICE_TEMPLATE = "/%s/%s";
-    private static final String SERVICE_TEMPLATE = "%s/public-api/%s/%s/%s";
+    private static final String SERVICE_BASE_TEMPLATE = "%s/public-api/%s/";
     private static final String AUTH_TEMPLATE = "%s/%s/authorise";
 
     private final ClientFactory clientFactory;
     private final RateLimiter rateLimiter;
     private final Gson gson;
+    private final Executor asyncExecutor;
+    private final JsonWrapperReader jsonWrapperReader;
+    private final boolean streamRequestBodies;
+    private final RequestHedger requestHedger;
+    private final CircuitBreakers circuitBreakers;
+    private final ConcurrencyLimiter concurrencyLimiter;
+    private final Bulkheads bulkheads;
+    private final ConcurrentMap<Account, AccountUrls> accountUrls = new ConcurrentHashMap<Account, AccountUrls>();
 
     /**
      * Package private constructor for internal use only. {@link BrightpearlApiClientFactory} must be used to create new instances.
      */
-    BrightpearlApiClient(ClientFactory clientFactory, RateLimiter rateLimiter, Gson gson) {
+    BrightpearlApiClient(ClientFactory clientFactory, RateLimiter rateLimiter, Gson gson, Executor asyncExecutor, boolean streamRequestBodies, HedgingPolicy hedgingPolicy, CircuitBreakerPolicy circuitBreakerPolicy, ConcurrencyLimitPolicy concurrencyLimitPolicy, BulkheadPolicy bulkheadPolicy) {
         this.clientFactory = clientFactory == null ? new HttpClient4ClientFactoryBuilder().build() : clientFactory;
         this.rateLimiter = rateLimiter == null ? new NoOpRateLimiter() : rateLimiter;
         this.gson = gson == null ? defaultGson() : gson;
+        this.jsonWrapperReader = new JsonWrapperReader(this.gson);
+        this.asyncExecutor = Futures.orDefault(asyncExecutor);
+        this.streamRequestBodies = streamRequestBodies;
+        this.requestHedger = hedgingPolicy == null ? null : new RequestHedger(hedgingPolicy, this.rateLimiter);
+        this.circuitBreakers = circuitBreakerPolicy == null ? null : new CircuitBreakers(circuitBreakerPolicy);
+        this.concurrencyLimiter = concurrencyLimitPolicy == null ? null : new ConcurrencyLimiter(concurrencyLimitPolicy);
+        this.bulkheads = bulkheadPolicy == null ? null : new Bulkheads(bulkheadPolicy);
     }
 
     /**
@@ -338,6 +377,94 @@ public final class BrightpearlApiClient {
             return BrightpearlApiClient.this.getHttpResponse(authorisation, serviceRequest);
         }
 
+        /**
+         * Async equivalent of {@link #get(ServiceReadRequestBuilder)}.
+         * @param serviceRequestBuilder Builder for read request to be executed.
+         * @param <T> Type of expected response.
+         * @return A future that completes with a response of the expected type.
+         */
+        public <T> CompletableFuture<T> getAsync(ServiceReadRequestBuilder<T> serviceRequestBuilder) {
+            return getAsync(serviceRequestBuilder.build());
+        }
+
+        /**
+         * Async equivalent of {@link #get(ServiceReadRequest)}.
+         * @param serviceRequest A read request to be made.
+         * @param <T> Type of expected response.
+         * @return A future that completes with a response of the expected type.
+         */
+        public <T> CompletableFuture<T> getAsync(ServiceReadRequest<T> serviceRequest) {
+            return BrightpearlApiClient.this.getAsync(authorisation, serviceRequest);
+        }
+
+        /**
+         * Async equivalent of {@link #search(SearchRequestBuilder)}.
+         * @param serviceRequestBuilder Builder for search request to be executed.
+         * @param <T> Type of expected response.
+         * @return A future that completes with a {@link SearchResults} object containing parsed results and meta information.
+         */
+        public <T> CompletableFuture<SearchResults<T>> searchAsync(SearchRequestBuilder<T> serviceRequestBuilder) {
+            return searchAsync(serviceRequestBuilder.build());
+        }
+
+        /**
+         * Async equivalent of {@link #search(ServiceSearchRequest)}.
+         * @param serviceRequest The search request to be executed.
+         * @param <T> Type of expected response.
+         * @return A future that completes with a {@link SearchResults} object containing parsed results and meta information.
+         */
+        public <T> CompletableFuture<SearchResults<T>> searchAsync(ServiceSearchRequest<T> serviceRequest) {
+            return BrightpearlApiClient.this.searchAsync(authorisation, serviceRequest);
+        }
+
+        /**
+         * Async equivalent of {@link #execute(ServiceWriteRequestBuilder)}.
+         * @param serviceRequestBuilder Builder for write request to be executed.
+         * @param <T> Type of expected response. Use {@link Void}.class if no response body is expected.
+         * @return A future that completes with a response of the expected type, null if the declared type was {@link Void}.
+         */
+        public <T> CompletableFuture<T> executeAsync(ServiceWriteRequestBuilder<T> serviceRequestBuilder) {
+            return executeAsync(serviceRequestBuilder.build());
+        }
+
+        /**
+         * Async equivalent of {@link #execute(ServiceWriteRequest)}.
+         * @param serviceRequest A write request to be made.
+         * @param <T> Type of expected response. Use {@link Void}.class if no response body is expected.
+         * @return A future that completes with a response of the expected type, null if the declared type was {@link Void}.
+         */
+        public <T> CompletableFuture<T> executeAsync(ServiceWriteRequest<T> serviceRequest) {
+            return BrightpearlApiClient.this.executeAsync(authorisation, serviceRequest);
+        }
+
+        /**
+         * Async equivalent of {@link #execute(MultiRequestBuilder)}.
+         * @param multiRequestBuilder Multimessage request builder to be executed.
+         * @return A future that completes with a {@link MultiResponse} object containing the results.
+         */
+        public CompletableFuture<MultiResponse> executeAsync(MultiRequestBuilder multiRequestBuilder) {
+            return executeAsync(multiRequestBuilder.build());
+        }
+
+        /**
+         * Async equivalent of {@link #execute(MultiRequest)}. Batches are sent in sequence, each one after the previous
+         * batch has completed, with the same error handling as the blocking method.
+         * @param multiRequest Multimessage request to be executed.
+         * @return A future that completes with a {@link MultiResponse} object containing the results.
+         */
+        public CompletableFuture<MultiResponse> executeAsync(MultiRequest multiRequest) {
+            return BrightpearlApiClient.this.executeAsync(authorisation, multiRequest);
+        }
+
+        /**
+         * Async equivalent of {@link #getHttpResponse(AbstractServiceRequest)}.
+         * @param serviceRequest Request to be sent.
+         * @return A future that completes with the unprocessed HTTP response.
+         */
+        public CompletableFuture<Response> getHttpResponseAsync(AbstractServiceRequest serviceRequest) {
+            return BrightpearlApiClient.this.getHttpResponseAsync(authorisation, serviceRequest);
+        }
+
     }
 
     /**
@@ -405,25 +532,9 @@ public final class BrightpearlApiClient {
             // divert it to the direct API and wrap the response to a best approximation of how
             // it would have looked from the MM API.
 
-            Map<String, ServiceResponse> serviceResponseMap = new HashMap<String, ServiceResponse>();
-
             ServiceWriteRequest itemRequest = multiRequest.getRequests().get(0);
-            Response response = getHttpResponse(authorisation, itemRequest);
-
-            try {
-                JsonWrapper jsonWrapper = parseJsonWrapper(response, itemRequest.getResponseType(), false);
-                if (jsonWrapper == null) {
-                    serviceResponseMap.put(itemRequest.getRuid(), ServiceResponseBuilder.<Object>newServiceResponse().withRuid(itemRequest.getRuid()).withStatus(response.getStatus()).build());
-                } else {
-                    serviceResponseMap.put(itemRequest.getRuid(), ServiceResponseBuilder.<Object>newServiceResponse().withRuid(itemRequest.getRuid()).withStatus(response.getStatus()).withResponse(parseEntity(jsonWrapper, itemRequest.getResponseType())).withException(null).build());
-                }
-            } catch (BrightpearlAuthException e) {
-                throw e;
-            } catch (RuntimeException e) {
-                serviceResponseMap.put(itemRequest.getRuid(), ServiceResponseBuilder.newServiceResponse().withRuid(itemRequest.getRuid()).withStatus(response.getStatus()).withException(e).build());
-            }
-
-            return MultiResponseBuilder.newMultiResponse().withStatus(response.getStatus() == 200 ? 200 : 207).withServiceResponseMap(serviceResponseMap).build();
+            Response response = getHttpResponse(authorisation, itemRequest, multiRequestDeadline(multiRequest, itemRequest));
+            return parseSingleMultiResponse(itemRequest, response);
 
         } else {
 
@@ -433,6 +544,7 @@ public final class BrightpearlApiClient {
 
             List<MultiRequest> splitMultiRequest = MultiMessageUtils.split(multiRequest);
             List<MultiResponse> multiResponses = new ArrayList<MultiResponse>();
+            Deadline deadline = Deadline.start(multiRequest.getDeadlineMs());
 
             // First batch: Throw all exceptions.
             // Subsequent batches: Catch all exceptions and treat the messages as unprocessed. Auth exceptions are very
@@ -441,7 +553,7 @@ public final class BrightpearlApiClient {
             boolean stop = false;
             for (int i = 0; i < splitMultiRequest.size() && !stop; i++) {
                 try {
-                    MultiResponse multiResponse = getBatchResponse(authorisation, splitMultiRequest.get(i));
+                    MultiResponse multiResponse = getBatchResponse(authorisation, splitMultiRequest.get(i), deadline);
                     multiResponses.add(multiResponse);
                     stop = multiResponse.getStatus() != 200 && multiRequest.getOnFailOption() == OnFailOption.STOP;
                 } catch (RuntimeException e) {
@@ -457,6 +569,64 @@ public final class BrightpearlApiClient {
         }
     }
 
+    /**
+     * Async equivalent of {@link #execute(AppAuthorisation, MultiRequestBuilder)}.
+     * @param authorisation App and account authorisation details.
+     * @param multiRequestBuilder Multimessage request builder to be executed.
+     * @return A future that completes with a {@link MultiResponse} object containing the results.
+     */
+    public CompletableFuture<MultiResponse> executeAsync(AppAuthorisation authorisation, MultiRequestBuilder multiRequestBuilder) {
+        return executeAsync(authorisation, multiRequestBuilder.build());
+    }
+
+    /**
+     * Async equivalent of {@link #execute(AppAuthorisation, MultiRequest)}. When the request is split into more than
+     * one batch, each batch is sent when the previous one has completed, so batches are still executed in serial but
+     * no thread waits for them. Errors are handled exactly as they are by the blocking method.
+     * @param authorisation App and account authorisation details.
+     * @param multiRequest Multimessage request to be executed.
+     * @return A future that completes with a {@link MultiResponse} object containing the results.
+     */
+    public CompletableFuture<MultiResponse> executeAsync(final AppAuthorisation authorisation, final MultiRequest multiRequest) {
+        return Futures.unwrapped(Futures.defer(() -> {
+            if (multiRequest.getRequests().size() == 0) {
+                return CompletableFuture.completedFuture(MultiResponseBuilder.newMultiResponse().withStatus(200).build());
+            } else if (multiRequest.getRequests().size() == 1) {
+                final ServiceWriteRequest itemRequest = multiRequest.getRequests().get(0);
+                return getHttpResponseAsync(authorisation, itemRequest, multiRequestDeadline(multiRequest, itemRequest)).thenApply(response -> parseSingleMultiResponse(itemRequest, response));
+            } else {
+                List<MultiRequest> splitMultiRequest = MultiMessageUtils.split(multiRequest);
+                Deadline deadline = Deadline.start(multiRequest.getDeadlineMs());
+                return executeBatchesAsync(authorisation, multiRequest, splitMultiRequest, 0, new ArrayList<MultiResponse>(), deadline);
+            }
+        }));
+    }
+
+    /*
+     * Sends batch i, then recursively sends the remaining batches from the completion of each one, following the same
+     * rules as the loop in the blocking method.
+     */
+    private CompletableFuture<MultiResponse> executeBatchesAsync(final AppAuthorisation authorisation, final MultiRequest multiRequest, final List<MultiRequest> splitMultiRequest, final int i, final List<MultiResponse> multiResponses, final Deadline deadline) {
+        if (i >= splitMultiRequest.size()) {
+            return CompletableFuture.completedFuture(mergeMultiResponses(splitMultiRequest.size(), multiResponses, multiRequest));
+        }
+        return getBatchResponseAsync(authorisation, splitMultiRequest.get(i), deadline).handle((multiResponse, throwable) -> {
+            if (throwable != null) {
+                if (i == 0) {
+                    return Futures.<MultiResponse>failed(Futures.unwrap(throwable));
+                } else {
+                    return CompletableFuture.completedFuture(mergeMultiResponses(splitMultiRequest.size(), multiResponses, multiRequest));
+                }
+            }
+            multiResponses.add(multiResponse);
+            boolean stop = multiResponse.getStatus() != 200 && multiRequest.getOnFailOption() == OnFailOption.STOP;
+            if (stop) {
+                return CompletableFuture.completedFuture(mergeMultiResponses(splitMultiRequest.size(), multiResponses, multiRequest));
+            }
+            return executeBatchesAsync(authorisation, multiRequest, splitMultiRequest, i + 1, multiResponses, deadline);
+        }).thenCompose(future -> future);
+    }
+
     /**
      * Convenience shortcut for {@link #get(AppAuthorisation, ServiceReadRequest)}. Calls build on the
      * supplied builder and makes the call to the API.
@@ -483,6 +653,29 @@ public final class BrightpearlApiClient {
         return parseBasicEntity(response, serviceRequest.getResponseType(), false);
     }
 
+    /**
+     * Async equivalent of {@link #get(AppAuthorisation, ServiceReadRequestBuilder)}.
+     * @param authorisation App and account authorisation details.
+     * @param serviceRequestBuilder Builder for read request to be executed.
+     * @param <T> Type of expected response.
+     * @return A future that completes with a response of the expected type.
+     */
+    public <T> CompletableFuture<T> getAsync(AppAuthorisation authorisation, ServiceReadRequestBuilder<T> serviceRequestBuilder) {
+        return getAsync(authorisation, serviceRequestBuilder.build());
+    }
+
+    /**
+     * Async equivalent of {@link #get(AppAuthorisation, ServiceReadRequest)}. The returned future completes exceptionally
+     * with the exception the blocking method would have thrown if the request fails.
+     * @param authorisation App and account authorisation details.
+     * @param serviceRequest A read request to be made.
+     * @param <T> Type of expected response.
+     * @return A future that completes with a response of the expected type.
+     */
+    public <T> CompletableFuture<T> getAsync(AppAuthorisation authorisation, final ServiceReadRequest<T> serviceRequest) {
+        return Futures.unwrapped(getHttpResponseAsync(authorisation, serviceRequest).thenApply(response -> BrightpearlApiClient.this.<T>parseBasicEntity(response, serviceRequest.getResponseType(), false)));
+    }
+
     /**
      * Convenience shortcut for {@link #search(AppAuthorisation, ServiceSearchRequest)}. Calls build on the
      * supplied builder and makes the call to the API.
@@ -520,6 +713,29 @@ public final class BrightpearlApiClient {
         return parseSearchEntity(response, serviceRequest.getResponseType());
     }
 
+    /**
+     * Async equivalent of {@link #search(AppAuthorisation, SearchRequestBuilder)}.
+     * @param authorisation App and account authorisation details.
+     * @param serviceRequestBuilder Builder for search request to be executed.
+     * @param <T> Type of expected response.
+     * @return A future that completes with a {@link SearchResults} object containing parsed results and meta information.
+     */
+    public <T> CompletableFuture<SearchResults<T>> searchAsync(AppAuthorisation authorisation, SearchRequestBuilder<T> serviceRequestBuilder) {
+        return searchAsync(authorisation, serviceRequestBuilder.build());
+    }
+
+    /**
+     * Async equivalent of {@link #search(AppAuthorisation, ServiceSearchRequest)}. The returned future completes
+     * exceptionally with the exception the blocking method would have thrown if the request fails.
+     * @param authorisation App and account authorisation details.
+     * @param serviceRequest The search request to be executed.
+     * @param <T> Type of expected response.
+     * @return A future that completes with a {@link SearchResults} object containing parsed results and meta information.
+     */
+    public <T> CompletableFuture<SearchResults<T>> searchAsync(AppAuthorisation authorisation, final ServiceSearchRequest<T> serviceRequest) {
+        return Futures.unwrapped(getHttpResponseAsync(authorisation, serviceRequest).thenApply(response -> BrightpearlApiClient.this.<T>parseSearchEntity(response, serviceRequest.getResponseType())));
+    }
+
     /**
      * Convenience shortcut for {@link #execute(AppAuthorisation, ServiceWriteRequest)}. Calls build on the
      * supplied builder and makes the call to the API.
@@ -545,6 +761,29 @@ public final class BrightpearlApiClient {
         return parseBasicEntity(response, serviceRequest.getResponseType(), false);
     }
 
+    /**
+     * Async equivalent of {@link #execute(AppAuthorisation, ServiceWriteRequestBuilder)}.
+     * @param authorisation App and account authorisation details.
+     * @param serviceRequestBuilder Builder for write request to be executed.
+     * @param <T> Type of expected response. Use {@link Void}.class if no response body is expected.
+     * @return A future that completes with a response of the expected type, null if the declared type was {@link Void}.
+     */
+    public <T> CompletableFuture<T> executeAsync(AppAuthorisation authorisation, ServiceWriteRequestBuilder<T> serviceRequestBuilder) {
+        return executeAsync(authorisation, serviceRequestBuilder.build());
+    }
+
+    /**
+     * Async equivalent of {@link #execute(AppAuthorisation, ServiceWriteRequest)}. The returned future completes
+     * exceptionally with the exception the blocking method would have thrown if the request fails.
+     * @param authorisation App and account authorisation details.
+     * @param serviceRequest A write request to be made.
+     * @param <T> Type of expected response. Use {@link Void}.class if no response body is expected.
+     * @return A future that completes with a response of the expected type, null if the declared type was {@link Void}.
+     */
+    public <T> CompletableFuture<T> executeAsync(AppAuthorisation authorisation, final ServiceWriteRequest<T> serviceRequest) {
+        return Futures.unwrapped(getHttpResponseAsync(authorisation, serviceRequest).thenApply(response -> BrightpearlApiClient.this.<T>parseBasicEntity(response, serviceRequest.getResponseType(), false)));
+    }
+
     /**
      * <p>
      * Executes a request and returns the response as an unparsed string of JSON together with the HTTP status
@@ -557,47 +796,314 @@ public final class BrightpearlApiClient {
      * </p><p>
      * An exception will only be thrown for HTTP transport errors, which will usually result in a {@link uk.co.visalia.brightpearl.apiclient.exception.BrightpearlClientException}
      * unless a custom HTTP client implementation throws a different type.
+     * </p><p>
+     * If the client factory is configured to stream responses, the response returned may be streamed, and must be
+     * closed by the caller unless {@link Response#getBody()} is used.
      * </p>
      * @param authorisation App and account authorisation details.
      * @param serviceRequest Read request to be sent.
      * @return Unprocessed HTTP response.
      */
     public Response getHttpResponse(AppAuthorisation authorisation, AbstractServiceRequest serviceRequest) {
+        return getHttpResponse(authorisation, serviceRequest, Deadline.start(serviceRequest.getDeadlineMs()));
+    }
+
+    private Response getHttpResponse(AppAuthorisation authorisation, AbstractServiceRequest serviceRequest, Deadline deadline) {
+        Request request = buildServiceRequest(authorisation, serviceRequest, deadline);
+        return executeServiceRequest(authorisation.getAccount(), request, isHedged(serviceRequest));
+    }
+
+    /*
+     * Waits for the account's bulkhead if enabled, then rate limits and sends the request.
+     */
+    private Response executeServiceRequest(Account account, Request request, boolean hedged) {
+        if (bulkheads == null) {
+            return rateLimitAndSend(account, request, hedged);
+        }
+        Bulkheads.Permit permit = Futures.join(bulkheads.acquire(account, request.getDeadline()));
+        try {
+            return rateLimitAndSend(account, request, hedged);
+        } finally {
+            permit.release();
+        }
+    }
+
+    private Response rateLimitAndSend(Account account, Request request, boolean hedged) {
+        rateLimit(account, request);
+        if (hedged) {
+            return Futures.join(sendHedgedAsync(account, request));
+        }
+        return send(account, request);
+    }
+
+    /*
+     * Sends a request with the blocking client, waiting for a permit first if concurrency is limited.
+     */
+    private Response send(Account account, Request request) {
+        if (concurrencyLimiter == null) {
+            return transmit(account, request);
+        }
+        ConcurrencyLimiter.Permit permit = Futures.join(concurrencyLimiter.acquire(account.getDatacenter(), request.getDeadline()));
+        try {
+            Response response = transmit(account, request);
+            permit.release(null);
+            return response;
+        } catch (RuntimeException e) {
+            permit.release(e);
+            throw e;
+        }
+    }
+
+    /*
+     * Sends a request with the async client once a permit is available if concurrency is limited.
+     */
+    private CompletableFuture<Response> sendAsync(final Account account, final Request request) {
+        if (concurrencyLimiter == null) {
+            return Futures.defer(() -> transmitAsync(account, request));
+        }
+        return concurrencyLimiter.acquire(account.getDatacenter(), request.getDeadline()).thenCompose(permit ->
+                Futures.defer(() -> transmitAsync(account, request))
+                        .whenComplete((response, throwable) -> permit.release(throwable == null ? null : Futures.unwrap(throwable))));
+    }
+
+    /*
+     * Makes the transport call and checks the response. The circuit breaker permit is taken immediately before the
+     * call, so a half open breaker's probe is not held while the request waits for the bulkhead, rate limiter or
+     * concurrency limit.
+     */
+    private Response transmit(Account account, Request request) {
+        checkDeadlineBeforeSending(request);
+        CircuitBreakers.Permit permit = acquireCircuit(account);
+        try {
+            Response response = checkResponse(account, getClient(account).execute(request));
+            completeCircuit(permit, null);
+            return response;
+        } catch (RuntimeException e) {
+            completeCircuit(permit, e);
+            throw e;
+        }
+    }
+
+    private CompletableFuture<Response> transmitAsync(final Account account, final Request request) {
+        checkDeadlineBeforeSending(request);
+        final CircuitBreakers.Permit permit = acquireCircuit(account);
+        CompletableFuture<Response> response = Futures.defer(() -> getAsyncClient(account).executeAsync(request))
+                .thenApply(r -> checkResponse(account, r));
+        if (permit == null) {
+            return response;
+        }
+        return response.whenComplete((r, throwable) -> permit.complete(throwable == null ? null : Futures.unwrap(throwable)));
+    }
+
+    /**
+     * Async equivalent of {@link #getHttpResponse(AppAuthorisation, AbstractServiceRequest)}. Rate limiting, the
+     * request itself and the checks for 503 responses are run as stages of the returned future.
+     * @param authorisation App and account authorisation details.
+     * @param serviceRequest Request to be sent.
+     * @return A future that completes with the unprocessed HTTP response.
+     */
+    public CompletableFuture<Response> getHttpResponseAsync(final AppAuthorisation authorisation, final AbstractServiceRequest serviceRequest) {
+        return getHttpResponseAsync(authorisation, serviceRequest, Deadline.start(serviceRequest.getDeadlineMs()));
+    }
+
+    private CompletableFuture<Response> getHttpResponseAsync(final AppAuthorisation authorisation, final AbstractServiceRequest serviceRequest, final Deadline deadline) {
+        return Futures.unwrapped(Futures.defer(() -> {
+            Request request = buildServiceRequest(authorisation, serviceRequest, deadline);
+            return executeAsync(authorisation.getAccount(), request, isHedged(serviceRequest));
+        }));
+    }
+
+    /**
+     * Returns bulkhead metrics, including queue wait times, for every account requests have been made to. The list is
+     * empty if no {@link BulkheadPolicy} was configured.
+     * @return list of metrics for each account, in no particular order.
+     */
+    public List<BulkheadMetrics> getBulkheadMetrics() {
+        return bulkheads == null ? Collections.<BulkheadMetrics>emptyList() : bulkheads.getMetrics();
+    }
+
+    private Request buildServiceRequest(AppAuthorisation authorisation, AbstractServiceRequest serviceRequest, Deadline deadline) {
         String url = buildServiceUrl(authorisation.getAccount(), serviceRequest);
-        String jsonBody = null;
+        RequestBuilder requestBuilder = RequestBuilder.newRequest()
+                .withMethod(serviceRequest.getMethod())
+                .withUrl(url)
+                .withParameters(serviceRequest.getParams())
+                .withHeaders(authorisation.getHeaders())
+                .withDeadline(deadline);
+
         if (serviceRequest instanceof ServiceWriteRequest) {
-            jsonBody = "{}";
             Object entity = ((ServiceWriteRequest)serviceRequest).getEntity();
             if (entity != null && (serviceRequest.getMethod() == Method.POST || serviceRequest.getMethod() == Method.PUT)) {
-                jsonBody = gson.toJson(entity);
+                addJsonBody(requestBuilder, entity);
+            } else {
+                requestBuilder.withBody("{}");
             }
         }
 
-        rateLimiter.rateLimit(authorisation.getAccount());
-        Request request = RequestBuilder.newRequest()
-                .withMethod(serviceRequest.getMethod())
-                .withUrl(url)
-                .withParameters(serviceRequest.getParams())
-                .withHeaders(authorisation.getHeaders())
-                .withBody(jsonBody)
-                .build();
-        Response response = getClient(authorisation.getAccount()).execute(request);
-        sendRateLimitHeaders(authorisation.getAccount(), response);
+        return requestBuilder.build();
+    }
+
+    /*
+     * Adds a serialised entity as the request body, either as a string or as an entity written to the connection.
+     */
+    private void addJsonBody(RequestBuilder requestBuilder, Object entity) {
+        if (streamRequestBodies) {
+            requestBuilder.withEntity(new JsonRequestEntity(gson, entity));
+        } else {
+            requestBuilder.withBody(gson.toJson(entity));
+        }
+    }
+
+    /*
+     * Composes the rate limit, request and response checks as future stages. A rate limiter that implements
+     * AsyncRateLimiter is waited for on a timer; others are called on the async executor as they may block.
+     */
+    private CompletableFuture<Response> executeAsync(final Account account, final Request request) {
+        return executeAsync(account, request, false);
+    }
+
+    private CompletableFuture<Response> executeAsync(final Account account, final Request request, final boolean hedged) {
+        if (bulkheads == null) {
+            return rateLimitAndSendAsync(account, request, hedged);
+        }
+        return bulkheads.acquire(account, request.getDeadline()).thenCompose(permit ->
+                Futures.defer(() -> rateLimitAndSendAsync(account, request, hedged)).whenComplete((response, throwable) -> permit.release()));
+    }
+
+    private CompletableFuture<Response> rateLimitAndSendAsync(final Account account, final Request request, final boolean hedged) {
+        final CompletableFuture<Void> rateLimited;
+        if (rateLimiter instanceof AsyncRateLimiter) {
+            rateLimited = rateLimitAsync((AsyncRateLimiter)rateLimiter, account, request);
+        } else {
+            rateLimited = CompletableFuture.runAsync(() -> rateLimit(account, request), asyncExecutor);
+        }
+        if (hedged) {
+            return rateLimited.thenCompose(v -> sendHedgedAsync(account, request));
+        }
+        return rateLimited.thenCompose(v -> sendAsync(account, request));
+    }
+
+    /*
+     * Reserves a slot without blocking and completes on the async executor once the delay returned has passed, so no
+     * thread waits.
+     */
+    private CompletableFuture<Void> rateLimitAsync(AsyncRateLimiter asyncRateLimiter, Account account, Request request) {
+        Deadline deadline = request.getDeadline();
+        long delayMs;
+        if (deadline == null) {
+            delayMs = asyncRateLimiter.acquire(account);
+        } else {
+            if (deadline.isExpired()) {
+                return Futures.failed(deadline.exceeded("before rate limiting"));
+            }
+            delayMs = asyncRateLimiter.acquire(account, deadline.remainingMs());
+            if (delayMs < 0) {
+                return Futures.failed(deadline.exceeded("waiting for the rate limiter"));
+            }
+        }
+        if (delayMs <= 0) {
+            return CompletableFuture.completedFuture(null);
+        }
+        final CompletableFuture<Void> delayed = new CompletableFuture<Void>();
+        Futures.scheduler().schedule(() -> {
+            asyncExecutor.execute(() -> delayed.complete(null));
+        }, delayMs, TimeUnit.MILLISECONDS);
+        return delayed;
+    }
+
+    /*
+     * Sends a request that has already been rate limited through the hedger, which may send a duplicate if it is slow.
+     * Each copy is checked separately so a 503 from one does not prevent the other from being used.
+     */
+    private CompletableFuture<Response> sendHedgedAsync(final Account account, final Request request) {
+        return requestHedger.execute(account, () -> sendAsync(account, request));
+    }
+
+    /*
+     * Only idempotent GET reads and searches are hedged, and only when a hedging policy has been configured.
+     */
+    private boolean isHedged(AbstractServiceRequest serviceRequest) {
+        return requestHedger != null &&
+                serviceRequest.getMethod() == Method.GET &&
+                (serviceRequest instanceof ServiceReadRequest || serviceRequest instanceof ServiceSearchRequest);
+    }
+
+    /*
+     * Calls the rate limiter, limiting its wait to the time left if the request has a deadline. A rate limiter that
+     * does not support deadlines may still wait past it, in which case the request is not sent.
+     */
+    private void rateLimit(Account account, Request request) {
+        Deadline deadline = request.getDeadline();
+        if (deadline == null) {
+            rateLimiter.rateLimit(account);
+            return;
+        }
+        deadline.check("before rate limiting");
+        rateLimiter.rateLimit(account, deadline.remainingMs());
+        deadline.check("waiting for the rate limiter");
+    }
+
+    /*
+     * A deadline set on a multimessage replaces that of its only request, which is otherwise used.
+     */
+    private Deadline multiRequestDeadline(MultiRequest multiRequest, ServiceWriteRequest itemRequest) {
+        return Deadline.start(multiRequest.getDeadlineMs() > 0 ? multiRequest.getDeadlineMs() : itemRequest.getDeadlineMs());
+    }
+
+    /*
+     * Passes rate limit headers to the rate limiter and converts 503 responses to exceptions.
+     */
+    private Response checkResponse(Account account, Response response) {
+        sendRateLimitHeaders(account, response);
         if (response.getStatus() == 503) {
             if (response.getBody() != null && response.getBody().contains("too many requests")) {
-                rateLimiter.requestCapExceeded(authorisation.getAccount());
+                rateLimiter.requestCapExceeded(account);
                 throw new BrightpearlRequestCapException("Request limit exceeded");
             } else {
                 throw new BrightpearlUnavailableException("Brightpearl API returned 503 Service Unavailable");
             }
         }
-
         return response;
     }
 
-    private MultiResponse getBatchResponse(AppAuthorisation authorisation, MultiRequest multiRequest) {
+    private MultiResponse getBatchResponse(AppAuthorisation authorisation, MultiRequest multiRequest, Deadline deadline) {
+        Request request = buildBatchRequest(authorisation, multiRequest, deadline);
+        Response response = executeServiceRequest(authorisation.getAccount(), request, false);
+        return parseBatchResponse(multiRequest, response);
+    }
 
-        Map<String, ServiceResponse> serviceResponseMap = new HashMap<String, ServiceResponse>();
+    private CompletableFuture<MultiResponse> getBatchResponseAsync(final AppAuthorisation authorisation, final MultiRequest multiRequest, final Deadline deadline) {
+        return Futures.defer(() -> {
+            Request request = buildBatchRequest(authorisation, multiRequest, deadline);
+            return executeAsync(authorisation.getAccount(), request);
+        }).thenApply(response -> parseBatchResponse(multiRequest, response));
+    }
+
+    /*
+     * A deadline that has already passed is reported before a circuit permit is taken, as a deadline error reported
+     * through the permit counts as a failure.
+     */
+    private void checkDeadlineBeforeSending(Request request) {
+        if (request.getDeadline() != null) {
+            request.getDeadline().check("before the request was sent");
+        }
+    }
+
+    /*
+     * Returns a permit from the circuit breakers, or null if they are not enabled. Throws if the breaker for the account
+     * or its datacenter is open.
+     */
+    private CircuitBreakers.Permit acquireCircuit(Account account) {
+        return circuitBreakers == null ? null : circuitBreakers.acquire(account);
+    }
+
+    private void completeCircuit(CircuitBreakers.Permit permit, Throwable throwable) {
+        if (permit != null) {
+            permit.complete(throwable);
+        }
+    }
+
+    private Request buildBatchRequest(AppAuthorisation authorisation, MultiRequest multiRequest, Deadline deadline) {
 
         List<MultiMessageItem> items = new ArrayList<MultiMessageItem>();
         for (ServiceWriteRequest request : multiRequest.getRequests()) {
@@ -608,26 +1114,19 @@ public final class BrightpearlApiClient {
         MultiMessage message = new MultiMessage(multiRequest.getProcessingMode(), multiRequest.getOnFailOption(), items);
 
         String multiUrl = buildMultiMessageUrl(authorisation.getAccount());
-        String jsonBody = gson.toJson(message);
 
-        rateLimiter.rateLimit(authorisation.getAccount());
-        Request request = RequestBuilder.newRequest()
+        RequestBuilder requestBuilder = RequestBuilder.newRequest()
                 .withMethod(Method.POST)
                 .withUrl(multiUrl)
-                .withBody(jsonBody)
                 .withHeaders(authorisation.getHeaders())
-                .build();
-        Response response = getClient(authorisation.getAccount()).execute(request);
-        sendRateLimitHeaders(authorisation.getAccount(), response);
+                .withDeadline(deadline);
+        addJsonBody(requestBuilder, message);
+        return requestBuilder.build();
+    }
 
-        if (response.getStatus() == 503) {
-            if (response.getBody() != null && response.getBody().contains("too many requests")) {
-                rateLimiter.requestCapExceeded(authorisation.getAccount());
-                throw new BrightpearlRequestCapException("Request limit exceeded");
-            } else {
-                throw new BrightpearlUnavailableException("Brightpearl API returned 503 Service Unavailable");
-            }
-        }
+    private MultiResponse parseBatchResponse(MultiRequest multiRequest, Response response) {
+
+        Map<String, ServiceResponse> serviceResponseMap = new HashMap<String, ServiceResponse>();
 
         MultiMessageResponse multiResponse = parseBasicEntity(response, new TypeToken<MultiMessageResponse>() { }.getType(), false);
 
@@ -653,6 +1152,30 @@ public final class BrightpearlApiClient {
         return MultiResponseBuilder.newMultiResponse().withStatus(response.getStatus()).withServiceResponseMap(serviceResponseMap).withUnprocessedRequestIds(multiResponse.getUnprocessedMessages()).build();
     }
 
+    /*
+     * Wraps the response to a single request diverted from the multi message API to a best approximation of how it
+     * would have looked from the MM API.
+     */
+    private MultiResponse parseSingleMultiResponse(ServiceWriteRequest itemRequest, Response response) {
+
+        Map<String, ServiceResponse> serviceResponseMap = new HashMap<String, ServiceResponse>();
+
+        try {
+            JsonWrapper jsonWrapper = parseJsonWrapper(response, itemRequest.getResponseType(), false);
+            if (jsonWrapper == null) {
+                serviceResponseMap.put(itemRequest.getRuid(), ServiceResponseBuilder.<Object>newServiceResponse().withRuid(itemRequest.getRuid()).withStatus(response.getStatus()).build());
+            } else {
+                serviceResponseMap.put(itemRequest.getRuid(), ServiceResponseBuilder.<Object>newServiceResponse().withRuid(itemRequest.getRuid()).withStatus(response.getStatus()).withResponse(parseEntity(jsonWrapper, itemRequest.getResponseType())).withException(null).build());
+            }
+        } catch (BrightpearlAuthException e) {
+            throw e;
+        } catch (RuntimeException e) {
+            serviceResponseMap.put(itemRequest.getRuid(), ServiceResponseBuilder.newServiceResponse().withRuid(itemRequest.getRuid()).withStatus(response.getStatus()).withException(e).build());
+        }
+
+        return MultiResponseBuilder.newMultiResponse().withStatus(response.getStatus() == 200 ? 200 : 207).withServiceResponseMap(serviceResponseMap).build();
+    }
+
     private MultiResponse mergeMultiResponses(int batchCount, List<MultiResponse> multiResponses, MultiRequest multiRequest) {
         if (batchCount == 1 && multiResponses.size() == 1) {
             return multiResponses.get(0);
@@ -694,7 +1217,7 @@ public final class BrightpearlApiClient {
 
     private <T> SearchResults<T> parseSearchEntity(Response response, Type type) {
 
-        JsonWrapper jsonWrapper = parseJsonWrapper(response, type, false);
+        JsonWrapper jsonWrapper = parseJsonWrapper(response, partialSearchResponseType(), false);
 
         PartialSearchResponse partialSearchResponse = parseEntity(jsonWrapper, partialSearchResponseType());
         List<SearchColumn> columns = partialSearchResponse.getMetaData().getColumns();
@@ -757,6 +1280,13 @@ public final class BrightpearlApiClient {
     }
 
     private JsonWrapper parseJsonWrapper(Response response, Type type, boolean isAuthentication) {
+        if (response.isStreamed()) {
+            try {
+                return parseStreamedJsonWrapper(response, type, isAuthentication);
+            } finally {
+                response.close();
+            }
+        }
         String responseJson = null;
         if (isJsonResponse(response)) {
             responseJson = response.getBody();
@@ -764,11 +1294,40 @@ public final class BrightpearlApiClient {
         return parseJsonWrapper(response.getStatus(), responseJson, type, isAuthentication);
     }
 
-    private JsonWrapper parseJsonWrapper(int status, String responseJson, Type type, boolean isAuthentication) {
+    /*
+     * Reads the wrapper from the response body stream. For successful responses the response element is parsed directly
+     * into the expected type, so the body is never held as a string or JSON tree. Other responses may contain an error
+     * message in the response element so it is left unparsed.
+     */
+    private JsonWrapper parseStreamedJsonWrapper(Response response, Type type, boolean isAuthentication) {
+        int status = response.getStatus();
+        JsonWrapper jsonWrapper = null;
+        if (isJsonResponse(response)) {
+            Type streamType = null;
+            if (status >= 200 && status < 300 && type != null && !type.equals(voidType())) {
+                streamType = type;
+            }
+            jsonWrapper = jsonWrapperReader.read(response.getBodyReader(), streamType);
+        }
+        return checkJsonWrapper(status, jsonWrapper, type, isAuthentication);
+    }
 
+    private JsonWrapper parseJsonWrapper(int status, String responseJson, Type type, boolean isAuthentication) {
         try {
+            JsonWrapper jsonWrapper = null;
             if (StringUtils.isNotEmpty(responseJson)) {
-                JsonWrapper jsonWrapper = gson.fromJson(responseJson, JsonWrapper.class);
+                jsonWrapper = gson.fromJson(responseJson, JsonWrapper.class);
+            }
+            return checkJsonWrapper(status, jsonWrapper, type, isAuthentication);
+        } catch (JsonParseException e) {
+            throw new BrightpearlHttpException(ClientErrorCode.INVALID_RESPONSE_FORMAT, e);
+        }
+    }
+
+    private JsonWrapper checkJsonWrapper(int status, JsonWrapper jsonWrapper, Type type, boolean isAuthentication) {
+
+        try {
+            if (jsonWrapper != null) {
 
                 if (status == 401 && !isAuthentication) {
                     // Invalid credentials.
@@ -785,7 +1344,7 @@ public final class BrightpearlApiClient {
                     throw new BrightpearlServiceException(status, jsonWrapper.getErrors());
                 } else if (status >= 200 && status < 300) {
                     // 2xx status and no errors should always be a success.
-                    if (jsonWrapper.getResponse() != null) {
+                    if (jsonWrapper.hasResponse()) {
                         return jsonWrapper;
                     }
                 } else {
@@ -812,6 +1371,9 @@ public final class BrightpearlApiClient {
         if (type == null || voidType().equals(type)) {
             return null;
         }
+        if (jsonWrapper.isResponseParsed()) {
+            return jsonWrapper.getParsedResponse();
+        }
         try {
             return gson.fromJson(jsonWrapper.getResponse(), type);
         } catch (JsonParseException e) {
@@ -820,20 +1382,32 @@ public final class BrightpearlApiClient {
     }
 
     private String buildAuthUrl(Account account) {
-        return String.format(AUTH_TEMPLATE, account.getDatacenter().getHost(), account.getAccountCode());
+        return getAccountUrls(account).authUrl;
     }
 
     private String buildServiceUrl(Account account, AbstractServiceRequest serviceRequest) {
-        String service = serviceRequest.getService().getPath();
+        String serviceUrl = getAccountUrls(account).getServiceUrl(serviceRequest.getService());
         String path = serviceRequest.getPath();
         if (path.startsWith("/")) {
-            path = path.substring(1);
+            return new StringBuilder(serviceUrl.length() + path.length()).append(serviceUrl).append(path, 1, path.length()).toString();
         }
-        return String.format(SERVICE_TEMPLATE, account.getDatacenter().getHost(), account.getAccountCode(), service, path);
+        return serviceUrl.concat(path);
     }
 
     private String buildMultiMessageUrl(Account account) {
-        return String.format(MULTIMESSAGE_TEMPLATE, account.getDatacenter().getHost(), account.getAccountCode());
+        return getAccountUrls(account).multiMessageUrl;
+    }
+
+    private AccountUrls getAccountUrls(Account account) {
+        AccountUrls urls = accountUrls.get(account);
+        if (urls == null) {
+            urls = new AccountUrls(account);
+            AccountUrls existing = accountUrls.putIfAbsent(account, urls);
+            if (existing != null) {
+                urls = existing;
+            }
+        }
+        return urls;
     }
 
     private String buildMultiMessageServiceUrl(AbstractServiceRequest serviceRequest) {
@@ -846,7 +1420,7 @@ public final class BrightpearlApiClient {
     }
 
     private boolean isJsonResponse(Response response) {
-        String contentTypeHeader = response.getHeader("content-type");
+        String contentTypeHeader = response.getHeaderList().getContentType();
         return contentTypeHeader != null && contentTypeHeader.startsWith("application/json");
     }
 
@@ -870,10 +1444,21 @@ public final class BrightpearlApiClient {
         return client;
     }
 
+    private AsyncClient getAsyncClient(Account account) {
+        if (clientFactory instanceof AsyncClientFactory) {
+            AsyncClient client = ((AsyncClientFactory)clientFactory).getAsyncClient(account);
+            if (client == null) {
+                throw new BrightpearlClientException("Client factory did not return an async client for account " + account.getAccountCode());
+            }
+            return client;
+        }
+        return new ExecutorAsyncClient(getClient(account), asyncExecutor);
+    }
+
     private void sendRateLimitHeaders(Account account, Response response) {
         if (response == null) { return; }
-        String remainingStr = response.getHeader("brightpearl-requests-remaining");
-        String periodStr = response.getHeader("brightpearl-next-throttle-period");
+        String remainingStr = response.getHeaderList().getRequestsRemaining();
+        String periodStr = response.getHeaderList().getNextThrottlePeriod();
         if (rateLimiter != null && StringUtils.isNotBlank(remainingStr) && StringUtils.isNotBlank(periodStr)) {
             try {
                 int remaining = Integer.parseInt(remainingStr.trim());
@@ -911,4 +1496,33 @@ public final class BrightpearlApiClient {
         return gsonBuilder.create();
     }
 
-}
\ No newline at end of file
+    /*
+     * The URLs for an account, which are formatted once and reused. Service URLs are formatted on first use, and end
+     * with a slash so that only the resource path needs to be appended for each request.
+     */
+    private static final class AccountUrls {
+
+        private final String authUrl;
+        private final String multiMessageUrl;
+        private final String serviceBaseUrl;
+        private final ConcurrentMap<String, String> serviceUrls = new ConcurrentHashMap<String, String>();
+
+        private AccountUrls(Account account) {
+            String host = account.getDatacenter().getHost();
+            this.authUrl = String.format(AUTH_TEMPLATE, host, account.getAccountCode());
+            this.multiMessageUrl = String.format(MULTIMESSAGE_TEMPLATE, host, account.getAccountCode());
+            this.serviceBaseUrl = String.format(SERVICE_BASE_TEMPLATE, host, account.getAccountCode());
+        }
+
+        private String getServiceUrl(ServiceName service) {
+            String serviceUrl = serviceUrls.get(service.getPath());
+            if (serviceUrl == null) {
+                serviceUrl = serviceBaseUrl + service.getPath() + "/";
+                serviceUrls.putIfAbsent(service.getPath(), serviceUrl);
+            }
+            return serviceUrl;
+        }
+
+    }
+
+}
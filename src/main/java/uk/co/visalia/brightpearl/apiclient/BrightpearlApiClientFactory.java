@@ -17,10 +17,15 @@
 package uk.co.visalia.brightpearl.apiclient;
 
 import com.google.gson.Gson;
+import uk.co.visalia.brightpearl.apiclient.circuitbreaker.CircuitBreakerPolicy;
+import uk.co.visalia.brightpearl.apiclient.concurrency.BulkheadPolicy;
+import uk.co.visalia.brightpearl.apiclient.concurrency.ConcurrencyLimitPolicy;
+import uk.co.visalia.brightpearl.apiclient.hedging.HedgingPolicy;
 import uk.co.visalia.brightpearl.apiclient.http.ClientFactory;
 import uk.co.visalia.brightpearl.apiclient.ratelimit.RateLimiter;
 
 import java.util.Calendar;
+import java.util.concurrent.Executor;
 
 /**
  * <p>
@@ -46,6 +51,12 @@ public final class BrightpearlApiClientFactory {
     private ClientFactory clientFactory;
     private RateLimiter rateLimiter;
     private Gson gson;
+    private Executor asyncExecutor;
+    private boolean streamRequestBodies;
+    private HedgingPolicy hedgingPolicy;
+    private CircuitBreakerPolicy circuitBreakerPolicy;
+    private ConcurrencyLimitPolicy concurrencyLimitPolicy;
+    private BulkheadPolicy bulkheadPolicy;
 
     /**
      * Static builder method for method chaining, fluent builder style.
@@ -61,7 +72,7 @@ public final class BrightpearlApiClientFactory {
      * @return an immutable {@link BrightpearlApiClient} instance.
      */
     public BrightpearlApiClient build() {
-        return new BrightpearlApiClient(clientFactory, rateLimiter, gson);
+        return new BrightpearlApiClient(clientFactory, rateLimiter, gson, asyncExecutor, streamRequestBodies, hedgingPolicy, circuitBreakerPolicy, concurrencyLimitPolicy, bulkheadPolicy);
     }
 
     /**
@@ -94,6 +105,74 @@ public final class BrightpearlApiClientFactory {
         this.gson = gson;
     }
 
+    /**
+     * Set the {@link Executor} used by the async methods of {@link BrightpearlApiClient} to run work that may block,
+     * which includes rate limiter waits and requests made with a {@link ClientFactory} that does not implement
+     * {@link uk.co.visalia.brightpearl.apiclient.http.AsyncClientFactory}. By default, a shared unbounded pool of daemon
+     * threads is used.
+     * @param asyncExecutor custom executor for blocking work.
+     */
+    public void setAsyncExecutor(Executor asyncExecutor) {
+        this.asyncExecutor = asyncExecutor;
+    }
+
+    /**
+     * Set whether the JSON bodies of service write requests and multi-message requests are serialised as they are
+     * written to the connection, instead of being rendered to a string first. This reduces memory use for large
+     * payloads when the {@link ClientFactory} supports it, as the default Apache HTTP Components implementation does.
+     * Streamed bodies are sent with chunked transfer encoding. Defaults to false.
+     * @param streamRequestBodies whether to stream request bodies.
+     */
+    public void setStreamRequestBodies(boolean streamRequestBodies) {
+        this.streamRequestBodies = streamRequestBodies;
+    }
+
+    /**
+     * Set the {@link HedgingPolicy} used for GET reads and searches. When set, a read that has not received a response
+     * within a percentile of recent response times for its datacenter is sent again, and the first response is used.
+     * Hedges are limited to a fraction of requests and are only sent when the {@link RateLimiter} allows a request
+     * without waiting. By default, no policy is set and requests are not hedged.
+     * @param hedgingPolicy hedging settings, created with {@link uk.co.visalia.brightpearl.apiclient.hedging.HedgingPolicyBuilder}.
+     */
+    public void setHedgingPolicy(HedgingPolicy hedgingPolicy) {
+        this.hedgingPolicy = hedgingPolicy;
+    }
+
+    /**
+     * Set the {@link CircuitBreakerPolicy} used to fail fast when a datacenter or account is unavailable. When set,
+     * repeated 503 responses and transport errors open a breaker for the datacenter or account, and further requests
+     * throw {@link uk.co.visalia.brightpearl.apiclient.exception.BrightpearlCircuitOpenException} without being sent
+     * until probe requests succeed. By default, no policy is set and every request is sent.
+     * @param circuitBreakerPolicy circuit breaker settings, created with {@link uk.co.visalia.brightpearl.apiclient.circuitbreaker.CircuitBreakerPolicyBuilder}.
+     */
+    public void setCircuitBreakerPolicy(CircuitBreakerPolicy circuitBreakerPolicy) {
+        this.circuitBreakerPolicy = circuitBreakerPolicy;
+    }
+
+    /**
+     * Set the {@link ConcurrencyLimitPolicy} used to limit concurrent requests to each datacenter. When set, the limit
+     * for each datacenter is tuned from observed response times, requests over the limit wait in a bounded queue, and
+     * requests that cannot be queued or wait too long throw
+     * {@link uk.co.visalia.brightpearl.apiclient.exception.BrightpearlOverloadException}. By default, no policy is set and
+     * concurrency is only limited by the {@link ClientFactory}.
+     * @param concurrencyLimitPolicy concurrency limit settings, created with {@link uk.co.visalia.brightpearl.apiclient.concurrency.ConcurrencyLimitPolicyBuilder}.
+     */
+    public void setConcurrencyLimitPolicy(ConcurrencyLimitPolicy concurrencyLimitPolicy) {
+        this.concurrencyLimitPolicy = concurrencyLimitPolicy;
+    }
+
+    /**
+     * Set the {@link BulkheadPolicy} used to limit concurrent requests to each account, so that one account cannot use
+     * all the connections and threads available to the client. When set, requests over an account's limit wait in a
+     * bounded queue, and requests that cannot be queued or wait too long throw
+     * {@link uk.co.visalia.brightpearl.apiclient.exception.BrightpearlOverloadException}. By default, no policy is set and
+     * requests to all accounts share the client's resources.
+     * @param bulkheadPolicy bulkhead settings, created with {@link uk.co.visalia.brightpearl.apiclient.concurrency.BulkheadPolicyBuilder}.
+     */
+    public void setBulkheadPolicy(BulkheadPolicy bulkheadPolicy) {
+        this.bulkheadPolicy = bulkheadPolicy;
+    }
+
     /**
      * Set the {@link ClientFactory} that will supply {@link uk.co.visalia.brightpearl.apiclient.http.Client} instances for the execution of HTTP requests. By
      * default, an Apache HTTP Components implementation is used, with a dependency on org.apache.httpcomponents:httpclient:4.2.5.
@@ -129,4 +208,84 @@ public final class BrightpearlApiClientFactory {
         setGson(gson);
         return this;
     }
+
+    /**
+     * Set the {@link Executor} used by the async methods of {@link BrightpearlApiClient} to run work that may block,
+     * which includes rate limiter waits and requests made with a {@link ClientFactory} that does not implement
+     * {@link uk.co.visalia.brightpearl.apiclient.http.AsyncClientFactory}. By default, a shared unbounded pool of daemon
+     * threads is used.
+     * @param asyncExecutor custom executor for blocking work.
+     * @return builder instance for method chaining.
+     */
+    public BrightpearlApiClientFactory withAsyncExecutor(Executor asyncExecutor) {
+        setAsyncExecutor(asyncExecutor);
+        return this;
+    }
+
+    /**
+     * Set whether the JSON bodies of service write requests and multi-message requests are serialised as they are
+     * written to the connection, instead of being rendered to a string first. This reduces memory use for large
+     * payloads when the {@link ClientFactory} supports it, as the default Apache HTTP Components implementation does.
+     * Streamed bodies are sent with chunked transfer encoding. Defaults to false.
+     * @param streamRequestBodies whether to stream request bodies.
+     * @return builder instance for method chaining.
+     */
+    public BrightpearlApiClientFactory withStreamRequestBodies(boolean streamRequestBodies) {
+        setStreamRequestBodies(streamRequestBodies);
+        return this;
+    }
+
+    /**
+     * Set the {@link HedgingPolicy} used for GET reads and searches. When set, a read that has not received a response
+     * within a percentile of recent response times for its datacenter is sent again, and the first response is used.
+     * Hedges are limited to a fraction of requests and are only sent when the {@link RateLimiter} allows a request
+     * without waiting. By default, no policy is set and requests are not hedged.
+     * @param hedgingPolicy hedging settings, created with {@link uk.co.visalia.brightpearl.apiclient.hedging.HedgingPolicyBuilder}.
+     * @return builder instance for method chaining.
+     */
+    public BrightpearlApiClientFactory withHedgingPolicy(HedgingPolicy hedgingPolicy) {
+        setHedgingPolicy(hedgingPolicy);
+        return this;
+    }
+
+    /**
+     * Set the {@link CircuitBreakerPolicy} used to fail fast when a datacenter or account is unavailable. When set,
+     * repeated 503 responses and transport errors open a breaker for the datacenter or account, and further requests
+     * throw {@link uk.co.visalia.brightpearl.apiclient.exception.BrightpearlCircuitOpenException} without being sent
+     * until probe requests succeed. By default, no policy is set and every request is sent.
+     * @param circuitBreakerPolicy circuit breaker settings, created with {@link uk.co.visalia.brightpearl.apiclient.circuitbreaker.CircuitBreakerPolicyBuilder}.
+     * @return builder instance for method chaining.
+     */
+    public BrightpearlApiClientFactory withCircuitBreakerPolicy(CircuitBreakerPolicy circuitBreakerPolicy) {
+        setCircuitBreakerPolicy(circuitBreakerPolicy);
+        return this;
+    }
+
+    /**
+     * Set the {@link ConcurrencyLimitPolicy} used to limit concurrent requests to each datacenter. When set, the limit
+     * for each datacenter is tuned from observed response times, requests over the limit wait in a bounded queue, and
+     * requests that cannot be queued or wait too long throw
+     * {@link uk.co.visalia.brightpearl.apiclient.exception.BrightpearlOverloadException}. By default, no policy is set and
+     * concurrency is only limited by the {@link ClientFactory}.
+     * @param concurrencyLimitPolicy concurrency limit settings, created with {@link uk.co.visalia.brightpearl.apiclient.concurrency.ConcurrencyLimitPolicyBuilder}.
+     * @return builder instance for method chaining.
+     */
+    public BrightpearlApiClientFactory withConcurrencyLimitPolicy(ConcurrencyLimitPolicy concurrencyLimitPolicy) {
+        setConcurrencyLimitPolicy(concurrencyLimitPolicy);
+        return this;
+    }
+
+    /**
+     * Set the {@link BulkheadPolicy} used to limit concurrent requests to each account, so that one account cannot use
+     * all the connections and threads available to the client. When set, requests over an account's limit wait in a
+     * bounded queue, and requests that cannot be queued or wait too long throw
+     * {@link uk.co.visalia.brightpearl.apiclient.exception.BrightpearlOverloadException}. By default, no policy is set and
+     * requests to all accounts share the client's resources.
+     * @param bulkheadPolicy bulkhead settings, created with {@link uk.co.visalia.brightpearl.apiclient.concurrency.BulkheadPolicyBuilder}.
+     * @return builder instance for method chaining.
+     */
+    public BrightpearlApiClientFactory withBulkheadPolicy(BulkheadPolicy bulkheadPolicy) {
+        setBulkheadPolicy(bulkheadPolicy);
+        return this;
+    }
 }
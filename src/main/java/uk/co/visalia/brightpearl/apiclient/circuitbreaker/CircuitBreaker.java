@@ -0,0 +1,148 @@
+/*
+ * Copyright 2014 David Morrissey
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package uk.co.visalia.brightpearl.apiclient.circuitbreaker;
+
+import uk.co.visalia.brightpearl.apiclient.account.Account;
+import uk.co.visalia.brightpearl.apiclient.account.Datacenter;
+
+/**
+ * The breaker for a single datacenter or account. Outcomes of requests admitted as probes are tracked separately from
+ * those admitted while closed, so a slow response to a request sent before the breaker opened cannot close it again.
+ */
+final class CircuitBreaker {
+
+    /**
+     * Result of asking a breaker to admit a request.
+     */
+    enum Admission { REJECTED, NORMAL, PROBE }
+
+    private final Datacenter datacenter;
+
+    private final Account account;
+
+    private final int failureThreshold;
+
+    private final long openDurationMs;
+
+    private final int halfOpenSuccesses;
+
+    private final CircuitBreakerListener listener;
+
+    private CircuitState state = CircuitState.CLOSED;
+
+    private int failures;
+
+    private int probeSuccesses;
+
+    private boolean probeInFlight;
+
+    private long openedAt;
+
+    CircuitBreaker(Datacenter datacenter, Account account, int failureThreshold, CircuitBreakerPolicy policy) {
+        this.datacenter = datacenter;
+        this.account = account;
+        this.failureThreshold = failureThreshold;
+        this.openDurationMs = policy.getOpenDurationMs();
+        this.halfOpenSuccesses = policy.getHalfOpenSuccesses();
+        this.listener = policy.getListener();
+    }
+
+    synchronized CircuitState getState() {
+        return state;
+    }
+
+    Admission tryAcquire() {
+        CircuitBreakerEvent event = null;
+        Admission admission;
+        synchronized (this) {
+            if (state == CircuitState.OPEN && System.currentTimeMillis() - openedAt >= openDurationMs) {
+                event = transition(CircuitState.HALF_OPEN);
+                probeSuccesses = 0;
+            }
+            if (state == CircuitState.CLOSED) {
+                admission = Admission.NORMAL;
+            } else if (state == CircuitState.HALF_OPEN && !probeInFlight) {
+                probeInFlight = true;
+                admission = Admission.PROBE;
+            } else {
+                admission = Admission.REJECTED;
+            }
+        }
+        notify(event);
+        return admission;
+    }
+
+    void onSuccess(Admission admission) {
+        CircuitBreakerEvent event = null;
+        synchronized (this) {
+            if (admission == Admission.PROBE && state == CircuitState.HALF_OPEN) {
+                probeInFlight = false;
+                if (++probeSuccesses >= halfOpenSuccesses) {
+                    failures = 0;
+                    event = transition(CircuitState.CLOSED);
+                }
+            } else if (admission == Admission.NORMAL && state == CircuitState.CLOSED) {
+                failures = 0;
+            }
+        }
+        notify(event);
+    }
+
+    void onFailure(Admission admission) {
+        CircuitBreakerEvent event = null;
+        synchronized (this) {
+            if (admission == Admission.PROBE && state == CircuitState.HALF_OPEN) {
+                probeInFlight = false;
+                event = open();
+            } else if (admission == Admission.NORMAL && state == CircuitState.CLOSED && ++failures >= failureThreshold) {
+                event = open();
+            }
+        }
+        notify(event);
+    }
+
+    /**
+     * Called when an admitted request was not sent, or ended with an outcome that says nothing about availability.
+     */
+    synchronized void release(Admission admission) {
+        if (admission == Admission.PROBE && state == CircuitState.HALF_OPEN) {
+            probeInFlight = false;
+        }
+    }
+
+    private CircuitBreakerEvent open() {
+        openedAt = System.currentTimeMillis();
+        return transition(CircuitState.OPEN);
+    }
+
+    private CircuitBreakerEvent transition(CircuitState toState) {
+        CircuitState fromState = state;
+        state = toState;
+        return listener == null ? null : new CircuitBreakerEvent(datacenter, account, fromState, toState, System.currentTimeMillis());
+    }
+
+    private void notify(CircuitBreakerEvent event) {
+        if (event != null) {
+            try {
+                listener.stateChanged(event);
+            } catch (RuntimeException e) {
+                // Listener failures must not affect requests
+            }
+        }
+    }
+
+}
@@ -0,0 +1,96 @@
+/*
+ * Copyright 2014 David Morrissey
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package uk.co.visalia.brightpearl.apiclient.circuitbreaker;
+
+import uk.co.visalia.brightpearl.apiclient.account.Account;
+import uk.co.visalia.brightpearl.apiclient.account.Datacenter;
+
+/**
+ * Describes a change in state of the circuit breaker for a datacenter or an account. Exactly one of
+ * {@link #getDatacenter()} and {@link #getAccount()} is non-null, depending on which breaker changed.
+ */
+public final class CircuitBreakerEvent {
+
+    private final Datacenter datacenter;
+
+    private final Account account;
+
+    private final CircuitState fromState;
+
+    private final CircuitState toState;
+
+    private final long timestamp;
+
+    CircuitBreakerEvent(Datacenter datacenter, Account account, CircuitState fromState, CircuitState toState, long timestamp) {
+        this.datacenter = datacenter;
+        this.account = account;
+        this.fromState = fromState;
+        this.toState = toState;
+        this.timestamp = timestamp;
+    }
+
+    /**
+     * Returns the datacenter whose breaker changed state, or null if this event is for an account breaker.
+     * @return the datacenter.
+     */
+    public Datacenter getDatacenter() {
+        return datacenter;
+    }
+
+    /**
+     * Returns the account whose breaker changed state, or null if this event is for a datacenter breaker.
+     * @return the account.
+     */
+    public Account getAccount() {
+        return account;
+    }
+
+    /**
+     * Returns the state of the breaker before the change.
+     * @return the previous state.
+     */
+    public CircuitState getFromState() {
+        return fromState;
+    }
+
+    /**
+     * Returns the state of the breaker after the change.
+     * @return the new state.
+     */
+    public CircuitState getToState() {
+        return toState;
+    }
+
+    /**
+     * Returns the time of the change in milliseconds since the epoch.
+     * @return time of the change.
+     */
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    @Override
+    public String toString() {
+        return "CircuitBreakerEvent{" +
+                (datacenter != null ? "datacenter=" + datacenter : "account=" + account) +
+                ", fromState=" + fromState +
+                ", toState=" + toState +
+                ", timestamp=" + timestamp +
+                '}';
+    }
+
+}
@@ -0,0 +1,32 @@
+/*
+ * Copyright 2014 David Morrissey
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package uk.co.visalia.brightpearl.apiclient.circuitbreaker;
+
+/**
+ * Receives circuit breaker state changes, for logging and monitoring. Events are delivered on the thread that caused
+ * the change, which may be a request thread or an HTTP client I/O thread, so implementations should return quickly and
+ * must not throw.
+ */
+public interface CircuitBreakerListener {
+
+    /**
+     * Called after a circuit breaker has changed state.
+     * @param event Details of the change.
+     */
+    void stateChanged(CircuitBreakerEvent event);
+
+}
@@ -0,0 +1,129 @@
+/*
+ * Copyright 2014 David Morrissey
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package uk.co.visalia.brightpearl.apiclient.circuitbreaker;
+
+/**
+ * <p>
+ * Immutable settings for the circuit breakers kept for each datacenter and each account. A breaker opens after a number
+ * of consecutive failures, where a failure is a 503 response that is not a request cap error, or a transport error such
+ * as a connection or socket timeout. While open, requests fail immediately with a
+ * {@link uk.co.visalia.brightpearl.apiclient.exception.BrightpearlCircuitOpenException}. After the open duration, single
+ * probe requests are allowed through, and the breaker closes once enough of them succeed in a row.
+ * </p><p>
+ * Use {@link CircuitBreakerPolicyBuilder} to create instances.
+ * </p>
+ */
+public final class CircuitBreakerPolicy {
+
+    /**
+     * Default number of consecutive failures across all accounts on a datacenter that opens its breaker (20).
+     */
+    public static final int DEFAULT_DATACENTER_FAILURE_THRESHOLD = 20;
+
+    /**
+     * Default number of consecutive failures for one account that opens its breaker (5).
+     */
+    public static final int DEFAULT_ACCOUNT_FAILURE_THRESHOLD = 5;
+
+    /**
+     * Default time a breaker stays open before probe requests are allowed (30000ms).
+     */
+    public static final long DEFAULT_OPEN_DURATION_MS = 30000;
+
+    /**
+     * Default number of consecutive successful probes that closes a half-open breaker (3).
+     */
+    public static final int DEFAULT_HALF_OPEN_SUCCESSES = 3;
+
+    private final int datacenterFailureThreshold;
+
+    private final int accountFailureThreshold;
+
+    private final long openDurationMs;
+
+    private final int halfOpenSuccesses;
+
+    private final CircuitBreakerListener listener;
+
+    CircuitBreakerPolicy(int datacenterFailureThreshold, int accountFailureThreshold, long openDurationMs, int halfOpenSuccesses, CircuitBreakerListener listener) {
+        if (datacenterFailureThreshold < 1 || accountFailureThreshold < 1) {
+            throw new IllegalArgumentException("Failure thresholds must be at least 1");
+        }
+        if (openDurationMs < 0) {
+            throw new IllegalArgumentException("Open duration must not be negative");
+        }
+        if (halfOpenSuccesses < 1) {
+            throw new IllegalArgumentException("Half open successes must be at least 1");
+        }
+        this.datacenterFailureThreshold = datacenterFailureThreshold;
+        this.accountFailureThreshold = accountFailureThreshold;
+        this.openDurationMs = openDurationMs;
+        this.halfOpenSuccesses = halfOpenSuccesses;
+        this.listener = listener;
+    }
+
+    /**
+     * Returns the number of consecutive failures across all accounts on a datacenter that opens its breaker.
+     * @return datacenter failure threshold.
+     */
+    public int getDatacenterFailureThreshold() {
+        return datacenterFailureThreshold;
+    }
+
+    /**
+     * Returns the number of consecutive failures for one account that opens its breaker.
+     * @return account failure threshold.
+     */
+    public int getAccountFailureThreshold() {
+        return accountFailureThreshold;
+    }
+
+    /**
+     * Returns the time a breaker stays open before probe requests are allowed.
+     * @return open duration in milliseconds.
+     */
+    public long getOpenDurationMs() {
+        return openDurationMs;
+    }
+
+    /**
+     * Returns the number of consecutive successful probes that closes a half-open breaker.
+     * @return required probe successes.
+     */
+    public int getHalfOpenSuccesses() {
+        return halfOpenSuccesses;
+    }
+
+    /**
+     * Returns the listener notified of state changes, or null if none was set.
+     * @return state change listener.
+     */
+    public CircuitBreakerListener getListener() {
+        return listener;
+    }
+
+    @Override
+    public String toString() {
+        return "CircuitBreakerPolicy{" +
+                "datacenterFailureThreshold=" + datacenterFailureThreshold +
+                ", accountFailureThreshold=" + accountFailureThreshold +
+                ", openDurationMs=" + openDurationMs +
+                ", halfOpenSuccesses=" + halfOpenSuccesses +
+                '}';
+    }
+
+}
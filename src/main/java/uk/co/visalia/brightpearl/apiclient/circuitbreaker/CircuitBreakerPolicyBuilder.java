@@ -0,0 +1,143 @@
+/*
+ * Copyright 2014 David Morrissey
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package uk.co.visalia.brightpearl.apiclient.circuitbreaker;
+
+/**
+ * <p>
+ * Constructs a {@link CircuitBreakerPolicy}. Supports construction in code using the builder pattern (starting with
+ * {@link #circuitBreakerPolicy()}) and usage as a Spring bean factory.
+ * </p><p>
+ * See static fields of {@link CircuitBreakerPolicy} for the default settings applied if methods in this builder are
+ * not used to override them.
+ * </p>
+ */
+public final class CircuitBreakerPolicyBuilder {
+
+    private int datacenterFailureThreshold = CircuitBreakerPolicy.DEFAULT_DATACENTER_FAILURE_THRESHOLD;
+    private int accountFailureThreshold = CircuitBreakerPolicy.DEFAULT_ACCOUNT_FAILURE_THRESHOLD;
+    private long openDurationMs = CircuitBreakerPolicy.DEFAULT_OPEN_DURATION_MS;
+    private int halfOpenSuccesses = CircuitBreakerPolicy.DEFAULT_HALF_OPEN_SUCCESSES;
+    private CircuitBreakerListener listener;
+
+    /**
+     * Static builder method for method chaining, fluent builder style.
+     * @return a new {@link CircuitBreakerPolicyBuilder} instance.
+     */
+    public static CircuitBreakerPolicyBuilder circuitBreakerPolicy() {
+        return new CircuitBreakerPolicyBuilder();
+    }
+
+    /**
+     * Constructs the immutable {@link CircuitBreakerPolicy} with configuration options provided, using defaults for any
+     * not set.
+     * @return an immutable {@link CircuitBreakerPolicy} instance.
+     */
+    public CircuitBreakerPolicy build() {
+        return new CircuitBreakerPolicy(datacenterFailureThreshold, accountFailureThreshold, openDurationMs, halfOpenSuccesses, listener);
+    }
+
+    /**
+     * Set the number of consecutive failures across all accounts on a datacenter that opens its breaker.
+     * @param datacenterFailureThreshold datacenter failure threshold.
+     */
+    public void setDatacenterFailureThreshold(int datacenterFailureThreshold) {
+        this.datacenterFailureThreshold = datacenterFailureThreshold;
+    }
+
+    /**
+     * Set the number of consecutive failures for one account that opens its breaker.
+     * @param accountFailureThreshold account failure threshold.
+     */
+    public void setAccountFailureThreshold(int accountFailureThreshold) {
+        this.accountFailureThreshold = accountFailureThreshold;
+    }
+
+    /**
+     * Set the time in milliseconds a breaker stays open before probe requests are allowed.
+     * @param openDurationMs open duration.
+     */
+    public void setOpenDurationMs(long openDurationMs) {
+        this.openDurationMs = openDurationMs;
+    }
+
+    /**
+     * Set the number of consecutive successful probes that closes a half-open breaker.
+     * @param halfOpenSuccesses required probe successes.
+     */
+    public void setHalfOpenSuccesses(int halfOpenSuccesses) {
+        this.halfOpenSuccesses = halfOpenSuccesses;
+    }
+
+    /**
+     * Set a listener to be notified when any breaker changes state.
+     * @param listener state change listener.
+     */
+    public void setListener(CircuitBreakerListener listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * Set the number of consecutive failures across all accounts on a datacenter that opens its breaker.
+     * @param datacenterFailureThreshold datacenter failure threshold.
+     * @return builder instance for method chaining.
+     */
+    public CircuitBreakerPolicyBuilder withDatacenterFailureThreshold(int datacenterFailureThreshold) {
+        setDatacenterFailureThreshold(datacenterFailureThreshold);
+        return this;
+    }
+
+    /**
+     * Set the number of consecutive failures for one account that opens its breaker.
+     * @param accountFailureThreshold account failure threshold.
+     * @return builder instance for method chaining.
+     */
+    public CircuitBreakerPolicyBuilder withAccountFailureThreshold(int accountFailureThreshold) {
+        setAccountFailureThreshold(accountFailureThreshold);
+        return this;
+    }
+
+    /**
+     * Set the time in milliseconds a breaker stays open before probe requests are allowed.
+     * @param openDurationMs open duration.
+     * @return builder instance for method chaining.
+     */
+    public CircuitBreakerPolicyBuilder withOpenDurationMs(long openDurationMs) {
+        setOpenDurationMs(openDurationMs);
+        return this;
+    }
+
+    /**
+     * Set the number of consecutive successful probes that closes a half-open breaker.
+     * @param halfOpenSuccesses required probe successes.
+     * @return builder instance for method chaining.
+     */
+    public CircuitBreakerPolicyBuilder withHalfOpenSuccesses(int halfOpenSuccesses) {
+        setHalfOpenSuccesses(halfOpenSuccesses);
+        return this;
+    }
+
+    /**
+     * Set a listener to be notified when any breaker changes state.
+     * @param listener state change listener.
+     * @return builder instance for method chaining.
+     */
+    public CircuitBreakerPolicyBuilder withListener(CircuitBreakerListener listener) {
+        setListener(listener);
+        return this;
+    }
+
+}
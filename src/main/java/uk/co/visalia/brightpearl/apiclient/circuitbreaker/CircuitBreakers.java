@@ -0,0 +1,181 @@
+/*
+ * Copyright 2014 David Morrissey
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package uk.co.visalia.brightpearl.apiclient.circuitbreaker;
+
+import uk.co.visalia.brightpearl.apiclient.account.Account;
+import uk.co.visalia.brightpearl.apiclient.account.Datacenter;
+import uk.co.visalia.brightpearl.apiclient.exception.BrightpearlCircuitOpenException;
+import uk.co.visalia.brightpearl.apiclient.exception.BrightpearlClientException;
+import uk.co.visalia.brightpearl.apiclient.exception.BrightpearlDeadlineExceededException;
+import uk.co.visalia.brightpearl.apiclient.exception.BrightpearlHttpException;
+import uk.co.visalia.brightpearl.apiclient.exception.BrightpearlOverloadException;
+import uk.co.visalia.brightpearl.apiclient.exception.BrightpearlUnavailableException;
+import uk.co.visalia.brightpearl.apiclient.exception.ClientErrorCode;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * <p>
+ * Holds a circuit breaker for each datacenter and each account, created on first use. A request must be admitted by
+ * both the breaker for its datacenter and the breaker for its account, so an outage of a whole datacenter and problems
+ * with a single account (for example during a migration) are each detected without affecting unrelated traffic.
+ * </p><p>
+ * Used internally by {@link uk.co.visalia.brightpearl.apiclient.BrightpearlApiClient}; configure circuit breakers with
+ * {@link uk.co.visalia.brightpearl.apiclient.BrightpearlApiClientFactory#withCircuitBreakerPolicy(CircuitBreakerPolicy)}.
+ * </p>
+ */
+public final class CircuitBreakers {
+
+    private final CircuitBreakerPolicy policy;
+
+    private final ConcurrentMap<Datacenter, CircuitBreaker> datacenterBreakers = new ConcurrentHashMap<Datacenter, CircuitBreaker>();
+
+    private final ConcurrentMap<Account, CircuitBreaker> accountBreakers = new ConcurrentHashMap<Account, CircuitBreaker>();
+
+    /**
+     * Creates an empty set of breakers.
+     * @param policy Circuit breaker settings.
+     */
+    public CircuitBreakers(CircuitBreakerPolicy policy) {
+        if (policy == null) {
+            throw new IllegalArgumentException("Policy is required");
+        }
+        this.policy = policy;
+    }
+
+    /**
+     * Admits a request to the account, or throws if the breaker for the account or its datacenter is open. The outcome
+     * of an admitted request must be reported to the returned permit.
+     * @param account The account a request will be sent to.
+     * @return A permit for the request.
+     * @throws BrightpearlCircuitOpenException if the request must not be sent.
+     */
+    public Permit acquire(Account account) {
+        CircuitBreaker datacenterBreaker = getDatacenterBreaker(account.getDatacenter());
+        CircuitBreaker.Admission datacenterAdmission = datacenterBreaker.tryAcquire();
+        if (datacenterAdmission == CircuitBreaker.Admission.REJECTED) {
+            throw new BrightpearlCircuitOpenException("Circuit breaker open for datacenter " + account.getDatacenter().getName());
+        }
+        CircuitBreaker accountBreaker = getAccountBreaker(account);
+        CircuitBreaker.Admission accountAdmission = accountBreaker.tryAcquire();
+        if (accountAdmission == CircuitBreaker.Admission.REJECTED) {
+            datacenterBreaker.release(datacenterAdmission);
+            throw new BrightpearlCircuitOpenException("Circuit breaker open for account " + account.getAccountCode());
+        }
+        return new Permit(datacenterBreaker, datacenterAdmission, accountBreaker, accountAdmission);
+    }
+
+    /**
+     * Returns the current state of the breaker for a datacenter.
+     * @param datacenter A datacenter.
+     * @return the breaker state, {@link CircuitState#CLOSED} if no requests have been made to the datacenter.
+     */
+    public CircuitState getState(Datacenter datacenter) {
+        CircuitBreaker breaker = datacenterBreakers.get(datacenter);
+        return breaker == null ? CircuitState.CLOSED : breaker.getState();
+    }
+
+    /**
+     * Returns the current state of the breaker for an account.
+     * @param account An account.
+     * @return the breaker state, {@link CircuitState#CLOSED} if no requests have been made to the account.
+     */
+    public CircuitState getState(Account account) {
+        CircuitBreaker breaker = accountBreakers.get(account);
+        return breaker == null ? CircuitState.CLOSED : breaker.getState();
+    }
+
+    /*
+     * 503s that are not request cap errors, transport errors and deadlines passing while waiting for a response count
+     * as failures.
+     */
+    private static boolean isFailure(Throwable throwable) {
+        if (throwable instanceof BrightpearlUnavailableException || throwable instanceof BrightpearlDeadlineExceededException) {
+            return true;
+        } else if (throwable instanceof BrightpearlHttpException) {
+            ClientErrorCode code = ((BrightpearlHttpException)throwable).getClientErrorCode();
+            return code != ClientErrorCode.EMPTY_RESPONSE && code != ClientErrorCode.INVALID_RESPONSE_FORMAT && code != ClientErrorCode.INVALID_RESPONSE_TYPE;
+        }
+        return false;
+    }
+
+    private CircuitBreaker getDatacenterBreaker(Datacenter datacenter) {
+        CircuitBreaker breaker = datacenterBreakers.get(datacenter);
+        if (breaker == null) {
+            breaker = new CircuitBreaker(datacenter, null, policy.getDatacenterFailureThreshold(), policy);
+            CircuitBreaker existing = datacenterBreakers.putIfAbsent(datacenter, breaker);
+            if (existing != null) {
+                breaker = existing;
+            }
+        }
+        return breaker;
+    }
+
+    private CircuitBreaker getAccountBreaker(Account account) {
+        CircuitBreaker breaker = accountBreakers.get(account);
+        if (breaker == null) {
+            breaker = new CircuitBreaker(null, account, policy.getAccountFailureThreshold(), policy);
+            CircuitBreaker existing = accountBreakers.putIfAbsent(account, breaker);
+            if (existing != null) {
+                breaker = existing;
+            }
+        }
+        return breaker;
+    }
+
+    /**
+     * Admission of one request by the datacenter and account breakers, to which its outcome is reported.
+     */
+    public static final class Permit {
+
+        private final CircuitBreaker datacenterBreaker;
+        private final CircuitBreaker.Admission datacenterAdmission;
+        private final CircuitBreaker accountBreaker;
+        private final CircuitBreaker.Admission accountAdmission;
+
+        private Permit(CircuitBreaker datacenterBreaker, CircuitBreaker.Admission datacenterAdmission, CircuitBreaker accountBreaker, CircuitBreaker.Admission accountAdmission) {
+            this.datacenterBreaker = datacenterBreaker;
+            this.datacenterAdmission = datacenterAdmission;
+            this.accountBreaker = accountBreaker;
+            this.accountAdmission = accountAdmission;
+        }
+
+        /**
+         * Reports the outcome of the request. Other client exceptions, such as request cap errors, show Brightpearl is
+         * responding so count as successes. Overload errors, which mean the request was shed without being sent, and
+         * exceptions from outside the client, for example thrown by a custom rate limiter, are ignored. A permit should
+         * only be taken once the request is about to be sent, as deadline errors count as failures; a deadline that
+         * passes before then, while rate limiting or queueing, says nothing about Brightpearl's health.
+         * @param throwable The exception the request failed with, or null if a response was received.
+         */
+        public void complete(Throwable throwable) {
+            if (isFailure(throwable)) {
+                datacenterBreaker.onFailure(datacenterAdmission);
+                accountBreaker.onFailure(accountAdmission);
+            } else if (throwable == null || (throwable instanceof BrightpearlClientException && !(throwable instanceof BrightpearlOverloadException))) {
+                datacenterBreaker.onSuccess(datacenterAdmission);
+                accountBreaker.onSuccess(accountAdmission);
+            } else {
+                datacenterBreaker.release(datacenterAdmission);
+                accountBreaker.release(accountAdmission);
+            }
+        }
+
+    }
+
+}
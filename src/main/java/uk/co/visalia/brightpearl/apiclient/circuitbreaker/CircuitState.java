@@ -0,0 +1,40 @@
+/*
+ * Copyright 2014 David Morrissey
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package uk.co.visalia.brightpearl.apiclient.circuitbreaker;
+
+/**
+ * States of a circuit breaker.
+ */
+public enum CircuitState {
+
+    /**
+     * Requests are sent normally, and consecutive failures are counted.
+     */
+    CLOSED,
+
+    /**
+     * Requests fail immediately without being sent, until the open duration has passed.
+     */
+    OPEN,
+
+    /**
+     * A single probe request at a time is sent to test whether the datacenter or account has recovered. Other requests
+     * fail immediately.
+     */
+    HALF_OPEN
+
+}
@@ -0,0 +1,78 @@
+/*
+ * Copyright 2014 David Morrissey
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package uk.co.visalia.brightpearl.apiclient.client;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonIOException;
+import com.google.gson.JsonNull;
+import uk.co.visalia.brightpearl.apiclient.http.RequestEntity;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+
+/**
+ * A {@link RequestEntity} that serialises an object with GSON as it is written, so the JSON body is never held in
+ * memory as a string. The output is identical to that of {@link Gson#toJson(Object)}.
+ */
+public final class JsonRequestEntity implements RequestEntity {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private final Gson gson;
+
+    private final Object entity;
+
+    public JsonRequestEntity(Gson gson, Object entity) {
+        if (gson == null) {
+            throw new IllegalArgumentException("Gson cannot be null");
+        }
+        this.gson = gson;
+        this.entity = entity;
+    }
+
+    @Override
+    public void writeTo(OutputStream outputStream) throws IOException {
+        Writer writer = new BufferedWriter(new OutputStreamWriter(outputStream, UTF_8));
+        try {
+            // GSON writes through a JsonWriter configured in the same way as for toJson(Object)
+            if (entity == null) {
+                gson.toJson(JsonNull.INSTANCE, writer);
+            } else {
+                gson.toJson(entity, entity.getClass(), writer);
+            }
+        } catch (JsonIOException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException)e.getCause();
+            }
+            throw e;
+        }
+        writer.flush();
+    }
+
+    @Override
+    public String toString() {
+        return "JsonRequestEntity{" +
+                "entity=" + entity +
+                '}';
+    }
+
+}
@@ -28,6 +28,10 @@ import java.util.Map;
  * parsed into the expected type only after the response is checked for errors and for the presence of the expected
  * response type. Using a generic type is not possible because certain errors are returned in the response element and
  * not the errors element, which would cause a parsing failure.
+ * <p>
+ * When read from a stream by {@link JsonWrapperReader}, the response element of a successful response may instead
+ * have been parsed directly into the expected type, avoiding the intermediate JSON tree.
+ * </p>
  */
 public class JsonWrapper {
 
@@ -37,6 +41,21 @@ public class JsonWrapper {
 
     private Map<String, Map<String, Object>> reference;
 
+    private transient Object parsedResponse;
+
+    private transient boolean responseParsed;
+
+    public JsonWrapper() {
+    }
+
+    JsonWrapper(JsonElement response, Object parsedResponse, boolean responseParsed, List<ServiceError> errors, Map<String, Map<String, Object>> reference) {
+        this.response = response;
+        this.parsedResponse = parsedResponse;
+        this.responseParsed = responseParsed;
+        this.errors = errors;
+        this.reference = reference;
+    }
+
     public List<ServiceError> getErrors() {
         return errors;
     }
@@ -49,4 +68,21 @@ public class JsonWrapper {
         return reference;
     }
 
+    /**
+     * Returns the response element as parsed by {@link JsonWrapperReader}. As with {@link com.google.gson.Gson#fromJson(JsonElement, java.lang.reflect.Type)},
+     * the type is inferred by the caller, and must match the response type the wrapper was read with.
+     */
+    @SuppressWarnings("unchecked")
+    public <T> T getParsedResponse() {
+        return (T)parsedResponse;
+    }
+
+    public boolean isResponseParsed() {
+        return responseParsed;
+    }
+
+    public boolean hasResponse() {
+        return response != null || responseParsed;
+    }
+
 }
@@ -0,0 +1,133 @@
+/*
+ * Copyright 2014 David Morrissey
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package uk.co.visalia.brightpearl.apiclient.client.parsing;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonParseException;
+import com.google.gson.reflect.TypeToken;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.MalformedJsonException;
+import uk.co.visalia.brightpearl.apiclient.common.ServiceError;
+import uk.co.visalia.brightpearl.apiclient.exception.BrightpearlHttpException;
+import uk.co.visalia.brightpearl.apiclient.exception.ClientErrorCode;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.PushbackReader;
+import java.io.Reader;
+import java.lang.reflect.Type;
+import java.net.SocketTimeoutException;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * For internal use only. Reads a {@link JsonWrapper} from a stream of JSON. When a response type is given, the response
+ * element is parsed directly into that type as it is read, so the JSON is never held in memory as a string or tree.
+ * This should only be done for successful responses, as errors may be returned in the response element.
+ */
+public class JsonWrapperReader {
+
+    private static final Type ERRORS_TYPE = new TypeToken<List<ServiceError>>() { }.getType();
+
+    private static final Type REFERENCE_TYPE = new TypeToken<Map<String, Map<String, Object>>>() { }.getType();
+
+    private final Gson gson;
+
+    public JsonWrapperReader(Gson gson) {
+        this.gson = gson;
+    }
+
+    /**
+     * Reads a JSON response.
+     * @param reader Reader for the JSON response body.
+     * @param responseType Type the response element should be parsed to, or null to leave it unparsed.
+     * @return the wrapper read, or null if the body was empty.
+     */
+    public JsonWrapper read(Reader reader, Type responseType) {
+        try {
+            PushbackReader pushbackReader = new PushbackReader(reader);
+            int c;
+            do {
+                c = pushbackReader.read();
+            } while (c != -1 && Character.isWhitespace(c));
+            if (c == -1) {
+                return null;
+            }
+            pushbackReader.unread(c);
+
+            JsonReader jsonReader = new JsonReader(pushbackReader);
+            jsonReader.setLenient(true);
+
+            JsonElement response = null;
+            Object parsedResponse = null;
+            boolean responseParsed = false;
+            List<ServiceError> errors = null;
+            Map<String, Map<String, Object>> reference = null;
+
+            jsonReader.beginObject();
+            while (jsonReader.hasNext()) {
+                String name = jsonReader.nextName();
+                if (name.equals("response")) {
+                    if (responseType != null) {
+                        parsedResponse = readResponse(jsonReader, responseType);
+                        responseParsed = true;
+                    } else {
+                        response = gson.getAdapter(JsonElement.class).read(jsonReader);
+                    }
+                } else if (name.equals("errors")) {
+                    errors = gson.fromJson(jsonReader, ERRORS_TYPE);
+                } else if (name.equals("reference")) {
+                    reference = gson.fromJson(jsonReader, REFERENCE_TYPE);
+                } else {
+                    jsonReader.skipValue();
+                }
+            }
+            jsonReader.endObject();
+
+            return new JsonWrapper(response, parsedResponse, responseParsed, errors, reference);
+
+        } catch (MalformedJsonException e) {
+            throw new BrightpearlHttpException(ClientErrorCode.INVALID_RESPONSE_FORMAT, e);
+        } catch (EOFException e) {
+            throw new BrightpearlHttpException(ClientErrorCode.INVALID_RESPONSE_FORMAT, e);
+        } catch (SocketTimeoutException e) {
+            throw new BrightpearlHttpException(ClientErrorCode.SOCKET_TIMEOUT, e);
+        } catch (IOException e) {
+            throw new BrightpearlHttpException(ClientErrorCode.OTHER_TRANSPORT_ERROR, e);
+        } catch (IllegalStateException e) {
+            throw new BrightpearlHttpException(ClientErrorCode.INVALID_RESPONSE_FORMAT, e);
+        } catch (JsonParseException e) {
+            throw new BrightpearlHttpException(ClientErrorCode.INVALID_RESPONSE_FORMAT, e);
+        }
+    }
+
+    private Object readResponse(JsonReader jsonReader, Type responseType) throws IOException {
+        try {
+            return gson.getAdapter(TypeToken.get(responseType)).read(jsonReader);
+        } catch (IllegalStateException e) {
+            throw new BrightpearlHttpException(ClientErrorCode.INVALID_RESPONSE_TYPE, e);
+        } catch (JsonParseException e) {
+            if (e.getCause() instanceof MalformedJsonException) {
+                throw new BrightpearlHttpException(ClientErrorCode.INVALID_RESPONSE_FORMAT, e);
+            }
+            throw new BrightpearlHttpException(ClientErrorCode.INVALID_RESPONSE_TYPE, e);
+        }
+    }
+
+}
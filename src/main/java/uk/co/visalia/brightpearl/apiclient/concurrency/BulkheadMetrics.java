@@ -0,0 +1,150 @@
+/*
+ * Copyright 2014 David Morrissey
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package uk.co.visalia.brightpearl.apiclient.concurrency;
+
+/**
+ * A snapshot of the state and counters of the bulkhead for one account. Counters are cumulative from the first request
+ * to the account.
+ */
+public final class BulkheadMetrics {
+
+    private final String accountCode;
+
+    private final int maxConcurrent;
+
+    private final int inFlight;
+
+    private final int queueSize;
+
+    private final long acquired;
+
+    private final long rejected;
+
+    private final long queued;
+
+    private final long totalWaitMs;
+
+    private final long maxWaitMs;
+
+    BulkheadMetrics(String accountCode, int maxConcurrent, int inFlight, int queueSize, long acquired, long rejected, long queued, long totalWaitMs, long maxWaitMs) {
+        this.accountCode = accountCode;
+        this.maxConcurrent = maxConcurrent;
+        this.inFlight = inFlight;
+        this.queueSize = queueSize;
+        this.acquired = acquired;
+        this.rejected = rejected;
+        this.queued = queued;
+        this.totalWaitMs = totalWaitMs;
+        this.maxWaitMs = maxWaitMs;
+    }
+
+    /**
+     * Returns the account code these metrics are for.
+     * @return account code.
+     */
+    public String getAccountCode() {
+        return accountCode;
+    }
+
+    /**
+     * Returns the maximum number of concurrent requests to the account.
+     * @return concurrency limit.
+     */
+    public int getMaxConcurrent() {
+        return maxConcurrent;
+    }
+
+    /**
+     * Returns the number of requests to the account currently in flight.
+     * @return requests in flight.
+     */
+    public int getInFlight() {
+        return inFlight;
+    }
+
+    /**
+     * Returns the number of requests to the account currently waiting in the queue.
+     * @return queue size.
+     */
+    public int getQueueSize() {
+        return queueSize;
+    }
+
+    /**
+     * Returns the number of requests that have been allowed to proceed, with or without waiting.
+     * @return count of requests admitted.
+     */
+    public long getAcquired() {
+        return acquired;
+    }
+
+    /**
+     * Returns the number of requests that failed because the queue was full or the maximum wait passed.
+     * @return count of requests rejected.
+     */
+    public long getRejected() {
+        return rejected;
+    }
+
+    /**
+     * Returns the number of admitted requests that had to wait in the queue.
+     * @return count of requests queued.
+     */
+    public long getQueued() {
+        return queued;
+    }
+
+    /**
+     * Returns the total time admitted requests spent waiting in the queue.
+     * @return total queue wait in milliseconds.
+     */
+    public long getTotalWaitMs() {
+        return totalWaitMs;
+    }
+
+    /**
+     * Returns the longest time an admitted request spent waiting in the queue.
+     * @return maximum queue wait in milliseconds.
+     */
+    public long getMaxWaitMs() {
+        return maxWaitMs;
+    }
+
+    /**
+     * Returns the mean time admitted requests spent waiting in the queue, including those that did not wait.
+     * @return mean queue wait in milliseconds.
+     */
+    public double getMeanWaitMs() {
+        return acquired == 0 ? 0 : (double)totalWaitMs / acquired;
+    }
+
+    @Override
+    public String toString() {
+        return "BulkheadMetrics{" +
+                "accountCode='" + accountCode + '\'' +
+                ", maxConcurrent=" + maxConcurrent +
+                ", inFlight=" + inFlight +
+                ", queueSize=" + queueSize +
+                ", acquired=" + acquired +
+                ", rejected=" + rejected +
+                ", queued=" + queued +
+                ", totalWaitMs=" + totalWaitMs +
+                ", maxWaitMs=" + maxWaitMs +
+                '}';
+    }
+
+}
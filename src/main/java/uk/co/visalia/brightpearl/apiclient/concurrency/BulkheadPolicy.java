@@ -0,0 +1,130 @@
+/*
+ * Copyright 2014 David Morrissey
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package uk.co.visalia.brightpearl.apiclient.concurrency;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * <p>
+ * Immutable settings for per-account bulkheads, which limit the number of requests in flight to each account so that
+ * one account making a large number of requests cannot use all the connections and threads available to the client.
+ * Each account has a limit of {@link #getDefaultMaxConcurrent()} unless a different limit is set for its account code.
+ * Requests over the limit wait in a queue of up to {@link #getMaxQueueSize()} requests for up to
+ * {@link #getMaxQueueWaitMs()}, after which they fail with a
+ * {@link uk.co.visalia.brightpearl.apiclient.exception.BrightpearlOverloadException}.
+ * </p><p>
+ * Use {@link BulkheadPolicyBuilder} to create instances.
+ * </p>
+ */
+public final class BulkheadPolicy {
+
+    /**
+     * Default maximum number of concurrent requests to each account (10).
+     */
+    public static final int DEFAULT_MAX_CONCURRENT = 10;
+
+    /**
+     * Default maximum number of requests waiting for each account (1000).
+     */
+    public static final int DEFAULT_MAX_QUEUE_SIZE = 1000;
+
+    /**
+     * Default maximum time a request waits in the queue (30000ms).
+     */
+    public static final long DEFAULT_MAX_QUEUE_WAIT_MS = 30000;
+
+    private final int defaultMaxConcurrent;
+
+    private final Map<String, Integer> accountMaxConcurrent;
+
+    private final int maxQueueSize;
+
+    private final long maxQueueWaitMs;
+
+    BulkheadPolicy(int defaultMaxConcurrent, Map<String, Integer> accountMaxConcurrent, int maxQueueSize, long maxQueueWaitMs) {
+        if (defaultMaxConcurrent < 1) {
+            throw new IllegalArgumentException("Maximum concurrent requests must be at least 1");
+        }
+        for (Map.Entry<String, Integer> entry : accountMaxConcurrent.entrySet()) {
+            if (entry.getValue() == null || entry.getValue() < 1) {
+                throw new IllegalArgumentException("Maximum concurrent requests for account " + entry.getKey() + " must be at least 1");
+            }
+        }
+        if (maxQueueSize < 0 || maxQueueWaitMs < 0) {
+            throw new IllegalArgumentException("Queue size and wait must not be negative");
+        }
+        this.defaultMaxConcurrent = defaultMaxConcurrent;
+        this.accountMaxConcurrent = Collections.unmodifiableMap(new HashMap<String, Integer>(accountMaxConcurrent));
+        this.maxQueueSize = maxQueueSize;
+        this.maxQueueWaitMs = maxQueueWaitMs;
+    }
+
+    /**
+     * Returns the maximum number of concurrent requests to an account with no specific limit.
+     * @return default maximum concurrent requests.
+     */
+    public int getDefaultMaxConcurrent() {
+        return defaultMaxConcurrent;
+    }
+
+    /**
+     * Returns the limits set for specific accounts, keyed by account code.
+     * @return an unmodifiable map of account limits.
+     */
+    public Map<String, Integer> getAccountMaxConcurrent() {
+        return accountMaxConcurrent;
+    }
+
+    /**
+     * Returns the maximum number of concurrent requests to an account.
+     * @param accountCode An account code.
+     * @return the limit for the account if set, otherwise the default.
+     */
+    public int getMaxConcurrent(String accountCode) {
+        Integer max = accountMaxConcurrent.get(accountCode);
+        return max == null ? defaultMaxConcurrent : max;
+    }
+
+    /**
+     * Returns the maximum number of requests waiting for each account.
+     * @return maximum queue size.
+     */
+    public int getMaxQueueSize() {
+        return maxQueueSize;
+    }
+
+    /**
+     * Returns the maximum time a request waits in the queue.
+     * @return maximum queue wait in milliseconds.
+     */
+    public long getMaxQueueWaitMs() {
+        return maxQueueWaitMs;
+    }
+
+    @Override
+    public String toString() {
+        return "BulkheadPolicy{" +
+                "defaultMaxConcurrent=" + defaultMaxConcurrent +
+                ", accountMaxConcurrent=" + accountMaxConcurrent +
+                ", maxQueueSize=" + maxQueueSize +
+                ", maxQueueWaitMs=" + maxQueueWaitMs +
+                '}';
+    }
+
+}
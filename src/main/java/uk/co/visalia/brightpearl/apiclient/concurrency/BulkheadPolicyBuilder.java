@@ -0,0 +1,130 @@
+/*
+ * Copyright 2014 David Morrissey
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package uk.co.visalia.brightpearl.apiclient.concurrency;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * <p>
+ * Constructs a {@link BulkheadPolicy}. Supports construction in code using the builder pattern (starting with
+ * {@link #bulkheadPolicy()}) and usage as a Spring bean factory.
+ * </p><p>
+ * See static fields of {@link BulkheadPolicy} for the default settings applied if methods in this builder are not used
+ * to override them.
+ * </p>
+ */
+public final class BulkheadPolicyBuilder {
+
+    private int defaultMaxConcurrent = BulkheadPolicy.DEFAULT_MAX_CONCURRENT;
+    private Map<String, Integer> accountMaxConcurrent = new HashMap<String, Integer>();
+    private int maxQueueSize = BulkheadPolicy.DEFAULT_MAX_QUEUE_SIZE;
+    private long maxQueueWaitMs = BulkheadPolicy.DEFAULT_MAX_QUEUE_WAIT_MS;
+
+    /**
+     * Static builder method for method chaining, fluent builder style.
+     * @return a new {@link BulkheadPolicyBuilder} instance.
+     */
+    public static BulkheadPolicyBuilder bulkheadPolicy() {
+        return new BulkheadPolicyBuilder();
+    }
+
+    /**
+     * Constructs the immutable {@link BulkheadPolicy} with configuration options provided, using defaults for any not
+     * set.
+     * @return an immutable {@link BulkheadPolicy} instance.
+     */
+    public BulkheadPolicy build() {
+        return new BulkheadPolicy(defaultMaxConcurrent, accountMaxConcurrent, maxQueueSize, maxQueueWaitMs);
+    }
+
+    /**
+     * Set the maximum number of concurrent requests to an account with no specific limit.
+     * @param defaultMaxConcurrent default maximum concurrent requests.
+     */
+    public void setDefaultMaxConcurrent(int defaultMaxConcurrent) {
+        this.defaultMaxConcurrent = defaultMaxConcurrent;
+    }
+
+    /**
+     * Set the limits for specific accounts, keyed by account code, replacing any set previously.
+     * @param accountMaxConcurrent map of account code to maximum concurrent requests.
+     */
+    public void setAccountMaxConcurrent(Map<String, Integer> accountMaxConcurrent) {
+        this.accountMaxConcurrent = new HashMap<String, Integer>(accountMaxConcurrent);
+    }
+
+    /**
+     * Set the maximum number of requests waiting for each account. Zero disables queueing, so requests over the limit
+     * fail immediately.
+     * @param maxQueueSize maximum queue size.
+     */
+    public void setMaxQueueSize(int maxQueueSize) {
+        this.maxQueueSize = maxQueueSize;
+    }
+
+    /**
+     * Set the maximum time in milliseconds a request waits in the queue.
+     * @param maxQueueWaitMs maximum queue wait.
+     */
+    public void setMaxQueueWaitMs(long maxQueueWaitMs) {
+        this.maxQueueWaitMs = maxQueueWaitMs;
+    }
+
+    /**
+     * Set the maximum number of concurrent requests to an account with no specific limit.
+     * @param defaultMaxConcurrent default maximum concurrent requests.
+     * @return builder instance for method chaining.
+     */
+    public BulkheadPolicyBuilder withDefaultMaxConcurrent(int defaultMaxConcurrent) {
+        setDefaultMaxConcurrent(defaultMaxConcurrent);
+        return this;
+    }
+
+    /**
+     * Set the maximum number of concurrent requests to one account, overriding the default.
+     * @param accountCode account code.
+     * @param maxConcurrent maximum concurrent requests to the account.
+     * @return builder instance for method chaining.
+     */
+    public BulkheadPolicyBuilder withAccountMaxConcurrent(String accountCode, int maxConcurrent) {
+        accountMaxConcurrent.put(accountCode, maxConcurrent);
+        return this;
+    }
+
+    /**
+     * Set the maximum number of requests waiting for each account. Zero disables queueing, so requests over the limit
+     * fail immediately.
+     * @param maxQueueSize maximum queue size.
+     * @return builder instance for method chaining.
+     */
+    public BulkheadPolicyBuilder withMaxQueueSize(int maxQueueSize) {
+        setMaxQueueSize(maxQueueSize);
+        return this;
+    }
+
+    /**
+     * Set the maximum time in milliseconds a request waits in the queue.
+     * @param maxQueueWaitMs maximum queue wait.
+     * @return builder instance for method chaining.
+     */
+    public BulkheadPolicyBuilder withMaxQueueWaitMs(long maxQueueWaitMs) {
+        setMaxQueueWaitMs(maxQueueWaitMs);
+        return this;
+    }
+
+}
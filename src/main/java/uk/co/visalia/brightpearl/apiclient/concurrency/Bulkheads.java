@@ -0,0 +1,190 @@
+/*
+ * Copyright 2014 David Morrissey
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package uk.co.visalia.brightpearl.apiclient.concurrency;
+
+import uk.co.visalia.brightpearl.apiclient.account.Account;
+import uk.co.visalia.brightpearl.apiclient.util.Deadline;
+import uk.co.visalia.brightpearl.apiclient.util.Futures;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * <p>
+ * Limits concurrent requests to each account, keyed by account code, as described in {@link BulkheadPolicy}, and
+ * records how long requests wait for each account.
+ * </p><p>
+ * Used internally by {@link uk.co.visalia.brightpearl.apiclient.BrightpearlApiClient}; configure bulkheads with
+ * {@link uk.co.visalia.brightpearl.apiclient.BrightpearlApiClientFactory#withBulkheadPolicy(BulkheadPolicy)}.
+ * </p>
+ */
+public final class Bulkheads {
+
+    private final BulkheadPolicy policy;
+
+    private final ScheduledExecutorService scheduler;
+
+    private final ConcurrentMap<String, Bulkhead> bulkheads = new ConcurrentHashMap<String, Bulkhead>();
+
+    /**
+     * Creates bulkheads that time out queued requests on the shared scheduler thread.
+     * @param policy Bulkhead settings.
+     */
+    public Bulkheads(BulkheadPolicy policy) {
+        this(policy, Futures.scheduler());
+    }
+
+    /**
+     * Creates bulkheads that time out queued requests on the given executor.
+     * @param policy Bulkhead settings.
+     * @param scheduler Executor used to time out queued requests.
+     */
+    public Bulkheads(BulkheadPolicy policy, ScheduledExecutorService scheduler) {
+        if (policy == null || scheduler == null) {
+            throw new IllegalArgumentException("Policy and scheduler are required");
+        }
+        this.policy = policy;
+        this.scheduler = scheduler;
+    }
+
+    /**
+     * Returns a future that completes with a permit when a request may be sent to the account, or fails with a
+     * {@link uk.co.visalia.brightpearl.apiclient.exception.BrightpearlOverloadException} if the request is rejected. The
+     * permit must be released when the request completes.
+     * @param account The account a request will be sent to.
+     * @return A future for the permit.
+     */
+    public CompletableFuture<Permit> acquire(Account account) {
+        return acquire(account, null);
+    }
+
+    /**
+     * As {@link #acquire(Account)}, except that the wait is limited to the deadline, after which the future fails with
+     * a {@link uk.co.visalia.brightpearl.apiclient.exception.BrightpearlDeadlineExceededException}.
+     * @param account The account a request will be sent to.
+     * @param deadline Deadline of the call, or null for none.
+     * @return A future for the permit.
+     */
+    public CompletableFuture<Permit> acquire(Account account, Deadline deadline) {
+        final Bulkhead bulkhead = getBulkhead(account.getAccountCode());
+        return bulkhead.queue.acquire(deadline).whenComplete((waitMs, throwable) -> {
+            if (throwable != null) {
+                bulkhead.rejected.increment();
+            } else {
+                bulkhead.recordWait(waitMs);
+            }
+        }).thenApply(waitMs -> new Permit(bulkhead.queue));
+    }
+
+    /**
+     * Returns metrics for the bulkhead of one account.
+     * @param accountCode An account code.
+     * @return metrics for the account, which are all zero if no requests have been made to it.
+     */
+    public BulkheadMetrics getMetrics(String accountCode) {
+        Bulkhead bulkhead = bulkheads.get(accountCode);
+        if (bulkhead == null) {
+            return new BulkheadMetrics(accountCode, policy.getMaxConcurrent(accountCode), 0, 0, 0, 0, 0, 0, 0);
+        }
+        return bulkhead.metrics();
+    }
+
+    /**
+     * Returns metrics for the bulkheads of every account requests have been made to.
+     * @return list of metrics, in no particular order.
+     */
+    public List<BulkheadMetrics> getMetrics() {
+        List<BulkheadMetrics> metrics = new ArrayList<BulkheadMetrics>();
+        for (Bulkhead bulkhead : bulkheads.values()) {
+            metrics.add(bulkhead.metrics());
+        }
+        return metrics;
+    }
+
+    private Bulkhead getBulkhead(String accountCode) {
+        Bulkhead bulkhead = bulkheads.get(accountCode);
+        if (bulkhead == null) {
+            bulkhead = new Bulkhead(accountCode, new PermitQueue("account " + accountCode, policy.getMaxConcurrent(accountCode), policy.getMaxQueueSize(), policy.getMaxQueueWaitMs(), scheduler));
+            Bulkhead existing = bulkheads.putIfAbsent(accountCode, bulkhead);
+            if (existing != null) {
+                bulkhead = existing;
+            }
+        }
+        return bulkhead;
+    }
+
+    /*
+     * Queue and counters for one account.
+     */
+    private static final class Bulkhead {
+
+        private final String accountCode;
+        private final PermitQueue queue;
+        private final LongAdder acquired = new LongAdder();
+        private final LongAdder rejected = new LongAdder();
+        private final LongAdder queued = new LongAdder();
+        private final LongAdder totalWaitMs = new LongAdder();
+        private final AtomicLong maxWaitMs = new AtomicLong();
+
+        private Bulkhead(String accountCode, PermitQueue queue) {
+            this.accountCode = accountCode;
+            this.queue = queue;
+        }
+
+        private void recordWait(long waitMs) {
+            acquired.increment();
+            if (waitMs > 0) {
+                queued.increment();
+                totalWaitMs.add(waitMs);
+                maxWaitMs.accumulateAndGet(waitMs, Math::max);
+            }
+        }
+
+        private BulkheadMetrics metrics() {
+            return new BulkheadMetrics(accountCode, queue.getLimit(), queue.getInFlight(), queue.getQueueSize(),
+                    acquired.sum(), rejected.sum(), queued.sum(), totalWaitMs.sum(), maxWaitMs.get());
+        }
+
+    }
+
+    /**
+     * A permit to send one request to an account, which must be released exactly once.
+     */
+    public static final class Permit {
+
+        private final PermitQueue queue;
+
+        private Permit(PermitQueue queue) {
+            this.queue = queue;
+        }
+
+        /**
+         * Releases the permit, allowing the next queued request to the account to proceed.
+         */
+        public void release() {
+            queue.release();
+        }
+
+    }
+
+}
@@ -0,0 +1,175 @@
+/*
+ * Copyright 2014 David Morrissey
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package uk.co.visalia.brightpearl.apiclient.concurrency;
+
+/**
+ * <p>
+ * Immutable settings for the adaptive limit on concurrent requests to each datacenter. The limit is tuned using additive
+ * increase, multiplicative decrease (AIMD): each request that completes within {@link #getMaxLatencyMs()} while the
+ * limit is in use raises it by a fraction so that it grows by about one per round trip, and each request that is slower,
+ * times out or receives a 503 reduces it by {@link #getBackoffRatio()}. The limit stays between
+ * {@link #getMinLimit()} and {@link #getMaxLimit()}.
+ * </p><p>
+ * Requests over the limit wait in a queue of up to {@link #getMaxQueueSize()} requests for up to
+ * {@link #getMaxQueueWaitMs()}, after which they fail with a
+ * {@link uk.co.visalia.brightpearl.apiclient.exception.BrightpearlOverloadException}. Use
+ * {@link ConcurrencyLimitPolicyBuilder} to create instances.
+ * </p>
+ */
+public final class ConcurrencyLimitPolicy {
+
+    /**
+     * Default starting limit for each datacenter (20).
+     */
+    public static final int DEFAULT_INITIAL_LIMIT = 20;
+
+    /**
+     * Default minimum limit (2).
+     */
+    public static final int DEFAULT_MIN_LIMIT = 2;
+
+    /**
+     * Default maximum limit (200).
+     */
+    public static final int DEFAULT_MAX_LIMIT = 200;
+
+    /**
+     * Default response time above which the limit is reduced (2000ms).
+     */
+    public static final long DEFAULT_MAX_LATENCY_MS = 2000;
+
+    /**
+     * Default factor the limit is multiplied by when it is reduced (0.9).
+     */
+    public static final double DEFAULT_BACKOFF_RATIO = 0.9;
+
+    /**
+     * Default maximum number of requests waiting for each datacenter (100).
+     */
+    public static final int DEFAULT_MAX_QUEUE_SIZE = 100;
+
+    /**
+     * Default maximum time a request waits in the queue (1000ms).
+     */
+    public static final long DEFAULT_MAX_QUEUE_WAIT_MS = 1000;
+
+    private final int initialLimit;
+
+    private final int minLimit;
+
+    private final int maxLimit;
+
+    private final long maxLatencyMs;
+
+    private final double backoffRatio;
+
+    private final int maxQueueSize;
+
+    private final long maxQueueWaitMs;
+
+    ConcurrencyLimitPolicy(int initialLimit, int minLimit, int maxLimit, long maxLatencyMs, double backoffRatio, int maxQueueSize, long maxQueueWaitMs) {
+        if (minLimit < 1 || maxLimit < minLimit || initialLimit < minLimit || initialLimit > maxLimit) {
+            throw new IllegalArgumentException("Limits must be at least 1, with the initial limit between the minimum and maximum");
+        }
+        if (maxLatencyMs < 1) {
+            throw new IllegalArgumentException("Maximum latency must be positive");
+        }
+        if (backoffRatio <= 0 || backoffRatio >= 1) {
+            throw new IllegalArgumentException("Backoff ratio must be between 0 and 1");
+        }
+        if (maxQueueSize < 0 || maxQueueWaitMs < 0) {
+            throw new IllegalArgumentException("Queue size and wait must not be negative");
+        }
+        this.initialLimit = initialLimit;
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.maxLatencyMs = maxLatencyMs;
+        this.backoffRatio = backoffRatio;
+        this.maxQueueSize = maxQueueSize;
+        this.maxQueueWaitMs = maxQueueWaitMs;
+    }
+
+    /**
+     * Returns the starting limit for each datacenter.
+     * @return initial limit.
+     */
+    public int getInitialLimit() {
+        return initialLimit;
+    }
+
+    /**
+     * Returns the minimum limit.
+     * @return minimum limit.
+     */
+    public int getMinLimit() {
+        return minLimit;
+    }
+
+    /**
+     * Returns the maximum limit.
+     * @return maximum limit.
+     */
+    public int getMaxLimit() {
+        return maxLimit;
+    }
+
+    /**
+     * Returns the response time above which the limit is reduced.
+     * @return maximum latency in milliseconds.
+     */
+    public long getMaxLatencyMs() {
+        return maxLatencyMs;
+    }
+
+    /**
+     * Returns the factor the limit is multiplied by when it is reduced.
+     * @return backoff ratio.
+     */
+    public double getBackoffRatio() {
+        return backoffRatio;
+    }
+
+    /**
+     * Returns the maximum number of requests waiting for each datacenter.
+     * @return maximum queue size.
+     */
+    public int getMaxQueueSize() {
+        return maxQueueSize;
+    }
+
+    /**
+     * Returns the maximum time a request waits in the queue.
+     * @return maximum queue wait in milliseconds.
+     */
+    public long getMaxQueueWaitMs() {
+        return maxQueueWaitMs;
+    }
+
+    @Override
+    public String toString() {
+        return "ConcurrencyLimitPolicy{" +
+                "initialLimit=" + initialLimit +
+                ", minLimit=" + minLimit +
+                ", maxLimit=" + maxLimit +
+                ", maxLatencyMs=" + maxLatencyMs +
+                ", backoffRatio=" + backoffRatio +
+                ", maxQueueSize=" + maxQueueSize +
+                ", maxQueueWaitMs=" + maxQueueWaitMs +
+                '}';
+    }
+
+}
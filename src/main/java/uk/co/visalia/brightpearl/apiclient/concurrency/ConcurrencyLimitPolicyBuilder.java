@@ -0,0 +1,181 @@
+/*
+ * Copyright 2014 David Morrissey
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package uk.co.visalia.brightpearl.apiclient.concurrency;
+
+/**
+ * <p>
+ * Constructs a {@link ConcurrencyLimitPolicy}. Supports construction in code using the builder pattern (starting with
+ * {@link #concurrencyLimitPolicy()}) and usage as a Spring bean factory.
+ * </p><p>
+ * See static fields of {@link ConcurrencyLimitPolicy} for the default settings applied if methods in this builder are
+ * not used to override them.
+ * </p>
+ */
+public final class ConcurrencyLimitPolicyBuilder {
+
+    private int initialLimit = ConcurrencyLimitPolicy.DEFAULT_INITIAL_LIMIT;
+    private int minLimit = ConcurrencyLimitPolicy.DEFAULT_MIN_LIMIT;
+    private int maxLimit = ConcurrencyLimitPolicy.DEFAULT_MAX_LIMIT;
+    private long maxLatencyMs = ConcurrencyLimitPolicy.DEFAULT_MAX_LATENCY_MS;
+    private double backoffRatio = ConcurrencyLimitPolicy.DEFAULT_BACKOFF_RATIO;
+    private int maxQueueSize = ConcurrencyLimitPolicy.DEFAULT_MAX_QUEUE_SIZE;
+    private long maxQueueWaitMs = ConcurrencyLimitPolicy.DEFAULT_MAX_QUEUE_WAIT_MS;
+
+    /**
+     * Static builder method for method chaining, fluent builder style.
+     * @return a new {@link ConcurrencyLimitPolicyBuilder} instance.
+     */
+    public static ConcurrencyLimitPolicyBuilder concurrencyLimitPolicy() {
+        return new ConcurrencyLimitPolicyBuilder();
+    }
+
+    /**
+     * Constructs the immutable {@link ConcurrencyLimitPolicy} with configuration options provided, using defaults for
+     * any not set.
+     * @return an immutable {@link ConcurrencyLimitPolicy} instance.
+     */
+    public ConcurrencyLimitPolicy build() {
+        return new ConcurrencyLimitPolicy(initialLimit, minLimit, maxLimit, maxLatencyMs, backoffRatio, maxQueueSize, maxQueueWaitMs);
+    }
+
+    /**
+     * Set the starting limit for each datacenter.
+     * @param initialLimit initial limit.
+     */
+    public void setInitialLimit(int initialLimit) {
+        this.initialLimit = initialLimit;
+    }
+
+    /**
+     * Set the minimum limit.
+     * @param minLimit minimum limit.
+     */
+    public void setMinLimit(int minLimit) {
+        this.minLimit = minLimit;
+    }
+
+    /**
+     * Set the maximum limit.
+     * @param maxLimit maximum limit.
+     */
+    public void setMaxLimit(int maxLimit) {
+        this.maxLimit = maxLimit;
+    }
+
+    /**
+     * Set the response time in milliseconds above which the limit is reduced.
+     * @param maxLatencyMs maximum latency.
+     */
+    public void setMaxLatencyMs(long maxLatencyMs) {
+        this.maxLatencyMs = maxLatencyMs;
+    }
+
+    /**
+     * Set the factor, between 0 and 1, the limit is multiplied by when it is reduced.
+     * @param backoffRatio backoff ratio.
+     */
+    public void setBackoffRatio(double backoffRatio) {
+        this.backoffRatio = backoffRatio;
+    }
+
+    /**
+     * Set the maximum number of requests waiting for each datacenter. Zero disables queueing, so requests over the limit fail immediately.
+     * @param maxQueueSize maximum queue size.
+     */
+    public void setMaxQueueSize(int maxQueueSize) {
+        this.maxQueueSize = maxQueueSize;
+    }
+
+    /**
+     * Set the maximum time in milliseconds a request waits in the queue.
+     * @param maxQueueWaitMs maximum queue wait.
+     */
+    public void setMaxQueueWaitMs(long maxQueueWaitMs) {
+        this.maxQueueWaitMs = maxQueueWaitMs;
+    }
+
+    /**
+     * Set the starting limit for each datacenter.
+     * @param initialLimit initial limit.
+     * @return builder instance for method chaining.
+     */
+    public ConcurrencyLimitPolicyBuilder withInitialLimit(int initialLimit) {
+        setInitialLimit(initialLimit);
+        return this;
+    }
+
+    /**
+     * Set the minimum limit.
+     * @param minLimit minimum limit.
+     * @return builder instance for method chaining.
+     */
+    public ConcurrencyLimitPolicyBuilder withMinLimit(int minLimit) {
+        setMinLimit(minLimit);
+        return this;
+    }
+
+    /**
+     * Set the maximum limit.
+     * @param maxLimit maximum limit.
+     * @return builder instance for method chaining.
+     */
+    public ConcurrencyLimitPolicyBuilder withMaxLimit(int maxLimit) {
+        setMaxLimit(maxLimit);
+        return this;
+    }
+
+    /**
+     * Set the response time in milliseconds above which the limit is reduced.
+     * @param maxLatencyMs maximum latency.
+     * @return builder instance for method chaining.
+     */
+    public ConcurrencyLimitPolicyBuilder withMaxLatencyMs(long maxLatencyMs) {
+        setMaxLatencyMs(maxLatencyMs);
+        return this;
+    }
+
+    /**
+     * Set the factor, between 0 and 1, the limit is multiplied by when it is reduced.
+     * @param backoffRatio backoff ratio.
+     * @return builder instance for method chaining.
+     */
+    public ConcurrencyLimitPolicyBuilder withBackoffRatio(double backoffRatio) {
+        setBackoffRatio(backoffRatio);
+        return this;
+    }
+
+    /**
+     * Set the maximum number of requests waiting for each datacenter. Zero disables queueing, so requests over the limit fail immediately.
+     * @param maxQueueSize maximum queue size.
+     * @return builder instance for method chaining.
+     */
+    public ConcurrencyLimitPolicyBuilder withMaxQueueSize(int maxQueueSize) {
+        setMaxQueueSize(maxQueueSize);
+        return this;
+    }
+
+    /**
+     * Set the maximum time in milliseconds a request waits in the queue.
+     * @param maxQueueWaitMs maximum queue wait.
+     * @return builder instance for method chaining.
+     */
+    public ConcurrencyLimitPolicyBuilder withMaxQueueWaitMs(long maxQueueWaitMs) {
+        setMaxQueueWaitMs(maxQueueWaitMs);
+        return this;
+    }
+
+}
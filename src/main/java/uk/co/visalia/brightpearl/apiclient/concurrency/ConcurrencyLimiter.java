@@ -0,0 +1,198 @@
+/*
+ * Copyright 2014 David Morrissey
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package uk.co.visalia.brightpearl.apiclient.concurrency;
+
+import uk.co.visalia.brightpearl.apiclient.account.Datacenter;
+import uk.co.visalia.brightpearl.apiclient.exception.BrightpearlCircuitOpenException;
+import uk.co.visalia.brightpearl.apiclient.exception.BrightpearlHttpException;
+import uk.co.visalia.brightpearl.apiclient.exception.BrightpearlUnavailableException;
+import uk.co.visalia.brightpearl.apiclient.exception.ClientErrorCode;
+import uk.co.visalia.brightpearl.apiclient.util.Deadline;
+import uk.co.visalia.brightpearl.apiclient.util.Futures;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <p>
+ * Limits concurrent requests to each datacenter, adjusting each limit from observed response times and errors as
+ * described in {@link ConcurrencyLimitPolicy}. When Brightpearl is healthy the limit rises to allow more parallel
+ * requests; when it slows down the limit falls so that requests queue in the client, or are shed, instead of adding
+ * to the load on the datacenter.
+ * </p><p>
+ * Used internally by {@link uk.co.visalia.brightpearl.apiclient.BrightpearlApiClient}; configure limits with
+ * {@link uk.co.visalia.brightpearl.apiclient.BrightpearlApiClientFactory#withConcurrencyLimitPolicy(ConcurrencyLimitPolicy)}.
+ * </p>
+ */
+public final class ConcurrencyLimiter {
+
+    private final ConcurrencyLimitPolicy policy;
+
+    private final ScheduledExecutorService scheduler;
+
+    private final ConcurrentMap<Datacenter, AdaptiveLimit> limits = new ConcurrentHashMap<Datacenter, AdaptiveLimit>();
+
+    /**
+     * Creates a limiter that times out queued requests on the shared scheduler thread.
+     * @param policy Concurrency limit settings.
+     */
+    public ConcurrencyLimiter(ConcurrencyLimitPolicy policy) {
+        this(policy, Futures.scheduler());
+    }
+
+    /**
+     * Creates a limiter that times out queued requests on the given executor.
+     * @param policy Concurrency limit settings.
+     * @param scheduler Executor used to time out queued requests.
+     */
+    public ConcurrencyLimiter(ConcurrencyLimitPolicy policy, ScheduledExecutorService scheduler) {
+        if (policy == null || scheduler == null) {
+            throw new IllegalArgumentException("Policy and scheduler are required");
+        }
+        this.policy = policy;
+        this.scheduler = scheduler;
+    }
+
+    /**
+     * Returns a future that completes with a permit when a request may be sent to the datacenter, or fails with a
+     * {@link uk.co.visalia.brightpearl.apiclient.exception.BrightpearlOverloadException} if the request is shed. The
+     * permit must be released when the request completes.
+     * @param datacenter The datacenter a request will be sent to.
+     * @return A future for the permit.
+     */
+    public CompletableFuture<Permit> acquire(Datacenter datacenter) {
+        return acquire(datacenter, null);
+    }
+
+    /**
+     * As {@link #acquire(Datacenter)}, except that the wait is limited to the deadline, after which the future fails
+     * with a {@link uk.co.visalia.brightpearl.apiclient.exception.BrightpearlDeadlineExceededException}.
+     * @param datacenter The datacenter a request will be sent to.
+     * @param deadline Deadline of the call, or null for none.
+     * @return A future for the permit.
+     */
+    public CompletableFuture<Permit> acquire(Datacenter datacenter, Deadline deadline) {
+        final AdaptiveLimit limit = getAdaptiveLimit(datacenter);
+        return limit.queue.acquire(deadline).thenApply(waitMs -> new Permit(limit));
+    }
+
+    /**
+     * Returns the current limit for a datacenter.
+     * @param datacenter A datacenter.
+     * @return the concurrency limit, or the initial limit if no requests have been made to the datacenter.
+     */
+    public int getLimit(Datacenter datacenter) {
+        AdaptiveLimit limit = limits.get(datacenter);
+        return limit == null ? policy.getInitialLimit() : limit.queue.getLimit();
+    }
+
+    /**
+     * Returns the number of requests currently in flight to a datacenter.
+     * @param datacenter A datacenter.
+     * @return number of requests holding permits.
+     */
+    public int getInFlight(Datacenter datacenter) {
+        AdaptiveLimit limit = limits.get(datacenter);
+        return limit == null ? 0 : limit.queue.getInFlight();
+    }
+
+    /*
+     * 503s that are not request cap errors and timeouts indicate the datacenter is overloaded.
+     */
+    private static boolean isOverloaded(Throwable throwable) {
+        if (throwable instanceof BrightpearlUnavailableException) {
+            return true;
+        } else if (throwable instanceof BrightpearlHttpException) {
+            ClientErrorCode code = ((BrightpearlHttpException)throwable).getClientErrorCode();
+            return code == ClientErrorCode.CONNECTION_TIMEOUT || code == ClientErrorCode.SOCKET_TIMEOUT || code == ClientErrorCode.READ_TIMEOUT;
+        }
+        return false;
+    }
+
+    private AdaptiveLimit getAdaptiveLimit(Datacenter datacenter) {
+        AdaptiveLimit limit = limits.get(datacenter);
+        if (limit == null) {
+            limit = new AdaptiveLimit(new PermitQueue("datacenter " + datacenter.getName(), policy.getInitialLimit(), policy.getMaxQueueSize(), policy.getMaxQueueWaitMs(), scheduler));
+            AdaptiveLimit existing = limits.putIfAbsent(datacenter, limit);
+            if (existing != null) {
+                limit = existing;
+            }
+        }
+        return limit;
+    }
+
+    /*
+     * AIMD state for one datacenter. The limit is held as a double so that fractional increases accumulate.
+     */
+    private final class AdaptiveLimit {
+
+        private final PermitQueue queue;
+
+        private double limit;
+
+        private AdaptiveLimit(PermitQueue queue) {
+            this.queue = queue;
+            this.limit = policy.getInitialLimit();
+        }
+
+        private void update(long latencyMs, boolean overloaded) {
+            int newLimit;
+            synchronized (this) {
+                if (overloaded || latencyMs > policy.getMaxLatencyMs()) {
+                    limit = Math.max(policy.getMinLimit(), limit * policy.getBackoffRatio());
+                } else if (queue.getInFlight() * 2 >= limit) {
+                    // Only grow when at least half the limit is in use, otherwise idle periods would raise it without bound
+                    limit = Math.min(policy.getMaxLimit(), limit + 1 / limit);
+                }
+                newLimit = (int)limit;
+            }
+            queue.setLimit(newLimit);
+        }
+
+    }
+
+    /**
+     * A permit to send one request, which must be released exactly once.
+     */
+    public static final class Permit {
+
+        private final AdaptiveLimit limit;
+
+        private final long start = System.nanoTime();
+
+        private Permit(AdaptiveLimit limit) {
+            this.limit = limit;
+        }
+
+        /**
+         * Releases the permit and updates the datacenter's limit from the outcome of the request. A request rejected by
+         * an open circuit breaker was never sent, so it releases the permit without updating the limit.
+         * @param throwable The exception the request failed with, or null if a response was received.
+         */
+        public void release(Throwable throwable) {
+            if (!(throwable instanceof BrightpearlCircuitOpenException)) {
+                limit.update(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start), isOverloaded(throwable));
+            }
+            limit.queue.release();
+        }
+
+    }
+
+}
@@ -0,0 +1,161 @@
+/*
+ * Copyright 2014 David Morrissey
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package uk.co.visalia.brightpearl.apiclient.concurrency;
+
+import uk.co.visalia.brightpearl.apiclient.exception.BrightpearlOverloadException;
+import uk.co.visalia.brightpearl.apiclient.util.Deadline;
+import uk.co.visalia.brightpearl.apiclient.util.Futures;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Limits the number of permits in use, with a bounded FIFO queue of callers waiting for one. Permits are granted by
+ * completing a future, so blocking callers join it and async callers compose on it. A released permit is handed
+ * directly to the longest waiting caller. The limit may be changed at any time; reducing it takes effect as permits are
+ * released.
+ */
+final class PermitQueue {
+
+    private final String name;
+
+    private final int maxQueueSize;
+
+    private final long maxWaitMs;
+
+    private final ScheduledExecutorService scheduler;
+
+    private final Deque<CompletableFuture<Long>> waiters = new ArrayDeque<CompletableFuture<Long>>();
+
+    private int limit;
+
+    private int inFlight;
+
+    PermitQueue(String name, int limit, int maxQueueSize, long maxWaitMs, ScheduledExecutorService scheduler) {
+        this.name = name;
+        this.limit = limit;
+        this.maxQueueSize = maxQueueSize;
+        this.maxWaitMs = maxWaitMs;
+        this.scheduler = scheduler;
+    }
+
+    /**
+     * Returns a future that completes with the time in milliseconds spent waiting for a permit once one is granted,
+     * or fails with {@link BrightpearlOverloadException} if the queue is full or the maximum wait passes.
+     */
+    CompletableFuture<Long> acquire() {
+        return acquire(null);
+    }
+
+    /**
+     * As {@link #acquire()}, except that if the deadline would pass before the maximum wait, the caller waits only
+     * until the deadline, and then fails with
+     * {@link uk.co.visalia.brightpearl.apiclient.exception.BrightpearlDeadlineExceededException}.
+     */
+    CompletableFuture<Long> acquire(final Deadline deadline) {
+        final CompletableFuture<Long> waiter;
+        synchronized (this) {
+            if (inFlight < limit && waiters.isEmpty()) {
+                inFlight++;
+                return CompletableFuture.completedFuture(0L);
+            }
+            if (waiters.size() >= maxQueueSize) {
+                return Futures.failed(new BrightpearlOverloadException("Concurrency limit reached and queue full for " + name));
+            }
+            if (deadline != null && deadline.isExpired()) {
+                return Futures.failed(deadline.exceeded("waiting for a concurrency permit for " + name));
+            }
+            waiter = new CompletableFuture<Long>();
+            waiters.add(waiter);
+        }
+        final long start = System.currentTimeMillis();
+        final boolean deadlineFirst = deadline != null && deadline.remainingMs() < maxWaitMs;
+        final ScheduledFuture<?> timeout = scheduler.schedule(() -> {
+            if (remove(waiter)) {
+                waiter.completeExceptionally(deadlineFirst ?
+                        deadline.exceeded("waiting for a concurrency permit for " + name) :
+                        new BrightpearlOverloadException("Timed out waiting for a concurrency permit for " + name));
+            }
+        }, deadlineFirst ? deadline.remainingMs() : maxWaitMs, TimeUnit.MILLISECONDS);
+        return waiter.whenComplete((waitMs, throwable) -> timeout.cancel(false))
+                .thenApply(ignored -> System.currentTimeMillis() - start);
+    }
+
+    /**
+     * Returns a permit, granting it to the next waiting caller if there is capacity.
+     */
+    void release() {
+        CompletableFuture<Long> next;
+        synchronized (this) {
+            inFlight--;
+            next = grantNext();
+        }
+        if (next != null) {
+            next.complete(0L);
+        }
+    }
+
+    synchronized int getLimit() {
+        return limit;
+    }
+
+    synchronized int getInFlight() {
+        return inFlight;
+    }
+
+    synchronized int getQueueSize() {
+        return waiters.size();
+    }
+
+    /**
+     * Changes the limit, granting permits to waiting callers if it has increased.
+     */
+    void setLimit(int limit) {
+        while (true) {
+            CompletableFuture<Long> next;
+            synchronized (this) {
+                this.limit = limit;
+                next = grantNext();
+            }
+            if (next == null) {
+                return;
+            }
+            next.complete(0L);
+        }
+    }
+
+    private synchronized boolean remove(CompletableFuture<Long> waiter) {
+        return waiters.remove(waiter);
+    }
+
+    /*
+     * Must be called holding the lock. The future returned must be completed after the lock is released, as it may run
+     * dependent stages.
+     */
+    private CompletableFuture<Long> grantNext() {
+        if (inFlight < limit && !waiters.isEmpty()) {
+            inFlight++;
+            return waiters.poll();
+        }
+        return null;
+    }
+
+}
@@ -0,0 +1,30 @@
+/*
+ * Copyright 2014 David Morrissey
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package uk.co.visalia.brightpearl.apiclient.exception;
+
+/**
+ * This exception is thrown without a request being sent when the circuit breaker for the account or its datacenter is
+ * open, following repeated 503 responses or transport errors. It is a subclass of {@link BrightpearlUnavailableException}
+ * so existing handling of unavailable datacenters applies.
+ */
+public class BrightpearlCircuitOpenException extends BrightpearlUnavailableException {
+
+    public BrightpearlCircuitOpenException(String message) {
+        super(message);
+    }
+
+}
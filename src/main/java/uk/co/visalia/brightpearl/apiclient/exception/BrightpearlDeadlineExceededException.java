@@ -0,0 +1,31 @@
+/*
+ * Copyright 2014 David Morrissey
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package uk.co.visalia.brightpearl.apiclient.exception;
+
+/**
+ * This exception is thrown when a request was given a deadline and it has passed, or would pass before the request
+ * could be sent. It may be thrown while waiting for the rate limiter, a concurrency permit or a pooled connection,
+ * without the request having been sent, or while waiting for a response, in which case the request may have been
+ * processed by Brightpearl.
+ */
+public class BrightpearlDeadlineExceededException extends BrightpearlClientException {
+
+    public BrightpearlDeadlineExceededException(String message) {
+        super(message);
+    }
+
+}
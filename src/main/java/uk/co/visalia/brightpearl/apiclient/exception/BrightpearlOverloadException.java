@@ -0,0 +1,30 @@
+/*
+ * Copyright 2014 David Morrissey
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package uk.co.visalia.brightpearl.apiclient.exception;
+
+/**
+ * This exception is thrown without a request being sent when the client is limiting concurrent requests and the limit
+ * has been reached, and either the queue of waiting requests is full or the request waited in the queue for longer than
+ * the maximum wait. Excess load is shed this way rather than allowing requests to queue indefinitely.
+ */
+public class BrightpearlOverloadException extends BrightpearlClientException {
+
+    public BrightpearlOverloadException(String message) {
+        super(message);
+    }
+
+}
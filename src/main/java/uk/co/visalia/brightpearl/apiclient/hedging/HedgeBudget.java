@@ -0,0 +1,61 @@
+/*
+ * Copyright 2014 David Morrissey
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package uk.co.visalia.brightpearl.apiclient.hedging;
+
+/**
+ * Limits hedges to a fraction of requests. Each hedgeable request adds the configured ratio to a balance and each hedge
+ * sent spends one from it, so over time no more than the given fraction of requests are hedged. The balance is capped
+ * so that a long quiet period cannot be followed by a burst of hedges.
+ */
+final class HedgeBudget {
+
+    private static final double MAX_BALANCE = 10;
+
+    private final double ratio;
+
+    private double balance;
+
+    HedgeBudget(double ratio) {
+        this.ratio = ratio;
+    }
+
+    /**
+     * Called for every hedgeable request, whether or not it is hedged.
+     */
+    synchronized void deposit() {
+        balance = Math.min(MAX_BALANCE, balance + ratio);
+    }
+
+    /**
+     * Returns true and spends from the balance if a hedge may be sent.
+     */
+    synchronized boolean tryWithdraw() {
+        if (balance >= 1) {
+            balance -= 1;
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Returns a withdrawal when a hedge could not be sent for another reason.
+     */
+    synchronized void refund() {
+        balance = Math.min(MAX_BALANCE, balance + 1);
+    }
+
+}
@@ -0,0 +1,154 @@
+/*
+ * Copyright 2014 David Morrissey
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package uk.co.visalia.brightpearl.apiclient.hedging;
+
+/**
+ * <p>
+ * Immutable settings for hedged read requests. When a GET request has not received a response within the configured
+ * percentile of recent response times, a duplicate request is sent and whichever response arrives first is used.
+ * </p><p>
+ * Hedges are limited to a fraction of traffic by {@link #getMaxHedgeRatio()}, and are only sent when the
+ * {@link uk.co.visalia.brightpearl.apiclient.ratelimit.RateLimiter} allows a request without waiting, so they never
+ * push an account over its request cap. Use {@link HedgingPolicyBuilder} to create instances.
+ * </p>
+ */
+public final class HedgingPolicy {
+
+    /**
+     * Default percentile of recent response times after which a hedge is sent (0.95).
+     */
+    public static final double DEFAULT_PERCENTILE = 0.95;
+
+    /**
+     * Default minimum delay before a hedge is sent (20ms).
+     */
+    public static final long DEFAULT_MIN_DELAY_MS = 20;
+
+    /**
+     * Default maximum delay before a hedge is sent (5000ms).
+     */
+    public static final long DEFAULT_MAX_DELAY_MS = 5000;
+
+    /**
+     * Default maximum number of hedges as a fraction of requests (0.05).
+     */
+    public static final double DEFAULT_MAX_HEDGE_RATIO = 0.05;
+
+    /**
+     * Default number of response times that must be recorded before hedging starts (100).
+     */
+    public static final int DEFAULT_MIN_SAMPLES = 100;
+
+    /**
+     * Default number of recent response times the percentile is calculated from (1000).
+     */
+    public static final int DEFAULT_WINDOW_SIZE = 1000;
+
+    private final double percentile;
+
+    private final long minDelayMs;
+
+    private final long maxDelayMs;
+
+    private final double maxHedgeRatio;
+
+    private final int minSamples;
+
+    private final int windowSize;
+
+    HedgingPolicy(double percentile, long minDelayMs, long maxDelayMs, double maxHedgeRatio, int minSamples, int windowSize) {
+        if (percentile <= 0 || percentile >= 1) {
+            throw new IllegalArgumentException("Percentile must be between 0 and 1");
+        }
+        if (minDelayMs < 0 || maxDelayMs < minDelayMs) {
+            throw new IllegalArgumentException("Hedge delays must be positive, with the maximum no less than the minimum");
+        }
+        if (maxHedgeRatio < 0 || maxHedgeRatio > 1) {
+            throw new IllegalArgumentException("Maximum hedge ratio must be between 0 and 1");
+        }
+        if (windowSize < 1 || minSamples < 1 || minSamples > windowSize) {
+            throw new IllegalArgumentException("Minimum samples must be between 1 and the window size");
+        }
+        this.percentile = percentile;
+        this.minDelayMs = minDelayMs;
+        this.maxDelayMs = maxDelayMs;
+        this.maxHedgeRatio = maxHedgeRatio;
+        this.minSamples = minSamples;
+        this.windowSize = windowSize;
+    }
+
+    /**
+     * Returns the percentile of recent response times after which a hedge is sent, as a fraction between 0 and 1.
+     * @return hedge percentile.
+     */
+    public double getPercentile() {
+        return percentile;
+    }
+
+    /**
+     * Returns the minimum delay before a hedge is sent, which applies when recent responses have been very fast.
+     * @return minimum hedge delay in milliseconds.
+     */
+    public long getMinDelayMs() {
+        return minDelayMs;
+    }
+
+    /**
+     * Returns the maximum delay before a hedge is sent, which applies when recent responses have been very slow.
+     * @return maximum hedge delay in milliseconds.
+     */
+    public long getMaxDelayMs() {
+        return maxDelayMs;
+    }
+
+    /**
+     * Returns the maximum number of hedges sent as a fraction of hedgeable requests.
+     * @return maximum hedge ratio.
+     */
+    public double getMaxHedgeRatio() {
+        return maxHedgeRatio;
+    }
+
+    /**
+     * Returns the number of response times that must be recorded for a datacenter before requests to it are hedged.
+     * @return minimum number of samples.
+     */
+    public int getMinSamples() {
+        return minSamples;
+    }
+
+    /**
+     * Returns the number of recent response times the percentile is calculated from.
+     * @return latency window size.
+     */
+    public int getWindowSize() {
+        return windowSize;
+    }
+
+    @Override
+    public String toString() {
+        return "HedgingPolicy{" +
+                "percentile=" + percentile +
+                ", minDelayMs=" + minDelayMs +
+                ", maxDelayMs=" + maxDelayMs +
+                ", maxHedgeRatio=" + maxHedgeRatio +
+                ", minSamples=" + minSamples +
+                ", windowSize=" + windowSize +
+                '}';
+    }
+
+}
@@ -0,0 +1,165 @@
+/*
+ * Copyright 2014 David Morrissey
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package uk.co.visalia.brightpearl.apiclient.hedging;
+
+/**
+ * <p>
+ * Constructs a {@link HedgingPolicy}. Supports construction in code using the builder pattern (starting with
+ * {@link #hedgingPolicy()}) and usage as a Spring bean factory.
+ * </p><p>
+ * See static fields of {@link HedgingPolicy} for the default settings applied if methods in this builder are not used
+ * to override them.
+ * </p>
+ */
+public final class HedgingPolicyBuilder {
+
+    private double percentile = HedgingPolicy.DEFAULT_PERCENTILE;
+    private long minDelayMs = HedgingPolicy.DEFAULT_MIN_DELAY_MS;
+    private long maxDelayMs = HedgingPolicy.DEFAULT_MAX_DELAY_MS;
+    private double maxHedgeRatio = HedgingPolicy.DEFAULT_MAX_HEDGE_RATIO;
+    private int minSamples = HedgingPolicy.DEFAULT_MIN_SAMPLES;
+    private int windowSize = HedgingPolicy.DEFAULT_WINDOW_SIZE;
+
+    /**
+     * Static builder method for method chaining, fluent builder style.
+     * @return a new {@link HedgingPolicyBuilder} instance.
+     */
+    public static HedgingPolicyBuilder hedgingPolicy() {
+        return new HedgingPolicyBuilder();
+    }
+
+    /**
+     * Constructs the immutable {@link HedgingPolicy} with configuration options provided, using defaults for any not set.
+     * @return an immutable {@link HedgingPolicy} instance.
+     */
+    public HedgingPolicy build() {
+        return new HedgingPolicy(percentile, minDelayMs, maxDelayMs, maxHedgeRatio, minSamples, windowSize);
+    }
+
+    /**
+     * Set the percentile of recent response times after which a hedge is sent, as a fraction between 0 and 1. Lower
+     * values cut more latency but send more hedges, subject to the maximum hedge ratio.
+     * @param percentile hedge percentile.
+     */
+    public void setPercentile(double percentile) {
+        this.percentile = percentile;
+    }
+
+    /**
+     * Set the minimum delay in milliseconds before a hedge is sent.
+     * @param minDelayMs minimum hedge delay.
+     */
+    public void setMinDelayMs(long minDelayMs) {
+        this.minDelayMs = minDelayMs;
+    }
+
+    /**
+     * Set the maximum delay in milliseconds before a hedge is sent.
+     * @param maxDelayMs maximum hedge delay.
+     */
+    public void setMaxDelayMs(long maxDelayMs) {
+        this.maxDelayMs = maxDelayMs;
+    }
+
+    /**
+     * Set the maximum number of hedges as a fraction of hedgeable requests. For example 0.05 allows one hedge for every
+     * twenty requests, averaged over time.
+     * @param maxHedgeRatio maximum hedge ratio.
+     */
+    public void setMaxHedgeRatio(double maxHedgeRatio) {
+        this.maxHedgeRatio = maxHedgeRatio;
+    }
+
+    /**
+     * Set the number of response times that must be recorded for a datacenter before requests to it are hedged.
+     * @param minSamples minimum number of samples.
+     */
+    public void setMinSamples(int minSamples) {
+        this.minSamples = minSamples;
+    }
+
+    /**
+     * Set the number of recent response times the percentile is calculated from.
+     * @param windowSize latency window size.
+     */
+    public void setWindowSize(int windowSize) {
+        this.windowSize = windowSize;
+    }
+
+    /**
+     * Set the percentile of recent response times after which a hedge is sent, as a fraction between 0 and 1. Lower
+     * values cut more latency but send more hedges, subject to the maximum hedge ratio.
+     * @param percentile hedge percentile.
+     * @return builder instance for method chaining.
+     */
+    public HedgingPolicyBuilder withPercentile(double percentile) {
+        setPercentile(percentile);
+        return this;
+    }
+
+    /**
+     * Set the minimum delay in milliseconds before a hedge is sent.
+     * @param minDelayMs minimum hedge delay.
+     * @return builder instance for method chaining.
+     */
+    public HedgingPolicyBuilder withMinDelayMs(long minDelayMs) {
+        setMinDelayMs(minDelayMs);
+        return this;
+    }
+
+    /**
+     * Set the maximum delay in milliseconds before a hedge is sent.
+     * @param maxDelayMs maximum hedge delay.
+     * @return builder instance for method chaining.
+     */
+    public HedgingPolicyBuilder withMaxDelayMs(long maxDelayMs) {
+        setMaxDelayMs(maxDelayMs);
+        return this;
+    }
+
+    /**
+     * Set the maximum number of hedges as a fraction of hedgeable requests. For example 0.05 allows one hedge for every
+     * twenty requests, averaged over time.
+     * @param maxHedgeRatio maximum hedge ratio.
+     * @return builder instance for method chaining.
+     */
+    public HedgingPolicyBuilder withMaxHedgeRatio(double maxHedgeRatio) {
+        setMaxHedgeRatio(maxHedgeRatio);
+        return this;
+    }
+
+    /**
+     * Set the number of response times that must be recorded for a datacenter before requests to it are hedged.
+     * @param minSamples minimum number of samples.
+     * @return builder instance for method chaining.
+     */
+    public HedgingPolicyBuilder withMinSamples(int minSamples) {
+        setMinSamples(minSamples);
+        return this;
+    }
+
+    /**
+     * Set the number of recent response times the percentile is calculated from.
+     * @param windowSize latency window size.
+     * @return builder instance for method chaining.
+     */
+    public HedgingPolicyBuilder withWindowSize(int windowSize) {
+        setWindowSize(windowSize);
+        return this;
+    }
+
+}
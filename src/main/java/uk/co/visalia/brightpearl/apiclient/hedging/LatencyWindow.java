@@ -0,0 +1,81 @@
+/*
+ * Copyright 2014 David Morrissey
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package uk.co.visalia.brightpearl.apiclient.hedging;
+
+import java.util.Arrays;
+
+/**
+ * A fixed size ring of recent response times from which percentiles are calculated. Recording a sample is cheap; the
+ * percentile is recalculated by sorting a copy of the window, so is cached and only refreshed after a number of new
+ * samples have been recorded.
+ */
+final class LatencyWindow {
+
+    private final long[] samples;
+
+    private final int minSamples;
+
+    private final double percentile;
+
+    private final int refreshInterval;
+
+    private int next;
+
+    private int count;
+
+    private int sinceRefresh;
+
+    private long cachedPercentile = -1;
+
+    LatencyWindow(int windowSize, int minSamples, double percentile) {
+        this.samples = new long[windowSize];
+        this.minSamples = minSamples;
+        this.percentile = percentile;
+        this.refreshInterval = Math.max(1, windowSize / 20);
+    }
+
+    /**
+     * Records the response time of a successful request.
+     */
+    synchronized void record(long millis) {
+        samples[next] = millis;
+        next = (next + 1) % samples.length;
+        if (count < samples.length) {
+            count++;
+        }
+        sinceRefresh++;
+    }
+
+    /**
+     * Returns the configured percentile of recorded response times in milliseconds, or -1 if fewer than the minimum
+     * number of samples have been recorded.
+     */
+    synchronized long percentile() {
+        if (count < minSamples) {
+            return -1;
+        }
+        if (cachedPercentile < 0 || sinceRefresh >= refreshInterval) {
+            long[] sorted = Arrays.copyOf(samples, count);
+            Arrays.sort(sorted);
+            int index = (int)Math.ceil(percentile * count) - 1;
+            cachedPercentile = sorted[Math.max(0, Math.min(count - 1, index))];
+            sinceRefresh = 0;
+        }
+        return cachedPercentile;
+    }
+
+}
@@ -0,0 +1,177 @@
+/*
+ * Copyright 2014 David Morrissey
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package uk.co.visalia.brightpearl.apiclient.hedging;
+
+import uk.co.visalia.brightpearl.apiclient.account.Account;
+import uk.co.visalia.brightpearl.apiclient.account.Datacenter;
+import uk.co.visalia.brightpearl.apiclient.http.Response;
+import uk.co.visalia.brightpearl.apiclient.ratelimit.RateLimiter;
+import uk.co.visalia.brightpearl.apiclient.util.Futures;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * <p>
+ * Sends a request and, if no response has arrived after the configured percentile of recent response times for the
+ * account's datacenter, sends a duplicate. The first successful response is returned and any later response is closed.
+ * If every request sent fails, the future completes with the exception from the last to fail.
+ * </p><p>
+ * The caller is responsible for passing the original request through {@link RateLimiter#rateLimit(Account)}. Hedges
+ * are only sent if the policy's hedge ratio allows and {@link RateLimiter#tryRateLimit(Account)} returns true, so they
+ * never cause the rate limiter to wait. Only idempotent requests should be hedged.
+ * </p><p>
+ * Used internally by {@link uk.co.visalia.brightpearl.apiclient.BrightpearlApiClient}; configure hedging with
+ * {@link uk.co.visalia.brightpearl.apiclient.BrightpearlApiClientFactory#withHedgingPolicy(HedgingPolicy)}.
+ * </p>
+ */
+public final class RequestHedger {
+
+    private final HedgingPolicy policy;
+
+    private final RateLimiter rateLimiter;
+
+    private final ScheduledExecutorService scheduler;
+
+    private final HedgeBudget budget;
+
+    private final ConcurrentMap<Datacenter, LatencyWindow> windows = new ConcurrentHashMap<Datacenter, LatencyWindow>();
+
+    /**
+     * Creates a hedger that schedules hedges on the shared scheduler thread.
+     * @param policy Hedging settings.
+     * @param rateLimiter Rate limiter that hedges are charged against.
+     */
+    public RequestHedger(HedgingPolicy policy, RateLimiter rateLimiter) {
+        this(policy, rateLimiter, Futures.scheduler());
+    }
+
+    /**
+     * Creates a hedger that schedules hedges on the given executor. Tasks run on it only start requests, and do not
+     * block waiting for responses.
+     * @param policy Hedging settings.
+     * @param rateLimiter Rate limiter that hedges are charged against.
+     * @param scheduler Executor used to send hedges after the hedge delay.
+     */
+    public RequestHedger(HedgingPolicy policy, RateLimiter rateLimiter, ScheduledExecutorService scheduler) {
+        if (policy == null || rateLimiter == null || scheduler == null) {
+            throw new IllegalArgumentException("Policy, rate limiter and scheduler are required");
+        }
+        this.policy = policy;
+        this.rateLimiter = rateLimiter;
+        this.scheduler = scheduler;
+        this.budget = new HedgeBudget(policy.getMaxHedgeRatio());
+    }
+
+    /**
+     * Sends a request using the supplier, and sends it again if no response has arrived by the hedge delay.
+     * @param account The account the request is for.
+     * @param attempt Starts a request each time it is called, returning a future for its response.
+     * @return A future that completes with the first successful response.
+     */
+    public CompletableFuture<Response> execute(final Account account, final Supplier<CompletableFuture<Response>> attempt) {
+        LatencyWindow window = getWindow(account.getDatacenter());
+        budget.deposit();
+        final HedgedCall call = new HedgedCall(window);
+        call.send(attempt);
+
+        long delay = hedgeDelay(window);
+        if (delay >= 0 && !call.result.isDone()) {
+            final ScheduledFuture<?> hedge = scheduler.schedule(() -> {
+                if (!call.result.isDone() && tryAcquireHedge(account)) {
+                    call.send(attempt);
+                }
+            }, delay, TimeUnit.MILLISECONDS);
+            call.result.whenComplete((response, throwable) -> hedge.cancel(false));
+        }
+        return call.result;
+    }
+
+    /*
+     * Returns the delay before a hedge is sent, or -1 if there are not yet enough samples for the datacenter.
+     */
+    private long hedgeDelay(LatencyWindow window) {
+        long percentile = window.percentile();
+        if (percentile < 0) {
+            return -1;
+        }
+        return Math.max(policy.getMinDelayMs(), Math.min(policy.getMaxDelayMs(), percentile));
+    }
+
+    private boolean tryAcquireHedge(Account account) {
+        if (!budget.tryWithdraw()) {
+            return false;
+        }
+        if (!rateLimiter.tryRateLimit(account)) {
+            budget.refund();
+            return false;
+        }
+        return true;
+    }
+
+    private LatencyWindow getWindow(Datacenter datacenter) {
+        LatencyWindow window = windows.get(datacenter);
+        if (window == null) {
+            window = new LatencyWindow(policy.getWindowSize(), policy.getMinSamples(), policy.getPercentile());
+            LatencyWindow existing = windows.putIfAbsent(datacenter, window);
+            if (existing != null) {
+                window = existing;
+            }
+        }
+        return window;
+    }
+
+    /*
+     * Tracks the requests sent for one call and completes the result with the first response.
+     */
+    private static final class HedgedCall {
+
+        private final CompletableFuture<Response> result = new CompletableFuture<Response>();
+
+        private final AtomicInteger outstanding = new AtomicInteger();
+
+        private final LatencyWindow window;
+
+        private HedgedCall(LatencyWindow window) {
+            this.window = window;
+        }
+
+        private void send(Supplier<CompletableFuture<Response>> attempt) {
+            outstanding.incrementAndGet();
+            final long start = System.nanoTime();
+            Futures.defer(attempt).whenComplete((response, throwable) -> {
+                int remaining = outstanding.decrementAndGet();
+                if (throwable == null) {
+                    window.record(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+                    if (!result.complete(response) && response != null) {
+                        response.close();
+                    }
+                } else if (remaining == 0) {
+                    result.completeExceptionally(Futures.unwrap(throwable));
+                }
+            });
+        }
+
+    }
+
+}
@@ -0,0 +1,36 @@
+/*
+ * Copyright 2014 David Morrissey
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package uk.co.visalia.brightpearl.apiclient.http;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Non-blocking equivalent of {@link Client}. Implementations must return immediately from {@link #executeAsync(Request)},
+ * completing the returned future from their own I/O threads when the response has been received.
+ */
+public interface AsyncClient {
+
+    /**
+     * Executes a request without blocking the calling thread. The future should complete with the response if any
+     * response is received from the server, regardless of status code. If the request fails due to a transport error,
+     * the future should complete exceptionally with a {@link uk.co.visalia.brightpearl.apiclient.exception.BrightpearlHttpException}.
+     * @param request The request to be executed.
+     * @return A future that completes with the response from the server.
+     */
+    CompletableFuture<Response> executeAsync(Request request);
+
+}
@@ -0,0 +1,43 @@
+/*
+ * Copyright 2014 David Morrissey
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package uk.co.visalia.brightpearl.apiclient.http;
+
+import uk.co.visalia.brightpearl.apiclient.account.Account;
+
+/**
+ * <p>
+ * Interface for classes that create {@link AsyncClient}s. This is intended to be implemented alongside {@link ClientFactory}
+ * by transports that support non-blocking I/O; when the {@link ClientFactory} supplied to
+ * {@link uk.co.visalia.brightpearl.apiclient.BrightpearlApiClientFactory} also implements this interface, the async methods
+ * of {@link uk.co.visalia.brightpearl.apiclient.BrightpearlApiClient} use the clients it returns.
+ * </p><p>
+ * Factories that do not implement this interface are still supported by the async methods, but their blocking clients
+ * are run on an executor, so each in-flight request occupies a thread.
+ * </p>
+ */
+public interface AsyncClientFactory {
+
+    /**
+     * Get an async client to be used for a given {@link uk.co.visalia.brightpearl.apiclient.account.Account}. As with
+     * {@link ClientFactory#getClient(Account)}, this is called for every request, and implementations should return the
+     * same instance to each call where possible.
+     * @param account The Brightpearl customer account a client is required for.
+     * @return An async client instance appropriate for the account.
+     */
+    AsyncClient getAsyncClient(Account account);
+
+}
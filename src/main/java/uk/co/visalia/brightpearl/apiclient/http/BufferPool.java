@@ -0,0 +1,294 @@
+/*
+ * Copyright 2014 David Morrissey
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package uk.co.visalia.brightpearl.apiclient.http;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * <p>
+ * A thread safe pool of byte arrays that {@link Client} implementations may use to read and write request and response
+ * bodies, to avoid allocating new arrays for every request. Buffers start at a fixed size and are grown as required to
+ * fit larger bodies. Grown buffers are returned to the pool up to a maximum size, so that a pool used for large
+ * responses will come to contain buffers large enough to hold them.
+ * </p><p>
+ * Statistics on the number of buffers acquired from the pool and allocated when the pool was empty or a buffer had to be
+ * grown are maintained, and may be used to tune the pool and buffer sizes.
+ * </p>
+ */
+public final class BufferPool {
+
+    public static final int DEFAULT_MAX_BUFFER_SIZE = 1024 * 1024;
+
+    private final int poolSize;
+    private final int bufferSize;
+    private final int maxBufferSize;
+
+    private final Queue<byte[]> buffers = new ConcurrentLinkedQueue<byte[]>();
+    private final AtomicInteger available = new AtomicInteger();
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    /**
+     * Create a pool that will retain buffers up to the {@link #DEFAULT_MAX_BUFFER_SIZE}.
+     * @param poolSize Maximum number of buffers retained in the pool.
+     * @param bufferSize Initial size of buffers allocated.
+     */
+    public BufferPool(int poolSize, int bufferSize) {
+        this(poolSize, bufferSize, DEFAULT_MAX_BUFFER_SIZE);
+    }
+
+    /**
+     * Create a pool.
+     * @param poolSize Maximum number of buffers retained in the pool.
+     * @param bufferSize Initial size of buffers allocated.
+     * @param maxBufferSize Maximum size of buffers that will be returned to the pool. Larger buffers are discarded.
+     */
+    public BufferPool(int poolSize, int bufferSize, int maxBufferSize) {
+        if (poolSize < 0) {
+            throw new IllegalArgumentException("Pool size must not be negative");
+        }
+        if (bufferSize <= 0) {
+            throw new IllegalArgumentException("Buffer size must be greater than zero");
+        }
+        this.poolSize = poolSize;
+        this.bufferSize = bufferSize;
+        this.maxBufferSize = Math.max(bufferSize, maxBufferSize);
+    }
+
+    /**
+     * Takes a buffer from the pool, or allocates a new one if the pool is empty.
+     * @return a buffer of at least the initial buffer size.
+     */
+    public byte[] acquire() {
+        byte[] buffer = buffers.poll();
+        if (buffer != null) {
+            available.decrementAndGet();
+            hits.incrementAndGet();
+            return buffer;
+        }
+        misses.incrementAndGet();
+        return new byte[bufferSize];
+    }
+
+    /**
+     * Returns a buffer to the pool. If the pool is full or the buffer exceeds the maximum size it is discarded.
+     * @param buffer A buffer that is no longer in use.
+     */
+    public void release(byte[] buffer) {
+        if (buffer == null || buffer.length > maxBufferSize) {
+            return;
+        }
+        if (available.incrementAndGet() <= poolSize) {
+            buffers.offer(buffer);
+        } else {
+            available.decrementAndGet();
+        }
+    }
+
+    /**
+     * Copies the contents of a buffer into a new buffer at least twice the size, and large enough for the capacity
+     * required. The original buffer is returned to the pool.
+     * @param buffer The buffer to grow.
+     * @param length Number of bytes of the buffer in use.
+     * @param minCapacity Minimum capacity required.
+     * @return a larger buffer.
+     */
+    public byte[] grow(byte[] buffer, int length, int minCapacity) {
+        int capacity = Math.max(buffer.length << 1, minCapacity);
+        if (capacity < 0) {
+            capacity = Integer.MAX_VALUE - 8;
+        }
+        misses.incrementAndGet();
+        byte[] grown = new byte[capacity];
+        System.arraycopy(buffer, 0, grown, 0, length);
+        release(buffer);
+        return grown;
+    }
+
+    /**
+     * Encodes a string into a pooled buffer.
+     * @param string The string to encode.
+     * @param charset The charset to use.
+     * @return a pooled buffer containing the encoded string, which should be released after use.
+     */
+    public Buffer encode(String string, Charset charset) {
+        CharsetEncoder encoder = charset.newEncoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        CharBuffer in = CharBuffer.wrap(string);
+        byte[] buffer = acquire();
+        ByteBuffer out = ByteBuffer.wrap(buffer);
+        while (true) {
+            CoderResult result = encoder.encode(in, out, true);
+            if (result.isUnderflow()) {
+                result = encoder.flush(out);
+                if (result.isUnderflow()) {
+                    break;
+                }
+            }
+            int position = out.position();
+            buffer = grow(buffer, position, position + (int)(in.remaining() * encoder.averageBytesPerChar()) + 16);
+            out = ByteBuffer.wrap(buffer);
+            out.position(position);
+        }
+        return new Buffer(buffer, out.position());
+    }
+
+    /**
+     * Reads a stream fully into a pooled buffer. The stream is not closed.
+     * @param inputStream The stream to read.
+     * @param lengthHint The expected length of the stream, or a negative value if unknown.
+     * @return a pooled buffer containing the stream content, which should be released after use.
+     * @throws IOException if the stream cannot be read.
+     */
+    public Buffer read(InputStream inputStream, long lengthHint) throws IOException {
+        byte[] buffer = acquire();
+        if (lengthHint >= buffer.length && lengthHint < Integer.MAX_VALUE - 8) {
+            // One byte spare so the end of the stream is found without growing the buffer again.
+            buffer = grow(buffer, 0, (int)lengthHint + 1);
+        }
+        int length = 0;
+        try {
+            int read;
+            while (true) {
+                if (length == buffer.length) {
+                    buffer = grow(buffer, length, length + 1);
+                }
+                read = inputStream.read(buffer, length, buffer.length - length);
+                if (read == -1) {
+                    break;
+                }
+                length += read;
+            }
+        } catch (IOException e) {
+            release(buffer);
+            throw e;
+        }
+        return new Buffer(buffer, length);
+    }
+
+    /**
+     * Returns the maximum number of buffers that will be retained by the pool.
+     * @return maximum pool size.
+     */
+    public int getPoolSize() {
+        return poolSize;
+    }
+
+    /**
+     * Returns the number of buffers currently available in the pool.
+     * @return available buffers.
+     */
+    public int getAvailable() {
+        return Math.min(available.get(), poolSize);
+    }
+
+    /**
+     * Returns the number of times a buffer was taken from the pool.
+     * @return pool hits.
+     */
+    public long getHits() {
+        return hits.get();
+    }
+
+    /**
+     * Returns the number of times a new buffer was allocated because the pool was empty or a buffer had to be grown.
+     * @return pool misses.
+     */
+    public long getMisses() {
+        return misses.get();
+    }
+
+    /**
+     * Returns the proportion of buffer requests that were satisfied from the pool, between zero and one. Buffers grown
+     * to fit larger bodies count as requests that were not.
+     * @return pool hit rate.
+     */
+    public double getHitRate() {
+        long hits = this.hits.get();
+        long total = hits + misses.get();
+        return total == 0 ? 0 : (double)hits / total;
+    }
+
+    @Override
+    public String toString() {
+        return "BufferPool{" +
+                "poolSize=" + poolSize +
+                ", bufferSize=" + bufferSize +
+                ", available=" + getAvailable() +
+                ", hits=" + getHits() +
+                ", misses=" + getMisses() +
+                '}';
+    }
+
+    /**
+     * A buffer taken from a {@link BufferPool}, of which only the first {@link #getLength()} bytes are in use.
+     */
+    public final class Buffer {
+
+        private byte[] array;
+        private final int length;
+
+        private Buffer(byte[] array, int length) {
+            this.array = array;
+            this.length = length;
+        }
+
+        public byte[] getArray() {
+            return array;
+        }
+
+        public int getLength() {
+            return length;
+        }
+
+        /**
+         * Decodes the buffer content.
+         * @param charset Charset to use.
+         * @return decoded string.
+         */
+        public String toString(Charset charset) {
+            return new String(array, 0, length, charset);
+        }
+
+        /**
+         * Returns the underlying array to the pool. The buffer must not be used after it is released, and further calls
+         * have no effect.
+         */
+        public void release() {
+            byte[] array = this.array;
+            this.array = null;
+            if (array != null) {
+                BufferPool.this.release(array);
+            }
+        }
+
+    }
+
+}
@@ -17,6 +17,11 @@
 package uk.co.visalia.brightpearl.apiclient.http;
 
 import uk.co.visalia.brightpearl.apiclient.account.Account;
+import uk.co.visalia.brightpearl.apiclient.account.Datacenter;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
 
 /**
  * Interface for classes that create {@link Client}s. In most cases, implementations should cache the client they return
@@ -41,4 +46,26 @@ public interface ClientFactory {
      */
     Client getClient(Account account);
 
+    /**
+     * Opens connections to each of the given datacenters in parallel and returns them to the pool, so that the first
+     * requests made to each datacenter do not have to wait for DNS resolution, TCP connection and TLS handshakes. This
+     * should be called before an application begins to take traffic. The default implementation does nothing, for
+     * clients that do not pool connections.
+     * @param datacenters Datacenters to open connections to.
+     * @param connectionsPerHost Number of connections to open to each datacenter. Implementations may open fewer if this
+     *                           exceeds the pool limits.
+     * @return the outcome for each datacenter, including connection timings.
+     */
+    default List<WarmUpResult> warmUp(Collection<Datacenter> datacenters, int connectionsPerHost) {
+        return Collections.emptyList();
+    }
+
+    /**
+     * Releases resources held by this factory and the clients it has created. Implementations that hold connection pools
+     * should stop accepting new requests, wait for requests in progress to complete, and then close their pools. The
+     * default implementation does nothing.
+     */
+    default void shutdown() {
+    }
+
 }
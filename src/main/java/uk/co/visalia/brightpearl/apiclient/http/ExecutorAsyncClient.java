@@ -0,0 +1,59 @@
+/*
+ * Copyright 2014 David Morrissey
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package uk.co.visalia.brightpearl.apiclient.http;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+
+/**
+ * An {@link AsyncClient} that adapts a blocking {@link Client} by running each request on an {@link Executor}. This
+ * allows the async API to be used with any {@link ClientFactory}, but gives none of the scalability benefits of a
+ * non-blocking transport, as a thread is occupied for the duration of every request.
+ */
+public final class ExecutorAsyncClient implements AsyncClient {
+
+    private final Client client;
+
+    private final Executor executor;
+
+    /**
+     * Create an async adaptor for a blocking client.
+     * @param client The blocking client to be used for requests.
+     * @param executor Executor used to run each blocking request.
+     */
+    public ExecutorAsyncClient(Client client, Executor executor) {
+        if (client == null) {
+            throw new IllegalArgumentException("Client cannot be null");
+        }
+        if (executor == null) {
+            throw new IllegalArgumentException("Executor cannot be null");
+        }
+        this.client = client;
+        this.executor = executor;
+    }
+
+    /**
+     * {@inheritDoc}
+     * @param request The request to be executed.
+     * @return A future that completes with the response from the server.
+     */
+    @Override
+    public CompletableFuture<Response> executeAsync(final Request request) {
+        return CompletableFuture.supplyAsync(() -> client.execute(request), executor);
+    }
+
+}
@@ -0,0 +1,238 @@
+/*
+ * Copyright 2014 David Morrissey
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package uk.co.visalia.brightpearl.apiclient.http;
+
+import java.util.*;
+
+/**
+ * <p>
+ * An immutable list of HTTP response headers, in the order they were received. Header names are matched without regard
+ * to case, and repeated headers keep all their values.
+ * </p><p>
+ * Names and values are held in a single array, so no map is created for each response. The positions of the content
+ * type and Brightpearl rate limit headers are found when the instance is created, so looking these up does not require
+ * a scan of the headers.
+ * </p>
+ */
+public final class Headers {
+
+    /**
+     * Name of the content type header.
+     */
+    public static final String CONTENT_TYPE = "Content-Type";
+
+    /**
+     * Name of the header giving the number of requests remaining in the current throttle period.
+     */
+    public static final String REQUESTS_REMAINING = "brightpearl-requests-remaining";
+
+    /**
+     * Name of the header giving the time in milliseconds until the next throttle period.
+     */
+    public static final String NEXT_THROTTLE_PERIOD = "brightpearl-next-throttle-period";
+
+    /**
+     * An instance containing no headers.
+     */
+    public static final Headers EMPTY = new Headers(new String[0]);
+
+    private final String[] namesAndValues;
+
+    private final int contentTypeIndex;
+
+    private final int requestsRemainingIndex;
+
+    private final int nextThrottlePeriodIndex;
+
+    private volatile Map<String, String> map;
+
+    Headers(String[] namesAndValues) {
+        this.namesAndValues = namesAndValues;
+        int contentTypeIndex = -1;
+        int requestsRemainingIndex = -1;
+        int nextThrottlePeriodIndex = -1;
+        for (int i = 0; i < namesAndValues.length; i += 2) {
+            String name = namesAndValues[i];
+            if (contentTypeIndex < 0 && name.equalsIgnoreCase(CONTENT_TYPE)) {
+                contentTypeIndex = i + 1;
+            } else if (requestsRemainingIndex < 0 && name.equalsIgnoreCase(REQUESTS_REMAINING)) {
+                requestsRemainingIndex = i + 1;
+            } else if (nextThrottlePeriodIndex < 0 && name.equalsIgnoreCase(NEXT_THROTTLE_PERIOD)) {
+                nextThrottlePeriodIndex = i + 1;
+            }
+        }
+        this.contentTypeIndex = contentTypeIndex;
+        this.requestsRemainingIndex = requestsRemainingIndex;
+        this.nextThrottlePeriodIndex = nextThrottlePeriodIndex;
+    }
+
+    /**
+     * Creates an instance from a map of header names to values.
+     * @param headers map of headers, which may be null.
+     * @return headers instance.
+     */
+    public static Headers fromMap(Map<String, String> headers) {
+        if (headers == null || headers.isEmpty()) {
+            return EMPTY;
+        }
+        String[] namesAndValues = new String[headers.size() * 2];
+        int i = 0;
+        for (Map.Entry<String, String> header : headers.entrySet()) {
+            namesAndValues[i++] = header.getKey();
+            namesAndValues[i++] = header.getValue();
+        }
+        return new Headers(namesAndValues);
+    }
+
+    String[] getNamesAndValues() {
+        return namesAndValues;
+    }
+
+    /**
+     * Returns the number of headers, counting each value of a repeated header separately.
+     * @return number of headers.
+     */
+    public int size() {
+        return namesAndValues.length / 2;
+    }
+
+    /**
+     * Returns the name of the header at an index.
+     * @param index index of the header.
+     * @return header name.
+     */
+    public String getName(int index) {
+        return namesAndValues[index * 2];
+    }
+
+    /**
+     * Returns the value of the header at an index.
+     * @param index index of the header.
+     * @return header value.
+     */
+    public String getValue(int index) {
+        return namesAndValues[index * 2 + 1];
+    }
+
+    /**
+     * Returns the first value of a named header.
+     * @param name header name, in any case.
+     * @return the first value of the header, or null if it was not present.
+     */
+    public String getFirst(String name) {
+        for (int i = 0; i < namesAndValues.length; i += 2) {
+            if (namesAndValues[i].equalsIgnoreCase(name)) {
+                return namesAndValues[i + 1];
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Returns all values of a named header, in the order they were received.
+     * @param name header name, in any case.
+     * @return list of values, which is empty if the header was not present.
+     */
+    public List<String> getAll(String name) {
+        List<String> values = null;
+        for (int i = 0; i < namesAndValues.length; i += 2) {
+            if (namesAndValues[i].equalsIgnoreCase(name)) {
+                if (values == null) {
+                    values = new ArrayList<String>(2);
+                }
+                values.add(namesAndValues[i + 1]);
+            }
+        }
+        return values == null ? Collections.<String>emptyList() : Collections.unmodifiableList(values);
+    }
+
+    /**
+     * Returns the value of the content type header.
+     * @return content type, or null if the header was not present.
+     */
+    public String getContentType() {
+        return contentTypeIndex < 0 ? null : namesAndValues[contentTypeIndex];
+    }
+
+    /**
+     * Returns the value of the {@link #REQUESTS_REMAINING} header.
+     * @return unparsed number of requests remaining, or null if the header was not present.
+     */
+    public String getRequestsRemaining() {
+        return requestsRemainingIndex < 0 ? null : namesAndValues[requestsRemainingIndex];
+    }
+
+    /**
+     * Returns the value of the {@link #NEXT_THROTTLE_PERIOD} header.
+     * @return unparsed time until the next throttle period, or null if the header was not present.
+     */
+    public String getNextThrottlePeriod() {
+        return nextThrottlePeriodIndex < 0 ? null : namesAndValues[nextThrottlePeriodIndex];
+    }
+
+    /**
+     * Returns the headers as a map, keyed by the name each header was first received with. The values of repeated
+     * headers are joined with commas. The map is created when this is first called.
+     * @return unmodifiable map of headers.
+     */
+    public Map<String, String> toMap() {
+        Map<String, String> map = this.map;
+        if (map == null) {
+            Map<String, String> created = new LinkedHashMap<String, String>();
+            Map<String, String> names = new HashMap<String, String>();
+            for (int i = 0; i < namesAndValues.length; i += 2) {
+                String key = namesAndValues[i].toLowerCase(Locale.ENGLISH);
+                String name = names.get(key);
+                if (name == null) {
+                    names.put(key, namesAndValues[i]);
+                    created.put(namesAndValues[i], namesAndValues[i + 1]);
+                } else {
+                    created.put(name, created.get(name) + ", " + namesAndValues[i + 1]);
+                }
+            }
+            map = Collections.unmodifiableMap(created);
+            this.map = map;
+        }
+        return map;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder("Headers{");
+        for (int i = 0; i < namesAndValues.length; i += 2) {
+            if (i > 0) {
+                builder.append(", ");
+            }
+            builder.append(namesAndValues[i]).append('=').append(namesAndValues[i + 1]);
+        }
+        return builder.append('}').toString();
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        Headers headers = (Headers) o;
+        return Arrays.equals(namesAndValues, headers.namesAndValues);
+    }
+
+    @Override
+    public int hashCode() {
+        return Arrays.hashCode(namesAndValues);
+    }
+}
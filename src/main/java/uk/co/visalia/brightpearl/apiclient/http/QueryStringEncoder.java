@@ -0,0 +1,122 @@
+/*
+ * Copyright 2014 David Morrissey
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package uk.co.visalia.brightpearl.apiclient.http;
+
+import java.util.Map;
+
+/**
+ * <p>
+ * Appends querystring parameters to a URL, encoding them as UTF-8 application/x-www-form-urlencoded values. The output
+ * is the same as that of {@link java.net.URLEncoder} and the Apache HTTP Components URIBuilder, but the URL is not
+ * parsed, and values containing only safe characters are appended without any intermediate copies.
+ * </p><p>
+ * This is intended for use by {@link Client} implementations to encode {@link Request#getParameters()}.
+ * </p>
+ */
+public final class QueryStringEncoder {
+
+    private static final char[] HEX = "0123456789ABCDEF".toCharArray();
+
+    private static final boolean[] SAFE = new boolean[128];
+
+    static {
+        for (char c = 'a'; c <= 'z'; c++) {
+            SAFE[c] = true;
+        }
+        for (char c = 'A'; c <= 'Z'; c++) {
+            SAFE[c] = true;
+        }
+        for (char c = '0'; c <= '9'; c++) {
+            SAFE[c] = true;
+        }
+        SAFE['-'] = true;
+        SAFE['_'] = true;
+        SAFE['.'] = true;
+        SAFE['*'] = true;
+    }
+
+    private QueryStringEncoder() {
+
+    }
+
+    /**
+     * Appends encoded parameters to a URL. The URL is returned unchanged if there are no parameters. Parameters with a
+     * null value are added by name only.
+     * @param url URL, which may already contain a querystring.
+     * @param parameters map of unencoded parameters, which may be null.
+     * @return URL including the parameters.
+     */
+    public static String appendParameters(String url, Map<String, String> parameters) {
+        if (parameters == null || parameters.isEmpty()) {
+            return url;
+        }
+        StringBuilder builder = new StringBuilder(url.length() + parameters.size() * 24);
+        builder.append(url);
+        char separator = url.indexOf('?') >= 0 ? '&' : '?';
+        for (Map.Entry<String, String> parameter : parameters.entrySet()) {
+            builder.append(separator);
+            encode(builder, parameter.getKey());
+            if (parameter.getValue() != null) {
+                builder.append('=');
+                encode(builder, parameter.getValue());
+            }
+            separator = '&';
+        }
+        return builder.toString();
+    }
+
+    /**
+     * Appends a single form encoded value to a builder.
+     * @param builder builder to append to.
+     * @param value unencoded value.
+     */
+    public static void encode(StringBuilder builder, String value) {
+        int length = value.length();
+        for (int i = 0; i < length; i++) {
+            char c = value.charAt(i);
+            if (c < 128 && SAFE[c]) {
+                builder.append(c);
+            } else if (c == ' ') {
+                builder.append('+');
+            } else if (c < 0x80) {
+                appendByte(builder, c);
+            } else if (c < 0x800) {
+                appendByte(builder, 0xC0 | (c >> 6));
+                appendByte(builder, 0x80 | (c & 0x3F));
+            } else if (Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(value.charAt(i + 1))) {
+                int codePoint = Character.toCodePoint(c, value.charAt(++i));
+                appendByte(builder, 0xF0 | (codePoint >> 18));
+                appendByte(builder, 0x80 | ((codePoint >> 12) & 0x3F));
+                appendByte(builder, 0x80 | ((codePoint >> 6) & 0x3F));
+                appendByte(builder, 0x80 | (codePoint & 0x3F));
+            } else if (Character.isSurrogate(c)) {
+                // Unpaired surrogates are replaced, as the UTF-8 encoder does
+                appendByte(builder, '?');
+            } else {
+                appendByte(builder, 0xE0 | (c >> 12));
+                appendByte(builder, 0x80 | ((c >> 6) & 0x3F));
+                appendByte(builder, 0x80 | (c & 0x3F));
+            }
+        }
+    }
+
+    private static void appendByte(StringBuilder builder, int b) {
+        builder.append('%').append(HEX[(b >> 4) & 0xF]).append(HEX[b & 0xF]);
+    }
+
+}
@@ -16,12 +16,27 @@
 
 package uk.co.visalia.brightpearl.apiclient.http;
 
+import uk.co.visalia.brightpearl.apiclient.util.Deadline;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.Charset;
 import java.util.Collections;
 import java.util.Map;
 
 /**
+ * <p>
  * Contains the basic details of an HTTP request to be executed by a {@link Client} in a generic form that can be supported
  * by any implementation. Immutable instances are created using {@link RequestBuilder}.
+ * </p><p>
+ * The body may be given either as a string or as a {@link RequestEntity} that writes the body when the request is sent.
+ * Clients that support streaming should check {@link #getEntity()} first, and write it directly to the connection.
+ * </p><p>
+ * A request may carry a {@link Deadline} for the call it belongs to. Clients should limit connection, pool and socket
+ * timeouts to the time remaining, and fail with
+ * {@link uk.co.visalia.brightpearl.apiclient.exception.BrightpearlDeadlineExceededException} if it passes before the
+ * response is received.
+ * </p>
  */
 public final class Request {
 
@@ -29,18 +44,28 @@ public final class Request {
 
     private final String url;
 
-    private final String body;
+    private final RequestEntity entity;
+
+    private volatile String body;
 
     private final Map<String, String> parameters;
 
     private final Map<String, String> headers;
 
+    private final Deadline deadline;
+
     Request(Method method, String url, String body, Map<String, String> parameters, Map<String, String> headers) {
+        this(method, url, body, null, parameters, headers, null);
+    }
+
+    Request(Method method, String url, String body, RequestEntity entity, Map<String, String> parameters, Map<String, String> headers, Deadline deadline) {
         this.method = method;
         this.url = url;
         this.body = body;
+        this.entity = body == null ? entity : null;
         this.parameters = parameters == null ? null : Collections.unmodifiableMap(parameters);
         this.headers = headers == null ? null : Collections.unmodifiableMap(headers);
+        this.deadline = deadline;
     }
 
     /**
@@ -60,13 +85,29 @@ public final class Request {
     }
 
     /**
-     * JSON request body for inclusion in PUT and POST requests.
+     * JSON request body for inclusion in PUT and POST requests. If the body was given as a {@link RequestEntity}, it
+     * is rendered to a string when this is first called.
      * @return JSON request body.
      */
     public String getBody() {
+        if (body == null && entity != null) {
+            synchronized (this) {
+                if (body == null) {
+                    body = render(entity);
+                }
+            }
+        }
         return body;
     }
 
+    /**
+     * The streamed body of the request, if it was given as a {@link RequestEntity} rather than a string.
+     * @return request entity, or null if there is none.
+     */
+    public RequestEntity getEntity() {
+        return entity;
+    }
+
     /**
      * Parameters for addition to the URL querystring. The map will contain raw values, and the {@link Client} is
      * responsible for encoding them.
@@ -85,14 +126,33 @@ public final class Request {
         return headers;
     }
 
+    /**
+     * The deadline of the call this request belongs to. It is not included in equality checks.
+     * @return the deadline, or null if the call has none.
+     */
+    public Deadline getDeadline() {
+        return deadline;
+    }
+
+    private static String render(RequestEntity entity) {
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        try {
+            entity.writeTo(outputStream);
+        } catch (IOException e) {
+            throw new IllegalStateException("Request entity could not be written", e);
+        }
+        return new String(outputStream.toByteArray(), Charset.forName("UTF-8"));
+    }
+
     @Override
     public String toString() {
         return "Request{" +
                 "method=" + method +
                 ", url='" + url + '\'' +
-                ", body='" + body + '\'' +
+                ", body='" + (body == null && entity != null ? "<streamed>" : body) + '\'' +
                 ", parameters=" + parameters +
                 ", headers=" + headers +
+                ", deadline=" + deadline +
                 '}';
     }
 
@@ -101,7 +161,8 @@ public final class Request {
         if (this == o) return true;
         if (o == null || getClass() != o.getClass()) return false;
         Request request = (Request) o;
-        if (body != null ? !body.equals(request.body) : request.body != null) return false;
+        String body = getBody();
+        if (body != null ? !body.equals(request.getBody()) : request.getBody() != null) return false;
         if (headers != null ? !headers.equals(request.headers) : request.headers != null) return false;
         if (method != request.method) return false;
         if (parameters != null ? !parameters.equals(request.parameters) : request.parameters != null) return false;
@@ -113,7 +174,7 @@ public final class Request {
     public int hashCode() {
         int result = method != null ? method.hashCode() : 0;
         result = 31 * result + (url != null ? url.hashCode() : 0);
-        result = 31 * result + (body != null ? body.hashCode() : 0);
+        result = 31 * result + (getBody() != null ? getBody().hashCode() : 0);
         result = 31 * result + (parameters != null ? parameters.hashCode() : 0);
         result = 31 * result + (headers != null ? headers.hashCode() : 0);
         return result;
@@ -16,6 +16,7 @@
 
 package uk.co.visalia.brightpearl.apiclient.http;
 
+import uk.co.visalia.brightpearl.apiclient.util.Deadline;
 import uk.co.visalia.brightpearl.apiclient.util.StringUtils;
 
 import java.util.Collections;
@@ -32,10 +33,14 @@ public class RequestBuilder {
 
     private String body;
 
+    private RequestEntity entity;
+
     private Map<String, String> parameters;
 
     private Map<String, String> headers;
 
+    private Deadline deadline;
+
     private RequestBuilder() {
 
     }
@@ -59,7 +64,7 @@ public class RequestBuilder {
         if (StringUtils.isBlank(url)) {
             throw new IllegalArgumentException("Request URL must be a non-empty string");
         }
-        return new Request(method, url, body, parameters, headers);
+        return new Request(method, url, body, entity, parameters, headers, deadline);
     }
 
     /**
@@ -115,6 +120,29 @@ public class RequestBuilder {
      */
     public RequestBuilder withBody(String body) {
         this.body = body;
+        this.entity = null;
+        return this;
+    }
+
+    /**
+     * Add a JSON body to a PUT or POST request that is written to the connection when the request is sent. This
+     * replaces any string body previously set.
+     * @param entity JSON request entity.
+     * @return builder instance for method chaining.
+     */
+    public RequestBuilder withEntity(RequestEntity entity) {
+        this.entity = entity;
+        this.body = null;
+        return this;
+    }
+
+    /**
+     * Sets the deadline of the call the request belongs to, which clients use to limit their timeouts.
+     * @param deadline call deadline, or null for none.
+     * @return builder instance for method chaining.
+     */
+    public RequestBuilder withDeadline(Deadline deadline) {
+        this.deadline = deadline;
         return this;
     }
 
@@ -0,0 +1,38 @@
+/*
+ * Copyright 2014 David Morrissey
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package uk.co.visalia.brightpearl.apiclient.http;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * A request body that is written directly to the connection when the request is sent, rather than being rendered to a
+ * string in advance. {@link Client} implementations that cannot stream request bodies may use {@link Request#getBody()}
+ * instead, which renders the entity into memory.
+ */
+public interface RequestEntity {
+
+    /**
+     * Writes the body to the given stream as UTF-8 encoded JSON. This may be called more than once if a request is
+     * retried, and must write the same content each time. The stream should be flushed but not closed.
+     * @param outputStream stream to write the body to.
+     * @throws IOException if the body could not be written.
+     */
+    void writeTo(OutputStream outputStream) throws IOException;
+
+}
@@ -16,7 +16,12 @@
 
 package uk.co.visalia.brightpearl.apiclient.http;
 
-import java.util.Collections;
+import uk.co.visalia.brightpearl.apiclient.exception.BrightpearlHttpException;
+import uk.co.visalia.brightpearl.apiclient.exception.ClientErrorCode;
+
+import java.io.*;
+import java.net.SocketTimeoutException;
+import java.nio.charset.Charset;
 import java.util.Map;
 
 /**
@@ -25,23 +30,40 @@ import java.util.Map;
  * return instances with all properties set, except when the HTTP request fails with a transport error, in which case
  * a {@link uk.co.visalia.brightpearl.apiclient.exception.BrightpearlHttpException} should be thrown.
  * </p><p>
- * Instances are immutable and may be constructed using {@link ResponseBuilder}.
+ * Instances are immutable once the body has been read, and may be constructed using {@link ResponseBuilder}.
+ * </p><p>
+ * A client may instead return a streamed response, where the body has not been read from the connection. The body is
+ * then available once only, from either {@link #getBodyReader()} or {@link #getBodyStream()}, and the response must
+ * be closed to release the connection. Calling {@link #getBody()} on a streamed response reads the remainder of the
+ * body into memory and closes the stream, after which it behaves as a buffered response.
  * </p>
  */
-public final class Response {
+public final class Response implements Closeable {
 
     private final int status;
 
-    private final Map<String, String> headers;
+    private final Headers headers;
+
+    private final InputStream bodyStream;
 
-    private final String body;
+    private final Charset charset;
 
     private final long timestamp;
 
-    Response(int status, Map<String, String> headers, String body) {
+    private String body;
+
+    private boolean streamConsumed;
+
+    Response(int status, Headers headers, String body) {
+        this(status, headers, body, null, null);
+    }
+
+    Response(int status, Headers headers, String body, InputStream bodyStream, Charset charset) {
         this.status = status;
-        this.headers = headers == null ? null : Collections.unmodifiableMap(headers);
+        this.headers = headers == null ? Headers.EMPTY : headers;
         this.body = body;
+        this.bodyStream = bodyStream;
+        this.charset = charset == null ? Charset.forName("UTF-8") : charset;
         this.timestamp = System.currentTimeMillis();
     }
 
@@ -54,21 +76,89 @@ public final class Response {
     }
 
     /**
-     * Returns the response headers. All headers should be included.
+     * Returns the response headers as a map. All headers should be included, with the values of repeated headers
+     * joined with commas.
      * @return response headers.
      */
     public Map<String, String> getHeaders() {
+        return headers.toMap();
+    }
+
+    /**
+     * Returns the response headers in the order they were received, including every value of repeated headers.
+     * @return response headers.
+     */
+    public Headers getHeaderList() {
         return headers;
     }
 
     /**
-     * Returns the JSON response body.
+     * Returns the JSON response body. For a streamed response, the remainder of the body is read from the connection
+     * and the stream closed when this is first called.
      * @return unparsed JSON string.
      */
     public String getBody() {
+        if (bodyStream != null) {
+            synchronized (this) {
+                if (body == null && !streamConsumed) {
+                    streamConsumed = true;
+                    body = readFully();
+                }
+            }
+        }
         return body;
     }
 
+    /**
+     * Returns true if this response was returned by a client before the body was read, in which case the body should
+     * be consumed using {@link #getBodyReader()} and the response closed.
+     * @return whether the body of this response is streamed.
+     */
+    public boolean isStreamed() {
+        return bodyStream != null;
+    }
+
+    /**
+     * Returns a reader for the response body. For a streamed response, this reads directly from the connection and may
+     * only be called once. Closing the reader or this response releases the connection.
+     * @return reader for the response body, or null if there is no body.
+     */
+    public Reader getBodyReader() {
+        InputStream stream = getBodyStream();
+        if (stream != null) {
+            return new InputStreamReader(stream, charset);
+        }
+        return body == null ? null : new StringReader(body);
+    }
+
+    /**
+     * Returns the response body as a stream of bytes in the charset given by {@link #getCharset()}. For a streamed
+     * response, this reads directly from the connection and may only be called once.
+     * @return stream for the response body, or null if there is no body.
+     */
+    public InputStream getBodyStream() {
+        if (bodyStream != null) {
+            synchronized (this) {
+                if (!streamConsumed) {
+                    streamConsumed = true;
+                    return bodyStream;
+                } else if (body == null) {
+                    throw new IllegalStateException("Response body stream has already been consumed");
+                }
+            }
+        }
+        return body == null ? null : new ByteArrayInputStream(body.getBytes(charset));
+    }
+
+    /**
+     * Returns the charset of the response body, as given by the content type header of the response or UTF-8 if none
+     * was given.
+     * @return body charset.
+     */
+    public Charset getCharset() {
+        return charset;
+    }
+
     /**
      * Returns the timestamp this response instance was created. This indicates the age of the response and may be used
      * for caching.
@@ -84,14 +174,41 @@ public final class Response {
      * @return value of the header if it was present in the response, null if not.
      */
     public String getHeader(String key) {
-        if (headers != null) {
-            for (Map.Entry<String, String> header : headers.entrySet()) {
-                if (header.getKey().equalsIgnoreCase(key)) {
-                    return header.getValue();
-                }
+        return headers.getFirst(key);
+    }
+
+    /**
+     * Closes the body stream of a streamed response, releasing the connection it was read from. Has no effect on a
+     * buffered response, and may safely be called more than once.
+     */
+    @Override
+    public void close() {
+        if (bodyStream != null) {
+            try {
+                bodyStream.close();
+            } catch (IOException e) {
+                // Connection will be discarded
+            }
+        }
+    }
+
+    private String readFully() {
+        try {
+            Reader reader = new InputStreamReader(bodyStream, charset);
+            StringBuilder builder = new StringBuilder();
+            char[] buffer = new char[4096];
+            int read;
+            while ((read = reader.read(buffer)) != -1) {
+                builder.append(buffer, 0, read);
             }
+            return builder.toString();
+        } catch (SocketTimeoutException e) {
+            throw new BrightpearlHttpException(ClientErrorCode.SOCKET_TIMEOUT, e);
+        } catch (IOException e) {
+            throw new BrightpearlHttpException(ClientErrorCode.OTHER_TRANSPORT_ERROR, e);
+        } finally {
+            close();
         }
-        return null;
     }
 
     @Override
@@ -99,7 +216,7 @@ public final class Response {
         return "Response{" +
                 "status=" + status +
                 ", headers=" + headers +
-                ", body='" + body + '\'' +
+                ", body='" + (isStreamed() && body == null ? "<streamed>" : body) + '\'' +
                 ", timestamp=" + timestamp +
                 '}';
     }
@@ -111,14 +228,14 @@ public final class Response {
         Response response = (Response) o;
         if (status != response.status) return false;
         if (body != null ? !body.equals(response.body) : response.body != null) return false;
-        if (headers != null ? !headers.equals(response.headers) : response.headers != null) return false;
+        if (!headers.equals(response.headers)) return false;
         return true;
     }
 
     @Override
     public int hashCode() {
         int result = status;
-        result = 31 * result + (headers != null ? headers.hashCode() : 0);
+        result = 31 * result + headers.hashCode();
         result = 31 * result + (body != null ? body.hashCode() : 0);
         return result;
     }
@@ -16,7 +16,9 @@
 
 package uk.co.visalia.brightpearl.apiclient.http;
 
-import java.util.Collections;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.util.Arrays;
 import java.util.Map;
 
 /**
@@ -26,10 +28,16 @@ public class ResponseBuilder {
 
     private int status;
 
-    private Map<String, String> headers;
+    private String[] namesAndValues = new String[32];
+
+    private int namesAndValuesLength;
 
     private String body;
 
+    private InputStream bodyStream;
+
+    private Charset charset;
+
     private ResponseBuilder() {
     }
 
@@ -46,7 +54,8 @@ public class ResponseBuilder {
      * @return new response instance.
      */
     public Response build() {
-        return new Response(status, headers, body);
+        Headers headers = namesAndValuesLength == 0 ? Headers.EMPTY : new Headers(Arrays.copyOf(namesAndValues, namesAndValuesLength));
+        return new Response(status, headers, body, bodyStream, charset);
     }
 
     /**
@@ -60,12 +69,44 @@ public class ResponseBuilder {
     }
 
     /**
-     * Set the response headers received. All headers should be included.
+     * Set the response headers received, replacing any already added. All headers should be included.
      * @param headers Response headers received.
      * @return builder instance for method chaining.
      */
     public ResponseBuilder withHeaders(Map<String, String> headers) {
-        this.headers = headers == null ? null : Collections.unmodifiableMap(headers);
+        return withHeaders(Headers.fromMap(headers));
+    }
+
+    /**
+     * Set the response headers received, replacing any already added. All headers should be included.
+     * @param headers Response headers received.
+     * @return builder instance for method chaining.
+     */
+    public ResponseBuilder withHeaders(Headers headers) {
+        this.namesAndValuesLength = 0;
+        if (headers != null) {
+            String[] source = headers.getNamesAndValues();
+            ensureCapacity(source.length);
+            System.arraycopy(source, 0, namesAndValues, 0, source.length);
+            this.namesAndValuesLength = source.length;
+        }
+        return this;
+    }
+
+    /**
+     * Add a response header. Clients should call this once for each header received, including each value of a
+     * repeated header, in the order they were received.
+     * @param name Header name.
+     * @param value Header value.
+     * @return builder instance for method chaining.
+     */
+    public ResponseBuilder withHeader(String name, String value) {
+        if (name == null || value == null) {
+            throw new IllegalArgumentException("Header name and value cannot be null");
+        }
+        ensureCapacity(namesAndValuesLength + 2);
+        namesAndValues[namesAndValuesLength++] = name;
+        namesAndValues[namesAndValuesLength++] = value;
         return this;
     }
 
@@ -78,5 +119,24 @@ public class ResponseBuilder {
         this.body = body;
         return this;
     }
-    
-}
\ No newline at end of file
+
+    /**
+     * Set a stream from which the body may be read, to build a streamed response. The stream should release the
+     * connection when closed.
+     * @param bodyStream Stream of the unread response body.
+     * @param charset Charset of the body, or null for UTF-8.
+     * @return builder instance for method chaining.
+     */
+    public ResponseBuilder withBodyStream(InputStream bodyStream, Charset charset) {
+        this.bodyStream = bodyStream;
+        this.charset = charset;
+        return this;
+    }
+
+    private void ensureCapacity(int length) {
+        if (length > namesAndValues.length) {
+            namesAndValues = Arrays.copyOf(namesAndValues, Math.max(length, namesAndValues.length * 2));
+        }
+    }
+
+}
@@ -0,0 +1,101 @@
+/*
+ * Copyright 2014 David Morrissey
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package uk.co.visalia.brightpearl.apiclient.http;
+
+import uk.co.visalia.brightpearl.apiclient.account.Datacenter;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The outcome of warming up the connection pool for a datacenter using {@link ClientFactory#warmUp(java.util.Collection, int)}.
+ * Includes the time taken to open each connection, which covers DNS resolution, TCP connection and TLS handshake.
+ */
+public final class WarmUpResult {
+
+    private final Datacenter datacenter;
+
+    private final int connectionsRequested;
+
+    private final List<Long> connectionTimesMs;
+
+    private final long durationMs;
+
+    private final Exception failure;
+
+    /**
+     * Create a result.
+     * @param datacenter The datacenter warmed up.
+     * @param connectionsRequested Number of connections that were requested.
+     * @param connectionTimesMs Time taken to open each connection that was opened successfully.
+     * @param durationMs Total time taken to warm up the datacenter.
+     * @param failure The first failure encountered, or null if all connections were opened.
+     */
+    public WarmUpResult(Datacenter datacenter, int connectionsRequested, List<Long> connectionTimesMs, long durationMs, Exception failure) {
+        this.datacenter = datacenter;
+        this.connectionsRequested = connectionsRequested;
+        this.connectionTimesMs = connectionTimesMs == null ? Collections.<Long>emptyList() : Collections.unmodifiableList(connectionTimesMs);
+        this.durationMs = durationMs;
+        this.failure = failure;
+    }
+
+    public Datacenter getDatacenter() {
+        return datacenter;
+    }
+
+    public int getConnectionsRequested() {
+        return connectionsRequested;
+    }
+
+    public int getConnectionsOpened() {
+        return connectionTimesMs.size();
+    }
+
+    public List<Long> getConnectionTimesMs() {
+        return connectionTimesMs;
+    }
+
+    public long getDurationMs() {
+        return durationMs;
+    }
+
+    public Exception getFailure() {
+        return failure;
+    }
+
+    /**
+     * Returns true if every connection requested was opened.
+     * @return whether warm up was successful.
+     */
+    public boolean isSuccessful() {
+        return failure == null && getConnectionsOpened() == connectionsRequested;
+    }
+
+    @Override
+    public String toString() {
+        return "WarmUpResult{" +
+                "datacenter=" + datacenter.getName() +
+                ", connectionsRequested=" + connectionsRequested +
+                ", connectionsOpened=" + getConnectionsOpened() +
+                ", connectionTimesMs=" + connectionTimesMs +
+                ", durationMs=" + durationMs +
+                ", failure=" + failure +
+                '}';
+    }
+
+}
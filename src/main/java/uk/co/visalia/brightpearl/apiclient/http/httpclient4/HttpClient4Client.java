@@ -17,35 +17,71 @@
 package uk.co.visalia.brightpearl.apiclient.http.httpclient4;
 
 import org.apache.http.Header;
+import org.apache.http.HttpEntity;
 import org.apache.http.HttpResponse;
 import org.apache.http.NoHttpResponseException;
 import org.apache.http.client.HttpClient;
+import org.apache.http.client.entity.GzipCompressingEntity;
 import org.apache.http.client.methods.*;
-import org.apache.http.client.utils.URIBuilder;
+import org.apache.http.client.params.HttpClientParams;
 import org.apache.http.conn.ConnectTimeoutException;
+import org.apache.http.entity.AbstractHttpEntity;
+import org.apache.http.entity.ByteArrayEntity;
+import org.apache.http.entity.ContentType;
 import org.apache.http.entity.StringEntity;
+import org.apache.http.params.HttpConnectionParams;
+import org.apache.http.params.HttpParams;
+import org.apache.http.protocol.HTTP;
 import org.apache.http.util.EntityUtils;
 import uk.co.visalia.brightpearl.apiclient.exception.BrightpearlHttpException;
 import uk.co.visalia.brightpearl.apiclient.exception.ClientErrorCode;
 import uk.co.visalia.brightpearl.apiclient.http.*;
+import uk.co.visalia.brightpearl.apiclient.util.Deadline;
+import uk.co.visalia.brightpearl.apiclient.util.Futures;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.net.SocketException;
 import java.net.SocketTimeoutException;
-import java.net.URISyntaxException;
 import java.net.UnknownHostException;
 import java.nio.charset.Charset;
-import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Implementation of {@link uk.co.visalia.brightpearl.apiclient.http.Client} using Apache HTTP Components {@link HttpClient}.
+ * When response streaming is enabled, responses are returned before the body is read, and the connection is released
+ * back to the pool when the body has been fully read or the response is closed. When a {@link BufferPool} is supplied,
+ * request and response bodies are encoded and read using pooled buffers. Request bodies at or above the compression
+ * threshold, if one is set, are gzip compressed as they are written. Requests with a {@link RequestEntity} are written
+ * directly to the connection using chunked encoding. When a request has a deadline, the configured timeouts are
+ * limited to the time remaining, and the request is aborted if no response has been received when the deadline passes.
  */
 public class HttpClient4Client implements Client {
 
-    private HttpClient httpClient;
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private volatile HttpClient httpClient;
+
+    private final boolean streamResponses;
+
+    private final BufferPool bufferPool;
+
+    private final int requestCompressionThreshold;
 
     HttpClient4Client(HttpClient httpClient) {
+        this(httpClient, false, null, -1);
+    }
+
+    HttpClient4Client(HttpClient httpClient, boolean streamResponses, BufferPool bufferPool, int requestCompressionThreshold) {
         this.httpClient = httpClient;
+        this.streamResponses = streamResponses;
+        this.bufferPool = bufferPool;
+        this.requestCompressionThreshold = requestCompressionThreshold;
     }
 
     /**
@@ -56,51 +92,87 @@ public class HttpClient4Client implements Client {
     @Override
     public Response execute(Request request) {
 
+        HttpClient httpClient = this.httpClient;
         if (httpClient == null) {
             throw new IllegalStateException("HttpClient has been shut down");
         }
 
         HttpRequestBase clientRequest = buildRequest(request);
+        boolean streaming = false;
+
+        Deadline deadline = request.getDeadline();
+        ScheduledFuture<?> abort = null;
 
         try {
+            if (deadline != null) {
+                deadline.check("before the request was sent");
+                applyDeadline(clientRequest, httpClient, deadline);
+                abort = Futures.scheduler().schedule(clientRequest::abort, deadline.remainingMs(), TimeUnit.MILLISECONDS);
+            }
+
             HttpResponse clientResponse = httpClient.execute(clientRequest);
 
-            int status = clientResponse.getStatusLine().getStatusCode();
-            Map<String, String> headers = new HashMap<String, String>();
+            ResponseBuilder responseBuilder = ResponseBuilder.newResponse().withStatus(clientResponse.getStatusLine().getStatusCode());
             for (Header header : clientResponse.getAllHeaders()) {
-                headers.put(header.getName(), header.getValue());
+                responseBuilder.withHeader(header.getName(), header.getValue());
+            }
+
+            HttpEntity entity = clientResponse.getEntity();
+            if (streamResponses && entity != null) {
+                ContentType contentType = ContentType.get(entity);
+                Charset charset = contentType == null ? null : contentType.getCharset();
+                InputStream bodyStream = entity.getContent();
+                if (abort != null) {
+                    // The caller reads the body, limited by the socket timeout, after the deadline is no longer tracked.
+                    abort.cancel(false);
+                }
+                streaming = true;
+                return responseBuilder.withBodyStream(bodyStream, charset).build();
             }
-            String body = EntityUtils.toString(clientResponse.getEntity());
 
-            return ResponseBuilder.newResponse().withStatus(status).withHeaders(headers).withBody(body).build();
+            String body = readBody(entity);
+
+            return responseBuilder.withBody(body).build();
 
         } catch (Exception e) {
+            if (deadline != null && deadline.isExpired()) {
+                throw deadline.exceeded("waiting for a response");
+            }
             throw resolveException(e);
         } finally {
-            clientRequest.releaseConnection();
+            if (abort != null) {
+                abort.cancel(false);
+            }
+            if (!streaming) {
+                clientRequest.releaseConnection();
+            }
+            if (clientRequest instanceof HttpEntityEnclosingRequestBase) {
+                HttpEntity requestEntity = ((HttpEntityEnclosingRequestBase)clientRequest).getEntity();
+                if (requestEntity instanceof CompressedEntity) {
+                    requestEntity = ((CompressedEntity)requestEntity).getWrappedEntity();
+                }
+                if (requestEntity instanceof PooledEntity) {
+                    ((PooledEntity)requestEntity).release();
+                }
+            }
         }
 
     }
 
+    /**
+     * Prevents any further requests being made with this client. Requests in progress are not affected, and the
+     * underlying connection manager must be shut down separately.
+     */
+    void shutdown() {
+        this.httpClient = null;
+    }
+
     private HttpRequestBase buildRequest(Request request) {
 
         Method method = request.getMethod();
-        String url = request.getUrl();
-        String body = request.getBody();
-
-        if (request.getParameters() != null) {
-            try {
-                URIBuilder builder = new URIBuilder(url);
-                for (Map.Entry<String, String> param : request.getParameters().entrySet()) {
-                    builder.setParameter(param.getKey(), param.getValue());
-                }
-                url = builder.build().toString();
-            } catch (URISyntaxException e) {
-                throw new IllegalArgumentException("Invalid URL: \"" + request.getUrl() + "\"");
-            }
-        }
+        String url = QueryStringEncoder.appendParameters(request.getUrl(), request.getParameters());
 
-        HttpRequestBase clientRequest = createBaseRequest(method, url, body);
+        HttpRequestBase clientRequest = createBaseRequest(method, url, request);
 
         if (request.getHeaders() != null) {
             for (Map.Entry<String, String> header : request.getHeaders().entrySet()) {
@@ -112,16 +184,30 @@ public class HttpClient4Client implements Client {
 
     }
 
-    private HttpRequestBase createBaseRequest(Method method, String url, String body) {
+    /*
+     * Overrides the client's connection, socket and pool lease timeouts for this request only, limiting each to the time
+     * remaining before the deadline. The factory builds a DefaultHttpClient, which reads its timeouts from HttpParams and
+     * ignores a per-request RequestConfig, so the deprecated params API is the only one that takes effect.
+     */
+    @SuppressWarnings("deprecation")
+    private void applyDeadline(HttpRequestBase clientRequest, HttpClient httpClient, Deadline deadline) {
+        HttpParams clientParams = httpClient.getParams();
+        HttpParams params = clientRequest.getParams();
+        HttpConnectionParams.setConnectionTimeout(params, (int)deadline.cap(HttpConnectionParams.getConnectionTimeout(clientParams)));
+        HttpConnectionParams.setSoTimeout(params, (int)deadline.cap(HttpConnectionParams.getSoTimeout(clientParams)));
+        HttpClientParams.setConnectionManagerTimeout(params, deadline.cap(HttpClientParams.getConnectionManagerTimeout(clientParams)));
+    }
+
+    private HttpRequestBase createBaseRequest(Method method, String url, Request request) {
         if (method == Method.GET) {
             return new HttpGet(url);
         } else if (method == Method.POST) {
             HttpPost post = new HttpPost(url);
-            addBody(post, body);
+            addBody(post, request);
             return post;
         } else if (method == Method.PUT) {
             HttpPut put = new HttpPut(url);
-            addBody(put, body);
+            addBody(put, request);
             return put;
         } else if (method == Method.DELETE) {
             return new HttpDelete(url);
@@ -131,10 +217,129 @@ public class HttpClient4Client implements Client {
         throw new IllegalArgumentException("HTTP method " + method + " is not supported by this client");
     }
 
-    private void addBody(HttpEntityEnclosingRequestBase requestBase, String body) {
+    private void addBody(HttpEntityEnclosingRequestBase requestBase, Request request) {
+        if (request.getEntity() != null) {
+            HttpEntity entity = new StreamingEntity(request.getEntity());
+            if (requestCompressionThreshold >= 0) {
+                entity = new CompressedEntity(entity);
+            }
+            requestBase.setEntity(entity);
+            return;
+        }
+        String body = request.getBody();
         if (body != null) {
-            requestBase.setEntity(new StringEntity(body, Charset.forName("UTF-8")));
+            HttpEntity entity;
+            if (bufferPool != null) {
+                entity = new PooledEntity(bufferPool.encode(body, UTF_8));
+            } else {
+                entity = new StringEntity(body, UTF_8);
+            }
+            if (requestCompressionThreshold >= 0 && entity.getContentLength() >= requestCompressionThreshold) {
+                entity = new CompressedEntity(entity);
+            }
+            requestBase.setEntity(entity);
+        }
+    }
+
+    /*
+     * Equivalent to EntityUtils.toString, reading the body into a pooled buffer if a pool has been supplied.
+     */
+    private String readBody(HttpEntity entity) throws IOException {
+        if (bufferPool == null || entity == null) {
+            return EntityUtils.toString(entity);
         }
+        InputStream inputStream = entity.getContent();
+        if (inputStream == null) {
+            return null;
+        }
+        BufferPool.Buffer buffer = null;
+        try {
+            ContentType contentType = ContentType.get(entity);
+            Charset charset = contentType == null ? null : contentType.getCharset();
+            buffer = bufferPool.read(inputStream, entity.getContentLength());
+            return buffer.toString(charset == null ? HTTP.DEF_CONTENT_CHARSET : charset);
+        } finally {
+            inputStream.close();
+            if (buffer != null) {
+                buffer.release();
+            }
+        }
+    }
+
+    /*
+     * A request entity backed by a pooled buffer, which is released once the request has completed.
+     */
+    private static final class PooledEntity extends ByteArrayEntity {
+
+        private final BufferPool.Buffer buffer;
+
+        private PooledEntity(BufferPool.Buffer buffer) {
+            super(buffer.getArray(), 0, buffer.getLength(), ContentType.create("text/plain", UTF_8));
+            this.buffer = buffer;
+        }
+
+        private void release() {
+            buffer.release();
+        }
+
+    }
+
+    /*
+     * A request entity written directly to the connection by a RequestEntity. The length is unknown, so the body is sent
+     * chunked, and is always compressed when request compression is enabled.
+     */
+    private static final class StreamingEntity extends AbstractHttpEntity {
+
+        private final RequestEntity requestEntity;
+
+        private StreamingEntity(RequestEntity requestEntity) {
+            this.requestEntity = requestEntity;
+            setContentType(ContentType.create("text/plain", UTF_8).toString());
+            setChunked(true);
+        }
+
+        @Override
+        public boolean isRepeatable() {
+            return true;
+        }
+
+        @Override
+        public long getContentLength() {
+            return -1;
+        }
+
+        @Override
+        public InputStream getContent() throws IOException {
+            ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+            requestEntity.writeTo(outputStream);
+            return new ByteArrayInputStream(outputStream.toByteArray());
+        }
+
+        @Override
+        public void writeTo(OutputStream outputStream) throws IOException {
+            requestEntity.writeTo(outputStream);
+        }
+
+        @Override
+        public boolean isStreaming() {
+            return false;
+        }
+
+    }
+
+    /*
+     * Gzip compresses the wrapped entity as it is written, without buffering the compressed body.
+     */
+    private static final class CompressedEntity extends GzipCompressingEntity {
+
+        private CompressedEntity(HttpEntity entity) {
+            super(entity);
+        }
+
+        private HttpEntity getWrappedEntity() {
+            return wrappedEntity;
+        }
+
     }
 
     private BrightpearlHttpException resolveException(Exception e) {
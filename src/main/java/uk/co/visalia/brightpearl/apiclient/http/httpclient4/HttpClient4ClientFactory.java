@@ -16,7 +16,13 @@
 
 package uk.co.visalia.brightpearl.apiclient.http.httpclient4;
 
+import org.apache.http.HttpHost;
 import org.apache.http.client.params.HttpClientParams;
+import org.apache.http.client.protocol.RequestAcceptEncoding;
+import org.apache.http.client.protocol.ResponseContentEncoding;
+import org.apache.http.conn.ClientConnectionRequest;
+import org.apache.http.conn.ManagedClientConnection;
+import org.apache.http.conn.routing.HttpRoute;
 import org.apache.http.conn.scheme.PlainSocketFactory;
 import org.apache.http.conn.scheme.Scheme;
 import org.apache.http.conn.scheme.SchemeRegistry;
@@ -25,14 +31,32 @@ import org.apache.http.impl.client.DefaultHttpClient;
 import org.apache.http.impl.conn.PoolingClientConnectionManager;
 import org.apache.http.params.BasicHttpParams;
 import org.apache.http.params.CoreConnectionPNames;
+import org.apache.http.params.HttpParams;
+import org.apache.http.protocol.BasicHttpContext;
 import uk.co.visalia.brightpearl.apiclient.account.Account;
+import uk.co.visalia.brightpearl.apiclient.account.Datacenter;
+import uk.co.visalia.brightpearl.apiclient.http.BufferPool;
 import uk.co.visalia.brightpearl.apiclient.http.Client;
 import uk.co.visalia.brightpearl.apiclient.http.ClientFactory;
+import uk.co.visalia.brightpearl.apiclient.http.WarmUpResult;
+import uk.co.visalia.brightpearl.apiclient.util.Futures;
+
+import java.io.IOException;
+import java.net.URI;
+import java.util.*;
+import java.util.concurrent.*;
 
 /**
- * An implementation of {@link uk.co.visalia.brightpearl.apiclient.http.ClientFactory} that creates a single Apache HTTP Components {@link DefaultHttpClient}
- * instance using a {@link PoolingClientConnectionManager} to provide pooling and thread safety, and returns this
- * wrapped in a {@link HttpClient4Client} instance in response to all requests tp {@link #getClient(Account)}.
+ * An implementation of {@link uk.co.visalia.brightpearl.apiclient.http.ClientFactory} that creates an Apache HTTP Components {@link DefaultHttpClient}
+ * instance for each datacenter, using a {@link PoolingClientConnectionManager} to provide pooling and thread safety, and
+ * returns this wrapped in a {@link HttpClient4Client} instance in response to requests to {@link #getClient(Account)}
+ * for accounts on that datacenter. Partitioning the connection pools by datacenter prevents a burst of requests to one
+ * datacenter from using all available connections. Each datacenter's pool is created the first time an account on that
+ * datacenter is seen, with limits configured for the datacenter or the default limits.
+ * <p>
+ * A background thread periodically closes expired connections and connections that have been idle for longer than the
+ * configured limit. {@link #shutdown()} should be called when the factory is no longer required to close the pools.
+ * </p>
  */
 public class HttpClient4ClientFactory implements ClientFactory {
 
@@ -42,6 +66,21 @@ public class HttpClient4ClientFactory implements ClientFactory {
     public static final int DEFAULT_CONNECTION_TIMEOUT_MS = 15000;
     public static final int DEFAULT_SOCKET_TIMEOUT_MS = 60000;
     public static final boolean DEFAULT_ALLOW_REDIRECTS = false;
+    public static final boolean DEFAULT_STREAM_RESPONSES = false;
+    public static final int DEFAULT_BUFFER_POOL_SIZE = 0;
+    public static final int DEFAULT_BUFFER_SIZE = 16384;
+    public static final boolean DEFAULT_ACCEPT_COMPRESSION = false;
+    public static final int DEFAULT_REQUEST_COMPRESSION_THRESHOLD = -1;
+    public static final int DEFAULT_IDLE_CONNECTION_TIMEOUT_MS = 30000;
+    public static final int DEFAULT_CONNECTION_TIME_TO_LIVE_MS = -1;
+    public static final int DEFAULT_EVICTION_INTERVAL_MS = 5000;
+    public static final boolean DEFAULT_STALE_CONNECTION_CHECK = true;
+    public static final int DEFAULT_SHUTDOWN_TIMEOUT_MS = 30000;
+
+    /*
+     * Key for the pool used when no account is given. It is never used to build a route, so its host is not a URL.
+     */
+    private static final Datacenter DEFAULT_POOL = new Datacenter("DEFAULT", "default");
 
     private int maxConnections = DEFAULT_MAX_CONNECTIONS;
     private int maxConnectionsPerRoute = DEFAULT_MAX_CONNECTIONS_PER_ROUTE;
@@ -49,9 +88,23 @@ public class HttpClient4ClientFactory implements ClientFactory {
     private int connectionTimeoutMs = DEFAULT_CONNECTION_TIMEOUT_MS;
     private int socketTimeoutMs = DEFAULT_SOCKET_TIMEOUT_MS;
     private boolean allowRedirects = DEFAULT_ALLOW_REDIRECTS;
+    private boolean streamResponses = DEFAULT_STREAM_RESPONSES;
+    private final BufferPool bufferPool;
+    private boolean acceptCompression = DEFAULT_ACCEPT_COMPRESSION;
+    private int requestCompressionThreshold = DEFAULT_REQUEST_COMPRESSION_THRESHOLD;
+
+    private final Map<Datacenter, PoolLimits> datacenterPoolLimits;
+    private int idleConnectionTimeoutMs = DEFAULT_IDLE_CONNECTION_TIMEOUT_MS;
+    private int connectionTimeToLiveMs = DEFAULT_CONNECTION_TIME_TO_LIVE_MS;
+    private int evictionIntervalMs = DEFAULT_EVICTION_INTERVAL_MS;
+    private boolean staleConnectionCheck = DEFAULT_STALE_CONNECTION_CHECK;
+    private int shutdownTimeoutMs = DEFAULT_SHUTDOWN_TIMEOUT_MS;
 
     private final Object clientLock = new Object();
-    private HttpClient4Client client;
+    private final ConcurrentMap<Datacenter, HttpClient4Client> clients = new ConcurrentHashMap<Datacenter, HttpClient4Client>();
+    private final Map<Datacenter, PoolingClientConnectionManager> connectionManagers = new HashMap<Datacenter, PoolingClientConnectionManager>();
+    private ScheduledExecutorService evictor;
+    private boolean shutdown;
 
     HttpClient4ClientFactory(
             int maxConnections,
@@ -59,51 +112,290 @@ public class HttpClient4ClientFactory implements ClientFactory {
             int connectionManagerTimeoutMs,
             int connectionTimeoutMs,
             int socketTimeoutMs,
-            boolean allowRedirects) {
+            boolean allowRedirects,
+            boolean streamResponses,
+            int bufferPoolSize,
+            int bufferSize,
+            boolean acceptCompression,
+            int requestCompressionThreshold,
+            Map<Datacenter, PoolLimits> datacenterPoolLimits,
+            int idleConnectionTimeoutMs,
+            int connectionTimeToLiveMs,
+            int evictionIntervalMs,
+            boolean staleConnectionCheck,
+            int shutdownTimeoutMs) {
         this.maxConnections = maxConnections;
         this.maxConnectionsPerRoute = maxConnectionsPerRoute;
         this.connectionManagerTimeoutMs = connectionManagerTimeoutMs;
         this.connectionTimeoutMs = connectionTimeoutMs;
         this.socketTimeoutMs = socketTimeoutMs;
         this.allowRedirects = allowRedirects;
+        this.streamResponses = streamResponses;
+        this.bufferPool = bufferPoolSize > 0 ? new BufferPool(bufferPoolSize, bufferSize) : null;
+        this.acceptCompression = acceptCompression;
+        this.requestCompressionThreshold = requestCompressionThreshold;
+        this.datacenterPoolLimits = datacenterPoolLimits == null ? Collections.<Datacenter, PoolLimits>emptyMap() : new HashMap<Datacenter, PoolLimits>(datacenterPoolLimits);
+        this.idleConnectionTimeoutMs = idleConnectionTimeoutMs;
+        this.connectionTimeToLiveMs = connectionTimeToLiveMs;
+        this.evictionIntervalMs = evictionIntervalMs;
+        this.staleConnectionCheck = staleConnectionCheck;
+        this.shutdownTimeoutMs = shutdownTimeoutMs;
     }
 
     /**
-     * Returns the same instance of {@link HttpClient4Client}, backed by a {@link DefaultHttpClient} instance using a
-     * thread-safe pooled connection manager, in response to every request.
-     * @param account The Brightpearl customer account a client is required for.
+     * Returns the instance of {@link HttpClient4Client} for the account's datacenter, backed by a {@link DefaultHttpClient}
+     * instance using a thread-safe pooled connection manager. The same instance is returned for every account on a
+     * datacenter. If no account is given, a client with its own pool and the default limits is returned, which is shared
+     * by all such calls.
+     * @param account The Brightpearl customer account a client is required for, or null.
      * @return a {@link HttpClient4Client} instance.
      */
     @Override
     public Client getClient(Account account) {
+        return getClient(account == null ? DEFAULT_POOL : account.getDatacenter());
+    }
+
+    private HttpClient4Client getClient(Datacenter datacenter) {
+        HttpClient4Client client = clients.get(datacenter);
         if (client == null) {
             synchronized (clientLock) {
+                if (shutdown) {
+                    throw new IllegalStateException("Client factory has been shut down");
+                }
+                client = clients.get(datacenter);
                 if (client == null) {
-                    createClient();
+                    client = createClient(datacenter, getPoolLimits(datacenter));
+                    clients.put(datacenter, client);
                 }
             }
         }
         return client;
     }
 
-    private void createClient() {
+    /**
+     * Returns the connection limits that apply to a datacenter's pool. These are the limits configured for the
+     * datacenter, or the default limits if none were configured.
+     * @param datacenter A Brightpearl datacenter.
+     * @return connection limits for the datacenter.
+     */
+    public PoolLimits getPoolLimits(Datacenter datacenter) {
+        PoolLimits poolLimits = datacenterPoolLimits.get(datacenter);
+        if (poolLimits == null) {
+            poolLimits = new PoolLimits(maxConnections, maxConnectionsPerRoute);
+        }
+        return poolLimits;
+    }
+
+    /**
+     * Returns the pool of buffers used to encode request bodies and read response bodies, which may be used to monitor
+     * the pool's hit rate. Returns null if buffer pooling is disabled.
+     * @return the buffer pool used by clients from this factory.
+     */
+    public BufferPool getBufferPool() {
+        return bufferPool;
+    }
+
+    /**
+     * Stops accepting new requests, waits up to the configured shutdown timeout for requests in progress to complete and
+     * release their connections, then closes all connection pools and stops the idle connection evictor. Requests made
+     * after this method is called fail with an {@link IllegalStateException}.
+     */
+    @Override
+    public void shutdown() {
+        Map<Datacenter, PoolingClientConnectionManager> connectionManagers;
+        synchronized (clientLock) {
+            if (shutdown) {
+                return;
+            }
+            shutdown = true;
+            for (HttpClient4Client client : clients.values()) {
+                client.shutdown();
+            }
+            connectionManagers = new HashMap<Datacenter, PoolingClientConnectionManager>(this.connectionManagers);
+            if (evictor != null) {
+                evictor.shutdownNow();
+            }
+        }
+
+        long deadline = System.currentTimeMillis() + shutdownTimeoutMs;
+        try {
+            for (PoolingClientConnectionManager connectionManager : connectionManagers.values()) {
+                while (connectionManager.getTotalStats().getLeased() > 0 && System.currentTimeMillis() < deadline) {
+                    Thread.sleep(50);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            for (PoolingClientConnectionManager connectionManager : connectionManagers.values()) {
+                connectionManager.shutdown();
+            }
+        }
+    }
+
+    /**
+     * Opens connections to each datacenter in parallel, creating the datacenter's pool if required, and returns them to
+     * the pool for use by later requests. The number of connections opened to each datacenter is limited to the
+     * maximum connections per route for its pool. Connections will be closed by the evictor if they remain idle for
+     * longer than the idle connection timeout.
+     * @param datacenters Datacenters to open connections to.
+     * @param connectionsPerHost Number of connections to open to each datacenter.
+     * @return the outcome for each datacenter, including connection timings.
+     */
+    @Override
+    public List<WarmUpResult> warmUp(Collection<Datacenter> datacenters, int connectionsPerHost) {
+        ExecutorService executor = Executors.newCachedThreadPool(Futures.daemonThreadFactory("brightpearl-warm-up"));
+        try {
+            Map<Datacenter, Future<WarmUpResult>> futures = new LinkedHashMap<Datacenter, Future<WarmUpResult>>();
+            for (final Datacenter datacenter : new LinkedHashSet<Datacenter>(datacenters)) {
+                futures.put(datacenter, warmUp(datacenter, connectionsPerHost, executor));
+            }
+            List<WarmUpResult> results = new ArrayList<WarmUpResult>();
+            for (Map.Entry<Datacenter, Future<WarmUpResult>> future : futures.entrySet()) {
+                try {
+                    results.add(future.getValue().get());
+                } catch (ExecutionException e) {
+                    Exception cause = e.getCause() instanceof Exception ? (Exception)e.getCause() : e;
+                    results.add(new WarmUpResult(future.getKey(), connectionsPerHost, null, 0, cause));
+                }
+            }
+            return results;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while warming up connections", e);
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    private Future<WarmUpResult> warmUp(final Datacenter datacenter, final int connectionsPerHost, final ExecutorService executor) {
+        return executor.submit(new Callable<WarmUpResult>() {
+            @Override
+            public WarmUpResult call() throws Exception {
+                getClient(datacenter);
+                final PoolingClientConnectionManager connectionManager;
+                synchronized (clientLock) {
+                    connectionManager = connectionManagers.get(datacenter);
+                }
+                final HttpRoute route = createRoute(datacenter, connectionManager.getSchemeRegistry());
+                final HttpParams httpParams = createHttpParams();
+                int connections = Math.min(connectionsPerHost, getPoolLimits(datacenter).getMaxConnectionsPerRoute());
+
+                long start = System.currentTimeMillis();
+
+                // All connections are held until every one has been opened, so that the pool does not hand out the same
+                // connection repeatedly.
+                List<Future<ManagedClientConnection>> opening = new ArrayList<Future<ManagedClientConnection>>();
+                final List<Long> connectionTimesMs = Collections.synchronizedList(new ArrayList<Long>());
+                for (int i = 0; i < connections; i++) {
+                    opening.add(executor.submit(new Callable<ManagedClientConnection>() {
+                        @Override
+                        public ManagedClientConnection call() throws Exception {
+                            long connectionStart = System.currentTimeMillis();
+                            ClientConnectionRequest request = connectionManager.requestConnection(route, null);
+                            ManagedClientConnection connection = request.getConnection(connectionManagerTimeoutMs, TimeUnit.MILLISECONDS);
+                            try {
+                                if (!connection.isOpen()) {
+                                    connection.open(route, new BasicHttpContext(), httpParams);
+                                }
+                                connection.markReusable();
+                            } catch (IOException e) {
+                                connectionManager.releaseConnection(connection, 0, TimeUnit.MILLISECONDS);
+                                throw e;
+                            }
+                            connectionTimesMs.add(System.currentTimeMillis() - connectionStart);
+                            return connection;
+                        }
+                    }));
+                }
+
+                Exception failure = null;
+                List<ManagedClientConnection> opened = new ArrayList<ManagedClientConnection>();
+                for (Future<ManagedClientConnection> future : opening) {
+                    try {
+                        opened.add(future.get());
+                    } catch (ExecutionException e) {
+                        if (failure == null) {
+                            failure = e.getCause() instanceof Exception ? (Exception)e.getCause() : e;
+                        }
+                    }
+                }
+                for (ManagedClientConnection connection : opened) {
+                    connectionManager.releaseConnection(connection, 0, TimeUnit.MILLISECONDS);
+                }
+
+                return new WarmUpResult(datacenter, connections, new ArrayList<Long>(connectionTimesMs), System.currentTimeMillis() - start, failure);
+            }
+        });
+    }
+
+    /*
+     * Builds the same route that is planned for requests to a datacenter, so that the connections opened are pooled
+     * under it. The port is left unresolved when the host URL does not include one, as it is for requests.
+     */
+    private HttpRoute createRoute(Datacenter datacenter, SchemeRegistry schemeRegistry) {
+        URI uri = URI.create(datacenter.getHost());
+        Scheme scheme = schemeRegistry.getScheme(uri.getScheme());
+        HttpHost target = new HttpHost(uri.getHost(), uri.getPort(), scheme.getName());
+        return new HttpRoute(target, null, scheme.isLayered());
+    }
+
+    /*
+     * Closes expired connections, and connections that have been idle for longer than the limit. This prevents requests
+     * from failing on connections that have been closed by the server after a quiet period.
+     */
+    private void evictConnections() {
+        List<PoolingClientConnectionManager> connectionManagers;
+        synchronized (clientLock) {
+            connectionManagers = new ArrayList<PoolingClientConnectionManager>(this.connectionManagers.values());
+        }
+        for (PoolingClientConnectionManager connectionManager : connectionManagers) {
+            connectionManager.closeExpiredConnections();
+            if (idleConnectionTimeoutMs > 0) {
+                connectionManager.closeIdleConnections(idleConnectionTimeoutMs, TimeUnit.MILLISECONDS);
+            }
+        }
+    }
+
+    private HttpParams createHttpParams() {
         BasicHttpParams httpParams = new BasicHttpParams();
         httpParams.setParameter(CoreConnectionPNames.SO_TIMEOUT, socketTimeoutMs);
         httpParams.setParameter(CoreConnectionPNames.CONNECTION_TIMEOUT, connectionTimeoutMs);
+        httpParams.setBooleanParameter(CoreConnectionPNames.STALE_CONNECTION_CHECK, staleConnectionCheck);
         HttpClientParams.setRedirecting(httpParams, allowRedirects);
         HttpClientParams.setConnectionManagerTimeout(httpParams, connectionManagerTimeoutMs);
+        return httpParams;
+    }
+
+    private HttpClient4Client createClient(Datacenter datacenter, PoolLimits poolLimits) {
+        HttpParams httpParams = createHttpParams();
 
         SchemeRegistry schemeRegistry = new SchemeRegistry();
         schemeRegistry.register(new Scheme("http", 80, PlainSocketFactory.getSocketFactory()));
         schemeRegistry.register(new Scheme("https", 443, SSLSocketFactory.getSocketFactory()));
 
-        PoolingClientConnectionManager connectionManager = new PoolingClientConnectionManager(schemeRegistry);
-        connectionManager.setMaxTotal(maxConnections);
-        connectionManager.setDefaultMaxPerRoute(maxConnectionsPerRoute);
+        PoolingClientConnectionManager connectionManager = new PoolingClientConnectionManager(schemeRegistry, connectionTimeToLiveMs, TimeUnit.MILLISECONDS);
+        connectionManager.setMaxTotal(poolLimits.getMaxConnections());
+        connectionManager.setDefaultMaxPerRoute(poolLimits.getMaxConnectionsPerRoute());
 
         DefaultHttpClient httpClient = new DefaultHttpClient(connectionManager, httpParams);
+        if (acceptCompression) {
+            httpClient.addRequestInterceptor(new RequestAcceptEncoding());
+            httpClient.addResponseInterceptor(new ResponseContentEncoding());
+        }
+
+        connectionManagers.put(datacenter, connectionManager);
+        if (evictor == null && evictionIntervalMs > 0) {
+            evictor = Executors.newSingleThreadScheduledExecutor(Futures.daemonThreadFactory("brightpearl-connection-evictor"));
+            evictor.scheduleWithFixedDelay(new Runnable() {
+                @Override
+                public void run() {
+                    evictConnections();
+                }
+            }, evictionIntervalMs, evictionIntervalMs, TimeUnit.MILLISECONDS);
+        }
 
-        this.client = new HttpClient4Client(httpClient);
+        return new HttpClient4Client(httpClient, streamResponses, bufferPool, requestCompressionThreshold);
     }
 
 
@@ -16,6 +16,11 @@
 
 package uk.co.visalia.brightpearl.apiclient.http.httpclient4;
 
+import uk.co.visalia.brightpearl.apiclient.account.Datacenter;
+
+import java.util.HashMap;
+import java.util.Map;
+
 /**
  * <p>
  * Constructs a configured {@link HttpClient4ClientFactory}. Supports construction in
@@ -44,6 +49,17 @@ public final class HttpClient4ClientFactoryBuilder {
     private int connectionTimeoutMs = HttpClient4ClientFactory.DEFAULT_CONNECTION_TIMEOUT_MS;
     private int socketTimeoutMs = HttpClient4ClientFactory.DEFAULT_SOCKET_TIMEOUT_MS;
     private boolean allowRedirects = HttpClient4ClientFactory.DEFAULT_ALLOW_REDIRECTS;
+    private boolean streamResponses = HttpClient4ClientFactory.DEFAULT_STREAM_RESPONSES;
+    private int bufferPoolSize = HttpClient4ClientFactory.DEFAULT_BUFFER_POOL_SIZE;
+    private int bufferSize = HttpClient4ClientFactory.DEFAULT_BUFFER_SIZE;
+    private boolean acceptCompression = HttpClient4ClientFactory.DEFAULT_ACCEPT_COMPRESSION;
+    private int requestCompressionThreshold = HttpClient4ClientFactory.DEFAULT_REQUEST_COMPRESSION_THRESHOLD;
+    private int idleConnectionTimeoutMs = HttpClient4ClientFactory.DEFAULT_IDLE_CONNECTION_TIMEOUT_MS;
+    private int connectionTimeToLiveMs = HttpClient4ClientFactory.DEFAULT_CONNECTION_TIME_TO_LIVE_MS;
+    private int evictionIntervalMs = HttpClient4ClientFactory.DEFAULT_EVICTION_INTERVAL_MS;
+    private boolean staleConnectionCheck = HttpClient4ClientFactory.DEFAULT_STALE_CONNECTION_CHECK;
+    private int shutdownTimeoutMs = HttpClient4ClientFactory.DEFAULT_SHUTDOWN_TIMEOUT_MS;
+    private Map<Datacenter, PoolLimits> datacenterPoolLimits = new HashMap<Datacenter, PoolLimits>();
 
     /**
      * Static builder method for method chaining, fluent builder style.
@@ -54,17 +70,17 @@ public final class HttpClient4ClientFactoryBuilder {
     }
 
     /**
-     * Set the maximum total connections allowed across all routes. If creating a client for use with multiple Brightpearl
-     * customer accounts there will be one route per datacenter.
-     * @param maxConnections maximum total connections allowed for all routes.
+     * Set the default maximum total connections allowed across all routes in each datacenter's connection pool. Each
+     * datacenter has a separate pool, normally with a single route.
+     * @param maxConnections maximum total connections allowed for all routes in a datacenter pool.
      */
     public void setMaxConnections(int maxConnections) {
         this.maxConnections = maxConnections;
     }
 
     /**
-     * Set the maximum connections allowed per route. All Brightpearl customer accounts on a datacenter will share the
-     * same route, so this is not a per-account limit.
+     * Set the default maximum connections allowed per route in each datacenter's connection pool. All Brightpearl
+     * customer accounts on a datacenter will share the same route, so this is not a per-account limit.
      * @param maxConnectionsPerRoute maximum connections allowed per route.
      */
     public void setMaxConnectionsPerRoute(int maxConnectionsPerRoute) {
@@ -108,9 +124,112 @@ public final class HttpClient4ClientFactoryBuilder {
     }
 
     /**
-     * Set the maximum total connections allowed across all routes. If creating a client for use with multiple Brightpearl
-     * customer accounts there will be one route per datacenter.
-     * @param maxConnections maximum total connections allowed for all routes.
+     * Set whether responses should be returned before the body is read, so that it can be parsed directly from the
+     * connection instead of first being read into a string. This reduces the memory required to handle large responses.
+     * Each connection remains leased from the pool until the response body has been read or the response closed.
+     * @param streamResponses whether response bodies should be streamed.
+     */
+    public void setStreamResponses(boolean streamResponses) {
+        this.streamResponses = streamResponses;
+    }
+
+    /**
+     * Set the maximum number of buffers retained for reuse when encoding request bodies and reading response bodies.
+     * Pooling reduces allocation under sustained load. A value of zero disables pooling. Pool statistics are available
+     * from {@link HttpClient4ClientFactory#getBufferPool()}.
+     * @param bufferPoolSize maximum number of pooled buffers.
+     */
+    public void setBufferPoolSize(int bufferPoolSize) {
+        this.bufferPoolSize = bufferPoolSize;
+    }
+
+    /**
+     * Set the initial size in bytes of pooled buffers. Buffers are grown as required for larger bodies, and buffers up
+     * to 1MB are returned to the pool.
+     * @param bufferSize initial buffer size in bytes.
+     */
+    public void setBufferSize(int bufferSize) {
+        this.bufferSize = bufferSize;
+    }
+
+    /**
+     * Set whether gzip and deflate compressed responses should be accepted. When enabled, an Accept-Encoding header is
+     * sent with every request, and compressed response bodies are decompressed as they are read.
+     * @param acceptCompression whether compressed responses should be accepted.
+     */
+    public void setAcceptCompression(boolean acceptCompression) {
+        this.acceptCompression = acceptCompression;
+    }
+
+    /**
+     * Set the minimum size in bytes of request bodies that will be gzip compressed before sending. A negative value
+     * disables request compression. The Brightpearl API documentation does not state whether compressed request bodies
+     * are supported, so this is disabled by default.
+     * @param requestCompressionThreshold minimum size of request bodies to compress, or -1 to disable.
+     */
+    public void setRequestCompressionThreshold(int requestCompressionThreshold) {
+        this.requestCompressionThreshold = requestCompressionThreshold;
+    }
+
+    /**
+     * Set connection limits for the pools of individual datacenters. Datacenters without limits set here use the limits
+     * set by {@link #setMaxConnections(int)} and {@link #setMaxConnectionsPerRoute(int)}.
+     * @param datacenterPoolLimits map of datacenter to pool limits.
+     */
+    public void setDatacenterPoolLimits(Map<Datacenter, PoolLimits> datacenterPoolLimits) {
+        this.datacenterPoolLimits = new HashMap<Datacenter, PoolLimits>(datacenterPoolLimits);
+    }
+
+    /**
+     * Set the time in milliseconds after which idle pooled connections are closed by the evictor. This should be
+     * shorter than the server's keep alive timeout, to avoid requests failing on connections the server has closed. A
+     * value of zero disables idle connection eviction.
+     * @param idleConnectionTimeoutMs idle connection timeout in milliseconds.
+     */
+    public void setIdleConnectionTimeoutMs(int idleConnectionTimeoutMs) {
+        this.idleConnectionTimeoutMs = idleConnectionTimeoutMs;
+    }
+
+    /**
+     * Set the maximum lifetime in milliseconds of pooled connections, after which they are closed instead of being
+     * reused. A value of zero or less means connections may be reused indefinitely.
+     * @param connectionTimeToLiveMs connection time to live in milliseconds.
+     */
+    public void setConnectionTimeToLiveMs(int connectionTimeToLiveMs) {
+        this.connectionTimeToLiveMs = connectionTimeToLiveMs;
+    }
+
+    /**
+     * Set the interval in milliseconds between runs of the background thread that closes idle and expired connections.
+     * A value of zero disables the evictor thread.
+     * @param evictionIntervalMs eviction interval in milliseconds.
+     */
+    public void setEvictionIntervalMs(int evictionIntervalMs) {
+        this.evictionIntervalMs = evictionIntervalMs;
+    }
+
+    /**
+     * Set whether pooled connections are checked before being reused, which detects most connections closed by the
+     * server at the cost of a small delay on each request.
+     * @param staleConnectionCheck whether the stale connection check is enabled.
+     */
+    public void setStaleConnectionCheck(boolean staleConnectionCheck) {
+        this.staleConnectionCheck = staleConnectionCheck;
+    }
+
+    /**
+     * Set the maximum time in milliseconds {@link HttpClient4ClientFactory#shutdown()} will wait for requests in
+     * progress to complete before closing the connection pools.
+     * @param shutdownTimeoutMs shutdown timeout in milliseconds.
+     */
+    public void setShutdownTimeoutMs(int shutdownTimeoutMs) {
+        this.shutdownTimeoutMs = shutdownTimeoutMs;
+    }
+
+    /**
+     * Set the default maximum total connections allowed across all routes in each datacenter's connection pool. Each
+     * datacenter has a separate pool, normally with a single route.
+     * @param maxConnections maximum total connections allowed for all routes in a datacenter pool.
      * @return builder instance for method chaining.
      */
     public HttpClient4ClientFactoryBuilder withMaxConnections(int maxConnections) {
@@ -119,8 +238,8 @@ public final class HttpClient4ClientFactoryBuilder {
     }
 
     /**
-     * Set the maximum connections allowed per route. All Brightpearl customer accounts on a datacenter will share the
-     * same route, so this is not a per-account limit.
+     * Set the default maximum connections allowed per route in each datacenter's connection pool. All Brightpearl
+     * customer accounts on a datacenter will share the same route, so this is not a per-account limit.
      * @param maxConnectionsPerRoute maximum connections allowed per route.
      * @return builder instance for method chaining.
      */
@@ -173,6 +292,133 @@ public final class HttpClient4ClientFactoryBuilder {
         return this;
     }
 
+    /**
+     * Set whether responses should be returned before the body is read, so that it can be parsed directly from the
+     * connection instead of first being read into a string. This reduces the memory required to handle large responses.
+     * Each connection remains leased from the pool until the response body has been read or the response closed.
+     * @param streamResponses whether response bodies should be streamed.
+     * @return builder instance for method chaining.
+     */
+    public HttpClient4ClientFactoryBuilder withStreamResponses(boolean streamResponses) {
+        this.streamResponses = streamResponses;
+        return this;
+    }
+
+    /**
+     * Set the maximum number of buffers retained for reuse when encoding request bodies and reading response bodies.
+     * Pooling reduces allocation under sustained load. A value of zero disables pooling. Pool statistics are available
+     * from {@link HttpClient4ClientFactory#getBufferPool()}.
+     * @param bufferPoolSize maximum number of pooled buffers.
+     * @return builder instance for method chaining.
+     */
+    public HttpClient4ClientFactoryBuilder withBufferPoolSize(int bufferPoolSize) {
+        this.bufferPoolSize = bufferPoolSize;
+        return this;
+    }
+
+    /**
+     * Set the initial size in bytes of pooled buffers. Buffers are grown as required for larger bodies, and buffers up
+     * to 1MB are returned to the pool.
+     * @param bufferSize initial buffer size in bytes.
+     * @return builder instance for method chaining.
+     */
+    public HttpClient4ClientFactoryBuilder withBufferSize(int bufferSize) {
+        this.bufferSize = bufferSize;
+        return this;
+    }
+
+    /**
+     * Set whether gzip and deflate compressed responses should be accepted. When enabled, an Accept-Encoding header is
+     * sent with every request, and compressed response bodies are decompressed as they are read.
+     * @param acceptCompression whether compressed responses should be accepted.
+     * @return builder instance for method chaining.
+     */
+    public HttpClient4ClientFactoryBuilder withAcceptCompression(boolean acceptCompression) {
+        this.acceptCompression = acceptCompression;
+        return this;
+    }
+
+    /**
+     * Set the minimum size in bytes of request bodies that will be gzip compressed before sending. A negative value
+     * disables request compression. The Brightpearl API documentation does not state whether compressed request bodies
+     * are supported, so this is disabled by default.
+     * @param requestCompressionThreshold minimum size of request bodies to compress, or -1 to disable.
+     * @return builder instance for method chaining.
+     */
+    public HttpClient4ClientFactoryBuilder withRequestCompressionThreshold(int requestCompressionThreshold) {
+        this.requestCompressionThreshold = requestCompressionThreshold;
+        return this;
+    }
+
+    /**
+     * Set connection limits for the pool of a single datacenter, overriding the limits set by
+     * {@link #withMaxConnections(int)} and {@link #withMaxConnectionsPerRoute(int)} for that datacenter.
+     * @param datacenter the datacenter the limits apply to.
+     * @param maxConnections maximum total connections for the datacenter's pool.
+     * @param maxConnectionsPerRoute maximum connections per route for the datacenter's pool.
+     * @return builder instance for method chaining.
+     */
+    public HttpClient4ClientFactoryBuilder withDatacenterPoolLimits(Datacenter datacenter, int maxConnections, int maxConnectionsPerRoute) {
+        this.datacenterPoolLimits.put(datacenter, new PoolLimits(maxConnections, maxConnectionsPerRoute));
+        return this;
+    }
+
+    /**
+     * Set the time in milliseconds after which idle pooled connections are closed by the evictor. This should be
+     * shorter than the server's keep alive timeout, to avoid requests failing on connections the server has closed. A
+     * value of zero disables idle connection eviction.
+     * @param idleConnectionTimeoutMs idle connection timeout in milliseconds.
+     * @return builder instance for method chaining.
+     */
+    public HttpClient4ClientFactoryBuilder withIdleConnectionTimeoutMs(int idleConnectionTimeoutMs) {
+        this.idleConnectionTimeoutMs = idleConnectionTimeoutMs;
+        return this;
+    }
+
+    /**
+     * Set the maximum lifetime in milliseconds of pooled connections, after which they are closed instead of being
+     * reused. A value of zero or less means connections may be reused indefinitely.
+     * @param connectionTimeToLiveMs connection time to live in milliseconds.
+     * @return builder instance for method chaining.
+     */
+    public HttpClient4ClientFactoryBuilder withConnectionTimeToLiveMs(int connectionTimeToLiveMs) {
+        this.connectionTimeToLiveMs = connectionTimeToLiveMs;
+        return this;
+    }
+
+    /**
+     * Set the interval in milliseconds between runs of the background thread that closes idle and expired connections.
+     * A value of zero disables the evictor thread.
+     * @param evictionIntervalMs eviction interval in milliseconds.
+     * @return builder instance for method chaining.
+     */
+    public HttpClient4ClientFactoryBuilder withEvictionIntervalMs(int evictionIntervalMs) {
+        this.evictionIntervalMs = evictionIntervalMs;
+        return this;
+    }
+
+    /**
+     * Set whether pooled connections are checked before being reused, which detects most connections closed by the
+     * server at the cost of a small delay on each request.
+     * @param staleConnectionCheck whether the stale connection check is enabled.
+     * @return builder instance for method chaining.
+     */
+    public HttpClient4ClientFactoryBuilder withStaleConnectionCheck(boolean staleConnectionCheck) {
+        this.staleConnectionCheck = staleConnectionCheck;
+        return this;
+    }
+
+    /**
+     * Set the maximum time in milliseconds {@link HttpClient4ClientFactory#shutdown()} will wait for requests in
+     * progress to complete before closing the connection pools.
+     * @param shutdownTimeoutMs shutdown timeout in milliseconds.
+     * @return builder instance for method chaining.
+     */
+    public HttpClient4ClientFactoryBuilder withShutdownTimeoutMs(int shutdownTimeoutMs) {
+        this.shutdownTimeoutMs = shutdownTimeoutMs;
+        return this;
+    }
+
     /**
      * Builds an immutable {@link HttpClient4ClientFactory} instance with the configuration supplied.
      * @return a {@link HttpClient4ClientFactory} instance.
@@ -184,7 +430,18 @@ public final class HttpClient4ClientFactoryBuilder {
                 connectionManagerTimeoutMs,
                 connectionTimeoutMs,
                 socketTimeoutMs,
-                allowRedirects);
+                allowRedirects,
+                streamResponses,
+                bufferPoolSize,
+                bufferSize,
+                acceptCompression,
+                requestCompressionThreshold,
+                datacenterPoolLimits,
+                idleConnectionTimeoutMs,
+                connectionTimeToLiveMs,
+                evictionIntervalMs,
+                staleConnectionCheck,
+                shutdownTimeoutMs);
     }
 
 }
@@ -0,0 +1,59 @@
+/*
+ * Copyright 2014 David Morrissey
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package uk.co.visalia.brightpearl.apiclient.http.httpclient4;
+
+/**
+ * Connection limits for the connection pool of a single datacenter, used to configure {@link HttpClient4ClientFactory}
+ * with different limits for each datacenter.
+ */
+public final class PoolLimits {
+
+    private final int maxConnections;
+
+    private final int maxConnectionsPerRoute;
+
+    /**
+     * Create pool limits.
+     * @param maxConnections maximum total connections in the datacenter's pool.
+     * @param maxConnectionsPerRoute maximum connections per route in the datacenter's pool.
+     */
+    public PoolLimits(int maxConnections, int maxConnectionsPerRoute) {
+        if (maxConnections <= 0 || maxConnectionsPerRoute <= 0) {
+            throw new IllegalArgumentException("Connection limits must be greater than zero");
+        }
+        this.maxConnections = maxConnections;
+        this.maxConnectionsPerRoute = maxConnectionsPerRoute;
+    }
+
+    public int getMaxConnections() {
+        return maxConnections;
+    }
+
+    public int getMaxConnectionsPerRoute() {
+        return maxConnectionsPerRoute;
+    }
+
+    @Override
+    public String toString() {
+        return "PoolLimits{" +
+                "maxConnections=" + maxConnections +
+                ", maxConnectionsPerRoute=" + maxConnectionsPerRoute +
+                '}';
+    }
+
+}
@@ -0,0 +1,266 @@
+/*
+ * Copyright 2014 David Morrissey
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package uk.co.visalia.brightpearl.apiclient.http.httpclient5;
+
+import org.apache.hc.client5.http.ConnectTimeoutException;
+import org.apache.hc.client5.http.async.methods.SimpleHttpRequest;
+import org.apache.hc.client5.http.async.methods.SimpleHttpResponse;
+import org.apache.hc.client5.http.async.methods.SimpleRequestBuilder;
+import org.apache.hc.client5.http.async.methods.SimpleRequestProducer;
+import org.apache.hc.client5.http.async.methods.SimpleResponseConsumer;
+import org.apache.hc.client5.http.impl.async.CloseableHttpAsyncClient;
+import org.apache.hc.client5.http.protocol.HttpClientContext;
+import org.apache.hc.core5.concurrent.FutureCallback;
+import org.apache.hc.core5.http.ConnectionClosedException;
+import org.apache.hc.core5.http.ContentType;
+import org.apache.hc.core5.http.Header;
+import org.apache.hc.core5.http.HttpVersion;
+import org.apache.hc.core5.http.NoHttpResponseException;
+import org.apache.hc.core5.http.ProtocolVersion;
+import org.apache.hc.core5.http2.H2ConnectionException;
+import org.apache.hc.core5.http2.H2StreamResetException;
+import org.apache.hc.core5.io.CloseMode;
+import uk.co.visalia.brightpearl.apiclient.exception.BrightpearlHttpException;
+import uk.co.visalia.brightpearl.apiclient.exception.ClientErrorCode;
+import uk.co.visalia.brightpearl.apiclient.http.*;
+import uk.co.visalia.brightpearl.apiclient.util.Deadline;
+import uk.co.visalia.brightpearl.apiclient.util.Futures;
+
+import java.net.SocketException;
+import java.net.SocketTimeoutException;
+import java.net.URI;
+import java.net.UnknownHostException;
+import java.nio.charset.Charset;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * <p>
+ * Implementation of {@link uk.co.visalia.brightpearl.apiclient.http.Client} and {@link AsyncClient} using Apache HTTP
+ * Components 5 {@link CloseableHttpAsyncClient}s.
+ * </p><p>
+ * Requests to a host are first sent through a pooled client that negotiates HTTP/2 or HTTP/1.1 for each connection. When
+ * the protocol negotiated with a host is HTTP/2 and multiplexing is enabled, later requests to that host are sent as
+ * concurrent streams over a shared connection by a second, HTTP/2 only, client. Hosts that negotiate HTTP/1.1, or that
+ * fail with an HTTP/2 protocol error, continue to use the pool.
+ * </p><p>
+ * Returned futures are completed on the default async executor rather than an I/O reactor thread, so stages added by
+ * callers cannot block I/O for other requests.
+ * </p>
+ */
+public class HttpClient5Client implements Client, AsyncClient {
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private final CloseableHttpAsyncClient pooledClient;
+
+    private final CloseableHttpAsyncClient multiplexedClient;
+
+    private final ConcurrentHashMap<String, Boolean> multiplexedHosts = new ConcurrentHashMap<String, Boolean>();
+
+    private final AtomicInteger inFlight = new AtomicInteger();
+
+    private volatile boolean shutdown;
+
+    HttpClient5Client(CloseableHttpAsyncClient pooledClient, CloseableHttpAsyncClient multiplexedClient) {
+        this.pooledClient = pooledClient;
+        this.multiplexedClient = multiplexedClient;
+    }
+
+    /**
+     * {@inheritDoc}
+     * @param request The request to be executed.
+     * @return Response from the Brightpearl API.
+     */
+    @Override
+    public Response execute(Request request) {
+        return Futures.join(executeAsync(request));
+    }
+
+    /**
+     * {@inheritDoc}
+     * @param request The request to be executed.
+     * @return A future that completes with the response from the Brightpearl API.
+     */
+    @Override
+    public CompletableFuture<Response> executeAsync(Request request) {
+
+        if (shutdown) {
+            return Futures.failed(new IllegalStateException("HttpClient has been shut down"));
+        }
+
+        final Deadline deadline = request.getDeadline();
+        final SimpleHttpRequest clientRequest;
+        try {
+            if (deadline != null) {
+                deadline.check("before the request was sent");
+            }
+            clientRequest = buildRequest(request);
+        } catch (RuntimeException e) {
+            return Futures.failed(e);
+        }
+
+        final String host = hostKey(clientRequest);
+        final boolean multiplexed = multiplexedClient != null && Boolean.TRUE.equals(multiplexedHosts.get(host));
+        final HttpClientContext context = HttpClientContext.create();
+        final CompletableFuture<Response> result = new CompletableFuture<Response>();
+
+        CloseableHttpAsyncClient httpClient = multiplexed ? multiplexedClient : pooledClient;
+        inFlight.incrementAndGet();
+        final Future<SimpleHttpResponse> clientFuture = httpClient.execute(
+                SimpleRequestProducer.create(clientRequest),
+                SimpleResponseConsumer.create(),
+                null,
+                context,
+                new FutureCallback<SimpleHttpResponse>() {
+                    @Override
+                    public void completed(SimpleHttpResponse clientResponse) {
+                        if (!multiplexed && multiplexedClient != null && !multiplexedHosts.containsKey(host)) {
+                            ProtocolVersion version = context.getProtocolVersion();
+                            multiplexedHosts.putIfAbsent(host, version != null && version.greaterEquals(HttpVersion.HTTP_2));
+                        }
+                        result.complete(buildResponse(clientResponse));
+                    }
+
+                    @Override
+                    public void failed(Exception e) {
+                        if (multiplexed && (e instanceof H2ConnectionException || e instanceof H2StreamResetException)) {
+                            // Fall back to the pooled client for this host, which will renegotiate the protocol.
+                            multiplexedHosts.put(host, false);
+                        }
+                        result.completeExceptionally(resolveException(e));
+                    }
+
+                    @Override
+                    public void cancelled() {
+                        result.cancel(false);
+                    }
+                });
+
+        result.whenComplete((response, throwable) -> {
+            inFlight.decrementAndGet();
+            if (result.isCompletedExceptionally()) {
+                // Cancelled by the caller or the deadline passed, so the exchange is abandoned.
+                clientFuture.cancel(true);
+            }
+        });
+        if (deadline != null) {
+            deadline.bound(result, "waiting for a response");
+        }
+
+        return Futures.completeOn(result, Futures.orDefault(null));
+
+    }
+
+    /**
+     * Returns whether requests to a host are currently being sent over a multiplexed HTTP/2 connection. This is intended
+     * for monitoring and testing.
+     * @param host Scheme, host name and port, for example https://ws-eu1.brightpearl.com:443.
+     * @return true if HTTP/2 has been negotiated with the host and multiplexing is enabled.
+     */
+    public boolean isMultiplexed(String host) {
+        return Boolean.TRUE.equals(multiplexedHosts.get(host));
+    }
+
+    /**
+     * Rejects new requests, waits for requests in progress to complete up to the timeout given, then closes both clients.
+     * @param timeoutMs maximum time to wait for requests in progress.
+     */
+    void shutdown(long timeoutMs) {
+        shutdown = true;
+        long deadline = System.currentTimeMillis() + timeoutMs;
+        try {
+            while (inFlight.get() > 0 && System.currentTimeMillis() < deadline) {
+                Thread.sleep(50);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            pooledClient.close(CloseMode.GRACEFUL);
+            if (multiplexedClient != null) {
+                multiplexedClient.close(CloseMode.GRACEFUL);
+            }
+        }
+    }
+
+    private SimpleHttpRequest buildRequest(Request request) {
+
+        URI uri;
+        try {
+            uri = URI.create(QueryStringEncoder.appendParameters(request.getUrl(), request.getParameters()));
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Invalid URL: \"" + request.getUrl() + "\"");
+        }
+
+        Method method = request.getMethod();
+        SimpleRequestBuilder builder = SimpleRequestBuilder.create(method.name()).setUri(uri);
+        if ((method == Method.POST || method == Method.PUT) && request.getBody() != null) {
+            builder.setBody(request.getBody(), ContentType.APPLICATION_JSON);
+        }
+        if (request.getHeaders() != null) {
+            for (Map.Entry<String, String> header : request.getHeaders().entrySet()) {
+                builder.setHeader(header.getKey(), header.getValue());
+            }
+        }
+        return builder.build();
+
+    }
+
+    private Response buildResponse(SimpleHttpResponse clientResponse) {
+
+        ResponseBuilder builder = ResponseBuilder.newResponse().withStatus(clientResponse.getCode());
+        for (Header header : clientResponse.getHeaders()) {
+            builder.withHeader(header.getName(), header.getValue());
+        }
+
+        String body = null;
+        byte[] bytes = clientResponse.getBodyBytes();
+        if (bytes != null) {
+            ContentType contentType = clientResponse.getContentType();
+            Charset charset = contentType == null || contentType.getCharset() == null ? UTF8 : contentType.getCharset();
+            body = new String(bytes, charset);
+        }
+
+        return builder.withBody(body).build();
+
+    }
+
+    private String hostKey(SimpleHttpRequest clientRequest) {
+        return clientRequest.getScheme() + "://" + clientRequest.getAuthority();
+    }
+
+    private BrightpearlHttpException resolveException(Exception e) {
+        if (e instanceof ConnectTimeoutException) {
+            return new BrightpearlHttpException(ClientErrorCode.CONNECTION_TIMEOUT, e);
+        } else if (e instanceof SocketTimeoutException) {
+            return new BrightpearlHttpException(ClientErrorCode.SOCKET_TIMEOUT, e);
+        } else if (e instanceof SocketException) {
+            return new BrightpearlHttpException(ClientErrorCode.SOCKET_ERROR, e);
+        } else if (e instanceof UnknownHostException) {
+            return new BrightpearlHttpException(ClientErrorCode.UNKNOWN_HOST, e);
+        } else if (e instanceof NoHttpResponseException || e instanceof ConnectionClosedException) {
+            return new BrightpearlHttpException(ClientErrorCode.NO_RESPONSE, e);
+        } else {
+            return new BrightpearlHttpException(ClientErrorCode.OTHER_TRANSPORT_ERROR, e);
+        }
+    }
+
+}
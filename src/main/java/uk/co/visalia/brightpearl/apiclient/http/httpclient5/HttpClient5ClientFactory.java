@@ -0,0 +1,205 @@
+/*
+ * Copyright 2014 David Morrissey
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package uk.co.visalia.brightpearl.apiclient.http.httpclient5;
+
+import org.apache.hc.client5.http.config.ConnectionConfig;
+import org.apache.hc.client5.http.config.RequestConfig;
+import org.apache.hc.client5.http.config.TlsConfig;
+import org.apache.hc.client5.http.impl.async.CloseableHttpAsyncClient;
+import org.apache.hc.client5.http.impl.async.H2AsyncClientBuilder;
+import org.apache.hc.client5.http.impl.async.HttpAsyncClientBuilder;
+import org.apache.hc.client5.http.impl.nio.PoolingAsyncClientConnectionManager;
+import org.apache.hc.client5.http.impl.nio.PoolingAsyncClientConnectionManagerBuilder;
+import org.apache.hc.core5.http2.HttpVersionPolicy;
+import org.apache.hc.core5.reactor.IOReactorConfig;
+import org.apache.hc.core5.util.Timeout;
+import uk.co.visalia.brightpearl.apiclient.account.Account;
+import uk.co.visalia.brightpearl.apiclient.http.AsyncClient;
+import uk.co.visalia.brightpearl.apiclient.http.AsyncClientFactory;
+import uk.co.visalia.brightpearl.apiclient.http.Client;
+import uk.co.visalia.brightpearl.apiclient.http.ClientFactory;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * An implementation of {@link uk.co.visalia.brightpearl.apiclient.http.ClientFactory} and {@link AsyncClientFactory}
+ * that creates Apache HTTP Components 5 async clients, and returns them wrapped in a single {@link HttpClient5Client}
+ * instance in response to all requests to {@link #getClient(Account)} and {@link #getAsyncClient(Account)}. Requests
+ * are executed by a small number of I/O reactor threads, and when HTTP/2 is enabled and supported by the server,
+ * concurrent requests to a datacenter are multiplexed over a single connection.
+ */
+public class HttpClient5ClientFactory implements ClientFactory, AsyncClientFactory {
+
+    public static final int DEFAULT_MAX_CONNECTIONS = 20;
+    public static final int DEFAULT_MAX_CONNECTIONS_PER_ROUTE = 10;
+    public static final int DEFAULT_CONNECTION_MANAGER_TIMEOUT_MS = 10000;
+    public static final int DEFAULT_CONNECTION_TIMEOUT_MS = 15000;
+    public static final int DEFAULT_SOCKET_TIMEOUT_MS = 60000;
+    public static final boolean DEFAULT_ALLOW_REDIRECTS = false;
+    public static final boolean DEFAULT_HTTP2_ENABLED = true;
+    public static final int DEFAULT_IO_THREADS = Runtime.getRuntime().availableProcessors();
+    public static final int DEFAULT_SHUTDOWN_TIMEOUT_MS = 30000;
+
+    private final int maxConnections;
+    private final int maxConnectionsPerRoute;
+    private final int connectionManagerTimeoutMs;
+    private final int connectionTimeoutMs;
+    private final int socketTimeoutMs;
+    private final boolean allowRedirects;
+    private final boolean http2Enabled;
+    private final int ioThreads;
+    private final int shutdownTimeoutMs;
+
+    private final Object clientLock = new Object();
+    private volatile HttpClient5Client client;
+    private boolean shutdown;
+
+    HttpClient5ClientFactory(
+            int maxConnections,
+            int maxConnectionsPerRoute,
+            int connectionManagerTimeoutMs,
+            int connectionTimeoutMs,
+            int socketTimeoutMs,
+            boolean allowRedirects,
+            boolean http2Enabled,
+            int ioThreads,
+            int shutdownTimeoutMs) {
+        this.maxConnections = maxConnections;
+        this.maxConnectionsPerRoute = maxConnectionsPerRoute;
+        this.connectionManagerTimeoutMs = connectionManagerTimeoutMs;
+        this.connectionTimeoutMs = connectionTimeoutMs;
+        this.socketTimeoutMs = socketTimeoutMs;
+        this.allowRedirects = allowRedirects;
+        this.http2Enabled = http2Enabled;
+        this.ioThreads = ioThreads;
+        this.shutdownTimeoutMs = shutdownTimeoutMs;
+    }
+
+    /**
+     * Returns the same instance of {@link HttpClient5Client} in response to every request.
+     * @param account The Brightpearl customer account a client is required for.
+     * @return a {@link HttpClient5Client} instance.
+     */
+    @Override
+    public Client getClient(Account account) {
+        return getHttpClient5Client();
+    }
+
+    /**
+     * Returns the same instance of {@link HttpClient5Client} in response to every request.
+     * @param account The Brightpearl customer account a client is required for.
+     * @return a {@link HttpClient5Client} instance.
+     */
+    @Override
+    public AsyncClient getAsyncClient(Account account) {
+        return getHttpClient5Client();
+    }
+
+    private HttpClient5Client getHttpClient5Client() {
+        if (client == null) {
+            synchronized (clientLock) {
+                if (shutdown) {
+                    throw new IllegalStateException("Client factory has been shut down");
+                }
+                if (client == null) {
+                    createClient();
+                }
+            }
+        }
+        return client;
+    }
+
+    /**
+     * Stops accepting new requests, waits up to the configured shutdown timeout for requests in progress to complete,
+     * then closes the clients and their I/O reactors.
+     */
+    @Override
+    public void shutdown() {
+        HttpClient5Client client;
+        synchronized (clientLock) {
+            if (shutdown) {
+                return;
+            }
+            shutdown = true;
+            client = this.client;
+        }
+        if (client != null) {
+            client.shutdown(shutdownTimeoutMs);
+        }
+    }
+
+    private void createClient() {
+
+        ConnectionConfig connectionConfig = ConnectionConfig.custom()
+                .setConnectTimeout(connectionTimeoutMs, TimeUnit.MILLISECONDS)
+                .setSocketTimeout(socketTimeoutMs, TimeUnit.MILLISECONDS)
+                .build();
+
+        RequestConfig requestConfig = RequestConfig.custom()
+                .setConnectionRequestTimeout(Timeout.ofMilliseconds(connectionManagerTimeoutMs))
+                .setResponseTimeout(Timeout.ofMilliseconds(socketTimeoutMs))
+                .setRedirectsEnabled(allowRedirects)
+                .build();
+
+        IOReactorConfig ioReactorConfig = IOReactorConfig.custom()
+                .setIoThreadCount(ioThreads)
+                .setSoTimeout(Timeout.ofMilliseconds(socketTimeoutMs))
+                .build();
+
+        TlsConfig tlsConfig = TlsConfig.custom()
+                .setVersionPolicy(http2Enabled ? HttpVersionPolicy.NEGOTIATE : HttpVersionPolicy.FORCE_HTTP_1)
+                .build();
+
+        PoolingAsyncClientConnectionManager connectionManager = PoolingAsyncClientConnectionManagerBuilder.create()
+                .setMaxConnTotal(maxConnections)
+                .setMaxConnPerRoute(maxConnectionsPerRoute)
+                .setDefaultConnectionConfig(connectionConfig)
+                .setDefaultTlsConfig(tlsConfig)
+                .build();
+
+        HttpAsyncClientBuilder pooledBuilder = HttpAsyncClientBuilder.create()
+                .setConnectionManager(connectionManager)
+                .setDefaultRequestConfig(requestConfig)
+                .setIOReactorConfig(ioReactorConfig)
+                .disableCookieManagement()
+                .disableAutomaticRetries();
+        if (!allowRedirects) {
+            pooledBuilder.disableRedirectHandling();
+        }
+        CloseableHttpAsyncClient pooledClient = pooledBuilder.build();
+        pooledClient.start();
+
+        CloseableHttpAsyncClient multiplexedClient = null;
+        if (http2Enabled) {
+            H2AsyncClientBuilder multiplexedBuilder = H2AsyncClientBuilder.create()
+                    .setDefaultConnectionConfig(connectionConfig)
+                    .setDefaultRequestConfig(requestConfig)
+                    .setIOReactorConfig(ioReactorConfig)
+                    .disableCookieManagement()
+                    .disableAutomaticRetries();
+            if (!allowRedirects) {
+                multiplexedBuilder.disableRedirectHandling();
+            }
+            multiplexedClient = multiplexedBuilder.build();
+            multiplexedClient.start();
+        }
+
+        this.client = new HttpClient5Client(pooledClient, multiplexedClient);
+    }
+
+}
@@ -0,0 +1,258 @@
+/*
+ * Copyright 2014 David Morrissey
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package uk.co.visalia.brightpearl.apiclient.http.httpclient5;
+
+/**
+ * <p>
+ * Constructs a configured {@link HttpClient5ClientFactory}. Supports construction in
+ * code using the builder pattern (starting with {@link #httpClient5ClientFactory()})
+ * and usage as a Spring bean factory. For example:
+ * </p>
+ * <pre>
+ * &lt;bean id="httpClient5ClientFactoryBuilder" class="HttpClient5ClientFactoryBuilder"&gt;
+ *     &lt;property name="maxConnections"&gt;20&lt;/property&gt;
+ * &lt;/bean&gt;
+ *
+ * &lt;bean id="httpClient5ClientFactory"
+ *     factory-bean="httpClient5ClientFactoryBuilder"
+ *     factory-method="build"/&gt;
+ * </pre>
+ * <p>
+ * See static fields of {@link HttpClient5ClientFactory} for the default settings applied if methods in this builder are
+ * not used to override them.
+ * </p>
+ */
+public final class HttpClient5ClientFactoryBuilder {
+
+    private int maxConnections = HttpClient5ClientFactory.DEFAULT_MAX_CONNECTIONS;
+    private int maxConnectionsPerRoute = HttpClient5ClientFactory.DEFAULT_MAX_CONNECTIONS_PER_ROUTE;
+    private int connectionManagerTimeoutMs = HttpClient5ClientFactory.DEFAULT_CONNECTION_MANAGER_TIMEOUT_MS;
+    private int connectionTimeoutMs = HttpClient5ClientFactory.DEFAULT_CONNECTION_TIMEOUT_MS;
+    private int socketTimeoutMs = HttpClient5ClientFactory.DEFAULT_SOCKET_TIMEOUT_MS;
+    private boolean allowRedirects = HttpClient5ClientFactory.DEFAULT_ALLOW_REDIRECTS;
+    private boolean http2Enabled = HttpClient5ClientFactory.DEFAULT_HTTP2_ENABLED;
+    private int ioThreads = HttpClient5ClientFactory.DEFAULT_IO_THREADS;
+    private int shutdownTimeoutMs = HttpClient5ClientFactory.DEFAULT_SHUTDOWN_TIMEOUT_MS;
+
+    /**
+     * Static builder method for method chaining, fluent builder style.
+     * @return a new {@link HttpClient5ClientFactoryBuilder} instance.
+     */
+    public static HttpClient5ClientFactoryBuilder httpClient5ClientFactory() {
+        return new HttpClient5ClientFactoryBuilder();
+    }
+
+    /**
+     * Set the maximum total pooled connections allowed across all routes. If creating a client for use with multiple Brightpearl
+     * customer accounts there will be one route per datacenter. Multiplexed HTTP/2 connections are not counted.
+     * @param maxConnections maximum total connections allowed for all routes.
+     */
+    public void setMaxConnections(int maxConnections) {
+        this.maxConnections = maxConnections;
+    }
+
+    /**
+     * Set the maximum connections allowed per route. All Brightpearl customer accounts on a datacenter will share the
+     * same route, so this is not a per-account limit.
+     * @param maxConnectionsPerRoute maximum connections allowed per route.
+     */
+    public void setMaxConnectionsPerRoute(int maxConnectionsPerRoute) {
+        this.maxConnectionsPerRoute = maxConnectionsPerRoute;
+    }
+
+    /**
+     * Sets the connection manager timeout in milliseconds. This is the time a thread will wait for a connection to become
+     * free when the connection pool is exhausted. Use zero for indefinite blocking.
+     * @param connectionManagerTimeoutMs connection manager timeout in milliseconds.
+     */
+    public void setConnectionManagerTimeoutMs(int connectionManagerTimeoutMs) {
+        this.connectionManagerTimeoutMs = connectionManagerTimeoutMs;
+    }
+
+    /**
+     * Set the time in milliseconds to wait for a connection to be established before aborting the request. A value of
+     * zero is interpreted as infinite timeout.
+     * @param connectionTimeoutMs connection timeout in milliseconds.
+     */
+    public void setConnectionTimeoutMs(int connectionTimeoutMs) {
+        this.connectionTimeoutMs = connectionTimeoutMs;
+    }
+
+    /**
+     * Maximum time of inactivity to allow between two consecutive data packets from the server before aborting the
+     * request. A value of zero is interpreted as an infinite timeout.
+     * @param socketTimeoutMs socket timeout in milliseconds.
+     */
+    public void setSocketTimeoutMs(int socketTimeoutMs) {
+        this.socketTimeoutMs = socketTimeoutMs;
+    }
+
+    /**
+     * Set whether redirects should be followed. Redirects are not expected from the Brightpearl API according to the
+     * documentation provided, and this setting is untested.
+     * @param allowRedirects whether redirects should be followed.
+     */
+    public void setAllowRedirects(boolean allowRedirects) {
+        this.allowRedirects = allowRedirects;
+    }
+
+    /**
+     * Set whether HTTP/2 should be negotiated with servers that support it. When enabled, concurrent requests to a host
+     * that has negotiated HTTP/2 are multiplexed over a shared connection, and hosts that only support HTTP/1.1 use the
+     * connection pool. When disabled, HTTP/1.1 is always used.
+     * @param http2Enabled whether HTTP/2 should be used where supported.
+     */
+    public void setHttp2Enabled(boolean http2Enabled) {
+        this.http2Enabled = http2Enabled;
+    }
+
+    /**
+     * Set the number of I/O reactor threads used to execute requests. Each client created has its own reactor, and the
+     * default is one thread per available processor.
+     * @param ioThreads number of I/O threads.
+     */
+    public void setIoThreads(int ioThreads) {
+        this.ioThreads = ioThreads;
+    }
+
+    /**
+     * Set the maximum time in milliseconds {@link HttpClient5ClientFactory#shutdown()} will wait for requests in
+     * progress to complete before closing the clients.
+     * @param shutdownTimeoutMs shutdown timeout in milliseconds.
+     */
+    public void setShutdownTimeoutMs(int shutdownTimeoutMs) {
+        this.shutdownTimeoutMs = shutdownTimeoutMs;
+    }
+
+    /**
+     * Set the maximum total pooled connections allowed across all routes. If creating a client for use with multiple Brightpearl
+     * customer accounts there will be one route per datacenter. Multiplexed HTTP/2 connections are not counted.
+     * @param maxConnections maximum total connections allowed for all routes.
+     * @return builder instance for method chaining.
+     */
+    public HttpClient5ClientFactoryBuilder withMaxConnections(int maxConnections) {
+        this.maxConnections = maxConnections;
+        return this;
+    }
+
+    /**
+     * Set the maximum connections allowed per route. All Brightpearl customer accounts on a datacenter will share the
+     * same route, so this is not a per-account limit.
+     * @param maxConnectionsPerRoute maximum connections allowed per route.
+     * @return builder instance for method chaining.
+     */
+    public HttpClient5ClientFactoryBuilder withMaxConnectionsPerRoute(int maxConnectionsPerRoute) {
+        this.maxConnectionsPerRoute = maxConnectionsPerRoute;
+        return this;
+    }
+
+    /**
+     * Sets the connection manager timeout in milliseconds. This is the time a thread will wait for a connection to become
+     * free when the connection pool is exhausted.
+     * @param connectionManagerTimeoutMs connection manager timeout in milliseconds.
+     * @return builder instance for method chaining.
+     */
+    public HttpClient5ClientFactoryBuilder withConnectionManagerTimeoutMs(int connectionManagerTimeoutMs) {
+        this.connectionManagerTimeoutMs = connectionManagerTimeoutMs;
+        return this;
+    }
+
+    /**
+     * Set the time in milliseconds to wait for a connection to be established before aborting the request. A value of
+     * zero is interpreted as infinite timeout.
+     * @param connectionTimeoutMs connection timeout in milliseconds.
+     * @return builder instance for method chaining.
+     */
+    public HttpClient5ClientFactoryBuilder withConnectionTimeoutMs(int connectionTimeoutMs) {
+        this.connectionTimeoutMs = connectionTimeoutMs;
+        return this;
+    }
+
+    /**
+     * Maximum time of inactivity to allow between two consecutive data packets from the server before aborting the
+     * request. A value of zero is interpreted as an infinite timeout.
+     * @param socketTimeoutMs socket timeout in milliseconds.
+     * @return builder instance for method chaining.
+     */
+    public HttpClient5ClientFactoryBuilder withSocketTimeoutMs(int socketTimeoutMs) {
+        this.socketTimeoutMs = socketTimeoutMs;
+        return this;
+    }
+
+    /**
+     * Set whether redirects should be followed. Redirects are not expected from the Brightpearl API according to the
+     * documentation provided, and this setting is untested.
+     * @param allowRedirects whether redirects should be followed.
+     * @return builder instance for method chaining.
+     */
+    public HttpClient5ClientFactoryBuilder withAllowRedirects(boolean allowRedirects) {
+        this.allowRedirects = allowRedirects;
+        return this;
+    }
+
+    /**
+     * Set whether HTTP/2 should be negotiated with servers that support it. When enabled, concurrent requests to a host
+     * that has negotiated HTTP/2 are multiplexed over a shared connection, and hosts that only support HTTP/1.1 use the
+     * connection pool. When disabled, HTTP/1.1 is always used.
+     * @param http2Enabled whether HTTP/2 should be used where supported.
+     * @return builder instance for method chaining.
+     */
+    public HttpClient5ClientFactoryBuilder withHttp2Enabled(boolean http2Enabled) {
+        this.http2Enabled = http2Enabled;
+        return this;
+    }
+
+    /**
+     * Set the number of I/O reactor threads used to execute requests. Each client created has its own reactor, and the
+     * default is one thread per available processor.
+     * @param ioThreads number of I/O threads.
+     * @return builder instance for method chaining.
+     */
+    public HttpClient5ClientFactoryBuilder withIoThreads(int ioThreads) {
+        this.ioThreads = ioThreads;
+        return this;
+    }
+
+    /**
+     * Set the maximum time in milliseconds {@link HttpClient5ClientFactory#shutdown()} will wait for requests in
+     * progress to complete before closing the clients.
+     * @param shutdownTimeoutMs shutdown timeout in milliseconds.
+     * @return builder instance for method chaining.
+     */
+    public HttpClient5ClientFactoryBuilder withShutdownTimeoutMs(int shutdownTimeoutMs) {
+        this.shutdownTimeoutMs = shutdownTimeoutMs;
+        return this;
+    }
+
+    /**
+     * Builds an immutable {@link HttpClient5ClientFactory} instance with the configuration supplied.
+     * @return a {@link HttpClient5ClientFactory} instance.
+     */
+    public HttpClient5ClientFactory build() {
+        return new HttpClient5ClientFactory(
+                maxConnections,
+                maxConnectionsPerRoute,
+                connectionManagerTimeoutMs,
+                connectionTimeoutMs,
+                socketTimeoutMs,
+                allowRedirects,
+                http2Enabled,
+                ioThreads,
+                shutdownTimeoutMs);
+    }
+
+}
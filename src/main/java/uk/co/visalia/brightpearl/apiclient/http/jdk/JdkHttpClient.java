@@ -0,0 +1,247 @@
+/*
+ * Copyright 2014 David Morrissey
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package uk.co.visalia.brightpearl.apiclient.http.jdk;
+
+import uk.co.visalia.brightpearl.apiclient.exception.BrightpearlHttpException;
+import uk.co.visalia.brightpearl.apiclient.exception.ClientErrorCode;
+import uk.co.visalia.brightpearl.apiclient.http.*;
+import uk.co.visalia.brightpearl.apiclient.util.Deadline;
+import uk.co.visalia.brightpearl.apiclient.util.Futures;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.SocketException;
+import java.net.URI;
+import java.net.UnknownHostException;
+import java.net.http.HttpClient;
+import java.net.http.HttpConnectTimeoutException;
+import java.net.http.HttpHeaders;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.net.http.HttpTimeoutException;
+import java.nio.channels.UnresolvedAddressException;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * <p>
+ * Implementation of {@link uk.co.visalia.brightpearl.apiclient.http.Client} and {@link AsyncClient} using the JDK
+ * {@link HttpClient} introduced in Java 11. This requires no third party libraries.
+ * </p><p>
+ * Blocking requests park the calling thread rather than holding a monitor, so this client is suitable for use from
+ * virtual threads without pinning their carrier threads. Transport failures are mapped to the same
+ * {@link ClientErrorCode}s as {@link uk.co.visalia.brightpearl.apiclient.http.httpclient4.HttpClient4Client}.
+ * </p><p>
+ * When response streaming is enabled, responses are returned as soon as the headers have been received, and the body
+ * is read from the connection by the caller.
+ * </p>
+ */
+public class JdkHttpClient implements Client, AsyncClient {
+
+    private final HttpClient httpClient;
+
+    private final Duration requestTimeout;
+
+    private final boolean streamResponses;
+
+    JdkHttpClient(HttpClient httpClient, Duration requestTimeout, boolean streamResponses) {
+        this.httpClient = httpClient;
+        this.requestTimeout = requestTimeout;
+        this.streamResponses = streamResponses;
+    }
+
+    /**
+     * {@inheritDoc}
+     * @param request The request to be executed.
+     * @return Response from the Brightpearl API.
+     */
+    @Override
+    public Response execute(Request request) {
+        HttpRequest clientRequest = buildRequest(request);
+        try {
+            if (streamResponses) {
+                return buildStreamedResponse(httpClient.send(clientRequest, HttpResponse.BodyHandlers.ofInputStream()));
+            }
+            return buildResponse(httpClient.send(clientRequest, HttpResponse.BodyHandlers.ofString()));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new BrightpearlHttpException(ClientErrorCode.OTHER_TRANSPORT_ERROR, e);
+        } catch (IOException e) {
+            throw resolveException(request, e);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     * @param request The request to be executed.
+     * @return A future that completes with the response from the Brightpearl API.
+     */
+    @Override
+    public CompletableFuture<Response> executeAsync(Request request) {
+        final HttpRequest clientRequest;
+        try {
+            clientRequest = buildRequest(request);
+        } catch (RuntimeException e) {
+            return Futures.failed(e);
+        }
+        final CompletableFuture<Response> result = new CompletableFuture<Response>();
+        final CompletableFuture<Response> clientFuture;
+        if (streamResponses) {
+            clientFuture = httpClient.sendAsync(clientRequest, HttpResponse.BodyHandlers.ofInputStream()).thenApply(this::buildStreamedResponse);
+        } else {
+            clientFuture = httpClient.sendAsync(clientRequest, HttpResponse.BodyHandlers.ofString()).thenApply(this::buildResponse);
+        }
+        clientFuture.whenComplete((response, throwable) -> {
+            if (throwable != null) {
+                Throwable cause = Futures.unwrap(throwable);
+                result.completeExceptionally(cause instanceof Exception ? resolveException(request, (Exception)cause) : cause);
+            } else {
+                result.complete(response);
+            }
+        });
+        result.whenComplete((response, throwable) -> {
+            if (result.isCancelled()) {
+                clientFuture.cancel(true);
+            }
+        });
+        return result;
+    }
+
+    private HttpRequest buildRequest(Request request) {
+
+        String url = QueryStringEncoder.appendParameters(request.getUrl(), request.getParameters());
+
+        URI uri;
+        try {
+            uri = URI.create(url);
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Invalid URL: \"" + request.getUrl() + "\"");
+        }
+
+        HttpRequest.Builder builder = HttpRequest.newBuilder(uri);
+        Deadline deadline = request.getDeadline();
+        if (deadline != null) {
+            deadline.check("before the request was sent");
+            builder.timeout(Duration.ofMillis(deadline.cap(requestTimeout == null ? 0 : requestTimeout.toMillis())));
+        } else if (requestTimeout != null) {
+            builder.timeout(requestTimeout);
+        }
+
+        Method method = request.getMethod();
+        if ((method == Method.POST || method == Method.PUT) && request.getBody() != null) {
+            builder.header("Content-Type", "application/json; charset=UTF-8");
+            builder.method(method.name(), HttpRequest.BodyPublishers.ofString(request.getBody(), StandardCharsets.UTF_8));
+        } else {
+            builder.method(method.name(), HttpRequest.BodyPublishers.noBody());
+        }
+
+        if (request.getHeaders() != null) {
+            for (Map.Entry<String, String> header : request.getHeaders().entrySet()) {
+                builder.setHeader(header.getKey(), header.getValue());
+            }
+        }
+
+        return builder.build();
+
+    }
+
+    private Response buildResponse(HttpResponse<String> clientResponse) {
+        return addHeaders(ResponseBuilder.newResponse(), clientResponse.headers()).withStatus(clientResponse.statusCode()).withBody(clientResponse.body()).build();
+    }
+
+    private Response buildStreamedResponse(HttpResponse<InputStream> clientResponse) {
+        Charset charset = null;
+        String contentType = clientResponse.headers().firstValue("Content-Type").orElse(null);
+        if (contentType != null) {
+            for (String param : contentType.split(";")) {
+                param = param.trim();
+                if (param.regionMatches(true, 0, "charset=", 0, 8)) {
+                    try {
+                        charset = Charset.forName(param.substring(8).replace("\"", "").trim());
+                    } catch (IllegalArgumentException e) {
+                        // Default to UTF-8
+                    }
+                }
+            }
+        }
+        return addHeaders(ResponseBuilder.newResponse(), clientResponse.headers()).withStatus(clientResponse.statusCode()).withBodyStream(clientResponse.body(), charset).build();
+    }
+
+    private ResponseBuilder addHeaders(ResponseBuilder builder, HttpHeaders clientHeaders) {
+        for (Map.Entry<String, List<String>> header : clientHeaders.map().entrySet()) {
+            for (String value : header.getValue()) {
+                builder.withHeader(header.getKey(), value);
+            }
+        }
+        return builder;
+    }
+
+    /*
+     * A timeout caused by the deadline, rather than the configured request timeout, is reported as the deadline passing.
+     */
+    private RuntimeException resolveException(Request request, Exception e) {
+        Deadline deadline = request.getDeadline();
+        if (e instanceof HttpTimeoutException && deadline != null && deadline.isExpired()) {
+            return deadline.exceeded("waiting for a response");
+        }
+        return resolveException(e);
+    }
+
+    /*
+     * The JDK client wraps most failures, so the cause chain is searched for the same exception types that
+     * HttpClient4Client recognises. A connection closed before any response is received is reported as an IOException
+     * or EOFException rather than a dedicated type.
+     */
+    private BrightpearlHttpException resolveException(Exception e) {
+        if (e instanceof HttpConnectTimeoutException) {
+            return new BrightpearlHttpException(ClientErrorCode.CONNECTION_TIMEOUT, e);
+        } else if (e instanceof HttpTimeoutException) {
+            return new BrightpearlHttpException(ClientErrorCode.SOCKET_TIMEOUT, e);
+        } else if (hasCause(e, UnknownHostException.class) || hasCause(e, UnresolvedAddressException.class)) {
+            return new BrightpearlHttpException(ClientErrorCode.UNKNOWN_HOST, e);
+        } else if (hasCause(e, SocketException.class)) {
+            return new BrightpearlHttpException(ClientErrorCode.SOCKET_ERROR, e);
+        } else if (hasCause(e, EOFException.class) || isNoResponse(e)) {
+            return new BrightpearlHttpException(ClientErrorCode.NO_RESPONSE, e);
+        } else {
+            return new BrightpearlHttpException(ClientErrorCode.OTHER_TRANSPORT_ERROR, e);
+        }
+    }
+
+    private boolean hasCause(Throwable throwable, Class<? extends Throwable> type) {
+        for (Throwable cause = throwable; cause != null; cause = cause.getCause()) {
+            if (type.isInstance(cause)) {
+                return true;
+            }
+            if (cause.getCause() == cause) {
+                break;
+            }
+        }
+        return false;
+    }
+
+    private boolean isNoResponse(Exception e) {
+        return e instanceof IOException && e.getMessage() != null && e.getMessage().contains("received no bytes");
+    }
+
+}
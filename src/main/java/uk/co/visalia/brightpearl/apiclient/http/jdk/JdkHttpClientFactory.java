@@ -0,0 +1,116 @@
+/*
+ * Copyright 2014 David Morrissey
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package uk.co.visalia.brightpearl.apiclient.http.jdk;
+
+import uk.co.visalia.brightpearl.apiclient.account.Account;
+import uk.co.visalia.brightpearl.apiclient.http.AsyncClient;
+import uk.co.visalia.brightpearl.apiclient.http.AsyncClientFactory;
+import uk.co.visalia.brightpearl.apiclient.http.Client;
+import uk.co.visalia.brightpearl.apiclient.http.ClientFactory;
+
+import java.net.http.HttpClient;
+import java.time.Duration;
+import java.util.concurrent.Executor;
+
+/**
+ * An implementation of {@link uk.co.visalia.brightpearl.apiclient.http.ClientFactory} and {@link AsyncClientFactory}
+ * that creates a JDK {@link HttpClient}, and returns it wrapped in a single {@link JdkHttpClient} instance in response
+ * to all requests to {@link #getClient(Account)} and {@link #getAsyncClient(Account)}. This implementation requires
+ * Java 11 or later, and has no dependencies on third party HTTP libraries.
+ */
+public class JdkHttpClientFactory implements ClientFactory, AsyncClientFactory {
+
+    public static final int DEFAULT_CONNECTION_TIMEOUT_MS = 15000;
+    public static final int DEFAULT_REQUEST_TIMEOUT_MS = 60000;
+    public static final boolean DEFAULT_ALLOW_REDIRECTS = false;
+    public static final boolean DEFAULT_HTTP2_ENABLED = true;
+    public static final boolean DEFAULT_STREAM_RESPONSES = false;
+
+    private final int connectionTimeoutMs;
+    private final int requestTimeoutMs;
+    private final boolean allowRedirects;
+    private final boolean http2Enabled;
+    private final Executor executor;
+    private final boolean streamResponses;
+
+    private final Object clientLock = new Object();
+    private volatile JdkHttpClient client;
+
+    JdkHttpClientFactory(
+            int connectionTimeoutMs,
+            int requestTimeoutMs,
+            boolean allowRedirects,
+            boolean http2Enabled,
+            Executor executor,
+            boolean streamResponses) {
+        this.connectionTimeoutMs = connectionTimeoutMs;
+        this.requestTimeoutMs = requestTimeoutMs;
+        this.allowRedirects = allowRedirects;
+        this.http2Enabled = http2Enabled;
+        this.executor = executor;
+        this.streamResponses = streamResponses;
+    }
+
+    /**
+     * Returns the same instance of {@link JdkHttpClient} in response to every request.
+     * @param account The Brightpearl customer account a client is required for.
+     * @return a {@link JdkHttpClient} instance.
+     */
+    @Override
+    public Client getClient(Account account) {
+        return getJdkHttpClient();
+    }
+
+    /**
+     * Returns the same instance of {@link JdkHttpClient} in response to every request.
+     * @param account The Brightpearl customer account a client is required for.
+     * @return a {@link JdkHttpClient} instance.
+     */
+    @Override
+    public AsyncClient getAsyncClient(Account account) {
+        return getJdkHttpClient();
+    }
+
+    private JdkHttpClient getJdkHttpClient() {
+        if (client == null) {
+            synchronized (clientLock) {
+                if (client == null) {
+                    createClient();
+                }
+            }
+        }
+        return client;
+    }
+
+    private void createClient() {
+
+        HttpClient.Builder builder = HttpClient.newBuilder()
+                .version(http2Enabled ? HttpClient.Version.HTTP_2 : HttpClient.Version.HTTP_1_1)
+                .followRedirects(allowRedirects ? HttpClient.Redirect.NORMAL : HttpClient.Redirect.NEVER);
+        if (connectionTimeoutMs > 0) {
+            builder.connectTimeout(Duration.ofMillis(connectionTimeoutMs));
+        }
+        if (executor != null) {
+            builder.executor(executor);
+        }
+
+        Duration requestTimeout = requestTimeoutMs > 0 ? Duration.ofMillis(requestTimeoutMs) : null;
+        this.client = new JdkHttpClient(builder.build(), requestTimeout, streamResponses);
+    }
+
+}
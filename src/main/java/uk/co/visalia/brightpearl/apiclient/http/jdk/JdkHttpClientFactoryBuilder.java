@@ -0,0 +1,195 @@
+/*
+ * Copyright 2014 David Morrissey
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package uk.co.visalia.brightpearl.apiclient.http.jdk;
+
+import java.util.concurrent.Executor;
+
+/**
+ * <p>
+ * Constructs a configured {@link JdkHttpClientFactory}. Supports construction in
+ * code using the builder pattern (starting with {@link #jdkHttpClientFactory()})
+ * and usage as a Spring bean factory. For example:
+ * </p>
+ * <pre>
+ * &lt;bean id="jdkHttpClientFactoryBuilder" class="JdkHttpClientFactoryBuilder"&gt;
+ *     &lt;property name="connectionTimeoutMs"&gt;10000&lt;/property&gt;
+ * &lt;/bean&gt;
+ *
+ * &lt;bean id="jdkHttpClientFactory"
+ *     factory-bean="jdkHttpClientFactoryBuilder"
+ *     factory-method="build"/&gt;
+ * </pre>
+ * <p>
+ * See static fields of {@link JdkHttpClientFactory} for the default settings applied if methods in this builder are
+ * not used to override them.
+ * </p>
+ */
+public final class JdkHttpClientFactoryBuilder {
+
+    private int connectionTimeoutMs = JdkHttpClientFactory.DEFAULT_CONNECTION_TIMEOUT_MS;
+    private int requestTimeoutMs = JdkHttpClientFactory.DEFAULT_REQUEST_TIMEOUT_MS;
+    private boolean allowRedirects = JdkHttpClientFactory.DEFAULT_ALLOW_REDIRECTS;
+    private boolean http2Enabled = JdkHttpClientFactory.DEFAULT_HTTP2_ENABLED;
+    private Executor executor;
+    private boolean streamResponses = JdkHttpClientFactory.DEFAULT_STREAM_RESPONSES;
+
+    /**
+     * Static builder method for method chaining, fluent builder style.
+     * @return a new {@link JdkHttpClientFactoryBuilder} instance.
+     */
+    public static JdkHttpClientFactoryBuilder jdkHttpClientFactory() {
+        return new JdkHttpClientFactoryBuilder();
+    }
+
+    /**
+     * Set the time in milliseconds to wait for a connection to be established before aborting the request. A value of
+     * zero is interpreted as infinite timeout.
+     * @param connectionTimeoutMs connection timeout in milliseconds.
+     */
+    public void setConnectionTimeoutMs(int connectionTimeoutMs) {
+        this.connectionTimeoutMs = connectionTimeoutMs;
+    }
+
+    /**
+     * Set the time in milliseconds to wait for the response headers to be received after a request is sent. The JDK
+     * client has no equivalent of a socket timeout between packets, so this is the closest alternative. A value of zero
+     * is interpreted as an infinite timeout.
+     * @param requestTimeoutMs request timeout in milliseconds.
+     */
+    public void setRequestTimeoutMs(int requestTimeoutMs) {
+        this.requestTimeoutMs = requestTimeoutMs;
+    }
+
+    /**
+     * Set whether redirects should be followed. Redirects are not expected from the Brightpearl API according to the
+     * documentation provided, and this setting is untested.
+     * @param allowRedirects whether redirects should be followed.
+     */
+    public void setAllowRedirects(boolean allowRedirects) {
+        this.allowRedirects = allowRedirects;
+    }
+
+    /**
+     * Set whether HTTP/2 should be negotiated with servers that support it. When disabled, HTTP/1.1 is always used.
+     * @param http2Enabled whether HTTP/2 should be used where supported.
+     */
+    public void setHttp2Enabled(boolean http2Enabled) {
+        this.http2Enabled = http2Enabled;
+    }
+
+    /**
+     * Set the executor used by the JDK client for asynchronous tasks and response handling. When not set, the JDK
+     * default cached thread pool is used. On Java 21 and later a virtual thread per task executor may be supplied.
+     * @param executor executor for client tasks.
+     */
+    public void setExecutor(Executor executor) {
+        this.executor = executor;
+    }
+
+    /**
+     * Set whether responses should be returned as soon as the headers are received, so that the body can be parsed
+     * directly from the connection instead of first being read into a string. This reduces the memory required to
+     * handle large responses.
+     * @param streamResponses whether response bodies should be streamed.
+     */
+    public void setStreamResponses(boolean streamResponses) {
+        this.streamResponses = streamResponses;
+    }
+
+    /**
+     * Set the time in milliseconds to wait for a connection to be established before aborting the request. A value of
+     * zero is interpreted as infinite timeout.
+     * @param connectionTimeoutMs connection timeout in milliseconds.
+     * @return builder instance for method chaining.
+     */
+    public JdkHttpClientFactoryBuilder withConnectionTimeoutMs(int connectionTimeoutMs) {
+        this.connectionTimeoutMs = connectionTimeoutMs;
+        return this;
+    }
+
+    /**
+     * Set the time in milliseconds to wait for the response headers to be received after a request is sent. The JDK
+     * client has no equivalent of a socket timeout between packets, so this is the closest alternative. A value of zero
+     * is interpreted as an infinite timeout.
+     * @param requestTimeoutMs request timeout in milliseconds.
+     * @return builder instance for method chaining.
+     */
+    public JdkHttpClientFactoryBuilder withRequestTimeoutMs(int requestTimeoutMs) {
+        this.requestTimeoutMs = requestTimeoutMs;
+        return this;
+    }
+
+    /**
+     * Set whether redirects should be followed. Redirects are not expected from the Brightpearl API according to the
+     * documentation provided, and this setting is untested.
+     * @param allowRedirects whether redirects should be followed.
+     * @return builder instance for method chaining.
+     */
+    public JdkHttpClientFactoryBuilder withAllowRedirects(boolean allowRedirects) {
+        this.allowRedirects = allowRedirects;
+        return this;
+    }
+
+    /**
+     * Set whether HTTP/2 should be negotiated with servers that support it. When disabled, HTTP/1.1 is always used.
+     * @param http2Enabled whether HTTP/2 should be used where supported.
+     * @return builder instance for method chaining.
+     */
+    public JdkHttpClientFactoryBuilder withHttp2Enabled(boolean http2Enabled) {
+        this.http2Enabled = http2Enabled;
+        return this;
+    }
+
+    /**
+     * Set the executor used by the JDK client for asynchronous tasks and response handling. When not set, the JDK
+     * default cached thread pool is used. On Java 21 and later a virtual thread per task executor may be supplied.
+     * @param executor executor for client tasks.
+     * @return builder instance for method chaining.
+     */
+    public JdkHttpClientFactoryBuilder withExecutor(Executor executor) {
+        this.executor = executor;
+        return this;
+    }
+
+    /**
+     * Set whether responses should be returned as soon as the headers are received, so that the body can be parsed
+     * directly from the connection instead of first being read into a string. This reduces the memory required to
+     * handle large responses.
+     * @param streamResponses whether response bodies should be streamed.
+     * @return builder instance for method chaining.
+     */
+    public JdkHttpClientFactoryBuilder withStreamResponses(boolean streamResponses) {
+        this.streamResponses = streamResponses;
+        return this;
+    }
+
+    /**
+     * Builds an immutable {@link JdkHttpClientFactory} instance with the configuration supplied.
+     * @return a {@link JdkHttpClientFactory} instance.
+     */
+    public JdkHttpClientFactory build() {
+        return new JdkHttpClientFactory(
+                connectionTimeoutMs,
+                requestTimeoutMs,
+                allowRedirects,
+                http2Enabled,
+                executor,
+                streamResponses);
+    }
+
+}
@@ -0,0 +1,606 @@
+/*
+ * Copyright 2014 David Morrissey
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package uk.co.visalia.brightpearl.apiclient.http.netty;
+
+import io.netty.bootstrap.Bootstrap;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufOutputStream;
+import io.netty.buffer.ByteBufUtil;
+import io.netty.buffer.PooledByteBufAllocator;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.*;
+import io.netty.channel.epoll.Epoll;
+import io.netty.channel.epoll.EpollEventLoopGroup;
+import io.netty.channel.epoll.EpollSocketChannel;
+import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.pool.AbstractChannelPoolHandler;
+import io.netty.channel.pool.AbstractChannelPoolMap;
+import io.netty.channel.pool.ChannelHealthChecker;
+import io.netty.channel.pool.FixedChannelPool;
+import io.netty.channel.socket.SocketChannel;
+import io.netty.channel.socket.nio.NioSocketChannel;
+import io.netty.handler.codec.PrematureChannelClosureException;
+import io.netty.handler.codec.http.DefaultFullHttpRequest;
+import io.netty.handler.codec.http.FullHttpRequest;
+import io.netty.handler.codec.http.FullHttpResponse;
+import io.netty.handler.codec.http.HttpClientCodec;
+import io.netty.handler.codec.http.HttpContentDecompressor;
+import io.netty.handler.codec.http.HttpHeaderNames;
+import io.netty.handler.codec.http.HttpHeaderValues;
+import io.netty.handler.codec.http.HttpHeaders;
+import io.netty.handler.codec.http.HttpMethod;
+import io.netty.handler.codec.http.HttpObjectAggregator;
+import io.netty.handler.codec.http.HttpUtil;
+import io.netty.handler.codec.http.HttpVersion;
+import io.netty.handler.ssl.SslContext;
+import io.netty.handler.ssl.SslContextBuilder;
+import io.netty.util.AttributeKey;
+import io.netty.util.ReferenceCountUtil;
+import io.netty.util.concurrent.DefaultThreadFactory;
+import io.netty.util.concurrent.FutureListener;
+import uk.co.visalia.brightpearl.apiclient.exception.BrightpearlHttpException;
+import uk.co.visalia.brightpearl.apiclient.exception.ClientErrorCode;
+import uk.co.visalia.brightpearl.apiclient.http.*;
+import uk.co.visalia.brightpearl.apiclient.util.Deadline;
+import uk.co.visalia.brightpearl.apiclient.util.Futures;
+
+import javax.net.ssl.SSLException;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.SocketException;
+import java.net.SocketTimeoutException;
+import java.net.URI;
+import java.net.UnknownHostException;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.UnresolvedAddressException;
+import java.nio.charset.Charset;
+import java.util.Map;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * <p>
+ * Implementation of {@link Client} and {@link AsyncClient} using Netty. Requests are written to pooled HTTP/1.1
+ * connections by the event loop, so async requests hold no thread while waiting for a response, and blocking requests
+ * wait on the future returned by {@link #executeAsync(Request)}. Returned futures are completed on the default async
+ * executor rather than the event loop, so stages added by callers cannot block I/O for other connections.
+ * </p><p>
+ * Request bodies are encoded into pooled direct buffers, with a {@link RequestEntity} written directly into the buffer,
+ * and response bodies are aggregated into pooled buffers that are released once the body has been decoded. Transport
+ * failures are mapped to the same {@link ClientErrorCode}s as
+ * {@link uk.co.visalia.brightpearl.apiclient.http.httpclient4.HttpClient4Client}.
+ * </p>
+ */
+public class NettyClient implements Client, AsyncClient {
+
+    private static final AttributeKey<Exchange> EXCHANGE = AttributeKey.valueOf(NettyClient.class, "exchange");
+
+    private static final String JSON_CONTENT_TYPE = "application/json; charset=UTF-8";
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private final EventLoopGroup eventLoopGroup;
+
+    private final AbstractChannelPoolMap<Origin, FixedChannelPool> pools;
+
+    private final ResponseHandler responseHandler = new ResponseHandler();
+
+    private final int socketTimeoutMs;
+
+    private final int maxResponseSize;
+
+    private final boolean acceptCompression;
+
+    private final AtomicInteger inFlight = new AtomicInteger();
+
+    private volatile SslContext sslContext;
+
+    private volatile boolean shutdown;
+
+    NettyClient(
+            int ioThreads,
+            boolean nativeTransport,
+            int connectionTimeoutMs,
+            int socketTimeoutMs,
+            final int maxConnectionsPerHost,
+            final int maxPendingAcquires,
+            int maxResponseSize,
+            boolean acceptCompression) {
+        this.socketTimeoutMs = socketTimeoutMs;
+        this.maxResponseSize = maxResponseSize;
+        this.acceptCompression = acceptCompression;
+
+        boolean epoll = nativeTransport && EpollTransport.isAvailable();
+        ThreadFactory threadFactory = new DefaultThreadFactory("brightpearl-netty", true);
+        this.eventLoopGroup = epoll ? EpollTransport.createGroup(ioThreads, threadFactory) : new NioEventLoopGroup(ioThreads, threadFactory);
+
+        final Bootstrap bootstrap = new Bootstrap()
+                .group(eventLoopGroup)
+                .channel(epoll ? EpollTransport.channelClass() : NioSocketChannel.class)
+                .option(ChannelOption.ALLOCATOR, PooledByteBufAllocator.DEFAULT)
+                .option(ChannelOption.TCP_NODELAY, true)
+                .option(ChannelOption.SO_KEEPALIVE, true)
+                .option(ChannelOption.CONNECT_TIMEOUT_MILLIS, connectionTimeoutMs);
+
+        // Waiting for a pooled connection counts towards the connection timeout, as with HttpClient 4
+        final FixedChannelPool.AcquireTimeoutAction acquireTimeoutAction = connectionTimeoutMs > 0 ? FixedChannelPool.AcquireTimeoutAction.FAIL : null;
+        final long acquireTimeoutMs = connectionTimeoutMs > 0 ? connectionTimeoutMs : -1;
+        this.pools = new AbstractChannelPoolMap<Origin, FixedChannelPool>() {
+            @Override
+            protected FixedChannelPool newPool(Origin origin) {
+                return new FixedChannelPool(
+                        bootstrap.clone().remoteAddress(origin.address),
+                        new PoolHandler(origin),
+                        ChannelHealthChecker.ACTIVE,
+                        acquireTimeoutAction,
+                        acquireTimeoutMs,
+                        maxConnectionsPerHost,
+                        maxPendingAcquires,
+                        true,
+                        true);
+            }
+        };
+    }
+
+    /**
+     * {@inheritDoc}
+     * @param request The request to be executed.
+     * @return Response from the Brightpearl API.
+     */
+    @Override
+    public Response execute(Request request) {
+        CompletableFuture<Response> future = executeAsync(request);
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            future.cancel(true);
+            Thread.currentThread().interrupt();
+            throw new BrightpearlHttpException(ClientErrorCode.OTHER_TRANSPORT_ERROR, e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException)cause;
+            } else if (cause instanceof Error) {
+                throw (Error)cause;
+            }
+            throw new BrightpearlHttpException(ClientErrorCode.OTHER_TRANSPORT_ERROR, e);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     * @param request The request to be executed.
+     * @return A future that completes with the response from the Brightpearl API.
+     */
+    @Override
+    public CompletableFuture<Response> executeAsync(Request request) {
+        if (shutdown) {
+            return Futures.failed(new IllegalStateException("Netty client has been shut down"));
+        }
+
+        final Deadline deadline = request.getDeadline();
+        final Origin origin;
+        final FullHttpRequest clientRequest;
+        try {
+            if (deadline != null) {
+                deadline.check("before the request was sent");
+            }
+            URI uri = createUri(request);
+            origin = Origin.of(uri);
+            clientRequest = buildRequest(request, uri, origin);
+        } catch (IOException e) {
+            return Futures.failed(new BrightpearlHttpException(ClientErrorCode.OTHER_TRANSPORT_ERROR, e));
+        } catch (RuntimeException e) {
+            return Futures.failed(e);
+        }
+
+        final CompletableFuture<Response> result = new CompletableFuture<Response>();
+        inFlight.incrementAndGet();
+        result.whenComplete((response, throwable) -> inFlight.decrementAndGet());
+        if (deadline != null) {
+            deadline.bound(result, "waiting for a response");
+        }
+
+        final FixedChannelPool pool = pools.get(origin);
+        pool.acquire().addListener((FutureListener<Channel>) acquired -> {
+            if (!acquired.isSuccess()) {
+                ReferenceCountUtil.release(clientRequest);
+                result.completeExceptionally(resolveException(acquired.cause()));
+                return;
+            }
+            Channel channel = acquired.getNow();
+            if (result.isDone()) {
+                // Cancelled, or the deadline passed, while waiting for a connection
+                ReferenceCountUtil.release(clientRequest);
+                pool.release(channel);
+                return;
+            }
+            final Exchange exchange = new Exchange(result, pool, channel);
+            channel.attr(EXCHANGE).set(exchange);
+            exchange.start(clientRequest);
+        });
+        return Futures.completeOn(result, Futures.orDefault(null));
+    }
+
+    /**
+     * Prevents any further requests being made with this client, waits up to the timeout for requests in progress to
+     * complete, then closes all connections and stops the event loop.
+     * @param timeoutMs maximum time to wait for requests in progress.
+     */
+    void shutdown(long timeoutMs) {
+        shutdown = true;
+        long deadline = System.currentTimeMillis() + timeoutMs;
+        try {
+            while (inFlight.get() > 0 && System.currentTimeMillis() < deadline) {
+                Thread.sleep(50);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            pools.close();
+            eventLoopGroup.shutdownGracefully(0, Math.max(0, deadline - System.currentTimeMillis()), TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private URI createUri(Request request) {
+        try {
+            return URI.create(QueryStringEncoder.appendParameters(request.getUrl(), request.getParameters()));
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Invalid URL: \"" + request.getUrl() + "\"");
+        }
+    }
+
+    private FullHttpRequest buildRequest(Request request, URI uri, Origin origin) throws IOException {
+
+        Method method = request.getMethod();
+        boolean hasBody = method == Method.POST || method == Method.PUT;
+
+        ByteBuf content = Unpooled.EMPTY_BUFFER;
+        if (hasBody && request.getEntity() != null) {
+            content = PooledByteBufAllocator.DEFAULT.ioBuffer();
+            try {
+                request.getEntity().writeTo(new ByteBufOutputStream(content));
+            } catch (IOException | RuntimeException e) {
+                content.release();
+                throw e;
+            }
+        } else if (hasBody && request.getBody() != null) {
+            content = ByteBufUtil.writeUtf8(PooledByteBufAllocator.DEFAULT, request.getBody());
+        }
+
+        String path = uri.getRawPath() == null || uri.getRawPath().isEmpty() ? "/" : uri.getRawPath();
+        String target = uri.getRawQuery() == null ? path : path + "?" + uri.getRawQuery();
+        FullHttpRequest clientRequest = new DefaultFullHttpRequest(HttpVersion.HTTP_1_1, HttpMethod.valueOf(method.name()), target, content);
+
+        HttpHeaders headers = clientRequest.headers();
+        headers.set(HttpHeaderNames.HOST, origin.hostHeader);
+        if (hasBody) {
+            headers.set(HttpHeaderNames.CONTENT_TYPE, JSON_CONTENT_TYPE);
+            headers.setInt(HttpHeaderNames.CONTENT_LENGTH, content.readableBytes());
+        }
+        if (acceptCompression) {
+            headers.set(HttpHeaderNames.ACCEPT_ENCODING, HttpHeaderValues.GZIP_DEFLATE);
+        }
+        if (request.getHeaders() != null) {
+            for (Map.Entry<String, String> header : request.getHeaders().entrySet()) {
+                headers.set(header.getKey(), header.getValue());
+            }
+        }
+        return clientRequest;
+
+    }
+
+    private Response buildResponse(FullHttpResponse clientResponse) {
+        ResponseBuilder builder = ResponseBuilder.newResponse().withStatus(clientResponse.status().code());
+        for (Map.Entry<String, String> header : clientResponse.headers()) {
+            builder.withHeader(header.getKey(), header.getValue());
+        }
+        Charset charset = HttpUtil.getCharset(clientResponse, UTF_8);
+        return builder.withBody(clientResponse.content().toString(charset)).build();
+    }
+
+    private SslContext getSslContext() {
+        if (sslContext == null) {
+            synchronized (this) {
+                if (sslContext == null) {
+                    try {
+                        sslContext = SslContextBuilder.forClient().build();
+                    } catch (SSLException e) {
+                        throw new IllegalStateException("SSL context could not be created", e);
+                    }
+                }
+            }
+        }
+        return sslContext;
+    }
+
+    /*
+     * Netty reports connection refused and resets as subclasses of SocketException with NIO, but as its own
+     * NativeIoException with epoll, which is matched by name so the epoll library remains optional.
+     */
+    private BrightpearlHttpException resolveException(Throwable e) {
+        if (e instanceof BrightpearlHttpException) {
+            return (BrightpearlHttpException)e;
+        }
+        Exception exception = e instanceof Exception ? (Exception)e : new ExecutionException(e);
+        if (e instanceof ConnectTimeoutException || e instanceof TimeoutException) {
+            return new BrightpearlHttpException(ClientErrorCode.CONNECTION_TIMEOUT, exception);
+        } else if (hasCause(e, UnknownHostException.class) || hasCause(e, UnresolvedAddressException.class)) {
+            return new BrightpearlHttpException(ClientErrorCode.UNKNOWN_HOST, exception);
+        } else if (e instanceof PrematureChannelClosureException || e instanceof ClosedChannelException) {
+            return new BrightpearlHttpException(ClientErrorCode.NO_RESPONSE, exception);
+        } else if (hasCause(e, SocketException.class) || e.getClass().getName().equals("io.netty.channel.unix.Errors$NativeIoException")) {
+            return new BrightpearlHttpException(ClientErrorCode.SOCKET_ERROR, exception);
+        } else {
+            return new BrightpearlHttpException(ClientErrorCode.OTHER_TRANSPORT_ERROR, exception);
+        }
+    }
+
+    private boolean hasCause(Throwable throwable, Class<? extends Throwable> type) {
+        for (Throwable cause = throwable; cause != null; cause = cause.getCause()) {
+            if (type.isInstance(cause)) {
+                return true;
+            }
+            if (cause.getCause() == cause) {
+                break;
+            }
+        }
+        return false;
+    }
+
+    /*
+     * A request in progress on a leased connection. It is completed once, by the response, a failure, the socket
+     * timeout or cancellation, and then returns the connection to its pool.
+     */
+    private final class Exchange {
+
+        private final CompletableFuture<Response> result;
+
+        private final FixedChannelPool pool;
+
+        private final Channel channel;
+
+        private final AtomicBoolean finished = new AtomicBoolean();
+
+        private volatile ScheduledFuture<?> timeout;
+
+        private Exchange(CompletableFuture<Response> result, FixedChannelPool pool, Channel channel) {
+            this.result = result;
+            this.pool = pool;
+            this.channel = channel;
+        }
+
+        private void start(FullHttpRequest clientRequest) {
+            if (socketTimeoutMs > 0) {
+                timeout = channel.eventLoop().schedule(() -> fail(new BrightpearlHttpException(ClientErrorCode.SOCKET_TIMEOUT,
+                        new SocketTimeoutException("No response received within " + socketTimeoutMs + "ms"))), socketTimeoutMs, TimeUnit.MILLISECONDS);
+            }
+            result.whenComplete((response, throwable) -> {
+                if (result.isCompletedExceptionally()) {
+                    // Closes the connection if the caller cancelled or the deadline passed mid-exchange.
+                    fail(throwable);
+                }
+            });
+            channel.writeAndFlush(clientRequest).addListener((ChannelFutureListener) written -> {
+                if (!written.isSuccess()) {
+                    fail(written.cause());
+                }
+            });
+        }
+
+        private void complete(Response response, boolean keepAlive) {
+            if (finish(!keepAlive)) {
+                result.complete(response);
+            }
+        }
+
+        private void fail(Throwable cause) {
+            if (finish(true)) {
+                result.completeExceptionally(resolveException(cause));
+            }
+        }
+
+        private boolean finish(boolean close) {
+            if (!finished.compareAndSet(false, true)) {
+                return false;
+            }
+            ScheduledFuture<?> timeout = this.timeout;
+            if (timeout != null) {
+                timeout.cancel(false);
+            }
+            channel.attr(EXCHANGE).set(null);
+            if (close) {
+                channel.close();
+            }
+            pool.release(channel);
+            return true;
+        }
+
+    }
+
+    /*
+     * Configures the pipeline of each new connection. Connections are HTTP/1.1, with TLS for https origins.
+     */
+    private final class PoolHandler extends AbstractChannelPoolHandler {
+
+        private final Origin origin;
+
+        private PoolHandler(Origin origin) {
+            this.origin = origin;
+        }
+
+        @Override
+        public void channelCreated(Channel channel) {
+            ChannelPipeline pipeline = channel.pipeline();
+            if (origin.secure) {
+                pipeline.addLast(getSslContext().newHandler(channel.alloc(), origin.host, origin.port));
+            }
+            pipeline.addLast(new HttpClientCodec());
+            if (acceptCompression) {
+                pipeline.addLast(new HttpContentDecompressor());
+            }
+            pipeline.addLast(new HttpObjectAggregator(maxResponseSize));
+            pipeline.addLast(responseHandler);
+        }
+
+    }
+
+    /*
+     * Completes the exchange in progress on a connection. Holds no state, so one instance is shared by all connections.
+     */
+    @ChannelHandler.Sharable
+    private final class ResponseHandler extends SimpleChannelInboundHandler<FullHttpResponse> {
+
+        @Override
+        protected void channelRead0(ChannelHandlerContext ctx, FullHttpResponse clientResponse) {
+            Exchange exchange = ctx.channel().attr(EXCHANGE).get();
+            if (exchange == null) {
+                ctx.close();
+                return;
+            }
+            Response response;
+            try {
+                response = buildResponse(clientResponse);
+            } catch (RuntimeException e) {
+                exchange.fail(e);
+                return;
+            }
+            exchange.complete(response, HttpUtil.isKeepAlive(clientResponse));
+        }
+
+        @Override
+        public void exceptionCaught(ChannelHandlerContext ctx, Throwable cause) {
+            Exchange exchange = ctx.channel().attr(EXCHANGE).get();
+            if (exchange != null) {
+                exchange.fail(cause);
+            } else {
+                ctx.close();
+            }
+        }
+
+        @Override
+        public void channelInactive(ChannelHandlerContext ctx) throws Exception {
+            Exchange exchange = ctx.channel().attr(EXCHANGE).get();
+            if (exchange != null) {
+                exchange.fail(new PrematureChannelClosureException("Connection closed before a response was received"));
+            }
+            super.channelInactive(ctx);
+        }
+
+    }
+
+    /*
+     * The scheme, host and port of a URL, identifying the connection pool used for it.
+     */
+    private static final class Origin {
+
+        private final boolean secure;
+
+        private final String host;
+
+        private final int port;
+
+        private final InetSocketAddress address;
+
+        private final String hostHeader;
+
+        private Origin(boolean secure, String host, int port) {
+            this.secure = secure;
+            this.host = host;
+            this.port = port;
+            this.address = InetSocketAddress.createUnresolved(host, port);
+            this.hostHeader = port == (secure ? 443 : 80) ? host : host + ":" + port;
+        }
+
+        private static Origin of(URI uri) {
+            boolean secure;
+            if ("https".equalsIgnoreCase(uri.getScheme())) {
+                secure = true;
+            } else if ("http".equalsIgnoreCase(uri.getScheme())) {
+                secure = false;
+            } else {
+                throw new IllegalArgumentException("Unsupported URL scheme: \"" + uri.getScheme() + "\"");
+            }
+            if (uri.getHost() == null) {
+                throw new IllegalArgumentException("Invalid URL: \"" + uri + "\"");
+            }
+            int port = uri.getPort() < 0 ? (secure ? 443 : 80) : uri.getPort();
+            return new Origin(secure, uri.getHost(), port);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+            Origin origin = (Origin) o;
+            return secure == origin.secure && port == origin.port && host.equals(origin.host);
+        }
+
+        @Override
+        public int hashCode() {
+            int result = secure ? 1 : 0;
+            result = 31 * result + host.hashCode();
+            result = 31 * result + port;
+            return result;
+        }
+
+    }
+
+    /*
+     * Isolates references to the epoll classes, so that this client can be loaded when the optional native transport
+     * library is absent.
+     */
+    private static final class EpollTransport {
+
+        private static boolean isAvailable() {
+            try {
+                Class.forName("io.netty.channel.epoll.Epoll", false, NettyClient.class.getClassLoader());
+            } catch (ClassNotFoundException e) {
+                return false;
+            }
+            return Native.isAvailable();
+        }
+
+        private static EventLoopGroup createGroup(int threads, ThreadFactory threadFactory) {
+            return Native.createGroup(threads, threadFactory);
+        }
+
+        private static Class<? extends SocketChannel> channelClass() {
+            return Native.channelClass();
+        }
+
+        private static final class Native {
+
+            private static boolean isAvailable() {
+                return Epoll.isAvailable();
+            }
+
+            private static EventLoopGroup createGroup(int threads, ThreadFactory threadFactory) {
+                return new EpollEventLoopGroup(threads, threadFactory);
+            }
+
+            private static Class<? extends SocketChannel> channelClass() {
+                return EpollSocketChannel.class;
+            }
+
+        }
+
+    }
+
+}
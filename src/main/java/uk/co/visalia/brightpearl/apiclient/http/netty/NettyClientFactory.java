@@ -0,0 +1,142 @@
+/*
+ * Copyright 2014 David Morrissey
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package uk.co.visalia.brightpearl.apiclient.http.netty;
+
+import uk.co.visalia.brightpearl.apiclient.account.Account;
+import uk.co.visalia.brightpearl.apiclient.http.AsyncClient;
+import uk.co.visalia.brightpearl.apiclient.http.AsyncClientFactory;
+import uk.co.visalia.brightpearl.apiclient.http.Client;
+import uk.co.visalia.brightpearl.apiclient.http.ClientFactory;
+
+/**
+ * <p>
+ * An implementation of {@link ClientFactory} and {@link AsyncClientFactory} that returns a single {@link NettyClient}
+ * in response to all requests to {@link #getClient(Account)} and {@link #getAsyncClient(Account)}. One event loop
+ * group, with a fixed number of threads, serves every datacenter, and a bounded pool of HTTP/1.1 connections is kept
+ * for each host. Request and response bodies are held in pooled direct buffers.
+ * </p><p>
+ * The native epoll transport is used on Linux when the netty-transport-native-epoll library is present, and the NIO
+ * transport otherwise. This implementation has a dependency on io.netty:netty-codec-http.
+ * </p>
+ */
+public class NettyClientFactory implements ClientFactory, AsyncClientFactory {
+
+    public static final int DEFAULT_IO_THREADS = 0;
+    public static final boolean DEFAULT_NATIVE_TRANSPORT = true;
+    public static final int DEFAULT_CONNECTION_TIMEOUT_MS = 15000;
+    public static final int DEFAULT_SOCKET_TIMEOUT_MS = 60000;
+    public static final int DEFAULT_MAX_CONNECTIONS_PER_HOST = 20;
+    public static final int DEFAULT_MAX_PENDING_ACQUIRES = 10000;
+    public static final int DEFAULT_MAX_RESPONSE_SIZE = 64 * 1024 * 1024;
+    public static final boolean DEFAULT_ACCEPT_COMPRESSION = false;
+    public static final int DEFAULT_SHUTDOWN_TIMEOUT_MS = 30000;
+
+    private final int ioThreads;
+    private final boolean nativeTransport;
+    private final int connectionTimeoutMs;
+    private final int socketTimeoutMs;
+    private final int maxConnectionsPerHost;
+    private final int maxPendingAcquires;
+    private final int maxResponseSize;
+    private final boolean acceptCompression;
+    private final int shutdownTimeoutMs;
+
+    private final Object clientLock = new Object();
+    private volatile NettyClient client;
+    private volatile boolean shutdown;
+
+    NettyClientFactory(
+            int ioThreads,
+            boolean nativeTransport,
+            int connectionTimeoutMs,
+            int socketTimeoutMs,
+            int maxConnectionsPerHost,
+            int maxPendingAcquires,
+            int maxResponseSize,
+            boolean acceptCompression,
+            int shutdownTimeoutMs) {
+        this.ioThreads = ioThreads;
+        this.nativeTransport = nativeTransport;
+        this.connectionTimeoutMs = connectionTimeoutMs;
+        this.socketTimeoutMs = socketTimeoutMs;
+        this.maxConnectionsPerHost = maxConnectionsPerHost;
+        this.maxPendingAcquires = maxPendingAcquires;
+        this.maxResponseSize = maxResponseSize;
+        this.acceptCompression = acceptCompression;
+        this.shutdownTimeoutMs = shutdownTimeoutMs;
+    }
+
+    /**
+     * Returns the same instance of {@link NettyClient} in response to every request.
+     * @param account The Brightpearl customer account a client is required for.
+     * @return a {@link NettyClient} instance.
+     */
+    @Override
+    public Client getClient(Account account) {
+        return getNettyClient();
+    }
+
+    /**
+     * Returns the same instance of {@link NettyClient} in response to every request.
+     * @param account The Brightpearl customer account a client is required for.
+     * @return a {@link NettyClient} instance.
+     */
+    @Override
+    public AsyncClient getAsyncClient(Account account) {
+        return getNettyClient();
+    }
+
+    /**
+     * Stops accepting requests, waits up to the shutdown timeout for requests in progress to complete, then closes all
+     * connections and stops the event loop threads.
+     */
+    @Override
+    public void shutdown() {
+        NettyClient client;
+        synchronized (clientLock) {
+            shutdown = true;
+            client = this.client;
+        }
+        if (client != null) {
+            client.shutdown(shutdownTimeoutMs);
+        }
+    }
+
+    private NettyClient getNettyClient() {
+        if (client == null) {
+            synchronized (clientLock) {
+                if (shutdown) {
+                    throw new IllegalStateException("Client factory has been shut down");
+                }
+                if (client == null) {
+                    client = new NettyClient(
+                            ioThreads,
+                            nativeTransport,
+                            connectionTimeoutMs,
+                            socketTimeoutMs,
+                            maxConnectionsPerHost,
+                            maxPendingAcquires,
+                            maxResponseSize,
+                            acceptCompression);
+                }
+            }
+        }
+        return client;
+    }
+
+}
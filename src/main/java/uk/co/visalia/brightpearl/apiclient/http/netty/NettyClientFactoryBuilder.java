@@ -0,0 +1,255 @@
+/*
+ * Copyright 2014 David Morrissey
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package uk.co.visalia.brightpearl.apiclient.http.netty;
+
+/**
+ * <p>
+ * Constructs a configured {@link NettyClientFactory}. Supports construction in
+ * code using the builder pattern (starting with {@link #nettyClientFactory()})
+ * and usage as a Spring bean factory. For example:
+ * </p>
+ * <pre>
+ * &lt;bean id="nettyClientFactoryBuilder" class="NettyClientFactoryBuilder"&gt;
+ *     &lt;property name="ioThreads"&gt;4&lt;/property&gt;
+ * &lt;/bean&gt;
+ *
+ * &lt;bean id="nettyClientFactory"
+ *     factory-bean="nettyClientFactoryBuilder"
+ *     factory-method="build"/&gt;
+ * </pre>
+ * <p>
+ * See static fields of {@link NettyClientFactory} for the default settings applied if methods in this builder are
+ * not used to override them.
+ * </p>
+ */
+public final class NettyClientFactoryBuilder {
+
+    private int ioThreads = NettyClientFactory.DEFAULT_IO_THREADS;
+    private boolean nativeTransport = NettyClientFactory.DEFAULT_NATIVE_TRANSPORT;
+    private int connectionTimeoutMs = NettyClientFactory.DEFAULT_CONNECTION_TIMEOUT_MS;
+    private int socketTimeoutMs = NettyClientFactory.DEFAULT_SOCKET_TIMEOUT_MS;
+    private int maxConnectionsPerHost = NettyClientFactory.DEFAULT_MAX_CONNECTIONS_PER_HOST;
+    private int maxPendingAcquires = NettyClientFactory.DEFAULT_MAX_PENDING_ACQUIRES;
+    private int maxResponseSize = NettyClientFactory.DEFAULT_MAX_RESPONSE_SIZE;
+    private boolean acceptCompression = NettyClientFactory.DEFAULT_ACCEPT_COMPRESSION;
+    private int shutdownTimeoutMs = NettyClientFactory.DEFAULT_SHUTDOWN_TIMEOUT_MS;
+
+    /**
+     * Static builder method for method chaining, fluent builder style.
+     * @return a new {@link NettyClientFactoryBuilder} instance.
+     */
+    public static NettyClientFactoryBuilder nettyClientFactory() {
+        return new NettyClientFactoryBuilder();
+    }
+
+    /**
+     * Set the number of event loop threads shared by all connections. A value of zero uses the Netty default of twice
+     * the number of available processors.
+     * @param ioThreads number of event loop threads.
+     */
+    public void setIoThreads(int ioThreads) {
+        this.ioThreads = ioThreads;
+    }
+
+    /**
+     * Set whether the native epoll transport should be used when it is available. This requires the
+     * netty-transport-native-epoll library for the platform, and the NIO transport is used when it is absent.
+     * @param nativeTransport whether to use the native transport where available.
+     */
+    public void setNativeTransport(boolean nativeTransport) {
+        this.nativeTransport = nativeTransport;
+    }
+
+    /**
+     * Set the time in milliseconds to wait for a pooled connection to become available or a new connection to be
+     * established before aborting the request. A value of zero is interpreted as infinite timeout.
+     * @param connectionTimeoutMs connection timeout in milliseconds.
+     */
+    public void setConnectionTimeoutMs(int connectionTimeoutMs) {
+        this.connectionTimeoutMs = connectionTimeoutMs;
+    }
+
+    /**
+     * Set the time in milliseconds to wait for the complete response after a request is written. A value of zero is
+     * interpreted as infinite timeout.
+     * @param socketTimeoutMs socket timeout in milliseconds.
+     */
+    public void setSocketTimeoutMs(int socketTimeoutMs) {
+        this.socketTimeoutMs = socketTimeoutMs;
+    }
+
+    /**
+     * Set the maximum number of connections that may be open to each host. Requests made when all connections are in
+     * use wait for one to be released.
+     * @param maxConnectionsPerHost maximum connections per host.
+     */
+    public void setMaxConnectionsPerHost(int maxConnectionsPerHost) {
+        this.maxConnectionsPerHost = maxConnectionsPerHost;
+    }
+
+    /**
+     * Set the maximum number of requests that may wait for a connection to each host. Requests beyond this limit fail
+     * immediately.
+     * @param maxPendingAcquires maximum requests waiting for a connection.
+     */
+    public void setMaxPendingAcquires(int maxPendingAcquires) {
+        this.maxPendingAcquires = maxPendingAcquires;
+    }
+
+    /**
+     * Set the maximum size in bytes of a response body. Larger responses fail with a transport error.
+     * @param maxResponseSize maximum response body size in bytes.
+     */
+    public void setMaxResponseSize(int maxResponseSize) {
+        this.maxResponseSize = maxResponseSize;
+    }
+
+    /**
+     * Set whether gzip and deflate compressed responses should be requested. Compressed responses are decompressed as
+     * they are received.
+     * @param acceptCompression whether to request compressed responses.
+     */
+    public void setAcceptCompression(boolean acceptCompression) {
+        this.acceptCompression = acceptCompression;
+    }
+
+    /**
+     * Set the maximum time in milliseconds that {@link NettyClientFactory#shutdown()} waits for requests in progress to
+     * complete before closing connections.
+     * @param shutdownTimeoutMs shutdown timeout in milliseconds.
+     */
+    public void setShutdownTimeoutMs(int shutdownTimeoutMs) {
+        this.shutdownTimeoutMs = shutdownTimeoutMs;
+    }
+
+    /**
+     * Set the number of event loop threads shared by all connections. A value of zero uses the Netty default of twice
+     * the number of available processors.
+     * @param ioThreads number of event loop threads.
+     * @return builder instance for method chaining.
+     */
+    public NettyClientFactoryBuilder withIoThreads(int ioThreads) {
+        this.ioThreads = ioThreads;
+        return this;
+    }
+
+    /**
+     * Set whether the native epoll transport should be used when it is available. This requires the
+     * netty-transport-native-epoll library for the platform, and the NIO transport is used when it is absent.
+     * @param nativeTransport whether to use the native transport where available.
+     * @return builder instance for method chaining.
+     */
+    public NettyClientFactoryBuilder withNativeTransport(boolean nativeTransport) {
+        this.nativeTransport = nativeTransport;
+        return this;
+    }
+
+    /**
+     * Set the time in milliseconds to wait for a pooled connection to become available or a new connection to be
+     * established before aborting the request. A value of zero is interpreted as infinite timeout.
+     * @param connectionTimeoutMs connection timeout in milliseconds.
+     * @return builder instance for method chaining.
+     */
+    public NettyClientFactoryBuilder withConnectionTimeoutMs(int connectionTimeoutMs) {
+        this.connectionTimeoutMs = connectionTimeoutMs;
+        return this;
+    }
+
+    /**
+     * Set the time in milliseconds to wait for the complete response after a request is written. A value of zero is
+     * interpreted as infinite timeout.
+     * @param socketTimeoutMs socket timeout in milliseconds.
+     * @return builder instance for method chaining.
+     */
+    public NettyClientFactoryBuilder withSocketTimeoutMs(int socketTimeoutMs) {
+        this.socketTimeoutMs = socketTimeoutMs;
+        return this;
+    }
+
+    /**
+     * Set the maximum number of connections that may be open to each host. Requests made when all connections are in
+     * use wait for one to be released.
+     * @param maxConnectionsPerHost maximum connections per host.
+     * @return builder instance for method chaining.
+     */
+    public NettyClientFactoryBuilder withMaxConnectionsPerHost(int maxConnectionsPerHost) {
+        this.maxConnectionsPerHost = maxConnectionsPerHost;
+        return this;
+    }
+
+    /**
+     * Set the maximum number of requests that may wait for a connection to each host. Requests beyond this limit fail
+     * immediately.
+     * @param maxPendingAcquires maximum requests waiting for a connection.
+     * @return builder instance for method chaining.
+     */
+    public NettyClientFactoryBuilder withMaxPendingAcquires(int maxPendingAcquires) {
+        this.maxPendingAcquires = maxPendingAcquires;
+        return this;
+    }
+
+    /**
+     * Set the maximum size in bytes of a response body. Larger responses fail with a transport error.
+     * @param maxResponseSize maximum response body size in bytes.
+     * @return builder instance for method chaining.
+     */
+    public NettyClientFactoryBuilder withMaxResponseSize(int maxResponseSize) {
+        this.maxResponseSize = maxResponseSize;
+        return this;
+    }
+
+    /**
+     * Set whether gzip and deflate compressed responses should be requested. Compressed responses are decompressed as
+     * they are received.
+     * @param acceptCompression whether to request compressed responses.
+     * @return builder instance for method chaining.
+     */
+    public NettyClientFactoryBuilder withAcceptCompression(boolean acceptCompression) {
+        this.acceptCompression = acceptCompression;
+        return this;
+    }
+
+    /**
+     * Set the maximum time in milliseconds that {@link NettyClientFactory#shutdown()} waits for requests in progress to
+     * complete before closing connections.
+     * @param shutdownTimeoutMs shutdown timeout in milliseconds.
+     * @return builder instance for method chaining.
+     */
+    public NettyClientFactoryBuilder withShutdownTimeoutMs(int shutdownTimeoutMs) {
+        this.shutdownTimeoutMs = shutdownTimeoutMs;
+        return this;
+    }
+
+    /**
+     * Builds an immutable {@link NettyClientFactory} instance with the configuration supplied.
+     * @return a {@link NettyClientFactory} instance.
+     */
+    public NettyClientFactory build() {
+        return new NettyClientFactory(
+                ioThreads,
+                nativeTransport,
+                connectionTimeoutMs,
+                socketTimeoutMs,
+                maxConnectionsPerHost,
+                maxPendingAcquires,
+                maxResponseSize,
+                acceptCompression,
+                shutdownTimeoutMs);
+    }
+
+}
@@ -0,0 +1,76 @@
+/*
+ * Copyright 2014 David Morrissey
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package uk.co.visalia.brightpearl.apiclient.http.replay;
+
+import uk.co.visalia.brightpearl.apiclient.http.AsyncClient;
+import uk.co.visalia.brightpearl.apiclient.http.Client;
+import uk.co.visalia.brightpearl.apiclient.http.Request;
+import uk.co.visalia.brightpearl.apiclient.http.Response;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Wraps the clients of another transport, recording each request that receives a response to a trace file. Response
+ * bodies are read in full before the response is returned, so that they can be recorded, which means streamed
+ * responses are buffered. Requests that fail with an exception are not recorded. The token returned by a successful
+ * authorisation request is recorded as a placeholder, so a replayed authorisation succeeds without the trace exposing
+ * the real token. Instances are created by {@link RecordingClientFactory}.
+ */
+public final class RecordingClient implements Client, AsyncClient {
+
+    private final Client client;
+
+    private final AsyncClient asyncClient;
+
+    private final TraceWriter writer;
+
+    RecordingClient(Client client, AsyncClient asyncClient, TraceWriter writer) {
+        this.client = client;
+        this.asyncClient = asyncClient;
+        this.writer = writer;
+    }
+
+    /**
+     * {@inheritDoc}
+     * @param request The request to be executed.
+     * @return Response from the wrapped client.
+     */
+    @Override
+    public Response execute(Request request) {
+        long sentNanos = System.nanoTime();
+        Response response = client.execute(request);
+        return record(request, sentNanos, response);
+    }
+
+    /**
+     * {@inheritDoc}
+     * @param request The request to be executed.
+     * @return A future that completes with the response from the wrapped client.
+     */
+    @Override
+    public CompletableFuture<Response> executeAsync(final Request request) {
+        final long sentNanos = System.nanoTime();
+        return asyncClient.executeAsync(request).thenApply(response -> record(request, sentNanos, response));
+    }
+
+    private Response record(Request request, long sentNanos, Response response) {
+        response.getBody();
+        writer.write(request, sentNanos, System.nanoTime(), response);
+        return response;
+    }
+
+}
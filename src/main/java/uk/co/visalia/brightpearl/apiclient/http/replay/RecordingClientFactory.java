@@ -0,0 +1,100 @@
+/*
+ * Copyright 2014 David Morrissey
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package uk.co.visalia.brightpearl.apiclient.http.replay;
+
+import uk.co.visalia.brightpearl.apiclient.account.Account;
+import uk.co.visalia.brightpearl.apiclient.account.Datacenter;
+import uk.co.visalia.brightpearl.apiclient.http.AsyncClient;
+import uk.co.visalia.brightpearl.apiclient.http.AsyncClientFactory;
+import uk.co.visalia.brightpearl.apiclient.http.Client;
+import uk.co.visalia.brightpearl.apiclient.http.ClientFactory;
+import uk.co.visalia.brightpearl.apiclient.http.ExecutorAsyncClient;
+import uk.co.visalia.brightpearl.apiclient.http.WarmUpResult;
+import uk.co.visalia.brightpearl.apiclient.util.Futures;
+
+import java.io.File;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * <p>
+ * An implementation of {@link ClientFactory} and {@link AsyncClientFactory} that wraps the clients of another factory,
+ * and records every response received with its timing to a trace file. The trace can be served back by
+ * {@link ReplayClientFactory} to run reproducible load tests without calling the Brightpearl API.
+ * </p><p>
+ * If the wrapped factory does not implement {@link AsyncClientFactory}, async requests are run on a shared daemon
+ * executor. The trace file is truncated when the factory is built, and closed by {@link #shutdown()}.
+ * </p>
+ */
+public class RecordingClientFactory implements ClientFactory, AsyncClientFactory {
+
+    private final ClientFactory clientFactory;
+
+    private final TraceWriter writer;
+
+    RecordingClientFactory(ClientFactory clientFactory, File traceFile) {
+        this.clientFactory = clientFactory;
+        this.writer = new TraceWriter(traceFile);
+    }
+
+    /**
+     * Returns a {@link RecordingClient} wrapping the client returned by the wrapped factory.
+     * @param account The Brightpearl customer account a client is required for.
+     * @return a {@link RecordingClient} instance.
+     */
+    @Override
+    public Client getClient(Account account) {
+        return new RecordingClient(clientFactory.getClient(account), null, writer);
+    }
+
+    /**
+     * Returns a {@link RecordingClient} wrapping the async client returned by the wrapped factory.
+     * @param account The Brightpearl customer account a client is required for.
+     * @return a {@link RecordingClient} instance.
+     */
+    @Override
+    public AsyncClient getAsyncClient(Account account) {
+        AsyncClient asyncClient;
+        if (clientFactory instanceof AsyncClientFactory) {
+            asyncClient = ((AsyncClientFactory)clientFactory).getAsyncClient(account);
+        } else {
+            asyncClient = new ExecutorAsyncClient(clientFactory.getClient(account), Futures.orDefault(null));
+        }
+        return new RecordingClient(null, asyncClient, writer);
+    }
+
+    /**
+     * Warms up the wrapped factory. Warm up requests are not recorded.
+     * @param datacenters Datacenters to open connections to.
+     * @param connectionsPerHost Number of connections to open to each datacenter.
+     * @return the outcome for each datacenter.
+     */
+    @Override
+    public List<WarmUpResult> warmUp(Collection<Datacenter> datacenters, int connectionsPerHost) {
+        return clientFactory.warmUp(datacenters, connectionsPerHost);
+    }
+
+    /**
+     * Shuts down the wrapped factory, then closes the trace file. Responses received after this are not recorded.
+     */
+    @Override
+    public void shutdown() {
+        clientFactory.shutdown();
+        writer.close();
+    }
+
+}
@@ -0,0 +1,98 @@
+/*
+ * Copyright 2014 David Morrissey
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package uk.co.visalia.brightpearl.apiclient.http.replay;
+
+import uk.co.visalia.brightpearl.apiclient.http.ClientFactory;
+
+import java.io.File;
+
+/**
+ * <p>
+ * Constructs a configured {@link RecordingClientFactory}. Supports construction in code using the builder pattern
+ * (starting with {@link #recordingClientFactory()}) and usage as a Spring bean factory. For example:
+ * </p>
+ * <pre>
+ * RecordingClientFactory clientFactory = RecordingClientFactoryBuilder.recordingClientFactory()
+ *         .withClientFactory(HttpClient4ClientFactoryBuilder.httpClient4ClientFactory().build())
+ *         .withTraceFile(new File("brightpearl.trace"))
+ *         .build();
+ * </pre>
+ */
+public final class RecordingClientFactoryBuilder {
+
+    private ClientFactory clientFactory;
+    private File traceFile;
+
+    /**
+     * Static builder method for method chaining, fluent builder style.
+     * @return a new {@link RecordingClientFactoryBuilder} instance.
+     */
+    public static RecordingClientFactoryBuilder recordingClientFactory() {
+        return new RecordingClientFactoryBuilder();
+    }
+
+    /**
+     * Set the factory whose clients send requests to the Brightpearl API. Required.
+     * @param clientFactory factory for the transport to be recorded.
+     */
+    public void setClientFactory(ClientFactory clientFactory) {
+        this.clientFactory = clientFactory;
+    }
+
+    /**
+     * Set the file the trace is written to. Any existing file is replaced. Required.
+     * @param traceFile trace file.
+     */
+    public void setTraceFile(File traceFile) {
+        this.traceFile = traceFile;
+    }
+
+    /**
+     * Set the factory whose clients send requests to the Brightpearl API. Required.
+     * @param clientFactory factory for the transport to be recorded.
+     * @return builder instance for method chaining.
+     */
+    public RecordingClientFactoryBuilder withClientFactory(ClientFactory clientFactory) {
+        this.clientFactory = clientFactory;
+        return this;
+    }
+
+    /**
+     * Set the file the trace is written to. Any existing file is replaced. Required.
+     * @param traceFile trace file.
+     * @return builder instance for method chaining.
+     */
+    public RecordingClientFactoryBuilder withTraceFile(File traceFile) {
+        this.traceFile = traceFile;
+        return this;
+    }
+
+    /**
+     * Builds a {@link RecordingClientFactory} instance with the configuration supplied, opening the trace file.
+     * @return a {@link RecordingClientFactory} instance.
+     */
+    public RecordingClientFactory build() {
+        if (clientFactory == null) {
+            throw new IllegalArgumentException("A client factory is required");
+        }
+        if (traceFile == null) {
+            throw new IllegalArgumentException("A trace file is required");
+        }
+        return new RecordingClientFactory(clientFactory, traceFile);
+    }
+
+}
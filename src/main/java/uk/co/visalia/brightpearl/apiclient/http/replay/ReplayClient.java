@@ -0,0 +1,132 @@
+/*
+ * Copyright 2014 David Morrissey
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package uk.co.visalia.brightpearl.apiclient.http.replay;
+
+import uk.co.visalia.brightpearl.apiclient.exception.BrightpearlHttpException;
+import uk.co.visalia.brightpearl.apiclient.exception.ClientErrorCode;
+import uk.co.visalia.brightpearl.apiclient.http.AsyncClient;
+import uk.co.visalia.brightpearl.apiclient.http.Client;
+import uk.co.visalia.brightpearl.apiclient.http.Request;
+import uk.co.visalia.brightpearl.apiclient.http.Response;
+import uk.co.visalia.brightpearl.apiclient.util.Deadline;
+import uk.co.visalia.brightpearl.apiclient.util.Futures;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <p>
+ * A client that serves responses from a trace recorded by {@link RecordingClientFactory}, without making any network
+ * requests. Requests are matched to recorded responses by method, URL and querystring; when a request was recorded
+ * more than once, its responses are served in the order they were recorded, starting again from the first when all
+ * have been used. A request that was not recorded fails with a {@link BrightpearlHttpException}.
+ * </p><p>
+ * When original latencies are enabled, each response is delayed by its recorded latency multiplied by the configured
+ * scale. Async requests are delayed with a timer rather than a sleeping thread, so many can be in flight at once.
+ * Request deadlines are honoured as they would be by a network transport. Instances are created by
+ * {@link ReplayClientFactory}.
+ * </p>
+ */
+public final class ReplayClient implements Client, AsyncClient {
+
+    private final ReplayTrace trace;
+
+    private final boolean originalLatency;
+
+    private final double latencyScale;
+
+    ReplayClient(ReplayTrace trace, boolean originalLatency, double latencyScale) {
+        this.trace = trace;
+        this.originalLatency = originalLatency;
+        this.latencyScale = latencyScale;
+    }
+
+    /**
+     * {@inheritDoc}
+     * @param request The request to be executed.
+     * @return Recorded response.
+     */
+    @Override
+    public Response execute(Request request) {
+        long ref = find(request);
+        long delayNanos = delayNanos(ref);
+        Deadline deadline = request.getDeadline();
+        boolean exceeded = deadline != null && TimeUnit.NANOSECONDS.toMillis(delayNanos) > deadline.remainingMs();
+        if (exceeded) {
+            delayNanos = TimeUnit.MILLISECONDS.toNanos(deadline.remainingMs());
+        }
+        if (delayNanos > 0) {
+            try {
+                TimeUnit.NANOSECONDS.sleep(delayNanos);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new BrightpearlHttpException(ClientErrorCode.OTHER_TRANSPORT_ERROR, e);
+            }
+        }
+        if (exceeded) {
+            throw deadline.exceeded("waiting for a response");
+        }
+        return trace.response(ref);
+    }
+
+    /**
+     * {@inheritDoc}
+     * @param request The request to be executed.
+     * @return A future that completes with the recorded response.
+     */
+    @Override
+    public CompletableFuture<Response> executeAsync(Request request) {
+        final long ref;
+        try {
+            ref = find(request);
+        } catch (RuntimeException e) {
+            return Futures.failed(e);
+        }
+        long delayNanos = delayNanos(ref);
+        if (delayNanos <= 0) {
+            return CompletableFuture.completedFuture(trace.response(ref));
+        }
+        final Response response = trace.response(ref);
+        final CompletableFuture<Response> result = new CompletableFuture<Response>();
+        // Completed on the default executor so that dependent stages do not run on the shared timer thread.
+        Futures.scheduler().schedule(() -> {
+            Futures.orDefault(null).execute(() -> result.complete(response));
+        }, delayNanos, TimeUnit.NANOSECONDS);
+        if (request.getDeadline() != null) {
+            request.getDeadline().bound(result, "waiting for a response");
+        }
+        return result;
+    }
+
+    private long find(Request request) {
+        Deadline deadline = request.getDeadline();
+        if (deadline != null) {
+            deadline.check("before the request was sent");
+        }
+        String key = TraceFormat.key(request);
+        long ref = trace.next(key);
+        if (ref < 0) {
+            throw new BrightpearlHttpException(ClientErrorCode.OTHER_TRANSPORT_ERROR, "No response was recorded for " + key);
+        }
+        return ref;
+    }
+
+    private long delayNanos(long ref) {
+        return originalLatency ? (long)(trace.latencyNanos(ref) * latencyScale) : 0;
+    }
+
+}
@@ -0,0 +1,75 @@
+/*
+ * Copyright 2014 David Morrissey
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package uk.co.visalia.brightpearl.apiclient.http.replay;
+
+import uk.co.visalia.brightpearl.apiclient.account.Account;
+import uk.co.visalia.brightpearl.apiclient.http.AsyncClient;
+import uk.co.visalia.brightpearl.apiclient.http.AsyncClientFactory;
+import uk.co.visalia.brightpearl.apiclient.http.Client;
+import uk.co.visalia.brightpearl.apiclient.http.ClientFactory;
+
+import java.io.File;
+
+/**
+ * An implementation of {@link ClientFactory} and {@link AsyncClientFactory} that serves responses from a trace file
+ * recorded by {@link RecordingClientFactory}, for offline throughput testing of
+ * {@link uk.co.visalia.brightpearl.apiclient.BrightpearlApiClient}. The trace is memory mapped and indexed when the
+ * factory is built, and the same {@link ReplayClient} instance is returned to all calls.
+ */
+public class ReplayClientFactory implements ClientFactory, AsyncClientFactory {
+
+    public static final boolean DEFAULT_ORIGINAL_LATENCY = false;
+    public static final double DEFAULT_LATENCY_SCALE = 1.0;
+
+    private final ReplayTrace trace;
+
+    private final ReplayClient client;
+
+    ReplayClientFactory(File traceFile, boolean originalLatency, double latencyScale) {
+        this.trace = new ReplayTrace(traceFile);
+        this.client = new ReplayClient(trace, originalLatency, latencyScale);
+    }
+
+    /**
+     * Returns the same instance of {@link ReplayClient} in response to every request.
+     * @param account The Brightpearl customer account a client is required for.
+     * @return a {@link ReplayClient} instance.
+     */
+    @Override
+    public Client getClient(Account account) {
+        return client;
+    }
+
+    /**
+     * Returns the same instance of {@link ReplayClient} in response to every request.
+     * @param account The Brightpearl customer account a client is required for.
+     * @return a {@link ReplayClient} instance.
+     */
+    @Override
+    public AsyncClient getAsyncClient(Account account) {
+        return client;
+    }
+
+    /**
+     * Returns the number of exchanges read from the trace file.
+     * @return number of recorded responses available for replay.
+     */
+    public int getExchangeCount() {
+        return trace.getExchangeCount();
+    }
+
+}
@@ -0,0 +1,123 @@
+/*
+ * Copyright 2014 David Morrissey
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package uk.co.visalia.brightpearl.apiclient.http.replay;
+
+import java.io.File;
+
+/**
+ * <p>
+ * Constructs a configured {@link ReplayClientFactory}. Supports construction in code using the builder pattern
+ * (starting with {@link #replayClientFactory()}) and usage as a Spring bean factory. For example:
+ * </p>
+ * <pre>
+ * ReplayClientFactory clientFactory = ReplayClientFactoryBuilder.replayClientFactory()
+ *         .withTraceFile(new File("brightpearl.trace"))
+ *         .withOriginalLatency(true)
+ *         .build();
+ * </pre>
+ * <p>
+ * See static fields of {@link ReplayClientFactory} for the default settings applied if methods in this builder are
+ * not used to override them.
+ * </p>
+ */
+public final class ReplayClientFactoryBuilder {
+
+    private File traceFile;
+    private boolean originalLatency = ReplayClientFactory.DEFAULT_ORIGINAL_LATENCY;
+    private double latencyScale = ReplayClientFactory.DEFAULT_LATENCY_SCALE;
+
+    /**
+     * Static builder method for method chaining, fluent builder style.
+     * @return a new {@link ReplayClientFactoryBuilder} instance.
+     */
+    public static ReplayClientFactoryBuilder replayClientFactory() {
+        return new ReplayClientFactoryBuilder();
+    }
+
+    /**
+     * Set the trace file recorded by {@link RecordingClientFactory}. Required.
+     * @param traceFile trace file.
+     */
+    public void setTraceFile(File traceFile) {
+        this.traceFile = traceFile;
+    }
+
+    /**
+     * Set whether each response should be delayed by the latency recorded for it. When disabled, responses are
+     * returned immediately, which measures the throughput of the client library alone.
+     * @param originalLatency whether recorded latencies should be replayed.
+     */
+    public void setOriginalLatency(boolean originalLatency) {
+        this.originalLatency = originalLatency;
+    }
+
+    /**
+     * Set a multiplier applied to recorded latencies when they are replayed, for example 0.5 to simulate a server
+     * twice as fast.
+     * @param latencyScale latency multiplier.
+     */
+    public void setLatencyScale(double latencyScale) {
+        this.latencyScale = latencyScale;
+    }
+
+    /**
+     * Set the trace file recorded by {@link RecordingClientFactory}. Required.
+     * @param traceFile trace file.
+     * @return builder instance for method chaining.
+     */
+    public ReplayClientFactoryBuilder withTraceFile(File traceFile) {
+        this.traceFile = traceFile;
+        return this;
+    }
+
+    /**
+     * Set whether each response should be delayed by the latency recorded for it. When disabled, responses are
+     * returned immediately, which measures the throughput of the client library alone.
+     * @param originalLatency whether recorded latencies should be replayed.
+     * @return builder instance for method chaining.
+     */
+    public ReplayClientFactoryBuilder withOriginalLatency(boolean originalLatency) {
+        this.originalLatency = originalLatency;
+        return this;
+    }
+
+    /**
+     * Set a multiplier applied to recorded latencies when they are replayed, for example 0.5 to simulate a server
+     * twice as fast.
+     * @param latencyScale latency multiplier.
+     * @return builder instance for method chaining.
+     */
+    public ReplayClientFactoryBuilder withLatencyScale(double latencyScale) {
+        this.latencyScale = latencyScale;
+        return this;
+    }
+
+    /**
+     * Builds a {@link ReplayClientFactory} instance with the configuration supplied, mapping and indexing the trace.
+     * @return a {@link ReplayClientFactory} instance.
+     */
+    public ReplayClientFactory build() {
+        if (traceFile == null) {
+            throw new IllegalArgumentException("A trace file is required");
+        }
+        if (latencyScale < 0) {
+            throw new IllegalArgumentException("Latency scale must not be negative");
+        }
+        return new ReplayClientFactory(traceFile, originalLatency, latencyScale);
+    }
+
+}
@@ -0,0 +1,167 @@
+/*
+ * Copyright 2014 David Morrissey
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package uk.co.visalia.brightpearl.apiclient.http.replay;
+
+import uk.co.visalia.brightpearl.apiclient.exception.BrightpearlClientException;
+import uk.co.visalia.brightpearl.apiclient.http.Response;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A trace file mapped into memory and indexed by request key. Responses are decoded from the mapped file each time
+ * they are served, so the heap holds only the index and traces larger than memory replay from the page cache. The
+ * file is mapped in segments of up to 2GB that each end on a record boundary.
+ */
+final class ReplayTrace {
+
+    private static final long MAX_SEGMENT_SIZE = Integer.MAX_VALUE;
+
+    private final List<MappedByteBuffer> segments = new ArrayList<MappedByteBuffer>();
+
+    private final Map<String, Exchanges> exchanges = new HashMap<String, Exchanges>();
+
+    private int exchangeCount;
+
+    ReplayTrace(File file) {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            long size = channel.size();
+            ByteBuffer magic = ByteBuffer.allocate(TraceFormat.MAGIC.length);
+            if (size < magic.capacity() || channel.read(magic, 0) < magic.capacity() || !Arrays.equals(magic.array(), TraceFormat.MAGIC)) {
+                throw new BrightpearlClientException("File " + file + " is not a Brightpearl trace");
+            }
+            load(channel, TraceFormat.MAGIC.length, size);
+        } catch (IOException e) {
+            throw new BrightpearlClientException("Trace file " + file + " could not be read", e);
+        }
+    }
+
+    /**
+     * Returns a reference to the next response recorded for a request key, cycling back to the first when all have
+     * been served, or -1 if none were recorded.
+     */
+    long next(String key) {
+        Exchanges keyExchanges = exchanges.get(key);
+        return keyExchanges == null ? -1 : keyExchanges.next();
+    }
+
+    Response response(long ref) {
+        return TraceFormat.decodeResponse(segments.get(segment(ref)), position(ref));
+    }
+
+    long latencyNanos(long ref) {
+        return TraceFormat.latencyNanos(segments.get(segment(ref)), position(ref));
+    }
+
+    int getExchangeCount() {
+        return exchangeCount;
+    }
+
+    /*
+     * Maps the file a segment at a time. A record that would cross the end of a segment starts the next one, and an
+     * incomplete record at the end of the file, left if recording was interrupted, is ignored.
+     */
+    private void load(FileChannel channel, long start, long size) throws IOException {
+        Map<String, LongList> index = new HashMap<String, LongList>();
+        long segmentStart = start;
+        while (segmentStart < size) {
+            long segmentSize = Math.min(size - segmentStart, MAX_SEGMENT_SIZE);
+            MappedByteBuffer segment = channel.map(FileChannel.MapMode.READ_ONLY, segmentStart, segmentSize);
+            int segmentIndex = segments.size();
+            segments.add(segment);
+            int position = 0;
+            while (position + 4 <= segmentSize) {
+                int length = segment.getInt(position);
+                if (length <= 0 || position + 4L + length > segmentSize) {
+                    break;
+                }
+                String key = TraceFormat.key(segment, position);
+                LongList refs = index.get(key);
+                if (refs == null) {
+                    refs = new LongList();
+                    index.put(key, refs);
+                }
+                refs.add(((long)segmentIndex << 32) | position);
+                exchangeCount++;
+                position += 4 + length;
+            }
+            if (segmentStart + segmentSize == size) {
+                break;
+            } else if (position == 0) {
+                throw new BrightpearlClientException("Trace contains a record too large to map at offset " + segmentStart);
+            }
+            segmentStart += position;
+        }
+        for (Map.Entry<String, LongList> entry : index.entrySet()) {
+            exchanges.put(entry.getKey(), new Exchanges(entry.getValue().toArray()));
+        }
+    }
+
+    private static int segment(long ref) {
+        return (int)(ref >>> 32);
+    }
+
+    private static int position(long ref) {
+        return (int)ref;
+    }
+
+    private static final class Exchanges {
+
+        private final long[] refs;
+
+        private final AtomicInteger cursor = new AtomicInteger();
+
+        private Exchanges(long[] refs) {
+            this.refs = refs;
+        }
+
+        private long next() {
+            return refs[Math.floorMod(cursor.getAndIncrement(), refs.length)];
+        }
+
+    }
+
+    private static final class LongList {
+
+        private long[] values = new long[4];
+
+        private int size;
+
+        private void add(long value) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            values[size++] = value;
+        }
+
+        private long[] toArray() {
+            return Arrays.copyOf(values, size);
+        }
+
+    }
+
+}
@@ -0,0 +1,177 @@
+/*
+ * Copyright 2014 David Morrissey
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package uk.co.visalia.brightpearl.apiclient.http.replay;
+
+import uk.co.visalia.brightpearl.apiclient.http.Headers;
+import uk.co.visalia.brightpearl.apiclient.http.QueryStringEncoder;
+import uk.co.visalia.brightpearl.apiclient.http.Request;
+import uk.co.visalia.brightpearl.apiclient.http.Response;
+import uk.co.visalia.brightpearl.apiclient.http.ResponseBuilder;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * <p>
+ * Encodes and decodes the records of a trace file. A trace starts with an eight byte magic header, followed by one
+ * record for each exchange, in the order responses were received:
+ * </p>
+ * <pre>
+ * int    length of the rest of the record
+ * long   nanoseconds from the start of the trace to the request being sent
+ * long   nanoseconds from the request being sent to the response being read
+ * string request key: method, URL and sorted querystring
+ * int    response status
+ * int    header count, then a name and value string for each header
+ * int    body length in bytes, or -1 for no body, then the UTF-8 body
+ * </pre>
+ * <p>
+ * Strings are written as an int byte length followed by UTF-8 bytes. Request headers and bodies are not recorded, and
+ * the body of a successful response to an authorisation request, which is the new token, is replaced with a
+ * placeholder token, so traces do not contain authentication tokens or credentials.
+ * </p>
+ */
+final class TraceFormat {
+
+    static final byte[] MAGIC = "BPTRACE1".getBytes(Charset.forName("US-ASCII"));
+
+    /**
+     * Recorded in place of the body of a successful authorisation response.
+     */
+    static final String REDACTED_TOKEN_BODY = "{\"response\":\"redacted\"}";
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private static final String AUTHORISE_PATH = "/authorise";
+
+    private TraceFormat() { }
+
+    /**
+     * Returns the key used to match a replayed request to recorded responses. Parameters are sorted so the key does
+     * not depend on map ordering.
+     */
+    static String key(Request request) {
+        Map<String, String> parameters = request.getParameters() == null ? null : new TreeMap<String, String>(request.getParameters());
+        return request.getMethod() + " " + QueryStringEncoder.appendParameters(request.getUrl(), parameters);
+    }
+
+    /**
+     * Returns the body to be recorded for a response, which is the response body unless the response contains a token.
+     */
+    static String body(Request request, Response response) {
+        boolean authorisation = request.getUrl() != null && request.getUrl().endsWith(AUTHORISE_PATH);
+        if (authorisation && response.getStatus() >= 200 && response.getStatus() < 300) {
+            return REDACTED_TOKEN_BODY;
+        }
+        return response.getBody();
+    }
+
+    /**
+     * Encodes a complete record, including its length prefix. The response body must already have been read, and is
+     * recorded as the body given.
+     */
+    static ByteBuffer encode(String key, long startNanos, long latencyNanos, Response response, String body) {
+        byte[] keyBytes = key.getBytes(UTF_8);
+        Headers headers = response.getHeaderList();
+        byte[][] headerBytes = new byte[headers.size() * 2][];
+        int length = 8 + 8 + 4 + keyBytes.length + 4 + 4 + 4;
+        for (int i = 0; i < headers.size(); i++) {
+            headerBytes[i * 2] = headers.getName(i).getBytes(UTF_8);
+            headerBytes[i * 2 + 1] = headers.getValue(i).getBytes(UTF_8);
+            length += 8 + headerBytes[i * 2].length + headerBytes[i * 2 + 1].length;
+        }
+        byte[] bodyBytes = body == null ? null : body.getBytes(UTF_8);
+        if (bodyBytes != null) {
+            length += bodyBytes.length;
+        }
+
+        ByteBuffer buffer = ByteBuffer.allocate(4 + length);
+        buffer.putInt(length);
+        buffer.putLong(startNanos);
+        buffer.putLong(latencyNanos);
+        putBytes(buffer, keyBytes);
+        buffer.putInt(response.getStatus());
+        buffer.putInt(headers.size());
+        for (byte[] bytes : headerBytes) {
+            putBytes(buffer, bytes);
+        }
+        if (bodyBytes == null) {
+            buffer.putInt(-1);
+        } else {
+            putBytes(buffer, bodyBytes);
+        }
+        buffer.flip();
+        return buffer;
+    }
+
+    /**
+     * Reads the latency of the record at the buffer's position, without moving it.
+     */
+    static long latencyNanos(ByteBuffer buffer, int position) {
+        return buffer.getLong(position + 4 + 8);
+    }
+
+    /**
+     * Reads the key of the record at the buffer's position, without moving it.
+     */
+    static String key(ByteBuffer buffer, int position) {
+        int keyPosition = position + 4 + 8 + 8;
+        return getString(buffer, keyPosition + 4, buffer.getInt(keyPosition));
+    }
+
+    /**
+     * Decodes the response of the record at the given position of the buffer, which is not modified.
+     */
+    static Response decodeResponse(ByteBuffer buffer, int position) {
+        ByteBuffer record = buffer.duplicate();
+        record.position(position + 4 + 8 + 8);
+        record.position(record.position() + 4 + record.getInt());
+        ResponseBuilder builder = ResponseBuilder.newResponse().withStatus(record.getInt());
+        int headerCount = record.getInt();
+        for (int i = 0; i < headerCount; i++) {
+            builder.withHeader(getString(record), getString(record));
+        }
+        int bodyLength = record.getInt();
+        if (bodyLength >= 0) {
+            builder.withBody(getString(record, record.position(), bodyLength));
+        }
+        return builder.build();
+    }
+
+    private static void putBytes(ByteBuffer buffer, byte[] bytes) {
+        buffer.putInt(bytes.length);
+        buffer.put(bytes);
+    }
+
+    private static String getString(ByteBuffer buffer) {
+        int length = buffer.getInt();
+        String string = getString(buffer, buffer.position(), length);
+        buffer.position(buffer.position() + length);
+        return string;
+    }
+
+    private static String getString(ByteBuffer buffer, int position, int length) {
+        byte[] bytes = new byte[length];
+        ByteBuffer source = buffer.duplicate();
+        source.position(position);
+        source.get(bytes);
+        return new String(bytes, UTF_8);
+    }
+
+}
@@ -0,0 +1,87 @@
+/*
+ * Copyright 2014 David Morrissey
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package uk.co.visalia.brightpearl.apiclient.http.replay;
+
+import uk.co.visalia.brightpearl.apiclient.exception.BrightpearlClientException;
+import uk.co.visalia.brightpearl.apiclient.http.Request;
+import uk.co.visalia.brightpearl.apiclient.http.Response;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Appends exchanges to a trace file in the format described by {@link TraceFormat}. Records are encoded on the calling
+ * thread and written under a lock, so they are never interleaved.
+ */
+final class TraceWriter {
+
+    private final FileChannel channel;
+
+    private final long startNanos;
+
+    private boolean closed;
+
+    TraceWriter(File file) {
+        try {
+            this.channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+            writeFully(ByteBuffer.wrap(TraceFormat.MAGIC));
+        } catch (IOException e) {
+            throw new BrightpearlClientException("Trace file " + file + " could not be opened for recording", e);
+        }
+        this.startNanos = System.nanoTime();
+    }
+
+    /**
+     * Records an exchange. The body of a streamed response is read so that it can be recorded, and remains available
+     * from {@link Response#getBody()} and {@link Response#getBodyReader()}.
+     */
+    void write(Request request, long sentNanos, long receivedNanos, Response response) {
+        ByteBuffer record = TraceFormat.encode(TraceFormat.key(request), sentNanos - startNanos, receivedNanos - sentNanos, response, TraceFormat.body(request, response));
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            try {
+                writeFully(record);
+            } catch (IOException e) {
+                throw new BrightpearlClientException("Exchange could not be written to trace file", e);
+            }
+        }
+    }
+
+    synchronized void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try {
+            channel.close();
+        } catch (IOException e) {
+            // Records already written are complete
+        }
+    }
+
+    private void writeFully(ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+}
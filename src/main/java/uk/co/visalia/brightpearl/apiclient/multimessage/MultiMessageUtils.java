@@ -45,18 +45,18 @@ public final class MultiMessageUtils {
             for (int i = 0; i < multiRequest.getRequests().size() - 2; i++) {
                 batch.add(multiRequest.getRequests().get(i));
                 if (batch.size() == 10) {
-                    requests.add(new MultiRequest(batch, multiRequest.getOnFailOption(), multiRequest.getProcessingMode()));
+                    requests.add(new MultiRequest(batch, multiRequest.getOnFailOption(), multiRequest.getProcessingMode(), multiRequest.getDeadlineMs()));
                     batch = new ArrayList<ServiceWriteRequest>();
                 }
             }
             if (batch.size() > 8) {
-                requests.add(new MultiRequest(batch, multiRequest.getOnFailOption(), multiRequest.getProcessingMode()));
+                requests.add(new MultiRequest(batch, multiRequest.getOnFailOption(), multiRequest.getProcessingMode(), multiRequest.getDeadlineMs()));
                 batch = new ArrayList<ServiceWriteRequest>();
             }
 
             batch.add(multiRequest.getRequests().get(multiRequest.getRequests().size() - 2));
             batch.add(multiRequest.getRequests().get(multiRequest.getRequests().size() - 1));
-            requests.add(new MultiRequest(batch, multiRequest.getOnFailOption(), multiRequest.getProcessingMode()));
+            requests.add(new MultiRequest(batch, multiRequest.getOnFailOption(), multiRequest.getProcessingMode(), multiRequest.getDeadlineMs()));
             return requests;
         } else {
             return Arrays.asList(multiRequest);
@@ -35,7 +35,13 @@ public final class MultiRequest {
 
     private final List<ServiceWriteRequest> requests;
 
+    private final long deadlineMs;
+
     MultiRequest(List<ServiceWriteRequest> requests, OnFailOption onFailOption, ProcessingMode processingMode) {
+        this(requests, onFailOption, processingMode, 0);
+    }
+
+    MultiRequest(List<ServiceWriteRequest> requests, OnFailOption onFailOption, ProcessingMode processingMode, long deadlineMs) {
         if (requests == null || requests.size() == 0) {
             throw new IllegalArgumentException("Multi request must have at least one request");
         }
@@ -45,6 +51,7 @@ public final class MultiRequest {
             throw new IllegalArgumentException("Processing mode PARALLEL cannot be used with on-fail option STOP");
         }
         this.requests = Collections.unmodifiableList(requests);
+        this.deadlineMs = deadlineMs;
     }
 
     /**
@@ -73,6 +80,15 @@ public final class MultiRequest {
         return requests;
     }
 
+    /**
+     * The time budget for executing the multimessage, in milliseconds, including all batches when it is split. This
+     * replaces any deadline set on the individual requests. Zero means there is no deadline.
+     * @return the deadline budget in milliseconds, or zero for none.
+     */
+    public long getDeadlineMs() {
+        return deadlineMs;
+    }
+
     /**
      * Returns an individual request by its unique ID.
      * @param id a request unique ID.
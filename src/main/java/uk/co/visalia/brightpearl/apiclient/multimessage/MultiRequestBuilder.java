@@ -34,6 +34,8 @@ public final class MultiRequestBuilder {
 
     private List<ServiceWriteRequest> requests;
 
+    private long deadlineMs;
+
     private MultiRequestBuilder() {
 
     }
@@ -51,7 +53,7 @@ public final class MultiRequestBuilder {
      * @return a {@link MultiRequest} instance.
      */
     public MultiRequest build() {
-        return new MultiRequest(requests, onFailOption, processingMode);
+        return new MultiRequest(requests, onFailOption, processingMode, deadlineMs);
     }
 
     /**
@@ -77,6 +79,23 @@ public final class MultiRequestBuilder {
         return this;
     }
 
+    /**
+     * Set a time budget for executing the multimessage, covering rate limiting, queueing, connection pool lease and
+     * network I/O for all of its batches together. If it passes, the call fails immediately with
+     * {@link uk.co.visalia.brightpearl.apiclient.exception.BrightpearlDeadlineExceededException}, or if a later batch
+     * cannot be sent in time, its requests are returned as unprocessed. This replaces any deadline set on the
+     * individual requests.
+     * @param deadlineMs the budget in milliseconds, or zero for no deadline.
+     * @return builder instance for method chaining.
+     */
+    public MultiRequestBuilder withDeadlineMs(long deadlineMs) {
+        if (deadlineMs < 0) {
+            throw new IllegalArgumentException("Deadline must not be negative");
+        }
+        this.deadlineMs = deadlineMs;
+        return this;
+    }
+
     /**
      * Set the requests to be added to the multimessage batch, replacing any previously set.
      * @param requests requests to be sent in the batch.
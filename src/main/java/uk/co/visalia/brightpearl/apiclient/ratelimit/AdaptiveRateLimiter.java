@@ -0,0 +1,257 @@
+/*
+ * Copyright 2014 David Morrissey
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package uk.co.visalia.brightpearl.apiclient.ratelimit;
+
+import uk.co.visalia.brightpearl.apiclient.account.Account;
+import uk.co.visalia.brightpearl.apiclient.exception.BrightpearlDeadlineExceededException;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <p>
+ * An implementation of {@link RateLimiter} that tracks the request budget remaining for each account in the current
+ * throttle period, using the brightpearl-requests-remaining and brightpearl-next-throttle-period headers returned with
+ * every response. While the remaining budget is above a threshold, requests are sent immediately. Once it drops to the
+ * threshold, the requests left are spread evenly over the time left in the period, and when none are left, requests
+ * wait for the next period to start. This allows bursts that use the whole cap, where {@link ConstantWaitRateLimiter}
+ * spaces every request by the same interval.
+ * </p><p>
+ * Between responses, the budget is reduced locally for each request sent, and a lower value from the headers replaces
+ * it, so requests made by other servers to the same account are taken into account as soon as a response shows them.
+ * Until the first response is received for an account, or when a period ends before a response from the next period
+ * has been received, the configured cap and period are assumed.
+ * </p><p>
+ * Each thread calling {@link #rateLimit(Account)} is blocked until the request may be sent, so this is not suitable for
+ * use as a queue; the async methods of the client use {@link #acquire(Account, long)} and wait on a timer instead.
+ * </p>
+ */
+public class AdaptiveRateLimiter implements AsyncRateLimiter {
+
+    private final int cap;
+
+    private final long periodMs;
+
+    private final int paceBelow;
+
+    private final ConcurrentHashMap<String, Window> windowMap;
+
+    /**
+     * Construct an adaptive rate limiter with the default settings, assuming a cap of 200 requests per minute and
+     * pacing requests once 50 or fewer remain in the period.
+     */
+    public AdaptiveRateLimiter() {
+        this(200, 1, TimeUnit.MINUTES, 50);
+    }
+
+    /**
+     * Construct an adaptive rate limiter with a custom cap and pacing threshold.
+     * @param cap The number of requests assumed to be allowed in each period until a response reports the budget.
+     * @param period The period of time.
+     * @param periodUnit Unit of the period of time.
+     * @param paceBelow The number of remaining requests at or below which requests are spread over the rest of the
+     *                  period. Zero sends requests at full speed until the budget is used up.
+     */
+    public AdaptiveRateLimiter(int cap, int period, TimeUnit periodUnit, int paceBelow) {
+        if (cap <= 0 || period <= 0 || periodUnit == null) {
+            throw new IllegalArgumentException("A positive cap and period must be given");
+        }
+        if (paceBelow < 0) {
+            throw new IllegalArgumentException("Pacing threshold must not be negative");
+        }
+        this.cap = cap;
+        this.periodMs = periodUnit.toMillis(period);
+        this.paceBelow = paceBelow;
+        this.windowMap = new ConcurrentHashMap<String, Window>();
+    }
+
+    /**
+     * Called before a request is made, this sleeps until the request may be sent. There is no wait while the remaining
+     * budget is above the pacing threshold.
+     * @param account The account a request is about to be sent to.
+     */
+    @Override
+    public void rateLimit(Account account) {
+        RateLimiters.sleep(acquire(account));
+    }
+
+    /**
+     * As {@link #rateLimit(Account)}, except that if the wait required is longer than the maximum, no budget is taken
+     * and the exception is thrown immediately without sleeping.
+     * @param account The account a request is about to be sent to.
+     * @param maxWaitMs The longest time the request may wait before it is sent.
+     */
+    @Override
+    public void rateLimit(Account account, long maxWaitMs) {
+        long sleepTime = acquire(account, maxWaitMs);
+        if (sleepTime < 0) {
+            throw new BrightpearlDeadlineExceededException("Deadline would be exceeded waiting for the rate limiter");
+        }
+        RateLimiters.sleep(sleepTime);
+    }
+
+    /**
+     * Takes one request from the remaining budget without sleeping, returning the time until it may be sent.
+     * @param account The account a request will be sent to.
+     * @param maxWaitMs The longest time the request may wait before it is sent.
+     * @return the time in milliseconds to wait, or -1 without taking from the budget if it is longer than the maximum.
+     */
+    @Override
+    public long acquire(Account account, long maxWaitMs) {
+        return getWindow(account).reserve(System.currentTimeMillis(), maxWaitMs);
+    }
+
+    /**
+     * Allows the request and takes one from the remaining budget only if it could be sent without waiting.
+     * @param account The account an optional request would be sent to.
+     * @return true if the request may be sent now.
+     */
+    @Override
+    public boolean tryRateLimit(Account account) {
+        return getWindow(account).reserve(System.currentTimeMillis(), 0) == 0;
+    }
+
+    /**
+     * Updates the remaining budget and the end of the period for the account from response headers.
+     * @param account The account a response has been received from.
+     * @param requestsRemaining The value of the brightpearl-requests-remaining response header.
+     * @param nextThrottlePeriod The value of the brightpearl-next-throttle-period header, in milliseconds.
+     */
+    @Override
+    public void requestCompleted(Account account, int requestsRemaining, long nextThrottlePeriod) {
+        getWindow(account).update(System.currentTimeMillis(), requestsRemaining, nextThrottlePeriod);
+    }
+
+    /**
+     * Marks the budget for the account as used up, so requests wait for the next period. If the end of the period is
+     * not known, requests wait for the interval that would give an even rate across the period.
+     * @param account The account that received a 503 request cap error.
+     */
+    @Override
+    public void requestCapExceeded(Account account) {
+        getWindow(account).exhaust(System.currentTimeMillis());
+    }
+
+    private Window getWindow(Account account) {
+        Window window = windowMap.get(account.getAccountCode());
+        if (window == null) {
+            window = new Window();
+            Window existing = windowMap.putIfAbsent(account.getAccountCode(), window);
+            if (existing != null) {
+                window = existing;
+            }
+        }
+        return window;
+    }
+
+    /*
+     * The budget and end of the current throttle period for one account. Times are in epoch milliseconds.
+     */
+    private final class Window {
+
+        private int remaining = cap;
+
+        private long startAt;
+
+        private long resetAt;
+
+        private long nextSlot;
+
+        /*
+         * False while the period is assumed from the configured cap and period, rather than reported by a response.
+         */
+        private boolean confirmed;
+
+        /*
+         * Returns the time to sleep and takes one request from the budget, or -1 without taking it if the sleep would
+         * be longer than the maximum given. A request that waits for the next period moves the window on to it, so no
+         * request after it may be sent before that period starts.
+         */
+        private synchronized long reserve(long now, long maxWaitMs) {
+            roll(now);
+            long slot = Math.max(now, startAt);
+            if (remaining <= 0) {
+                slot = resetAt;
+            } else if (remaining <= paceBelow) {
+                slot = Math.max(slot, nextSlot);
+            }
+            long sleep = slot - now;
+            if (sleep > maxWaitMs) {
+                return -1;
+            }
+            roll(slot);
+            remaining--;
+            if (remaining <= paceBelow) {
+                nextSlot = remaining > 0 ? slot + (resetAt - slot) / (remaining + 1) : resetAt;
+            }
+            return sleep;
+        }
+
+        private synchronized void update(long now, int requestsRemaining, long nextThrottlePeriod) {
+            long newResetAt = now + Math.max(0, nextThrottlePeriod);
+            if (!confirmed && newResetAt <= startAt) {
+                // A response from the period before one that requests are already waiting for.
+                return;
+            } else if (!confirmed || newResetAt > resetAt + periodMs / 2) {
+                // The first response for an assumed period, or a response from a new period. Either way its count
+                // already includes any requests sent in it, so it replaces the local count.
+                remaining = requestsRemaining;
+                startAt = now;
+                nextSlot = now;
+                confirmed = true;
+            } else if (newResetAt < resetAt - periodMs / 2) {
+                // A late response from a period that has already ended.
+                return;
+            } else {
+                remaining = Math.min(remaining, requestsRemaining);
+            }
+            resetAt = newResetAt;
+        }
+
+        private synchronized void exhaust(long now) {
+            if (startAt > now) {
+                // Requests are already waiting for the next period, so the error is from the one before it.
+                return;
+            }
+            remaining = 0;
+            if (resetAt <= now) {
+                resetAt = now + periodMs / cap;
+                confirmed = false;
+            }
+        }
+
+        /*
+         * Starts a new period with the assumed cap if the current one has ended.
+         */
+        private void roll(long now) {
+            if (now >= resetAt) {
+                if (resetAt == 0 || now - resetAt >= periodMs) {
+                    startAt = now;
+                    resetAt = now + periodMs;
+                } else {
+                    startAt = resetAt;
+                    resetAt += periodMs;
+                }
+                remaining = cap;
+                nextSlot = now;
+                confirmed = false;
+            }
+        }
+
+    }
+
+}
@@ -0,0 +1,57 @@
+/*
+ * Copyright 2014 David Morrissey
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package uk.co.visalia.brightpearl.apiclient.ratelimit;
+
+import uk.co.visalia.brightpearl.apiclient.account.Account;
+
+/**
+ * <p>
+ * Interface for rate limiters that can reserve a request slot without blocking, returning the time the caller must wait
+ * before sending the request instead of sleeping for it. When the {@link RateLimiter} supplied to
+ * {@link uk.co.visalia.brightpearl.apiclient.BrightpearlApiClientFactory} also implements this interface, the async
+ * methods of {@link uk.co.visalia.brightpearl.apiclient.BrightpearlApiClient} schedule throttled requests on a timer,
+ * so no thread is held while they wait.
+ * </p><p>
+ * Rate limiters that do not implement this interface are still supported by the async methods, but they are called on
+ * an executor, so each throttled request occupies a thread while it waits. The blocking methods of
+ * {@link RateLimiter} continue to be used by the synchronous methods.
+ * </p>
+ */
+public interface AsyncRateLimiter extends RateLimiter {
+
+    /**
+     * Reserves a slot for a request to the given account and returns the time until it may be sent, without blocking.
+     * The slot is taken as soon as this method returns, so the caller should send the request once the delay has passed
+     * even if it is no longer needed.
+     * @param account The account a request will be sent to.
+     * @return the time in milliseconds to wait before sending the request, or zero if it may be sent now.
+     */
+    default long acquire(Account account) {
+        return acquire(account, Long.MAX_VALUE);
+    }
+
+    /**
+     * As {@link #acquire(Account)}, except that if the request could not be sent within the maximum wait given, no slot
+     * is reserved and -1 is returned.
+     * @param account The account a request will be sent to.
+     * @param maxWaitMs The longest time the request may wait before it is sent.
+     * @return the time in milliseconds to wait before sending the request, zero if it may be sent now, or -1 if the wait
+     * would be longer than the maximum.
+     */
+    long acquire(Account account, long maxWaitMs);
+
+}
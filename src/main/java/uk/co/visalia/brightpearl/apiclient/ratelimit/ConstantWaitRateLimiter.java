@@ -17,9 +17,11 @@
 package uk.co.visalia.brightpearl.apiclient.ratelimit;
 
 import uk.co.visalia.brightpearl.apiclient.account.Account;
+import uk.co.visalia.brightpearl.apiclient.exception.BrightpearlDeadlineExceededException;
 
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * <p>
@@ -35,7 +37,7 @@ import java.util.concurrent.TimeUnit;
  * account unexpectedly being throttled.
  * </p>
  */
-public class ConstantWaitRateLimiter implements RateLimiter {
+public class ConstantWaitRateLimiter implements AsyncRateLimiter {
 
     private final int cap;
 
@@ -45,7 +47,7 @@ public class ConstantWaitRateLimiter implements RateLimiter {
 
     private final long minimumPeriod;
 
-    private final ConcurrentHashMap<String, Long> lastRequestMap;
+    private final ConcurrentHashMap<String, AtomicLong> lastRequestMap;
 
     /**
      * Construct a constant wait rate limiter with the default settings, limiting requests to 200 per minute. This is
@@ -66,7 +68,7 @@ public class ConstantWaitRateLimiter implements RateLimiter {
         this.cap = cap;
         this.period = period;
         this.periodUnit = periodUnit;
-        this.lastRequestMap = new ConcurrentHashMap<String, Long>();
+        this.lastRequestMap = new ConcurrentHashMap<String, AtomicLong>();
         this.minimumPeriod = minimumPeriod();
     }
 
@@ -79,14 +81,44 @@ public class ConstantWaitRateLimiter implements RateLimiter {
      */
     @Override
     public void rateLimit(Account account) {
-        long sleepTime = getSleepTime(account);
-        if (sleepTime > 0) {
-            try {
-                Thread.sleep(sleepTime);
-            } catch (InterruptedException e) {
-                // Continue with request.
-            }
+        RateLimiters.sleep(acquire(account));
+    }
+
+    /**
+     * As {@link #rateLimit(Account)}, except that if the wait required is longer than the maximum, no time slot is
+     * taken and the exception is thrown immediately without sleeping.
+     * @param account The account a request is about to be sent to.
+     * @param maxWaitMs The longest time the request may wait before it is sent.
+     */
+    @Override
+    public void rateLimit(Account account, long maxWaitMs) {
+        long sleepTime = acquire(account, maxWaitMs);
+        if (sleepTime < 0) {
+            throw new BrightpearlDeadlineExceededException("Deadline would be exceeded waiting for the rate limiter");
         }
+        RateLimiters.sleep(sleepTime);
+    }
+
+    /**
+     * Reserves the next slot for the account without sleeping, returning the time until it starts.
+     * @param account The account a request will be sent to.
+     * @param maxWaitMs The longest time the request may wait before it is sent.
+     * @return the time in milliseconds to wait, or -1 without reserving the slot if it is longer than the maximum.
+     */
+    @Override
+    public long acquire(Account account, long maxWaitMs) {
+        return getSleepTime(account, maxWaitMs);
+    }
+
+    /**
+     * Allows the request and records it as the most recent request to the account only if the minimum period has
+     * already passed since the previous request, so the request would not have to wait.
+     * @param account The account an optional request would be sent to.
+     * @return true if the request may be sent now.
+     */
+    @Override
+    public boolean tryRateLimit(Account account) {
+        return getSleepTime(account, 0) == 0;
     }
 
     /**
@@ -113,17 +145,37 @@ public class ConstantWaitRateLimiter implements RateLimiter {
         return periodMs/cap;
     }
 
-    private synchronized long getSleepTime(Account account) {
-        long timeNow = System.currentTimeMillis();
-        Long lastRequest = lastRequestMap.get(account.getAccountCode());
-        if (lastRequest != null && (timeNow - lastRequest < minimumPeriod)) {
-            long sleep = minimumPeriod - (timeNow - lastRequest);
-            lastRequestMap.put(account.getAccountCode(), timeNow + sleep);
-            return sleep;
-        } else {
-            lastRequestMap.put(account.getAccountCode(), timeNow);
-            return 0;
+    /*
+     * Returns the time to sleep and records the slot taken, or -1 without recording it if the sleep would be longer than
+     * the maximum given. The slot is reserved by compare-and-set on the account's last request time, so threads only
+     * contend with others sending to the same account.
+     */
+    private long getSleepTime(Account account, long maxWaitMs) {
+        AtomicLong lastRequest = getLastRequest(account);
+        while (true) {
+            long timeNow = System.currentTimeMillis();
+            long last = lastRequest.get();
+            long slot = Math.max(timeNow, last + minimumPeriod);
+            long sleep = slot - timeNow;
+            if (sleep > maxWaitMs) {
+                return -1;
+            }
+            if (lastRequest.compareAndSet(last, slot)) {
+                return sleep;
+            }
+        }
+    }
+
+    private AtomicLong getLastRequest(Account account) {
+        AtomicLong lastRequest = lastRequestMap.get(account.getAccountCode());
+        if (lastRequest == null) {
+            lastRequest = new AtomicLong(Long.MIN_VALUE / 2);
+            AtomicLong existing = lastRequestMap.putIfAbsent(account.getAccountCode(), lastRequest);
+            if (existing != null) {
+                lastRequest = existing;
+            }
         }
+        return lastRequest;
     }
 
 }
@@ -0,0 +1,52 @@
+/*
+ * Copyright 2014 David Morrissey
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package uk.co.visalia.brightpearl.apiclient.ratelimit;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A {@link RateLimitStore} that keeps its values in memory, so is shared only by the limiters in one process that are
+ * given the same instance. This is the default store of {@link TokenBucketRateLimiter}.
+ */
+public class InMemoryRateLimitStore implements RateLimitStore {
+
+    private final ConcurrentHashMap<String, AtomicLong> valueMap = new ConcurrentHashMap<String, AtomicLong>();
+
+    @Override
+    public long get(String key) {
+        return getValue(key).get();
+    }
+
+    @Override
+    public boolean compareAndSet(String key, long expect, long update) {
+        return getValue(key).compareAndSet(expect, update);
+    }
+
+    private AtomicLong getValue(String key) {
+        AtomicLong value = valueMap.get(key);
+        if (value == null) {
+            value = new AtomicLong();
+            AtomicLong existing = valueMap.putIfAbsent(key, value);
+            if (existing != null) {
+                value = existing;
+            }
+        }
+        return value;
+    }
+
+}
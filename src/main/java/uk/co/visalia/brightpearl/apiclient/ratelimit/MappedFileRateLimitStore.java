@@ -0,0 +1,236 @@
+/*
+ * Copyright 2014 David Morrissey
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package uk.co.visalia.brightpearl.apiclient.ratelimit;
+
+import uk.co.visalia.brightpearl.apiclient.exception.BrightpearlClientException;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.Charset;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * <p>
+ * A {@link RateLimitStore} that keeps its values in a memory-mapped file, so processes on the same machine that open
+ * the same file share them. Values are held in a fixed number of slots, each claimed by the first process to use a
+ * key. Keys are identified by a 64 bit hash, so two keys could share a slot, which would only make their limits
+ * stricter.
+ * </p><p>
+ * Values are read directly from the mapped file. Each compare-and-set holds a lock on the slot's region of the file,
+ * so it is atomic across processes, as well as a lock shared by stores in this process, as file locks are held on
+ * behalf of the whole JVM. The file is created if it does not exist. Once created, its number of slots is fixed, and
+ * the number given by later processes is ignored.
+ * </p>
+ */
+public class MappedFileRateLimitStore implements RateLimitStore, Closeable {
+
+    public static final int DEFAULT_SLOTS = 4096;
+
+    private static final long MAGIC = 0x4250524154453031L; // BPRATE01
+    private static final int HEADER_SIZE = 16;
+    private static final int SLOT_SIZE = 16;
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private static final Object OPEN_LOCK = new Object();
+    private static final Object[] LOCKS = new Object[64];
+
+    static {
+        for (int i = 0; i < LOCKS.length; i++) {
+            LOCKS[i] = new Object();
+        }
+    }
+
+    private final File file;
+
+    private final FileChannel channel;
+
+    private final MappedByteBuffer buffer;
+
+    private final int slots;
+
+    private final ConcurrentHashMap<String, Integer> slotMap = new ConcurrentHashMap<String, Integer>();
+
+    /**
+     * Opens a store with the default of 4096 slots, creating the file if it does not exist.
+     * @param file The file shared by processes using the store.
+     */
+    public MappedFileRateLimitStore(File file) {
+        this(file, DEFAULT_SLOTS);
+    }
+
+    /**
+     * Opens a store, creating the file with the given number of slots if it does not exist.
+     * @param file The file shared by processes using the store.
+     * @param slots The number of keys the file can hold, if it is created.
+     */
+    public MappedFileRateLimitStore(File file, int slots) {
+        if (file == null) {
+            throw new IllegalArgumentException("A store file is required");
+        }
+        if (slots <= 0 || slots > (Integer.MAX_VALUE - HEADER_SIZE) / SLOT_SIZE) {
+            throw new IllegalArgumentException("Number of slots must be positive and fit in a 2GB file");
+        }
+        this.file = file;
+        try {
+            this.channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        } catch (IOException e) {
+            throw new BrightpearlClientException("Rate limit store " + file + " could not be opened", e);
+        }
+        try {
+            this.slots = readHeader(slots);
+            this.buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_SIZE + (long)this.slots * SLOT_SIZE);
+        } catch (IOException | RuntimeException e) {
+            try {
+                channel.close();
+            } catch (IOException closeException) {
+                // Report the original failure.
+            }
+            if (e instanceof BrightpearlClientException) {
+                throw (BrightpearlClientException)e;
+            }
+            throw new BrightpearlClientException("Rate limit store " + file + " could not be opened", e);
+        }
+    }
+
+    @Override
+    public long get(String key) {
+        return buffer.getLong(position(getSlot(key)) + 8);
+    }
+
+    @Override
+    public boolean compareAndSet(String key, long expect, long update) {
+        int slot = getSlot(key);
+        int position = position(slot);
+        synchronized (LOCKS[slot % LOCKS.length]) {
+            try {
+                FileLock lock = channel.lock(position, SLOT_SIZE, false);
+                try {
+                    if (buffer.getLong(position + 8) != expect) {
+                        return false;
+                    }
+                    buffer.putLong(position + 8, update);
+                    return true;
+                } finally {
+                    lock.release();
+                }
+            } catch (IOException e) {
+                throw new BrightpearlClientException("Rate limit store " + file + " could not be locked", e);
+            }
+        }
+    }
+
+    /**
+     * Closes the file. The mapping remains valid until it is garbage collected, but the store must not be used again.
+     */
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    /*
+     * Writes the header if the file is new, or one whose creator failed before finishing it, and returns the number of
+     * slots in the file.
+     */
+    private int readHeader(int slots) throws IOException {
+        synchronized (OPEN_LOCK) {
+            FileLock lock = channel.lock(0, HEADER_SIZE, false);
+            try {
+                MappedByteBuffer header = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_SIZE);
+                long magic = header.getLong(0);
+                if (magic == 0) {
+                    header.putLong(8, slots);
+                    header.putLong(0, MAGIC);
+                } else if (magic != MAGIC) {
+                    throw new BrightpearlClientException("File " + file + " is not a rate limit store");
+                }
+                return (int)header.getLong(8);
+            } finally {
+                lock.release();
+            }
+        }
+    }
+
+    /*
+     * Finds the slot holding the key's hash by linear probing, claiming the first empty slot if it is not found.
+     */
+    private int getSlot(String key) {
+        Integer slot = slotMap.get(key);
+        if (slot != null) {
+            return slot;
+        }
+        long hash = hash(key);
+        int start = (int)((hash & Long.MAX_VALUE) % slots);
+        for (int i = 0; i < slots; i++) {
+            int candidate = (start + i) % slots;
+            if (claim(candidate, hash)) {
+                slotMap.put(key, candidate);
+                return candidate;
+            }
+        }
+        throw new BrightpearlClientException("Rate limit store " + file + " has no free slots");
+    }
+
+    /*
+     * Returns true if the slot holds the hash, writing it first if the slot is empty.
+     */
+    private boolean claim(int slot, long hash) {
+        int position = position(slot);
+        long existing = buffer.getLong(position);
+        if (existing != 0) {
+            return existing == hash;
+        }
+        synchronized (LOCKS[slot % LOCKS.length]) {
+            try {
+                FileLock lock = channel.lock(position, SLOT_SIZE, false);
+                try {
+                    existing = buffer.getLong(position);
+                    if (existing == 0) {
+                        buffer.putLong(position, hash);
+                        return true;
+                    }
+                    return existing == hash;
+                } finally {
+                    lock.release();
+                }
+            } catch (IOException e) {
+                throw new BrightpearlClientException("Rate limit store " + file + " could not be locked", e);
+            }
+        }
+    }
+
+    private static int position(int slot) {
+        return HEADER_SIZE + slot * SLOT_SIZE;
+    }
+
+    /*
+     * FNV-1a hash of the key's UTF-8 bytes. Zero marks an empty slot so is never returned.
+     */
+    private static long hash(String key) {
+        long hash = 0xcbf29ce484222325L;
+        for (byte b : key.getBytes(UTF_8)) {
+            hash ^= b & 0xff;
+            hash *= 0x100000001b3L;
+        }
+        return hash == 0 ? 1 : hash;
+    }
+
+}
@@ -23,7 +23,7 @@ import uk.co.visalia.brightpearl.apiclient.account.Account;
  * the client. Suitable for use anywhere the request cap is unlikely to be reached, when another strategy is in place
  * for limiting the rate of requests, or when the client is set up to recover from rate limit errors automatically.
  */
-public class NoOpRateLimiter implements RateLimiter {
+public class NoOpRateLimiter implements AsyncRateLimiter {
 
     /**
      * This implementation does nothing.
@@ -32,6 +32,22 @@ public class NoOpRateLimiter implements RateLimiter {
     public void rateLimit(Account account) {
     }
 
+    /**
+     * This implementation never waits.
+     */
+    @Override
+    public long acquire(Account account, long maxWaitMs) {
+        return 0;
+    }
+
+    /**
+     * This implementation always allows the request.
+     */
+    @Override
+    public boolean tryRateLimit(Account account) {
+        return true;
+    }
+
     /**
      * This implementation does nothing.
      */
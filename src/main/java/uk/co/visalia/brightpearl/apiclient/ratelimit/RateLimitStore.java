@@ -0,0 +1,49 @@
+/*
+ * Copyright 2014 David Morrissey
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package uk.co.visalia.brightpearl.apiclient.ratelimit;
+
+/**
+ * <p>
+ * Interface for the state used by {@link TokenBucketRateLimiter}, which {@link SharedRateLimiter} uses to enforce one
+ * request budget per account across several processes. A store holds a long value for each key, and must update it
+ * atomically with respect to every process using the same store. This is the only primitive required, so stores can
+ * be built on anything that supports compare-and-set, such as a database row, a Redis script or a memcached CAS.
+ * </p><p>
+ * {@link MappedFileRateLimitStore} shares state between processes on one machine, and {@link InMemoryRateLimitStore}
+ * between limiters in one process.
+ * </p>
+ */
+public interface RateLimitStore {
+
+    /**
+     * Returns the current value for a key.
+     * @param key The key, which is an account code.
+     * @return the value, or zero if no value has been set.
+     */
+    long get(String key);
+
+    /**
+     * Atomically sets the value for a key if it currently has the expected value. Keys that have not been set have the
+     * value zero.
+     * @param key The key, which is an account code.
+     * @param expect The value the key is expected to have.
+     * @param update The new value.
+     * @return true if the value was set, or false if the key had a different value.
+     */
+    boolean compareAndSet(String key, long expect, long update);
+
+}
@@ -34,6 +34,31 @@ public interface RateLimiter {
      */
     void rateLimit(Account account);
 
+    /**
+     * Called instead of {@link #rateLimit(Account)} when the request has a deadline. Implementations that wait should
+     * not wait for longer than the time given, and if the request could not be sent within it, should throw
+     * {@link uk.co.visalia.brightpearl.apiclient.exception.BrightpearlDeadlineExceededException} immediately rather
+     * than wait. The default implementation calls {@link #rateLimit(Account)}, so the wait is not limited.
+     * @param account The account a request will be sent to.
+     * @param maxWaitMs The longest time the request may wait before it is sent.
+     */
+    default void rateLimit(Account account, long maxWaitMs) {
+        rateLimit(account);
+    }
+
+    /**
+     * Called before an optional request, such as a hedged duplicate of a slow read, is made to the Brightpearl API for
+     * the given account. Implementations must not block. If a request can be made immediately without exceeding the
+     * limit it should be counted as if {@link #rateLimit(Account)} had been called and true returned; otherwise false
+     * is returned and the request is not made. The default implementation returns false, so optional requests are only
+     * made by rate limiters that support them.
+     * @param account The account an optional request would be sent to.
+     * @return true if the request may be sent now.
+     */
+    default boolean tryRateLimit(Account account) {
+        return false;
+    }
+
     /**
      * Called after every request is made to the Brightpearl API, with values from the brightpearl-requests-remaining
      * and brightpearl-next-throttle-period headers. These may be used to adjust the behaviour of the {@link #rateLimit(Account)}
@@ -0,0 +1,42 @@
+/*
+ * Copyright 2014 David Morrissey
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package uk.co.visalia.brightpearl.apiclient.ratelimit;
+
+/**
+ * Functions shared by the rate limiter implementations.
+ */
+final class RateLimiters {
+
+    private RateLimiters() { }
+
+    /**
+     * Sleeps for the wait returned by a limiter's acquire method. The wait has already been reserved when this is
+     * called, so an interrupt does not abort the request; the sleep ends early and the interrupt is preserved for the
+     * caller.
+     * @param sleepTime Time to sleep in milliseconds. Nothing is done if this is zero or negative.
+     */
+    static void sleep(long sleepTime) {
+        if (sleepTime > 0) {
+            try {
+                Thread.sleep(sleepTime);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+}
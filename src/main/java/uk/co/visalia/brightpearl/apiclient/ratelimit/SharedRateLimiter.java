@@ -0,0 +1,63 @@
+/*
+ * Copyright 2014 David Morrissey
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package uk.co.visalia.brightpearl.apiclient.ratelimit;
+
+import uk.co.visalia.brightpearl.apiclient.account.Account;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <p>
+ * An implementation of {@link RateLimiter} for several processes sending requests to the same Brightpearl accounts,
+ * which share one token bucket per account through a {@link RateLimitStore}. The bucket behaves as in
+ * {@link TokenBucketRateLimiter}: an idle account can send a burst up to the bucket size, and the long-run rate is the
+ * refill rate, but these limits apply to all processes together rather than to each one. The default is a bucket of 20
+ * refilled with 180 tokens per minute, so no more than 200 requests are sent to an account in any minute.
+ * </p><p>
+ * Each bucket is stored as the time at which it will next be full, and each request takes a token by compare-and-set
+ * on that time, so reservations are atomic across processes. Times are taken from the system clock, so processes
+ * sharing a store on different machines should have synchronised clocks.
+ * </p><p>
+ * Each thread calling {@link #rateLimit(Account)} is blocked until the request may be sent; the async methods of the
+ * client use {@link #acquire(Account, long)} and wait on a timer instead.
+ * </p>
+ */
+public class SharedRateLimiter extends TokenBucketRateLimiter {
+
+    /**
+     * Construct a shared rate limiter with the default settings, a bucket of 20 refilled with 180 tokens per minute
+     * for each account across all processes using the store.
+     * @param store The store shared by all processes.
+     */
+    public SharedRateLimiter(RateLimitStore store) {
+        this(store, 20, 180, 1, TimeUnit.MINUTES);
+    }
+
+    /**
+     * Construct a shared rate limiter with a custom bucket size and refill rate. All processes using the same store
+     * should be configured with the same values.
+     * @param store The store shared by all processes.
+     * @param bucketSize The number of requests an idle account may be sent without waiting.
+     * @param refill The number of tokens added to the bucket in the given period.
+     * @param period The period of time.
+     * @param periodUnit Unit of the period of time.
+     */
+    public SharedRateLimiter(RateLimitStore store, int bucketSize, int refill, int period, TimeUnit periodUnit) {
+        super(store, bucketSize, refill, period, periodUnit);
+    }
+
+}
@@ -0,0 +1,183 @@
+/*
+ * Copyright 2014 David Morrissey
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package uk.co.visalia.brightpearl.apiclient.ratelimit;
+
+import uk.co.visalia.brightpearl.apiclient.account.Account;
+import uk.co.visalia.brightpearl.apiclient.exception.BrightpearlDeadlineExceededException;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <p>
+ * An implementation of {@link RateLimiter} that gives each account a bucket of tokens, refilled at a constant rate.
+ * Each request takes a token, and waits for the next one to be added when the bucket is empty. An account that has been
+ * idle can send a burst of requests up to the bucket size without waiting, while the long-run rate is limited to the
+ * refill rate, so a short job is not spaced out as it would be by {@link ConstantWaitRateLimiter}.
+ * </p><p>
+ * No more than the bucket size plus the refill amount can be sent in any one refill period, so to stay under the
+ * Brightpearl cap their sum should not exceed it. The default is a bucket of 20 refilled with 180 tokens per minute.
+ * </p><p>
+ * Each bucket is tracked as the time at which it will next be full, which is held in a {@link RateLimitStore} and
+ * updated by compare-and-set, so threads only contend with others sending to the same account. By default the store is
+ * in memory and private to this limiter; {@link SharedRateLimiter} gives it a store shared with other processes. Each
+ * thread calling {@link #rateLimit(Account)} is blocked until the request may be sent; the async methods of the client
+ * use {@link #acquire(Account, long)} and wait on a timer instead.
+ * </p>
+ */
+public class TokenBucketRateLimiter implements AsyncRateLimiter {
+
+    private final RateLimitStore store;
+
+    private final long intervalMicros;
+
+    private final long burstMicros;
+
+    /**
+     * Construct a token bucket rate limiter with the default settings, a bucket of 20 refilled with 180 tokens per
+     * minute, so no more than 200 requests are sent in any minute. This is suitable for a single node system.
+     */
+    public TokenBucketRateLimiter() {
+        this(20, 180, 1, TimeUnit.MINUTES);
+    }
+
+    /**
+     * Construct a token bucket rate limiter with a custom bucket size and refill rate.
+     * @param bucketSize The number of requests an idle account may send without waiting.
+     * @param refill The number of tokens added to the bucket in the given period.
+     * @param period The period of time.
+     * @param periodUnit Unit of the period of time.
+     */
+    public TokenBucketRateLimiter(int bucketSize, int refill, int period, TimeUnit periodUnit) {
+        this(new InMemoryRateLimitStore(), bucketSize, refill, period, periodUnit);
+    }
+
+    /**
+     * Construct a token bucket rate limiter that keeps its buckets in the given store, with a custom bucket size and
+     * refill rate. Limiters using the same store share their buckets, and should be configured with the same values.
+     * @param store The store holding the time at which each account's bucket will be full.
+     * @param bucketSize The number of requests an idle account may send without waiting.
+     * @param refill The number of tokens added to the bucket in the given period.
+     * @param period The period of time.
+     * @param periodUnit Unit of the period of time.
+     */
+    public TokenBucketRateLimiter(RateLimitStore store, int bucketSize, int refill, int period, TimeUnit periodUnit) {
+        if (store == null) {
+            throw new IllegalArgumentException("A rate limit store is required");
+        }
+        if (bucketSize <= 0 || refill <= 0 || period <= 0 || periodUnit == null) {
+            throw new IllegalArgumentException("A positive bucket size, refill and period must be given");
+        }
+        this.store = store;
+        this.intervalMicros = periodUnit.toMicros(period) / refill;
+        this.burstMicros = intervalMicros * (bucketSize - 1);
+    }
+
+    /**
+     * Called before a request is made, this takes a token from the account's bucket, sleeping until one is added if
+     * the bucket is empty.
+     * @param account The account a request is about to be sent to.
+     */
+    @Override
+    public void rateLimit(Account account) {
+        RateLimiters.sleep(acquire(account));
+    }
+
+    /**
+     * As {@link #rateLimit(Account)}, except that if the wait required is longer than the maximum, no token is taken
+     * and the exception is thrown immediately without sleeping.
+     * @param account The account a request is about to be sent to.
+     * @param maxWaitMs The longest time the request may wait before it is sent.
+     */
+    @Override
+    public void rateLimit(Account account, long maxWaitMs) {
+        long sleepTime = acquire(account, maxWaitMs);
+        if (sleepTime < 0) {
+            throw new BrightpearlDeadlineExceededException("Deadline would be exceeded waiting for the rate limiter");
+        }
+        RateLimiters.sleep(sleepTime);
+    }
+
+    /**
+     * Takes a token from the account's bucket without sleeping, returning the time until it is available.
+     * @param account The account a request will be sent to.
+     * @param maxWaitMs The longest time the request may wait before it is sent.
+     * @return the time in milliseconds to wait, or -1 without taking a token if it is longer than the maximum.
+     */
+    @Override
+    public long acquire(Account account, long maxWaitMs) {
+        String key = account.getAccountCode();
+        long maxWaitMicros = TimeUnit.MILLISECONDS.toMicros(maxWaitMs);
+        while (true) {
+            long timeNow = nowMicros();
+            long fullAt = store.get(key);
+            long base = Math.max(fullAt, timeNow);
+            long wait = Math.max(0, base - burstMicros - timeNow);
+            if (wait > maxWaitMicros) {
+                return -1;
+            }
+            if (store.compareAndSet(key, fullAt, base + intervalMicros)) {
+                return (wait + 999) / 1000;
+            }
+        }
+    }
+
+    /**
+     * Allows the request and takes a token only if the bucket is not empty, so the request would not have to wait.
+     * @param account The account an optional request would be sent to.
+     * @return true if the request may be sent now.
+     */
+    @Override
+    public boolean tryRateLimit(Account account) {
+        return acquire(account, 0) == 0;
+    }
+
+    /**
+     * This implementation does nothing.
+     * @param account The account a response has been received from.
+     * @param requestsRemaining The value of the brightpearl-requests-remaining response header.
+     * @param nextThrottlePeriod The value of the brightpearl-next-throttle-period header.
+     */
+    @Override
+    public void requestCompleted(Account account, int requestsRemaining, long nextThrottlePeriod) {
+    }
+
+    /**
+     * Empties the account's bucket, so further requests are sent no faster than the refill rate until the account is
+     * idle again.
+     * @param account The account that received a 503 request cap error.
+     */
+    @Override
+    public void requestCapExceeded(Account account) {
+        String key = account.getAccountCode();
+        while (true) {
+            long fullAt = store.get(key);
+            long empty = nowMicros() + burstMicros + intervalMicros;
+            if (fullAt >= empty || store.compareAndSet(key, fullAt, empty)) {
+                return;
+            }
+        }
+    }
+
+    /*
+     * Times are taken from the system clock, as a shared store may be used by processes that do not share a nanosecond
+     * timer. A key that has not been set reads as zero, so a new account starts with a full bucket.
+     */
+    private long nowMicros() {
+        return TimeUnit.MILLISECONDS.toMicros(System.currentTimeMillis());
+    }
+
+}
@@ -49,13 +49,16 @@ public abstract class AbstractServiceRequest<T> {
 
     private final Map<String, String> params;
 
-    AbstractServiceRequest(String ruid, ServiceName service, Method method, String path, Type responseType, Map<String, String> params) {
+    private final long deadlineMs;
+
+    AbstractServiceRequest(String ruid, ServiceName service, Method method, String path, Type responseType, Map<String, String> params, long deadlineMs) {
         this.ruid = ruid;
         this.service = service;
         this.method = method;
         this.path = path;
         this.responseType = responseType;
         this.params = params == null ? null : Collections.unmodifiableMap(params);
+        this.deadlineMs = deadlineMs;
     }
 
     /**
@@ -112,4 +115,15 @@ public abstract class AbstractServiceRequest<T> {
     public Map<String, String> getParams() {
         return params;
     }
+
+    /**
+     * The time budget for each call made with this request, in milliseconds, covering rate limiting, queueing for
+     * concurrency permits, connection pool lease and network I/O together. The deadline starts when the call is made,
+     * so the request may be reused. Zero means there is no deadline, and only the timeouts configured on the client
+     * apply.
+     * @return the deadline budget in milliseconds, or zero for none.
+     */
+    public long getDeadlineMs() {
+        return deadlineMs;
+    }
 }
@@ -43,6 +43,8 @@ abstract class AbstractServiceRequestBuilder<B extends AbstractServiceRequestBui
 
     private Map<String, String> params;
 
+    private long deadlineMs;
+
     AbstractServiceRequestBuilder() {
     }
 
@@ -168,6 +170,23 @@ abstract class AbstractServiceRequestBuilder<B extends AbstractServiceRequestBui
         return getThis();
     }
 
+    /**
+     * Set a time budget for each call made with the request, covering rate limiting, queueing for concurrency permits,
+     * connection pool lease and network I/O together. The deadline starts when the call is made. If it passes, or if
+     * a stage would have to wait beyond it, the call fails immediately with
+     * {@link uk.co.visalia.brightpearl.apiclient.exception.BrightpearlDeadlineExceededException}. Timeouts configured
+     * on the client still apply when they are shorter.
+     * @param deadlineMs the budget in milliseconds, or zero for no deadline.
+     * @return builder instance for method chaining.
+     */
+    public B withDeadlineMs(long deadlineMs) {
+        if (deadlineMs < 0) {
+            throw new IllegalArgumentException("Deadline must not be negative");
+        }
+        this.deadlineMs = deadlineMs;
+        return getThis();
+    }
+
     protected String getRuid() {
         return ruid;
     }
@@ -192,6 +211,10 @@ abstract class AbstractServiceRequestBuilder<B extends AbstractServiceRequestBui
         return params == null ? null : Collections.unmodifiableMap(params);
     }
 
+    protected long getDeadlineMs() {
+        return deadlineMs;
+    }
+
     /**
      * Build the immutable request instance.
      * @return the request instance.
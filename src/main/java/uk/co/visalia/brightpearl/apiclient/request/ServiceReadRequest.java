@@ -31,8 +31,8 @@ import java.util.Map;
  */
 public class ServiceReadRequest<T> extends AbstractServiceRequest<T> {
 
-    ServiceReadRequest(String ruid, ServiceName service, Method method, String path, Type responseType, Map<String, String> params) {
-        super(ruid, service, method, path, responseType, params);
+    ServiceReadRequest(String ruid, ServiceName service, Method method, String path, Type responseType, Map<String, String> params, long deadlineMs) {
+        super(ruid, service, method, path, responseType, params, deadlineMs);
     }
 
 }
@@ -117,7 +117,7 @@ public class ServiceReadRequestBuilder<T> extends AbstractServiceRequestBuilder<
     public ServiceReadRequest<T> build() {
         String ruid = StringUtils.isNotEmpty(getRuid()) ? getRuid() : UUID.randomUUID().toString();
         resetRuid();
-        return new ServiceReadRequest<T>(ruid, getService(), getMethod(), getPath(), getResponseType(), getParams());
+        return new ServiceReadRequest<T>(ruid, getService(), getMethod(), getPath(), getResponseType(), getParams(), getDeadlineMs());
     }
 
 }
\ No newline at end of file
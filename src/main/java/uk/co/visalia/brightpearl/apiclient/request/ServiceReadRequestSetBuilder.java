@@ -170,6 +170,7 @@ public class ServiceReadRequestSetBuilder<T> {
                     .withRuid(regenerateRuids ? UUID.randomUUID().toString() : templateRequest.getRuid())
                     .withAddedParams(templateRequest.getParams())
                     .withAddedParams(params)
+                    .withDeadlineMs(templateRequest.getDeadlineMs())
                     .build());
         }
         regenerateRuids = true;
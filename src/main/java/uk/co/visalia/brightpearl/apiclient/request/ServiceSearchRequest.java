@@ -31,8 +31,8 @@ import java.util.Map;
  */
 public class ServiceSearchRequest<T> extends ServiceReadRequest<T> {
 
-    ServiceSearchRequest(String ruid, ServiceName service, Method method, String path, Type responseType, Map<String, String> params) {
-        super(ruid, service, method, path, responseType, params);
+    ServiceSearchRequest(String ruid, ServiceName service, Method method, String path, Type responseType, Map<String, String> params, long deadlineMs) {
+        super(ruid, service, method, path, responseType, params, deadlineMs);
     }
 
 }
@@ -124,7 +124,7 @@ public class ServiceSearchRequestBuilder<T> extends AbstractServiceRequestBuilde
             }
             withAddedParam(SORT_PARAM, StringUtils.join(sortsList, ","));
         }
-        return new ServiceSearchRequest<T>(ruid, getService(), getMethod(), getPath(), getResponseType(), getParams());
+        return new ServiceSearchRequest<T>(ruid, getService(), getMethod(), getPath(), getResponseType(), getParams(), getDeadlineMs());
     }
 
     /**
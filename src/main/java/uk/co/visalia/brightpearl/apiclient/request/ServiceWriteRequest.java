@@ -39,8 +39,8 @@ public class ServiceWriteRequest<T> extends AbstractServiceRequest<T> {
 
     private final Object entity;
 
-    ServiceWriteRequest(String ruid, ServiceName service, Method method, String path, Type responseType, Map<String, String> params, Object entity) {
-        super(ruid, service, method, path, responseType, params);
+    ServiceWriteRequest(String ruid, ServiceName service, Method method, String path, Type responseType, Map<String, String> params, Object entity, long deadlineMs) {
+        super(ruid, service, method, path, responseType, params, deadlineMs);
         this.entity = entity;
     }
 
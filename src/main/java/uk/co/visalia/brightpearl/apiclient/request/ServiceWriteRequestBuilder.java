@@ -166,7 +166,7 @@ public class ServiceWriteRequestBuilder<T> extends AbstractServiceRequestBuilder
     public ServiceWriteRequest<T> build() {
         String ruid = StringUtils.isNotEmpty(getRuid()) ? getRuid() : UUID.randomUUID().toString();
         resetRuid();
-        return new ServiceWriteRequest<T>(ruid, getService(), getMethod(), getPath(), getResponseType(), getParams(), entity);
+        return new ServiceWriteRequest<T>(ruid, getService(), getMethod(), getPath(), getResponseType(), getParams(), entity, getDeadlineMs());
     }
 
 }
\ No newline at end of file
@@ -0,0 +1,132 @@
+/*
+ * Copyright 2014 David Morrissey
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package uk.co.visalia.brightpearl.apiclient.util;
+
+import uk.co.visalia.brightpearl.apiclient.exception.BrightpearlDeadlineExceededException;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A point in time by which a call must complete, started when the call is made from the time budget set on the
+ * request. It is carried on each {@link uk.co.visalia.brightpearl.apiclient.http.Request} so that every stage of the
+ * call, from rate limiting to reading the response, can be limited to the time that remains. Not intended for use by
+ * clients of the API library.
+ */
+public final class Deadline {
+
+    private final long budgetMs;
+
+    private final long expiresNanos;
+
+    private Deadline(long budgetMs) {
+        this.budgetMs = budgetMs;
+        this.expiresNanos = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(budgetMs);
+    }
+
+    /**
+     * Starts a deadline that expires when the given budget has passed.
+     * @param budgetMs time budget in milliseconds. Zero or less means there is no deadline.
+     * @return a new deadline, or null if the budget is zero or less.
+     */
+    public static Deadline start(long budgetMs) {
+        return budgetMs > 0 ? new Deadline(budgetMs) : null;
+    }
+
+    /**
+     * The total budget the deadline was started with.
+     * @return budget in milliseconds.
+     */
+    public long getBudgetMs() {
+        return budgetMs;
+    }
+
+    /**
+     * The time left before the deadline, rounded down.
+     * @return remaining time in milliseconds, zero if the deadline has passed.
+     */
+    public long remainingMs() {
+        return Math.max(0, TimeUnit.NANOSECONDS.toMillis(expiresNanos - System.nanoTime()));
+    }
+
+    /**
+     * Whether the deadline has passed.
+     * @return true if there is no time left.
+     */
+    public boolean isExpired() {
+        return expiresNanos - System.nanoTime() <= 0;
+    }
+
+    /**
+     * Limits a configured timeout to the time left, for transports that take a timeout per request.
+     * @param timeoutMs a configured timeout, where zero or less means no timeout.
+     * @return the lower of the timeout and the remaining time, and at least one millisecond so it is never read as
+     * an infinite timeout.
+     */
+    public long cap(long timeoutMs) {
+        long remainingMs = remainingMs();
+        long capped = timeoutMs > 0 ? Math.min(timeoutMs, remainingMs) : remainingMs;
+        return Math.max(1, capped);
+    }
+
+    /**
+     * Throws if the deadline has passed, so a call does not start a stage it has no time for.
+     * @param stage a description of the next stage for the exception message, e.g. "rate limiting".
+     */
+    public void check(String stage) {
+        if (isExpired()) {
+            throw exceeded(stage);
+        }
+    }
+
+    /**
+     * Creates the exception thrown when the deadline passes during, or before, the given stage.
+     * @param stage a description of the stage for the exception message.
+     * @return a new exception.
+     */
+    public BrightpearlDeadlineExceededException exceeded(String stage) {
+        return new BrightpearlDeadlineExceededException("Deadline of " + budgetMs + "ms exceeded " + stage);
+    }
+
+    /**
+     * Fails the future with {@link BrightpearlDeadlineExceededException} if it has not completed when the deadline
+     * passes. The timer runs on {@link Futures#scheduler()} and is cancelled when the future completes.
+     * @param future a future to limit.
+     * @param stage a description of the stage the future represents.
+     * @param <T> result type.
+     * @return the same future.
+     */
+    public <T> CompletableFuture<T> bound(final CompletableFuture<T> future, final String stage) {
+        if (future.isDone()) {
+            return future;
+        }
+        final ScheduledFuture<?> timer = Futures.scheduler().schedule(() -> {
+            future.completeExceptionally(exceeded(stage));
+        }, remainingMs(), TimeUnit.MILLISECONDS);
+        future.whenComplete((result, throwable) -> timer.cancel(false));
+        return future;
+    }
+
+    @Override
+    public String toString() {
+        return "Deadline{" +
+                "budgetMs=" + budgetMs +
+                ", remainingMs=" + remainingMs() +
+                '}';
+    }
+}
@@ -0,0 +1,179 @@
+/*
+ * Copyright 2014 David Morrissey
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package uk.co.visalia.brightpearl.apiclient.util;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * A set of functions used internally for composing {@link CompletableFuture}s. Not intended for use by clients of the API
+ * library.
+ */
+public final class Futures {
+
+    private Futures() { }
+
+    /**
+     * Returns a future that has already completed exceptionally with the given exception.
+     */
+    public static <T> CompletableFuture<T> failed(Throwable throwable) {
+        CompletableFuture<T> future = new CompletableFuture<T>();
+        future.completeExceptionally(throwable);
+        return future;
+    }
+
+    /**
+     * Calls the supplier, converting any runtime exception it throws into a failed future so that async methods never
+     * throw from the calling thread.
+     */
+    public static <T> CompletableFuture<T> defer(Supplier<CompletableFuture<T>> supplier) {
+        try {
+            CompletableFuture<T> future = supplier.get();
+            return future == null ? Futures.<T>failed(new IllegalStateException("Supplier returned a null future")) : future;
+        } catch (RuntimeException e) {
+            return failed(e);
+        }
+    }
+
+    /**
+     * Strips the {@link CompletionException} and {@link ExecutionException} wrappers added by dependent stages, so
+     * callers see the exception originally thrown.
+     */
+    public static Throwable unwrap(Throwable throwable) {
+        Throwable result = throwable;
+        while ((result instanceof CompletionException || result instanceof ExecutionException) && result.getCause() != null) {
+            result = result.getCause();
+        }
+        return result;
+    }
+
+    /**
+     * Returns a future that completes with the same result as the one given, but if it fails the exception is unwrapped
+     * by {@link #unwrap(Throwable)}, so that exception handlers registered on it receive the original exception.
+     */
+    public static <T> CompletableFuture<T> unwrapped(CompletableFuture<T> future) {
+        final CompletableFuture<T> result = new CompletableFuture<T>();
+        future.whenComplete((value, throwable) -> {
+            if (throwable != null) {
+                result.completeExceptionally(unwrap(throwable));
+            } else {
+                result.complete(value);
+            }
+        });
+        return result;
+    }
+
+    /**
+     * Returns a future that completes with the same result as the one given, but completed from the executor so that
+     * dependent stages do not run on the thread that completed the original, such as a transport's I/O thread.
+     * Cancelling the returned future cancels the original.
+     */
+    public static <T> CompletableFuture<T> completeOn(final CompletableFuture<T> future, final Executor executor) {
+        final CompletableFuture<T> result = new CompletableFuture<T>();
+        future.whenComplete((value, throwable) -> executor.execute(() -> {
+            if (throwable != null) {
+                result.completeExceptionally(throwable);
+            } else {
+                result.complete(value);
+            }
+        }));
+        result.whenComplete((value, throwable) -> {
+            if (result.isCancelled()) {
+                future.cancel(false);
+            }
+        });
+        return result;
+    }
+
+    /**
+     * Waits for a future and returns its result, rethrowing the original exception if it failed. Runtime exceptions and
+     * errors are thrown unchanged, and checked exceptions are wrapped in a {@link RuntimeException}.
+     */
+    public static <T> T join(CompletableFuture<T> future) {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            Throwable cause = unwrap(e);
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException)cause;
+            } else if (cause instanceof Error) {
+                throw (Error)cause;
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Creates an unbounded executor of daemon threads, suitable for running blocking work on behalf of async methods
+     * without preventing JVM shutdown.
+     */
+    public static ExecutorService daemonExecutor(final String namePrefix) {
+        return Executors.newCachedThreadPool(daemonThreadFactory(namePrefix));
+    }
+
+    /**
+     * Creates a thread factory for daemon threads with sequentially numbered names.
+     */
+    public static ThreadFactory daemonThreadFactory(final String namePrefix) {
+        final AtomicInteger counter = new AtomicInteger(0);
+        return runnable -> {
+            Thread thread = new Thread(runnable, namePrefix + "-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    /**
+     * Returns the executor if not null, otherwise a shared default daemon executor.
+     */
+    public static Executor orDefault(Executor executor) {
+        return executor == null ? DefaultExecutorHolder.EXECUTOR : executor;
+    }
+
+    /**
+     * Returns a shared single daemon thread scheduler for timers, such as hedge delays and queue timeouts. Tasks run on
+     * it must not block. Cancelled tasks are removed from its queue immediately.
+     */
+    public static ScheduledExecutorService scheduler() {
+        return SchedulerHolder.SCHEDULER;
+    }
+
+    private static final class DefaultExecutorHolder {
+        private static final Executor EXECUTOR = daemonExecutor("brightpearl-async");
+    }
+
+    private static final class SchedulerHolder {
+        private static final ScheduledExecutorService SCHEDULER = scheduler();
+
+        private static ScheduledExecutorService scheduler() {
+            ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(1, daemonThreadFactory("brightpearl-scheduler"));
+            executor.setRemoveOnCancelPolicy(true);
+            return executor;
+        }
+    }
+
+}
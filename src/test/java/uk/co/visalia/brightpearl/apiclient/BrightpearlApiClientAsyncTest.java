@@ -0,0 +1,223 @@
+/*
+ * Copyright 2014 David Morrissey
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package uk.co.visalia.brightpearl.apiclient;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import uk.co.visalia.brightpearl.apiclient.BrightpearlApiClient.ApiSession;
+import uk.co.visalia.brightpearl.apiclient.account.Account;
+import uk.co.visalia.brightpearl.apiclient.account.Datacenter;
+import uk.co.visalia.brightpearl.apiclient.auth.PrivateAppAuthorisation;
+import uk.co.visalia.brightpearl.apiclient.auth.PrivateAppIdentity;
+import uk.co.visalia.brightpearl.apiclient.exception.BrightpearlRequestCapException;
+import uk.co.visalia.brightpearl.apiclient.exception.BrightpearlServiceException;
+import uk.co.visalia.brightpearl.apiclient.http.*;
+import uk.co.visalia.brightpearl.apiclient.multimessage.MultiRequestBuilder;
+import uk.co.visalia.brightpearl.apiclient.multimessage.MultiResponse;
+import uk.co.visalia.brightpearl.apiclient.ratelimit.ConstantWaitRateLimiter;
+import uk.co.visalia.brightpearl.apiclient.request.ServiceReadRequestBuilder;
+import uk.co.visalia.brightpearl.apiclient.request.ServiceWriteRequestBuilder;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+
+public class BrightpearlApiClientAsyncTest {
+
+    private static final Account ACCOUNT = new Account(Datacenter.EU1, "visalia");
+    private static final PrivateAppAuthorisation AUTHORISATION = PrivateAppAuthorisation.system(PrivateAppIdentity.create(ACCOUNT, "visalia_unittest"), "abcd1234");
+
+    private StubClientFactory clientFactory;
+    private ApiSession session;
+
+    @Before
+    public void setup() {
+        clientFactory = new StubClientFactory();
+        session = BrightpearlApiClientFactory.brightpearlApiClient().withClientFactory(clientFactory).build().createSession(AUTHORISATION);
+    }
+
+    @Test
+    public void testGetAsyncUsesAsyncClient() throws Exception {
+
+        clientFactory.responses.add(json(200, "{\"response\":\"Hello\"}"));
+
+        CompletableFuture<String> future = session.getAsync(ServiceReadRequestBuilder.newGetRequest(ServiceName.CONTACT, "/contact/1", String.class));
+
+        assertThat(future.get(), is("Hello"));
+        assertThat(clientFactory.asyncCalls.get(), is(1));
+        assertThat(clientFactory.requests.get(0).getUrl(), is("https://ws-eu1.brightpearl.com/public-api/visalia/contact-service/contact/1"));
+
+    }
+
+    @Test
+    public void testAsyncRateLimiterDoesNotBlockCaller() throws Exception {
+
+        clientFactory.responses.add(json(200, "{\"response\":\"One\"}"));
+        clientFactory.responses.add(json(200, "{\"response\":\"Two\"}"));
+        ApiSession limitedSession = BrightpearlApiClientFactory.brightpearlApiClient()
+                .withClientFactory(clientFactory)
+                .withRateLimiter(new ConstantWaitRateLimiter(1, 300, TimeUnit.MILLISECONDS))
+                .build()
+                .createSession(AUTHORISATION);
+
+        long start = System.currentTimeMillis();
+        CompletableFuture<String> first = limitedSession.getAsync(ServiceReadRequestBuilder.newGetRequest(ServiceName.CONTACT, "/contact/1", String.class));
+        CompletableFuture<String> second = limitedSession.getAsync(ServiceReadRequestBuilder.newGetRequest(ServiceName.CONTACT, "/contact/2", String.class));
+        assertThat(System.currentTimeMillis() - start, is(lessThan(100L)));
+
+        assertThat(first.get(), is("One"));
+        assertThat(second.get(), is("Two"));
+        assertThat(System.currentTimeMillis() - start, is(greaterThanOrEqualTo(250L)));
+
+    }
+
+    @Test
+    public void testGetAsyncWithBlockingClient() throws Exception {
+
+        final Client blockingClient = request -> json(200, "{\"response\":\"Blocking\"}");
+        ClientFactory blockingFactory = account -> blockingClient;
+        ApiSession blockingSession = BrightpearlApiClientFactory.brightpearlApiClient().withClientFactory(blockingFactory).build().createSession(AUTHORISATION);
+
+        CompletableFuture<String> future = blockingSession.getAsync(ServiceReadRequestBuilder.newGetRequest(ServiceName.CONTACT, "/contact/1", String.class));
+
+        assertThat(future.get(), is("Blocking"));
+
+    }
+
+    @Test
+    public void testRequestCapExceptionIsNotWrapped() throws Exception {
+
+        clientFactory.responses.add(json(503, "{\"response\":\"You have sent too many requests. Please wait before sending another request\"}"));
+
+        CompletableFuture<Object> future = session.getAsync(ServiceReadRequestBuilder.newGetRequest(ServiceName.CONTACT, "/contact/1", Object.class));
+
+        try {
+            future.get();
+            Assert.fail("Expected exception not thrown");
+        } catch (ExecutionException e) {
+            assertThat(e.getCause(), is(instanceOf(BrightpearlRequestCapException.class)));
+        }
+
+    }
+
+    @Test
+    public void testServiceErrorIsNotWrapped() throws Exception {
+
+        clientFactory.responses.add(json(500, "{\"errors\":[{\"code\":\"CMNC-001\",\"message\":\"Failure\"}]}"));
+
+        final AtomicInteger handled = new AtomicInteger();
+        session.getAsync(ServiceReadRequestBuilder.newGetRequest(ServiceName.CONTACT, "/contact/1", Object.class))
+                .whenComplete((result, throwable) -> {
+                    if (throwable instanceof BrightpearlServiceException) {
+                        handled.incrementAndGet();
+                    }
+                });
+
+        assertThat(handled.get(), is(1));
+
+    }
+
+    @Test
+    public void testMultiRequestBatchesAreSentInSequence() throws Exception {
+
+        StringBuilder batch1 = new StringBuilder("{\"response\":{\"processedMessages\":[");
+        for (int i = 1; i <= 10; i++) {
+            batch1.append(i == 1 ? "" : ",").append("{\"label\":\"").append(i).append("\",\"statusCode\":200,\"body\":{\"content\":\"{\\\"response\\\":").append(i).append("}\"}}");
+        }
+        batch1.append("],\"unprocessedMessages\":[]}}");
+        String batch2 = "{\"response\":{\"processedMessages\":[" +
+                "{\"label\":\"11\",\"statusCode\":200,\"body\":{\"content\":\"{\\\"response\\\":11}\"}}," +
+                "{\"label\":\"12\",\"statusCode\":200,\"body\":{\"content\":\"{\\\"response\\\":12}\"}}" +
+                "],\"unprocessedMessages\":[]}}";
+        clientFactory.responses.add(json(200, batch1.toString()));
+        clientFactory.responses.add(json(200, batch2));
+
+        MultiRequestBuilder multiRequest = MultiRequestBuilder.newMultiRequest();
+        for (int i = 1; i <= 12; i++) {
+            multiRequest.withAddedRequest(ServiceWriteRequestBuilder.newPostRequest(ServiceName.PRODUCT, "/brand", Collections.singletonMap("name", "Brand " + i), Integer.class).withRuid(Integer.toString(i)));
+        }
+
+        MultiResponse multiResponse = session.executeAsync(multiRequest).get();
+
+        assertThat(multiResponse.getStatus(), is(200));
+        assertThat(multiResponse.getUnprocessedRequestRuids(), is(empty()));
+        assertThat(multiResponse.getServiceResponse("12").getResponse(), is((Object)12));
+        assertThat(clientFactory.requests.size(), is(2));
+
+    }
+
+    @Test
+    public void testMultiRequestLaterBatchFailureReturnsUnprocessed() throws Exception {
+
+        StringBuilder batch1 = new StringBuilder("{\"response\":{\"processedMessages\":[");
+        for (int i = 1; i <= 10; i++) {
+            batch1.append(i == 1 ? "" : ",").append("{\"label\":\"").append(i).append("\",\"statusCode\":200,\"body\":{\"content\":\"{\\\"response\\\":").append(i).append("}\"}}");
+        }
+        batch1.append("],\"unprocessedMessages\":[]}}");
+        clientFactory.responses.add(json(200, batch1.toString()));
+        clientFactory.responses.add(json(503, "{\"response\":\"Service unavailable\"}"));
+
+        MultiRequestBuilder multiRequest = MultiRequestBuilder.newMultiRequest();
+        for (int i = 1; i <= 12; i++) {
+            multiRequest.withAddedRequest(ServiceWriteRequestBuilder.newPostRequest(ServiceName.PRODUCT, "/brand", Collections.singletonMap("name", "Brand " + i), Integer.class).withRuid(Integer.toString(i)));
+        }
+
+        MultiResponse multiResponse = session.executeAsync(multiRequest).get();
+
+        assertThat(multiResponse.getStatus(), is(207));
+        assertThat(multiResponse.getUnprocessedRequestRuids(), containsInAnyOrder("11", "12"));
+
+    }
+
+    private static Response json(int status, String body) {
+        return ResponseBuilder.newResponse().withStatus(status).withHeaders(Collections.singletonMap("Content-Type", "application/json")).withBody(body).build();
+    }
+
+    private static class StubClientFactory implements ClientFactory, AsyncClientFactory {
+
+        private final List<Response> responses = new CopyOnWriteArrayList<Response>();
+        private final List<Request> requests = new CopyOnWriteArrayList<Request>();
+        private final AtomicInteger asyncCalls = new AtomicInteger();
+
+        @Override
+        public Client getClient(Account account) {
+            return request -> {
+                throw new IllegalStateException("Blocking client should not be used");
+            };
+        }
+
+        @Override
+        public AsyncClient getAsyncClient(Account account) {
+            return request -> {
+                asyncCalls.incrementAndGet();
+                requests.add(request);
+                return CompletableFuture.completedFuture(responses.remove(0));
+            };
+        }
+
+    }
+
+}
@@ -0,0 +1,166 @@
+/*
+ * Copyright 2014 David Morrissey
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package uk.co.visalia.brightpearl.apiclient;
+
+import org.junit.Before;
+import org.junit.Test;
+import uk.co.visalia.brightpearl.apiclient.BrightpearlApiClient.ApiSession;
+import uk.co.visalia.brightpearl.apiclient.account.Account;
+import uk.co.visalia.brightpearl.apiclient.account.Datacenter;
+import uk.co.visalia.brightpearl.apiclient.auth.PrivateAppAuthorisation;
+import uk.co.visalia.brightpearl.apiclient.auth.PrivateAppIdentity;
+import uk.co.visalia.brightpearl.apiclient.circuitbreaker.CircuitBreakerEvent;
+import uk.co.visalia.brightpearl.apiclient.circuitbreaker.CircuitBreakerPolicyBuilder;
+import uk.co.visalia.brightpearl.apiclient.circuitbreaker.CircuitState;
+import uk.co.visalia.brightpearl.apiclient.exception.BrightpearlDeadlineExceededException;
+import uk.co.visalia.brightpearl.apiclient.exception.BrightpearlUnavailableException;
+import uk.co.visalia.brightpearl.apiclient.http.Client;
+import uk.co.visalia.brightpearl.apiclient.http.Response;
+import uk.co.visalia.brightpearl.apiclient.http.ResponseBuilder;
+import uk.co.visalia.brightpearl.apiclient.ratelimit.NoOpRateLimiter;
+import uk.co.visalia.brightpearl.apiclient.request.ServiceReadRequestBuilder;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.fail;
+
+public class BrightpearlApiClientCircuitBreakerTest {
+
+    private static final Account ACCOUNT = new Account(Datacenter.EU1, "visalia");
+    private static final PrivateAppAuthorisation AUTHORISATION = PrivateAppAuthorisation.system(PrivateAppIdentity.create(ACCOUNT, "visalia_unittest"), "abcd1234");
+
+    private List<CircuitBreakerEvent> events;
+    private List<Response> responses;
+    private BrightpearlApiClientFactory clientFactory;
+    private volatile long responseDelayMs;
+
+    @Before
+    public void setup() {
+        events = new CopyOnWriteArrayList<CircuitBreakerEvent>();
+        responses = new CopyOnWriteArrayList<Response>();
+        final Client client = request -> {
+            if (responseDelayMs > 0) {
+                try {
+                    Thread.sleep(responseDelayMs);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                request.getDeadline().check("waiting for a response");
+            }
+            return responses.remove(0);
+        };
+        clientFactory = BrightpearlApiClientFactory.brightpearlApiClient()
+                .withClientFactory(account -> client)
+                .withCircuitBreakerPolicy(CircuitBreakerPolicyBuilder.circuitBreakerPolicy()
+                        .withAccountFailureThreshold(1)
+                        .withDatacenterFailureThreshold(5)
+                        .withOpenDurationMs(50)
+                        .withHalfOpenSuccesses(1)
+                        .withListener(event -> events.add(event))
+                        .build());
+    }
+
+    @Test
+    public void testRateLimiterWaitDoesNotHoldHalfOpenProbe() throws Exception {
+
+        final AtomicInteger eventsWhenRateLimited = new AtomicInteger(-1);
+        ApiSession session = clientFactory.withRateLimiter(new NoOpRateLimiter() {
+            @Override
+            public void rateLimit(Account account) {
+                eventsWhenRateLimited.set(events.size());
+            }
+        }).build().createSession(AUTHORISATION);
+
+        responses.add(json(503, "{\"response\":\"Service unavailable\"}"));
+        try {
+            session.get(ServiceReadRequestBuilder.newGetRequest(ServiceName.CONTACT, "/contact/1", String.class));
+            fail("Expected unavailable exception");
+        } catch (BrightpearlUnavailableException e) {
+            // Expected
+        }
+        assertThat(events.size(), is(1));
+
+        Thread.sleep(60);
+        responses.add(json(200, "{\"response\":\"Hello\"}"));
+        session.get(ServiceReadRequestBuilder.newGetRequest(ServiceName.CONTACT, "/contact/1", String.class));
+
+        // The breaker only moved to half open, admitting the probe, after the rate limiter returned.
+        assertThat(eventsWhenRateLimited.get(), is(1));
+        assertThat(events.size(), is(3));
+        assertThat(events.get(1).getToState(), is(CircuitState.HALF_OPEN));
+        assertThat(events.get(2).getToState(), is(CircuitState.CLOSED));
+
+    }
+
+    @Test
+    public void testDeadlineWaitingForResponseIsFailure() throws Exception {
+
+        ApiSession session = clientFactory.build().createSession(AUTHORISATION);
+
+        responseDelayMs = 50;
+        try {
+            session.get(ServiceReadRequestBuilder.newGetRequest(ServiceName.CONTACT, "/contact/1", String.class).withDeadlineMs(10));
+            fail("Expected deadline exceeded exception");
+        } catch (BrightpearlDeadlineExceededException e) {
+            // Expected
+        }
+
+        assertThat(events.size(), is(1));
+        assertThat(events.get(0).getToState(), is(CircuitState.OPEN));
+
+    }
+
+    @Test
+    public void testDeadlineWaitingForRateLimiterIsIgnored() throws Exception {
+
+        ApiSession session = clientFactory.withRateLimiter(new NoOpRateLimiter() {
+            @Override
+            public void rateLimit(Account account) {
+                try {
+                    Thread.sleep(50);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }).build().createSession(AUTHORISATION);
+
+        for (int i = 0; i < 2; i++) {
+            try {
+                session.get(ServiceReadRequestBuilder.newGetRequest(ServiceName.CONTACT, "/contact/1", String.class).withDeadlineMs(10));
+                fail("Expected deadline exceeded exception");
+            } catch (BrightpearlDeadlineExceededException e) {
+                // Expected
+            }
+        }
+
+        assertThat(events, is(empty()));
+
+        responses.add(json(200, "{\"response\":\"Hello\"}"));
+        assertThat(session.get(ServiceReadRequestBuilder.newGetRequest(ServiceName.CONTACT, "/contact/1", String.class)), is("Hello"));
+
+    }
+
+    private static Response json(int status, String body) {
+        return ResponseBuilder.newResponse().withStatus(status).withHeaders(Collections.singletonMap("Content-Type", "application/json")).withBody(body).build();
+    }
+
+}
@@ -0,0 +1,156 @@
+/*
+ * Copyright 2014 David Morrissey
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package uk.co.visalia.brightpearl.apiclient;
+
+import com.google.gson.reflect.TypeToken;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import uk.co.visalia.brightpearl.apiclient.BrightpearlApiClient.ApiSession;
+import uk.co.visalia.brightpearl.apiclient.account.Account;
+import uk.co.visalia.brightpearl.apiclient.account.Datacenter;
+import uk.co.visalia.brightpearl.apiclient.auth.PrivateAppAuthorisation;
+import uk.co.visalia.brightpearl.apiclient.auth.PrivateAppIdentity;
+import uk.co.visalia.brightpearl.apiclient.exception.BrightpearlHttpException;
+import uk.co.visalia.brightpearl.apiclient.exception.BrightpearlRequestCapException;
+import uk.co.visalia.brightpearl.apiclient.exception.BrightpearlServiceException;
+import uk.co.visalia.brightpearl.apiclient.exception.ClientErrorCode;
+import uk.co.visalia.brightpearl.apiclient.http.*;
+import uk.co.visalia.brightpearl.apiclient.request.ServiceReadRequestBuilder;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.Charset;
+import java.util.Collections;
+import java.util.List;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+
+public class BrightpearlApiClientStreamingTest {
+
+    private static final Account ACCOUNT = new Account(Datacenter.EU1, "visalia");
+    private static final PrivateAppAuthorisation AUTHORISATION = PrivateAppAuthorisation.system(PrivateAppIdentity.create(ACCOUNT, "visalia_unittest"), "abcd1234");
+
+    private TrackingInputStream stream;
+    private ApiSession session;
+
+    @Before
+    public void setup() {
+        stream = null;
+    }
+
+    @Test
+    public void testStreamedEntityIsParsedAndClosed() {
+
+        respond(200, "{\"response\":[{\"id\":1,\"name\":\"Widget\"},{\"id\":2,\"name\":\"Gadget\"}]}");
+
+        List<Product> products = session.get(ServiceReadRequestBuilder.<List<Product>>newGetRequest(ServiceName.PRODUCT, "/product/1,2", new TypeToken<List<Product>>() { }.getType()).build());
+
+        assertThat(products.size(), is(2));
+        assertThat(products.get(1).name, is("Gadget"));
+        assertThat(stream.closed, is(true));
+
+    }
+
+    @Test
+    public void testStreamedErrorsAreRead() {
+
+        respond(400, "{\"response\":null,\"errors\":[{\"code\":\"CMNC-001\",\"message\":\"Failure\"}]}");
+
+        try {
+            session.get(ServiceReadRequestBuilder.newGetRequest(ServiceName.PRODUCT, "/product/1", Product.class).build());
+            Assert.fail("Expected exception not thrown");
+        } catch (BrightpearlServiceException e) {
+            assertThat(e.getServiceErrors().get(0).getCode(), is("CMNC-001"));
+        }
+        assertThat(stream.closed, is(true));
+
+    }
+
+    @Test
+    public void testStreamedRequestCapResponse() {
+
+        respond(503, "{\"response\":\"You have sent too many requests. Please wait before sending another request\"}");
+
+        try {
+            session.get(ServiceReadRequestBuilder.newGetRequest(ServiceName.PRODUCT, "/product/1", Product.class).build());
+            Assert.fail("Expected exception not thrown");
+        } catch (BrightpearlRequestCapException e) {
+            // Expected
+        }
+        assertThat(stream.closed, is(true));
+
+    }
+
+    @Test
+    public void testStreamedResponseOfWrongType() {
+
+        respond(200, "{\"response\":\"Not a product\"}");
+
+        try {
+            session.get(ServiceReadRequestBuilder.newGetRequest(ServiceName.PRODUCT, "/product/1", Product.class).build());
+            Assert.fail("Expected exception not thrown");
+        } catch (BrightpearlHttpException e) {
+            assertThat(e.getClientErrorCode(), is(ClientErrorCode.INVALID_RESPONSE_TYPE));
+        }
+        assertThat(stream.closed, is(true));
+
+    }
+
+    @Test
+    public void testStreamedEmptyResponse() {
+
+        respond(200, "");
+
+        try {
+            session.get(ServiceReadRequestBuilder.newGetRequest(ServiceName.PRODUCT, "/product/1", Product.class).build());
+            Assert.fail("Expected exception not thrown");
+        } catch (BrightpearlHttpException e) {
+            assertThat(e.getClientErrorCode(), is(ClientErrorCode.EMPTY_RESPONSE));
+        }
+
+    }
+
+    private void respond(final int status, String body) {
+        stream = new TrackingInputStream(body.getBytes(Charset.forName("UTF-8")));
+        final Response response = ResponseBuilder.newResponse()
+                .withStatus(status)
+                .withHeaders(Collections.singletonMap("Content-Type", "application/json;charset=UTF-8"))
+                .withBodyStream(stream, null)
+                .build();
+        ClientFactory clientFactory = account -> request -> response;
+        session = BrightpearlApiClientFactory.brightpearlApiClient().withClientFactory(clientFactory).build().createSession(AUTHORISATION);
+    }
+
+    private static class Product {
+        private int id;
+        private String name;
+    }
+
+    private static class TrackingInputStream extends ByteArrayInputStream {
+        private boolean closed;
+        private TrackingInputStream(byte[] bytes) {
+            super(bytes);
+        }
+        @Override
+        public void close() {
+            closed = true;
+        }
+    }
+
+}
@@ -0,0 +1,162 @@
+/*
+ * Copyright 2014 David Morrissey
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package uk.co.visalia.brightpearl.apiclient.circuitbreaker;
+
+import org.junit.Before;
+import org.junit.Test;
+import uk.co.visalia.brightpearl.apiclient.account.Account;
+import uk.co.visalia.brightpearl.apiclient.account.Datacenter;
+import uk.co.visalia.brightpearl.apiclient.exception.BrightpearlCircuitOpenException;
+import uk.co.visalia.brightpearl.apiclient.exception.BrightpearlHttpException;
+import uk.co.visalia.brightpearl.apiclient.exception.BrightpearlOverloadException;
+import uk.co.visalia.brightpearl.apiclient.exception.BrightpearlRequestCapException;
+import uk.co.visalia.brightpearl.apiclient.exception.BrightpearlUnavailableException;
+import uk.co.visalia.brightpearl.apiclient.exception.ClientErrorCode;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.fail;
+
+public class CircuitBreakersTest {
+
+    private final Account account1 = new Account(Datacenter.EU1, "visalia1");
+    private final Account account2 = new Account(Datacenter.EU1, "visalia2");
+
+    private List<CircuitBreakerEvent> events;
+    private CircuitBreakers breakers;
+
+    @Before
+    public void setup() {
+        events = new CopyOnWriteArrayList<CircuitBreakerEvent>();
+        breakers = new CircuitBreakers(CircuitBreakerPolicyBuilder.circuitBreakerPolicy()
+                .withAccountFailureThreshold(3)
+                .withDatacenterFailureThreshold(5)
+                .withOpenDurationMs(50)
+                .withHalfOpenSuccesses(2)
+                .withListener(event -> events.add(event))
+                .build());
+    }
+
+    @Test
+    public void testAccountBreakerOpensAfterConsecutiveFailures() {
+
+        failRequests(account1, 3);
+
+        assertThat(breakers.getState(account1), is(CircuitState.OPEN));
+        assertThat(breakers.getState(account2), is(CircuitState.CLOSED));
+        assertThat(breakers.getState(Datacenter.EU1), is(CircuitState.CLOSED));
+        assertRejected(account1);
+        breakers.acquire(account2).complete(null);
+
+        assertThat(events.size(), is(1));
+        assertThat(events.get(0).getAccount(), is(account1));
+        assertThat(events.get(0).getToState(), is(CircuitState.OPEN));
+
+    }
+
+    @Test
+    public void testSuccessResetsFailureCount() {
+
+        failRequests(account1, 2);
+        breakers.acquire(account1).complete(new BrightpearlRequestCapException("Request limit exceeded"));
+        failRequests(account1, 2);
+
+        assertThat(breakers.getState(account1), is(CircuitState.CLOSED));
+
+    }
+
+    @Test
+    public void testDatacenterBreakerOpensAcrossAccounts() {
+
+        failRequests(account1, 2);
+        failRequests(account2, 2);
+        failRequests(new Account(Datacenter.EU1, "visalia3"), 1);
+
+        assertThat(breakers.getState(Datacenter.EU1), is(CircuitState.OPEN));
+        assertRejected(new Account(Datacenter.EU1, "visalia4"));
+        breakers.acquire(new Account(Datacenter.USE, "visalia5")).complete(null);
+
+    }
+
+    @Test
+    public void testHalfOpenProbesCloseBreaker() throws Exception {
+
+        failRequests(account1, 3);
+        Thread.sleep(60);
+
+        CircuitBreakers.Permit probe = breakers.acquire(account1);
+        assertThat(breakers.getState(account1), is(CircuitState.HALF_OPEN));
+        assertRejected(account1);
+        probe.complete(null);
+        breakers.acquire(account1).complete(null);
+
+        assertThat(breakers.getState(account1), is(CircuitState.CLOSED));
+        assertThat(events.get(events.size() - 1).getFromState(), is(CircuitState.HALF_OPEN));
+        assertThat(events.get(events.size() - 1).getToState(), is(CircuitState.CLOSED));
+
+    }
+
+    @Test
+    public void testFailedProbeReopensBreaker() throws Exception {
+
+        failRequests(account1, 3);
+        Thread.sleep(60);
+
+        breakers.acquire(account1).complete(new BrightpearlHttpException(ClientErrorCode.SOCKET_TIMEOUT));
+
+        assertThat(breakers.getState(account1), is(CircuitState.OPEN));
+        assertRejected(account1);
+
+    }
+
+    @Test
+    public void testOverloadIsIgnored() throws Exception {
+
+        failRequests(account1, 2);
+        breakers.acquire(account1).complete(new BrightpearlOverloadException("Concurrency limit reached and queue full for EU1"));
+        failRequests(account1, 1);
+
+        assertThat(breakers.getState(account1), is(CircuitState.OPEN));
+
+        Thread.sleep(60);
+        breakers.acquire(account1).complete(new BrightpearlOverloadException("Concurrency limit reached and queue full for EU1"));
+
+        assertThat(breakers.getState(account1), is(CircuitState.HALF_OPEN));
+        breakers.acquire(account1).complete(null);
+        assertThat(breakers.getState(account1), is(CircuitState.HALF_OPEN));
+
+    }
+
+    private void failRequests(Account account, int count) {
+        for (int i = 0; i < count; i++) {
+            breakers.acquire(account).complete(new BrightpearlUnavailableException("Brightpearl API returned 503 Service Unavailable"));
+        }
+    }
+
+    private void assertRejected(Account account) {
+        try {
+            breakers.acquire(account);
+            fail("Expected circuit open exception");
+        } catch (BrightpearlCircuitOpenException e) {
+            // Expected
+        }
+    }
+
+}
@@ -0,0 +1,74 @@
+/*
+ * Copyright 2014 David Morrissey
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package uk.co.visalia.brightpearl.apiclient.client;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import org.junit.Test;
+import uk.co.visalia.brightpearl.apiclient.http.Method;
+import uk.co.visalia.brightpearl.apiclient.http.Request;
+import uk.co.visalia.brightpearl.apiclient.http.RequestBuilder;
+
+import java.io.ByteArrayOutputStream;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+
+public class JsonRequestEntityTest {
+
+    @Test
+    public void testOutputMatchesToJson() throws Exception {
+
+        Gson gson = new GsonBuilder().setPrettyPrinting().create();
+        Map<String, Object> entity = new LinkedHashMap<String, Object>();
+        entity.put("name", "Café €");
+        entity.put("quantity", 3);
+
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        new JsonRequestEntity(gson, entity).writeTo(outputStream);
+
+        assertThat(new String(outputStream.toByteArray(), "UTF-8"), is(gson.toJson(entity)));
+
+    }
+
+    @Test
+    public void testRequestBodyIsRendered() {
+
+        Gson gson = new Gson();
+        Map<String, Object> entity = new LinkedHashMap<String, Object>();
+        entity.put("id", 1);
+
+        Request request = RequestBuilder.newRequest()
+                .withMethod(Method.POST)
+                .withUrl("https://ws-eu1.brightpearl.com/")
+                .withEntity(new JsonRequestEntity(gson, entity))
+                .build();
+
+        assertThat(request.getEntity(), is(notNullValue()));
+        assertThat(request.getBody(), is("{\"id\":1}"));
+        assertThat(request, is(RequestBuilder.newRequest()
+                .withMethod(Method.POST)
+                .withUrl("https://ws-eu1.brightpearl.com/")
+                .withBody("{\"id\":1}")
+                .build()));
+
+    }
+
+}
@@ -0,0 +1,121 @@
+/*
+ * Copyright 2014 David Morrissey
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package uk.co.visalia.brightpearl.apiclient.concurrency;
+
+import org.junit.Test;
+import uk.co.visalia.brightpearl.apiclient.account.Account;
+import uk.co.visalia.brightpearl.apiclient.account.Datacenter;
+import uk.co.visalia.brightpearl.apiclient.exception.BrightpearlDeadlineExceededException;
+import uk.co.visalia.brightpearl.apiclient.exception.BrightpearlOverloadException;
+import uk.co.visalia.brightpearl.apiclient.util.Deadline;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.fail;
+
+public class BulkheadsTest {
+
+    private final Account export = new Account(Datacenter.EU1, "export");
+    private final Account interactive = new Account(Datacenter.EU1, "interactive");
+
+    @Test
+    public void testBusyAccountDoesNotBlockOthers() throws Exception {
+
+        Bulkheads bulkheads = new Bulkheads(BulkheadPolicyBuilder.bulkheadPolicy()
+                .withDefaultMaxConcurrent(1)
+                .build());
+
+        bulkheads.acquire(export).get();
+        CompletableFuture<Bulkheads.Permit> queued = bulkheads.acquire(export);
+
+        assertThat(queued.isDone(), is(false));
+        assertThat(bulkheads.acquire(interactive).isDone(), is(true));
+
+    }
+
+    @Test
+    public void testAccountLimitOverridesDefault() throws Exception {
+
+        Bulkheads bulkheads = new Bulkheads(BulkheadPolicyBuilder.bulkheadPolicy()
+                .withDefaultMaxConcurrent(1)
+                .withAccountMaxConcurrent("export", 3)
+                .build());
+
+        for (int i = 0; i < 3; i++) {
+            assertThat(bulkheads.acquire(export).isDone(), is(true));
+        }
+        assertThat(bulkheads.acquire(export).isDone(), is(false));
+        assertThat(bulkheads.getMetrics("export").getMaxConcurrent(), is(3));
+        assertThat(bulkheads.getMetrics("interactive").getMaxConcurrent(), is(1));
+
+    }
+
+    @Test
+    public void testMetricsRecordQueueWait() throws Exception {
+
+        Bulkheads bulkheads = new Bulkheads(BulkheadPolicyBuilder.bulkheadPolicy()
+                .withDefaultMaxConcurrent(1)
+                .withMaxQueueSize(1)
+                .build());
+
+        Bulkheads.Permit first = bulkheads.acquire(export).get();
+        CompletableFuture<Bulkheads.Permit> queued = bulkheads.acquire(export);
+        try {
+            bulkheads.acquire(export).get(1, TimeUnit.SECONDS);
+            fail("Expected overload exception");
+        } catch (ExecutionException e) {
+            assertThat(e.getCause(), is(instanceOf(BrightpearlOverloadException.class)));
+        }
+
+        Thread.sleep(50);
+        first.release();
+        queued.get(1, TimeUnit.SECONDS).release();
+
+        BulkheadMetrics metrics = bulkheads.getMetrics("export");
+        assertThat(metrics.getAcquired(), is(2L));
+        assertThat(metrics.getRejected(), is(1L));
+        assertThat(metrics.getQueued(), is(1L));
+        assertThat(metrics.getMaxWaitMs(), is(greaterThanOrEqualTo(50L)));
+        assertThat(metrics.getInFlight(), is(0));
+
+    }
+
+    @Test
+    public void testQueueWaitLimitedByDeadline() throws Exception {
+
+        Bulkheads bulkheads = new Bulkheads(BulkheadPolicyBuilder.bulkheadPolicy()
+                .withDefaultMaxConcurrent(1)
+                .build());
+
+        bulkheads.acquire(export).get();
+        long start = System.currentTimeMillis();
+        try {
+            bulkheads.acquire(export, Deadline.start(50)).get(1, TimeUnit.SECONDS);
+            fail("Expected deadline exception");
+        } catch (ExecutionException e) {
+            assertThat(e.getCause(), is(instanceOf(BrightpearlDeadlineExceededException.class)));
+        }
+        assertThat(System.currentTimeMillis() - start, is(lessThan(1000L)));
+        assertThat(bulkheads.getMetrics("export").getQueueSize(), is(0));
+
+    }
+
+}
@@ -0,0 +1,112 @@
+/*
+ * Copyright 2014 David Morrissey
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package uk.co.visalia.brightpearl.apiclient.concurrency;
+
+import org.junit.Test;
+import uk.co.visalia.brightpearl.apiclient.account.Datacenter;
+import uk.co.visalia.brightpearl.apiclient.exception.BrightpearlOverloadException;
+import uk.co.visalia.brightpearl.apiclient.exception.BrightpearlUnavailableException;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.fail;
+
+public class ConcurrencyLimiterTest {
+
+    @Test
+    public void testQueuedRequestGetsReleasedPermit() throws Exception {
+
+        ConcurrencyLimiter limiter = limiter(2, 1, 1000);
+        ConcurrencyLimiter.Permit first = limiter.acquire(Datacenter.EU1).get();
+        limiter.acquire(Datacenter.EU1).get();
+
+        CompletableFuture<ConcurrencyLimiter.Permit> queued = limiter.acquire(Datacenter.EU1);
+        assertThat(queued.isDone(), is(false));
+
+        first.release(null);
+        assertThat(queued.get(1, TimeUnit.SECONDS), is(notNullValue()));
+        assertThat(limiter.getInFlight(Datacenter.EU1), is(2));
+
+    }
+
+    @Test
+    public void testRequestShedWhenQueueFull() throws Exception {
+
+        ConcurrencyLimiter limiter = limiter(2, 1, 1000);
+        limiter.acquire(Datacenter.EU1).get();
+        limiter.acquire(Datacenter.EU1).get();
+        limiter.acquire(Datacenter.EU1);
+
+        assertOverloaded(limiter.acquire(Datacenter.EU1));
+        limiter.acquire(Datacenter.USE).get();
+
+    }
+
+    @Test
+    public void testRequestShedAfterMaxWait() throws Exception {
+
+        ConcurrencyLimiter limiter = limiter(2, 1, 50);
+        limiter.acquire(Datacenter.EU1).get();
+        limiter.acquire(Datacenter.EU1).get();
+
+        assertOverloaded(limiter.acquire(Datacenter.EU1));
+
+    }
+
+    @Test
+    public void testLimitDecreasesOnFailureAndIncreasesUnderLoad() throws Exception {
+
+        ConcurrencyLimiter limiter = limiter(10, 10, 1000);
+        limiter.acquire(Datacenter.EU1).get().release(new BrightpearlUnavailableException("Brightpearl API returned 503 Service Unavailable"));
+        assertThat(limiter.getLimit(Datacenter.EU1), is(9));
+
+        for (int i = 0; i < 100; i++) {
+            ConcurrencyLimiter.Permit[] permits = new ConcurrencyLimiter.Permit[limiter.getLimit(Datacenter.EU1)];
+            for (int p = 0; p < permits.length; p++) {
+                permits[p] = limiter.acquire(Datacenter.EU1).get();
+            }
+            for (ConcurrencyLimiter.Permit permit : permits) {
+                permit.release(null);
+            }
+        }
+        assertThat(limiter.getLimit(Datacenter.EU1), is(greaterThan(9)));
+
+    }
+
+    private ConcurrencyLimiter limiter(int initialLimit, int maxQueueSize, long maxQueueWaitMs) {
+        return new ConcurrencyLimiter(ConcurrencyLimitPolicyBuilder.concurrencyLimitPolicy()
+                .withInitialLimit(initialLimit)
+                .withMinLimit(1)
+                .withMaxQueueSize(maxQueueSize)
+                .withMaxQueueWaitMs(maxQueueWaitMs)
+                .build());
+    }
+
+    private void assertOverloaded(CompletableFuture<ConcurrencyLimiter.Permit> future) throws Exception {
+        try {
+            future.get(1, TimeUnit.SECONDS);
+            fail("Expected overload exception");
+        } catch (ExecutionException e) {
+            assertThat(e.getCause(), is(instanceOf(BrightpearlOverloadException.class)));
+        }
+    }
+
+}
@@ -0,0 +1,187 @@
+/*
+ * Copyright 2014 David Morrissey
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package uk.co.visalia.brightpearl.apiclient.hedging;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import uk.co.visalia.brightpearl.apiclient.account.Account;
+import uk.co.visalia.brightpearl.apiclient.account.Datacenter;
+import uk.co.visalia.brightpearl.apiclient.http.Response;
+import uk.co.visalia.brightpearl.apiclient.http.ResponseBuilder;
+import uk.co.visalia.brightpearl.apiclient.ratelimit.NoOpRateLimiter;
+import uk.co.visalia.brightpearl.apiclient.ratelimit.RateLimiter;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+
+public class RequestHedgerTest {
+
+    private final Account account = new Account(Datacenter.EU1, "visalia1");
+
+    private ScheduledExecutorService scheduler;
+
+    @Before
+    public void setup() {
+        scheduler = Executors.newSingleThreadScheduledExecutor();
+    }
+
+    @After
+    public void tearDown() {
+        scheduler.shutdownNow();
+    }
+
+    @Test
+    public void testNoHedgeBeforeMinSamples() throws Exception {
+
+        RequestHedger hedger = new RequestHedger(policy(1.0), new NoOpRateLimiter(), scheduler);
+        Attempts attempts = new Attempts();
+
+        CompletableFuture<Response> result = hedger.execute(account, attempts);
+        Thread.sleep(100);
+
+        assertThat(attempts.futures.size(), is(1));
+        attempts.complete(0, "primary");
+        assertThat(result.get(1, TimeUnit.SECONDS).getBody(), is("primary"));
+
+    }
+
+    @Test
+    public void testHedgeWinsWhenPrimaryIsSlow() throws Exception {
+
+        RequestHedger hedger = new RequestHedger(policy(1.0), new NoOpRateLimiter(), scheduler);
+        warmUp(hedger);
+        Attempts attempts = new Attempts();
+
+        CompletableFuture<Response> result = hedger.execute(account, attempts);
+        awaitAttempts(attempts, 2);
+        attempts.complete(1, "hedge");
+        attempts.complete(0, "primary");
+
+        assertThat(result.get(1, TimeUnit.SECONDS).getBody(), is("hedge"));
+
+    }
+
+    @Test
+    public void testPrimaryFailureWaitsForHedge() throws Exception {
+
+        RequestHedger hedger = new RequestHedger(policy(1.0), new NoOpRateLimiter(), scheduler);
+        warmUp(hedger);
+        Attempts attempts = new Attempts();
+
+        CompletableFuture<Response> result = hedger.execute(account, attempts);
+        awaitAttempts(attempts, 2);
+        attempts.futures.get(0).completeExceptionally(new IllegalStateException("primary failed"));
+        assertThat(result.isDone(), is(false));
+        attempts.complete(1, "hedge");
+
+        assertThat(result.get(1, TimeUnit.SECONDS).getBody(), is("hedge"));
+
+    }
+
+    @Test
+    public void testNoHedgeWhenRateLimiterRefuses() throws Exception {
+
+        RateLimiter rateLimiter = new NoOpRateLimiter() {
+            @Override
+            public boolean tryRateLimit(Account account) {
+                return false;
+            }
+        };
+        RequestHedger hedger = new RequestHedger(policy(1.0), rateLimiter, scheduler);
+        warmUp(hedger);
+        Attempts attempts = new Attempts();
+
+        hedger.execute(account, attempts);
+        Thread.sleep(100);
+
+        assertThat(attempts.futures.size(), is(1));
+
+    }
+
+    @Test
+    public void testHedgeRatioIsCapped() throws Exception {
+
+        RequestHedger hedger = new RequestHedger(policy(0.1), new NoOpRateLimiter(), scheduler);
+        warmUp(hedger);
+        Attempts attempts = new Attempts();
+
+        for (int i = 0; i < 50; i++) {
+            hedger.execute(account, attempts);
+        }
+        Thread.sleep(200);
+
+        // The balance carried over from warm up plus one in ten of these requests.
+        assertThat(attempts.futures.size(), is(lessThanOrEqualTo(50 + 10)));
+        assertThat(attempts.futures.size(), is(greaterThan(50)));
+
+    }
+
+    private HedgingPolicy policy(double maxHedgeRatio) {
+        return HedgingPolicyBuilder.hedgingPolicy()
+                .withMinSamples(10)
+                .withWindowSize(10)
+                .withMinDelayMs(10)
+                .withMaxDelayMs(20)
+                .withMaxHedgeRatio(maxHedgeRatio)
+                .build();
+    }
+
+    private void warmUp(RequestHedger hedger) throws Exception {
+        for (int i = 0; i < 10; i++) {
+            hedger.execute(account, () -> CompletableFuture.completedFuture(response("warm"))).get();
+        }
+    }
+
+    private void awaitAttempts(Attempts attempts, int count) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 1000;
+        while (attempts.futures.size() < count && System.currentTimeMillis() < deadline) {
+            Thread.sleep(5);
+        }
+        assertThat(attempts.futures.size(), is(count));
+    }
+
+    private static Response response(String body) {
+        return ResponseBuilder.newResponse().withStatus(200).withBody(body).build();
+    }
+
+    private static final class Attempts implements Supplier<CompletableFuture<Response>> {
+
+        private final List<CompletableFuture<Response>> futures = new CopyOnWriteArrayList<CompletableFuture<Response>>();
+
+        @Override
+        public CompletableFuture<Response> get() {
+            CompletableFuture<Response> future = new CompletableFuture<Response>();
+            futures.add(future);
+            return future;
+        }
+
+        private void complete(int index, String body) {
+            futures.get(index).complete(response(body));
+        }
+
+    }
+
+}
@@ -0,0 +1,126 @@
+/*
+ * Copyright 2014 David Morrissey
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package uk.co.visalia.brightpearl.apiclient.http;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.Charset;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+
+public class BufferPoolTest {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    @Test
+    public void testBuffersAreReused() {
+
+        BufferPool pool = new BufferPool(2, 16);
+
+        byte[] first = pool.acquire();
+        pool.release(first);
+        byte[] second = pool.acquire();
+
+        assertThat(second, is(sameInstance(first)));
+        assertThat(pool.getHits(), is(1L));
+        assertThat(pool.getMisses(), is(1L));
+        assertThat(pool.getHitRate(), is(0.5));
+
+    }
+
+    @Test
+    public void testPoolSizeIsLimited() {
+
+        BufferPool pool = new BufferPool(1, 16);
+
+        pool.release(new byte[16]);
+        pool.release(new byte[16]);
+
+        assertThat(pool.getAvailable(), is(1));
+
+    }
+
+    @Test
+    public void testOversizedBuffersAreDiscarded() {
+
+        BufferPool pool = new BufferPool(1, 16, 32);
+
+        pool.release(new byte[64]);
+
+        assertThat(pool.getAvailable(), is(0));
+
+    }
+
+    @Test
+    public void testEncodeGrowsBuffer() {
+
+        BufferPool pool = new BufferPool(1, 4);
+        String string = "{\"name\":\"Café €\"}";
+
+        BufferPool.Buffer buffer = pool.encode(string, UTF_8);
+
+        assertThat(buffer.getLength(), is(string.getBytes(UTF_8).length));
+        assertThat(buffer.toString(UTF_8), is(string));
+        buffer.release();
+        assertThat(pool.getAvailable(), is(1));
+
+    }
+
+    @Test
+    public void testReadGrowsBuffer() throws Exception {
+
+        BufferPool pool = new BufferPool(1, 4);
+        String string = "{\"response\":\"A longer response body\"}";
+
+        BufferPool.Buffer buffer = pool.read(new ByteArrayInputStream(string.getBytes(UTF_8)), -1);
+
+        assertThat(buffer.toString(UTF_8), is(string));
+
+    }
+
+    @Test
+    public void testReadWithLengthHintGrowsOnce() throws Exception {
+
+        BufferPool pool = new BufferPool(1, 16);
+        byte[] body = new byte[100];
+
+        BufferPool.Buffer buffer = pool.read(new ByteArrayInputStream(body), body.length);
+
+        assertThat(buffer.getLength(), is(100));
+        assertThat(pool.getMisses(), is(2L));
+        assertThat(pool.getHitRate(), is(0.0));
+
+    }
+
+    @Test
+    public void testGrowCountsAsMiss() {
+
+        BufferPool pool = new BufferPool(1, 4);
+        pool.release(new byte[4]);
+
+        pool.grow(pool.acquire(), 4, 8);
+
+        assertThat(pool.getHits(), is(1L));
+        assertThat(pool.getMisses(), is(1L));
+        assertThat(pool.getHitRate(), is(0.5));
+
+    }
+
+}
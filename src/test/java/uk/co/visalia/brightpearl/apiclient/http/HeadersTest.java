@@ -0,0 +1,89 @@
+/*
+ * Copyright 2014 David Morrissey
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package uk.co.visalia.brightpearl.apiclient.http;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+
+public class HeadersTest {
+
+    @Test
+    public void testLookupIsCaseInsensitive() {
+
+        Response response = ResponseBuilder.newResponse()
+                .withHeader("content-type", "application/json")
+                .withHeader("X-Custom", "value")
+                .build();
+
+        assertThat(response.getHeader("Content-Type"), is("application/json"));
+        assertThat(response.getHeader("x-custom"), is("value"));
+        assertThat(response.getHeader("missing"), is(nullValue()));
+        assertThat(response.getHeaderList().getContentType(), is("application/json"));
+
+    }
+
+    @Test
+    public void testRepeatedHeadersKeepAllValues() {
+
+        Headers headers = ResponseBuilder.newResponse()
+                .withHeader("Set-Cookie", "a=1")
+                .withHeader("set-cookie", "b=2")
+                .build()
+                .getHeaderList();
+
+        assertThat(headers.size(), is(2));
+        assertThat(headers.getFirst("SET-COOKIE"), is("a=1"));
+        assertThat(headers.getAll("Set-Cookie"), is(Arrays.asList("a=1", "b=2")));
+        assertThat(headers.toMap(), is(Collections.singletonMap("Set-Cookie", "a=1, b=2")));
+
+    }
+
+    @Test
+    public void testRateLimitHeadersAreIndexed() {
+
+        Headers headers = ResponseBuilder.newResponse()
+                .withHeader("Date", "Mon, 01 Jan 2024 00:00:00 GMT")
+                .withHeader("Brightpearl-Requests-Remaining", "150")
+                .withHeader("Brightpearl-Next-Throttle-Period", "45000")
+                .build()
+                .getHeaderList();
+
+        assertThat(headers.getRequestsRemaining(), is("150"));
+        assertThat(headers.getNextThrottlePeriod(), is("45000"));
+        assertThat(headers.getContentType(), is(nullValue()));
+
+    }
+
+    @Test
+    public void testMapHeadersAreConverted() {
+
+        Response response = ResponseBuilder.newResponse()
+                .withHeaders(Collections.singletonMap("brightpearl-requests-remaining", "10"))
+                .build();
+
+        assertThat(response.getHeaderList().getRequestsRemaining(), is("10"));
+        assertThat(response.getHeaders(), is(Collections.singletonMap("brightpearl-requests-remaining", "10")));
+
+    }
+
+}
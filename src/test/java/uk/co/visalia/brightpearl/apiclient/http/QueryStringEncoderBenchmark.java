@@ -0,0 +1,100 @@
+/*
+ * Copyright 2014 David Morrissey
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package uk.co.visalia.brightpearl.apiclient.http;
+
+import org.apache.http.client.utils.URIBuilder;
+
+import java.lang.management.ManagementFactory;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Compares the cost of building a GET request URL with the previous approach, which formatted the URL for every request
+ * and parsed it again with URIBuilder to add parameters, against a preformatted service URL and
+ * {@link QueryStringEncoder}. Run with the test classpath; this is not a unit test.
+ */
+public class QueryStringEncoderBenchmark {
+
+    private static final String SERVICE_TEMPLATE = "%s/public-api/%s/%s/%s";
+
+    private static final int WARM_UP = 200000;
+
+    private static final int ITERATIONS = 1000000;
+
+    private static final String HOST = "https://ws-eu1.brightpearl.com";
+
+    private static final String ACCOUNT = "myaccount";
+
+    private static final String SERVICE = "product-service";
+
+    private static final String PATH = "product-search";
+
+    private static final String SERVICE_URL = HOST + "/public-api/" + ACCOUNT + "/" + SERVICE + "/";
+
+    private static volatile String sink;
+
+    public static void main(String[] args) throws Exception {
+
+        Map<String, String> parameters = new LinkedHashMap<String, String>();
+        parameters.put("productName", "Blue widget");
+        parameters.put("columns", "productId,productName,SKU");
+        parameters.put("firstResult", "1");
+        parameters.put("pageSize", "500");
+
+        for (int round = 0; round < 3; round++) {
+            run("format + URIBuilder", new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        URIBuilder builder = new URIBuilder(String.format(SERVICE_TEMPLATE, HOST, ACCOUNT, SERVICE, PATH));
+                        for (Map.Entry<String, String> param : parameters.entrySet()) {
+                            builder.setParameter(param.getKey(), param.getValue());
+                        }
+                        sink = builder.build().toString();
+                    } catch (Exception e) {
+                        throw new IllegalStateException(e);
+                    }
+                }
+            });
+            run("cached URL + QueryStringEncoder", new Runnable() {
+                @Override
+                public void run() {
+                    sink = QueryStringEncoder.appendParameters(SERVICE_URL.concat(PATH), parameters);
+                }
+            });
+        }
+
+    }
+
+    private static void run(String name, Runnable task) {
+        for (int i = 0; i < WARM_UP; i++) {
+            task.run();
+        }
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean)ManagementFactory.getThreadMXBean();
+        long threadId = Thread.currentThread().getId();
+        long allocated = threads.getThreadAllocatedBytes(threadId);
+        long cpu = threads.getCurrentThreadCpuTime();
+        for (int i = 0; i < ITERATIONS; i++) {
+            task.run();
+        }
+        cpu = threads.getCurrentThreadCpuTime() - cpu;
+        allocated = threads.getThreadAllocatedBytes(threadId) - allocated;
+        System.out.println(String.format("%-32s %8.1f ns/op %8d bytes/op", name, (double)cpu / ITERATIONS, allocated / ITERATIONS));
+    }
+
+}
@@ -0,0 +1,70 @@
+/*
+ * Copyright 2014 David Morrissey
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package uk.co.visalia.brightpearl.apiclient.http;
+
+import org.apache.http.client.utils.URIBuilder;
+import org.junit.Test;
+
+import java.net.URLEncoder;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+
+public class QueryStringEncoderTest {
+
+    private static final String[] VALUES = { "simple", "with space", "a+b&c=d", "100%", "-_.*~!'()", "Café", "€1,000", "😀", "\uD83D" };
+
+    @Test
+    public void testEncodingMatchesUrlEncoder() throws Exception {
+
+        for (String value : VALUES) {
+            StringBuilder builder = new StringBuilder();
+            QueryStringEncoder.encode(builder, value);
+            assertThat(value, builder.toString(), is(URLEncoder.encode(value, "UTF-8")));
+        }
+
+    }
+
+    @Test
+    public void testParametersMatchUriBuilder() throws Exception {
+
+        String url = "https://ws-eu1.brightpearl.com/public-api/account/product-service/product-search";
+        Map<String, String> parameters = new LinkedHashMap<String, String>();
+        URIBuilder uriBuilder = new URIBuilder(url);
+        for (int i = 0; i < VALUES.length - 1; i++) {
+            parameters.put("p" + i, VALUES[i]);
+            uriBuilder.setParameter("p" + i, VALUES[i]);
+        }
+
+        assertThat(QueryStringEncoder.appendParameters(url, parameters), is(uriBuilder.build().toString()));
+
+    }
+
+    @Test
+    public void testExistingQueryIsExtended() {
+
+        assertThat(QueryStringEncoder.appendParameters("http://localhost/path?a=1", Collections.singletonMap("b", "2")), is("http://localhost/path?a=1&b=2"));
+        assertThat(QueryStringEncoder.appendParameters("http://localhost/path", Collections.singletonMap("b", (String)null)), is("http://localhost/path?b"));
+        assertThat(QueryStringEncoder.appendParameters("http://localhost/path", null), is("http://localhost/path"));
+
+    }
+
+}
@@ -0,0 +1,306 @@
+/*
+ * Copyright 2014 David Morrissey
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package uk.co.visalia.brightpearl.apiclient.http.httpclient4;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import uk.co.visalia.brightpearl.apiclient.account.Account;
+import uk.co.visalia.brightpearl.apiclient.account.Datacenter;
+import uk.co.visalia.brightpearl.apiclient.http.Client;
+import uk.co.visalia.brightpearl.apiclient.http.Method;
+import uk.co.visalia.brightpearl.apiclient.http.RequestBuilder;
+import uk.co.visalia.brightpearl.apiclient.http.Response;
+import uk.co.visalia.brightpearl.apiclient.http.WarmUpResult;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.fail;
+
+public class HttpClient4ClientFactoryTest {
+
+    private HttpServer server;
+
+    private String baseUrl;
+
+    private Account account;
+
+    /*
+     * The server responds with the client port of the connection each request was received on, so tests can tell
+     * whether a pooled connection was reused.
+     */
+    @Before
+    public void setUp() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.setExecutor(Executors.newCachedThreadPool());
+        server.createContext("/", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                if (exchange.getRequestURI().getPath().equals("/slow")) {
+                    try {
+                        Thread.sleep(300);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+                byte[] body = Integer.toString(exchange.getRemoteAddress().getPort()).getBytes("UTF-8");
+                exchange.getResponseHeaders().add("Content-Type", "application/json; charset=UTF-8");
+                exchange.sendResponseHeaders(200, body.length);
+                exchange.getResponseBody().write(body);
+                exchange.close();
+            }
+        });
+        server.start();
+        baseUrl = "http://127.0.0.1:" + server.getAddress().getPort();
+        account = new Account(new Datacenter("LOCAL", baseUrl), "visalia");
+    }
+
+    @After
+    public void tearDown() {
+        server.stop(0);
+    }
+
+    @Test
+    public void testClientsArePartitionedByDatacenter() {
+
+        HttpClient4ClientFactory factory = HttpClient4ClientFactoryBuilder.httpClient4ClientFactory().build();
+
+        assertThat(factory.getClient(new Account(Datacenter.EU1, "one")), is(sameInstance(factory.getClient(new Account(Datacenter.EU1, "two")))));
+        assertThat(factory.getClient(new Account(Datacenter.EU1, "one")), is(not(sameInstance(factory.getClient(new Account(Datacenter.USE, "one"))))));
+
+    }
+
+    @Test
+    public void testDatacenterPoolLimits() {
+
+        HttpClient4ClientFactory factory = HttpClient4ClientFactoryBuilder.httpClient4ClientFactory()
+                .withMaxConnections(8)
+                .withMaxConnectionsPerRoute(4)
+                .withDatacenterPoolLimits(Datacenter.USW, 30, 15)
+                .build();
+
+        assertThat(factory.getPoolLimits(Datacenter.EU1).getMaxConnections(), is(8));
+        assertThat(factory.getPoolLimits(Datacenter.EU1).getMaxConnectionsPerRoute(), is(4));
+        assertThat(factory.getPoolLimits(Datacenter.USW).getMaxConnections(), is(30));
+        assertThat(factory.getPoolLimits(Datacenter.USW).getMaxConnectionsPerRoute(), is(15));
+
+    }
+
+    @Test
+    public void testClientWithoutAccountUsesDefaultPool() {
+
+        HttpClient4ClientFactory factory = HttpClient4ClientFactoryBuilder.httpClient4ClientFactory().build();
+
+        try {
+            Client client = factory.getClient(null);
+
+            assertThat(factory.getClient(null), is(sameInstance(client)));
+            assertThat(factory.getClient(new Account(Datacenter.EU1, "visalia")), is(not(sameInstance(client))));
+
+            Response response = client.execute(RequestBuilder.newRequest()
+                    .withMethod(Method.GET)
+                    .withUrl(baseUrl + "/")
+                    .build());
+            assertThat(response.getStatus(), is(200));
+        } finally {
+            factory.shutdown();
+        }
+
+    }
+
+    @Test
+    public void testIdleConnectionsAreReused() throws Exception {
+
+        HttpClient4ClientFactory factory = HttpClient4ClientFactoryBuilder.httpClient4ClientFactory()
+                .withEvictionIntervalMs(0)
+                .build();
+
+        try {
+            String first = get(factory, "/").getBody();
+            Thread.sleep(300);
+            assertThat(get(factory, "/").getBody(), is(first));
+        } finally {
+            factory.shutdown();
+        }
+
+    }
+
+    @Test
+    public void testIdleConnectionsAreEvicted() throws Exception {
+
+        HttpClient4ClientFactory factory = HttpClient4ClientFactoryBuilder.httpClient4ClientFactory()
+                .withIdleConnectionTimeoutMs(100)
+                .withEvictionIntervalMs(50)
+                .build();
+
+        try {
+            String first = get(factory, "/").getBody();
+            Thread.sleep(300);
+            assertThat(get(factory, "/").getBody(), is(not(first)));
+        } finally {
+            factory.shutdown();
+        }
+
+    }
+
+    @Test
+    public void testExpiredConnectionsAreEvicted() throws Exception {
+
+        HttpClient4ClientFactory factory = HttpClient4ClientFactoryBuilder.httpClient4ClientFactory()
+                .withIdleConnectionTimeoutMs(0)
+                .withConnectionTimeToLiveMs(100)
+                .withEvictionIntervalMs(50)
+                .build();
+
+        try {
+            String first = get(factory, "/").getBody();
+            Thread.sleep(300);
+            assertThat(get(factory, "/").getBody(), is(not(first)));
+        } finally {
+            factory.shutdown();
+        }
+
+    }
+
+    @Test
+    public void testShutdownWaitsForRequestsInProgress() throws Exception {
+
+        final HttpClient4ClientFactory factory = HttpClient4ClientFactoryBuilder.httpClient4ClientFactory().build();
+        factory.getClient(account);
+
+        Future<Response> inProgress = Executors.newSingleThreadExecutor().submit(new Callable<Response>() {
+            @Override
+            public Response call() {
+                return get(factory, "/slow");
+            }
+        });
+        Thread.sleep(100);
+        factory.shutdown();
+
+        assertThat(inProgress.isDone(), is(true));
+        assertThat(inProgress.get().getStatus(), is(200));
+        try {
+            factory.getClient(new Account(Datacenter.EU1, "visalia"));
+            fail("Expected client factory to be shut down");
+        } catch (IllegalStateException e) {
+            // Expected
+        }
+
+    }
+
+    @Test
+    public void testWarmUpOpensConnectionsUpToRouteLimit() throws Exception {
+
+        final ServerSocket serverSocket = new ServerSocket(0, 50, InetAddress.getByName("127.0.0.1"));
+        final AtomicInteger accepted = new AtomicInteger();
+        final List<Socket> sockets = Collections.synchronizedList(new ArrayList<Socket>());
+        Thread acceptor = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    while (true) {
+                        sockets.add(serverSocket.accept());
+                        accepted.incrementAndGet();
+                    }
+                } catch (IOException e) {
+                    // Server socket closed
+                }
+            }
+        });
+        acceptor.setDaemon(true);
+        acceptor.start();
+
+        Datacenter datacenter = new Datacenter("WARM", "http://127.0.0.1:" + serverSocket.getLocalPort());
+        HttpClient4ClientFactory factory = HttpClient4ClientFactoryBuilder.httpClient4ClientFactory()
+                .withMaxConnectionsPerRoute(2)
+                .build();
+
+        try {
+            List<WarmUpResult> results = factory.warmUp(Collections.singletonList(datacenter), 3);
+
+            assertThat(results.size(), is(1));
+            WarmUpResult result = results.get(0);
+            assertThat(result.getDatacenter(), is(datacenter));
+            assertThat(result.getConnectionsRequested(), is(2));
+            assertThat(result.getConnectionsOpened(), is(2));
+            assertThat(result.getConnectionTimesMs().size(), is(2));
+            assertThat(result.getFailure(), is(nullValue()));
+            assertThat(result.isSuccessful(), is(true));
+
+            long waitUntil = System.currentTimeMillis() + 1000;
+            while (accepted.get() < 2 && System.currentTimeMillis() < waitUntil) {
+                Thread.sleep(10);
+            }
+            assertThat(accepted.get(), is(2));
+        } finally {
+            factory.shutdown();
+            serverSocket.close();
+            for (Socket socket : sockets) {
+                socket.close();
+            }
+        }
+
+    }
+
+    @Test
+    public void testWarmUpReportsConnectionFailure() throws Exception {
+
+        ServerSocket serverSocket = new ServerSocket(0, 50, InetAddress.getByName("127.0.0.1"));
+        int port = serverSocket.getLocalPort();
+        serverSocket.close();
+
+        Datacenter datacenter = new Datacenter("CLOSED", "http://127.0.0.1:" + port);
+        HttpClient4ClientFactory factory = HttpClient4ClientFactoryBuilder.httpClient4ClientFactory().build();
+
+        try {
+            WarmUpResult result = factory.warmUp(Collections.singletonList(datacenter), 2).get(0);
+
+            assertThat(result.getConnectionsRequested(), is(2));
+            assertThat(result.getConnectionsOpened(), is(0));
+            assertThat(result.getFailure(), is(notNullValue()));
+            assertThat(result.isSuccessful(), is(false));
+        } finally {
+            factory.shutdown();
+        }
+
+    }
+
+    private Response get(HttpClient4ClientFactory factory, String path) {
+        return factory.getClient(account).execute(RequestBuilder.newRequest()
+                .withMethod(Method.GET)
+                .withUrl(baseUrl + path)
+                .build());
+    }
+
+}
@@ -0,0 +1,247 @@
+/*
+ * Copyright 2014 David Morrissey
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package uk.co.visalia.brightpearl.apiclient.http.httpclient4;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import uk.co.visalia.brightpearl.apiclient.BrightpearlApiClient.ApiSession;
+import uk.co.visalia.brightpearl.apiclient.BrightpearlApiClientFactory;
+import uk.co.visalia.brightpearl.apiclient.ServiceName;
+import uk.co.visalia.brightpearl.apiclient.account.Account;
+import uk.co.visalia.brightpearl.apiclient.account.Datacenter;
+import uk.co.visalia.brightpearl.apiclient.auth.PrivateAppAuthorisation;
+import uk.co.visalia.brightpearl.apiclient.auth.PrivateAppIdentity;
+import uk.co.visalia.brightpearl.apiclient.exception.BrightpearlDeadlineExceededException;
+import uk.co.visalia.brightpearl.apiclient.http.Method;
+import uk.co.visalia.brightpearl.apiclient.http.RequestBuilder;
+import uk.co.visalia.brightpearl.apiclient.http.Response;
+import uk.co.visalia.brightpearl.apiclient.ratelimit.NoOpRateLimiter;
+import uk.co.visalia.brightpearl.apiclient.request.ServiceReadRequestBuilder;
+import uk.co.visalia.brightpearl.apiclient.util.Deadline;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.concurrent.Executors;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.fail;
+
+public class HttpClient4ClientTest {
+
+    private static final String LONG_BODY = "{\"note\":\"" + new String(new char[2000]).replace('\0', 'x') + "\"}";
+
+    private HttpServer server;
+
+    private String baseUrl;
+
+    private Account account;
+
+    private HttpClient4ClientFactory factory;
+
+    /*
+     * The server decompresses gzip request bodies, and compresses its response when the client accepts gzip. It echoes
+     * the encodings used in both directions so that tests can tell what was sent over the wire. Requests to the API
+     * and to /slow are held for two seconds, longer than any deadline used by the tests.
+     */
+    @Before
+    public void setUp() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.setExecutor(Executors.newCachedThreadPool());
+        server.createContext("/", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                String requestEncoding = exchange.getRequestHeaders().getFirst("Content-Encoding");
+                InputStream requestStream = exchange.getRequestBody();
+                if ("gzip".equals(requestEncoding)) {
+                    requestStream = new GZIPInputStream(requestStream);
+                }
+                String requestBody = new String(read(requestStream), "UTF-8");
+                String acceptEncoding = exchange.getRequestHeaders().getFirst("Accept-Encoding");
+                boolean gzip = acceptEncoding != null && acceptEncoding.contains("gzip");
+
+                byte[] body = (exchange.getRequestMethod() + " " + requestEncoding + " " + requestBody).getBytes("UTF-8");
+                if (gzip) {
+                    ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+                    GZIPOutputStream gzipStream = new GZIPOutputStream(compressed);
+                    gzipStream.write(body);
+                    gzipStream.close();
+                    body = compressed.toByteArray();
+                    exchange.getResponseHeaders().add("Content-Encoding", "gzip");
+                }
+                exchange.getResponseHeaders().add("Content-Type", "application/json; charset=UTF-8");
+                exchange.getResponseHeaders().add("X-Response-Encoding", gzip ? "gzip" : "identity");
+                exchange.sendResponseHeaders(200, body.length);
+                OutputStream responseStream = exchange.getResponseBody();
+                responseStream.write(body);
+                responseStream.close();
+            }
+        });
+        HttpHandler slowHandler = new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                try {
+                    Thread.sleep(2000);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                exchange.sendResponseHeaders(200, -1);
+                exchange.close();
+            }
+        };
+        server.createContext("/slow", slowHandler);
+        server.createContext("/public-api", slowHandler);
+        server.start();
+        baseUrl = "http://127.0.0.1:" + server.getAddress().getPort();
+        account = new Account(new Datacenter("LOCAL", baseUrl), "visalia");
+    }
+
+    @After
+    public void tearDown() {
+        if (factory != null) {
+            factory.shutdown();
+        }
+        server.stop(0);
+    }
+
+    @Test
+    public void testGzipRoundTrip() {
+
+        factory = HttpClient4ClientFactoryBuilder.httpClient4ClientFactory()
+                .withAcceptCompression(true)
+                .withRequestCompressionThreshold(1024)
+                .build();
+
+        Response response = post(LONG_BODY);
+
+        assertThat(response.getHeader("X-Response-Encoding"), is("gzip"));
+        assertThat(response.getBody(), is("POST gzip " + LONG_BODY));
+
+    }
+
+    @Test
+    public void testGzipRoundTripWithBufferPool() {
+
+        factory = HttpClient4ClientFactoryBuilder.httpClient4ClientFactory()
+                .withAcceptCompression(true)
+                .withRequestCompressionThreshold(1024)
+                .withBufferPoolSize(2)
+                .withBufferSize(256)
+                .build();
+
+        Response response = post(LONG_BODY);
+
+        assertThat(response.getHeader("X-Response-Encoding"), is("gzip"));
+        assertThat(response.getBody(), is("POST gzip " + LONG_BODY));
+
+    }
+
+    @Test
+    public void testBodyBelowThresholdIsNotCompressed() {
+
+        factory = HttpClient4ClientFactoryBuilder.httpClient4ClientFactory()
+                .withRequestCompressionThreshold(1024)
+                .build();
+
+        Response response = post("{\"note\":\"short\"}");
+
+        assertThat(response.getBody(), is("POST null {\"note\":\"short\"}"));
+
+    }
+
+    @Test
+    public void testCompressionDisabledByDefault() {
+
+        factory = HttpClient4ClientFactoryBuilder.httpClient4ClientFactory().build();
+
+        Response response = post(LONG_BODY);
+
+        assertThat(response.getHeader("X-Response-Encoding"), is("identity"));
+        assertThat(response.getBody(), is("POST null " + LONG_BODY));
+
+    }
+
+    @Test
+    public void testDeadlineLimitsSocketTimeout() {
+
+        factory = HttpClient4ClientFactoryBuilder.httpClient4ClientFactory().build();
+
+        long start = System.currentTimeMillis();
+        try {
+            factory.getClient(account).execute(RequestBuilder.newRequest()
+                    .withMethod(Method.GET)
+                    .withUrl(baseUrl + "/slow")
+                    .withDeadline(Deadline.start(200))
+                    .build());
+            fail("Expected deadline exceeded");
+        } catch (BrightpearlDeadlineExceededException e) {
+            // Expected
+        }
+        assertThat(System.currentTimeMillis() - start, is(lessThan(1500L)));
+
+    }
+
+    @Test
+    public void testApiClientDeadlineExceededBySlowTransport() {
+
+        factory = HttpClient4ClientFactoryBuilder.httpClient4ClientFactory().build();
+        PrivateAppAuthorisation authorisation = PrivateAppAuthorisation.system(PrivateAppIdentity.create(account, "visalia_unittest"), "abcd1234");
+        ApiSession session = BrightpearlApiClientFactory.brightpearlApiClient()
+                .withClientFactory(factory)
+                .withRateLimiter(new NoOpRateLimiter())
+                .build()
+                .createSession(authorisation);
+
+        long start = System.currentTimeMillis();
+        try {
+            session.get(ServiceReadRequestBuilder.newGetRequest(ServiceName.CONTACT, "/contact/1", String.class).withDeadlineMs(200));
+            fail("Expected deadline exceeded");
+        } catch (BrightpearlDeadlineExceededException e) {
+            // Expected
+        }
+        assertThat(System.currentTimeMillis() - start, is(lessThan(1500L)));
+
+    }
+
+    private Response post(String body) {
+        return factory.getClient(account).execute(RequestBuilder.newRequest()
+                .withMethod(Method.POST)
+                .withUrl(baseUrl + "/order")
+                .withBody(body)
+                .build());
+    }
+
+    private static byte[] read(InputStream inputStream) throws IOException {
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        byte[] buffer = new byte[1024];
+        int read;
+        while ((read = inputStream.read(buffer)) != -1) {
+            outputStream.write(buffer, 0, read);
+        }
+        return outputStream.toByteArray();
+    }
+
+}
@@ -0,0 +1,266 @@
+/*
+ * Copyright 2014 David Morrissey
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package uk.co.visalia.brightpearl.apiclient.http.httpclient5;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import org.apache.hc.core5.http.ContentType;
+import org.apache.hc.core5.http.EntityDetails;
+import org.apache.hc.core5.http.HttpRequest;
+import org.apache.hc.core5.http.Message;
+import org.apache.hc.core5.http.URIScheme;
+import org.apache.hc.core5.http.impl.bootstrap.HttpAsyncServer;
+import org.apache.hc.core5.http.nio.AsyncRequestConsumer;
+import org.apache.hc.core5.http.nio.AsyncServerRequestHandler;
+import org.apache.hc.core5.http.nio.entity.StringAsyncEntityConsumer;
+import org.apache.hc.core5.http.nio.support.BasicRequestConsumer;
+import org.apache.hc.core5.http.nio.support.BasicResponseProducer;
+import org.apache.hc.core5.http.protocol.HttpContext;
+import org.apache.hc.core5.http2.HttpVersionPolicy;
+import org.apache.hc.core5.http2.impl.nio.bootstrap.H2ServerBootstrap;
+import org.apache.hc.core5.http2.ssl.H2ServerTlsStrategy;
+import org.apache.hc.core5.io.CloseMode;
+import org.apache.hc.core5.reactor.ListenerEndpoint;
+import org.apache.hc.core5.ssl.SSLContexts;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import uk.co.visalia.brightpearl.apiclient.exception.BrightpearlHttpException;
+import uk.co.visalia.brightpearl.apiclient.exception.ClientErrorCode;
+import uk.co.visalia.brightpearl.apiclient.http.Method;
+import uk.co.visalia.brightpearl.apiclient.http.RequestBuilder;
+import uk.co.visalia.brightpearl.apiclient.http.Response;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.util.Collections;
+import java.util.concurrent.Executors;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.fail;
+
+public class HttpClient5ClientTest {
+
+    private static final char[] STORE_PASSWORD = "changeit".toCharArray();
+
+    private HttpServer server;
+
+    private String baseUrl;
+
+    private HttpClient5ClientFactory factory;
+
+    private HttpAsyncServer h2Server;
+
+    private String trustStore;
+
+    private String trustStorePassword;
+
+    @Before
+    public void setUp() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.setExecutor(Executors.newCachedThreadPool());
+        server.createContext("/", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                if (exchange.getRequestURI().getPath().equals("/slow")) {
+                    // Well beyond the socket timeout, as the I/O reactor only checks timeouts about once a second.
+                    try {
+                        Thread.sleep(3000);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+                String requestBody = read(exchange.getRequestBody());
+                byte[] body = (exchange.getRequestMethod() + " " + exchange.getRequestURI() + " " + requestBody).getBytes("UTF-8");
+                exchange.getResponseHeaders().add("Content-Type", "application/json; charset=UTF-8");
+                exchange.getResponseHeaders().add("brightpearl-requests-remaining", "99");
+                exchange.sendResponseHeaders(200, body.length);
+                exchange.getResponseBody().write(body);
+                exchange.close();
+            }
+        });
+        server.start();
+        baseUrl = "http://127.0.0.1:" + server.getAddress().getPort();
+        factory = HttpClient5ClientFactoryBuilder.httpClient5ClientFactory().withSocketTimeoutMs(500).build();
+    }
+
+    @After
+    public void tearDown() {
+        factory.shutdown();
+        server.stop(0);
+        if (h2Server != null) {
+            h2Server.close(CloseMode.IMMEDIATE);
+            restoreProperty("javax.net.ssl.trustStore", trustStore);
+            restoreProperty("javax.net.ssl.trustStorePassword", trustStorePassword);
+        }
+    }
+
+    @Test
+    public void testGetWithParameters() {
+
+        Response response = factory.getClient(null).execute(RequestBuilder.newRequest()
+                .withMethod(Method.GET)
+                .withUrl(baseUrl + "/public-api/account/product-service/product")
+                .withParameters(Collections.singletonMap("name", "Café au lait"))
+                .build());
+
+        assertThat(response.getStatus(), is(200));
+        assertThat(response.getBody(), is("GET /public-api/account/product-service/product?name=Caf%C3%A9+au+lait "));
+        assertThat(response.getHeaderList().getRequestsRemaining(), is("99"));
+
+    }
+
+    @Test
+    public void testPostBody() throws Exception {
+
+        Response response = factory.getAsyncClient(null).executeAsync(RequestBuilder.newRequest()
+                .withMethod(Method.POST)
+                .withUrl(baseUrl + "/order")
+                .withBody("{\"note\":\"€\"}")
+                .build()).get();
+
+        assertThat(response.getBody(), is("POST /order {\"note\":\"€\"}"));
+
+    }
+
+    @Test
+    public void testAsyncStagesDoNotRunOnReactor() throws Exception {
+
+        String thread = factory.getAsyncClient(null).executeAsync(RequestBuilder.newRequest()
+                .withMethod(Method.GET)
+                .withUrl(baseUrl + "/order")
+                .build()).thenApply(response -> Thread.currentThread().getName()).get();
+
+        assertThat(thread, not(startsWith("httpclient-dispatch")));
+
+    }
+
+    @Test
+    public void testSocketTimeout() {
+
+        try {
+            factory.getClient(null).execute(RequestBuilder.newRequest().withMethod(Method.GET).withUrl(baseUrl + "/slow").build());
+            fail("Expected socket timeout");
+        } catch (BrightpearlHttpException e) {
+            assertThat(e.getClientErrorCode(), is(ClientErrorCode.SOCKET_TIMEOUT));
+        }
+
+    }
+
+    @Test
+    public void testConnectionRefused() throws IOException {
+
+        ServerSocket closed = new ServerSocket(0);
+        int port = closed.getLocalPort();
+        closed.close();
+
+        try {
+            factory.getClient(null).execute(RequestBuilder.newRequest().withMethod(Method.GET).withUrl("http://127.0.0.1:" + port + "/").build());
+            fail("Expected socket error");
+        } catch (BrightpearlHttpException e) {
+            assertThat(e.getClientErrorCode(), is(ClientErrorCode.SOCKET_ERROR));
+        }
+
+    }
+
+    @Test
+    public void testHttp2Multiplexed() throws Exception {
+
+        String h2Url = "https://localhost:" + startH2Server();
+        HttpClient5Client client = (HttpClient5Client)factory.getClient(null);
+
+        Response negotiated = client.execute(RequestBuilder.newRequest().withMethod(Method.GET).withUrl(h2Url + "/product").build());
+        assertThat(negotiated.getBody(), is("GET /product HTTP/2.0"));
+        assertThat(client.isMultiplexed(h2Url), is(true));
+
+        Response multiplexed = client.executeAsync(RequestBuilder.newRequest().withMethod(Method.GET).withUrl(h2Url + "/order").build()).get();
+        assertThat(multiplexed.getBody(), is("GET /order HTTP/2.0"));
+
+    }
+
+    @Test
+    public void testHttp2Disabled() throws Exception {
+
+        String h2Url = "https://localhost:" + startH2Server();
+        factory.shutdown();
+        factory = HttpClient5ClientFactoryBuilder.httpClient5ClientFactory().withHttp2Enabled(false).build();
+        HttpClient5Client client = (HttpClient5Client)factory.getClient(null);
+
+        Response response = client.execute(RequestBuilder.newRequest().withMethod(Method.GET).withUrl(h2Url + "/product").build());
+        assertThat(response.getBody(), is("GET /product HTTP/1.1"));
+        assertThat(client.isMultiplexed(h2Url), is(false));
+
+    }
+
+    /*
+     * Starts a TLS server that negotiates HTTP/2 or HTTP/1.1, using a self-signed certificate for localhost that the
+     * client is made to trust through the default trust store properties.
+     */
+    private int startH2Server() throws Exception {
+        trustStore = System.getProperty("javax.net.ssl.trustStore");
+        trustStorePassword = System.getProperty("javax.net.ssl.trustStorePassword");
+        System.setProperty("javax.net.ssl.trustStore", getClass().getResource("/tls/localhost-truststore.p12").getPath());
+        System.setProperty("javax.net.ssl.trustStorePassword", "changeit");
+
+        h2Server = H2ServerBootstrap.bootstrap()
+                .setTlsStrategy(new H2ServerTlsStrategy(SSLContexts.custom()
+                        .loadKeyMaterial(getClass().getResource("/tls/localhost-keystore.p12"), STORE_PASSWORD, STORE_PASSWORD)
+                        .build()))
+                .setVersionPolicy(HttpVersionPolicy.NEGOTIATE)
+                .register("*", new AsyncServerRequestHandler<Message<HttpRequest, String>>() {
+                    @Override
+                    public AsyncRequestConsumer<Message<HttpRequest, String>> prepare(HttpRequest request, EntityDetails entityDetails, HttpContext context) {
+                        return new BasicRequestConsumer<String>(new StringAsyncEntityConsumer());
+                    }
+
+                    @Override
+                    public void handle(Message<HttpRequest, String> message, ResponseTrigger responseTrigger, HttpContext context) throws IOException, org.apache.hc.core5.http.HttpException {
+                        HttpRequest request = message.getHead();
+                        String body = request.getMethod() + " " + request.getPath() + " " + context.getProtocolVersion();
+                        responseTrigger.submitResponse(new BasicResponseProducer(200, body, ContentType.APPLICATION_JSON), context);
+                    }
+                })
+                .create();
+        h2Server.start();
+        ListenerEndpoint endpoint = h2Server.listen(new InetSocketAddress("127.0.0.1", 0), URIScheme.HTTPS).get();
+        return ((InetSocketAddress)endpoint.getAddress()).getPort();
+    }
+
+    private static void restoreProperty(String name, String value) {
+        if (value == null) {
+            System.clearProperty(name);
+        } else {
+            System.setProperty(name, value);
+        }
+    }
+
+    private static String read(InputStream inputStream) throws IOException {
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        byte[] buffer = new byte[1024];
+        int read;
+        while ((read = inputStream.read(buffer)) != -1) {
+            outputStream.write(buffer, 0, read);
+        }
+        return new String(outputStream.toByteArray(), "UTF-8");
+    }
+
+}
@@ -0,0 +1,187 @@
+/*
+ * Copyright 2014 David Morrissey
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package uk.co.visalia.brightpearl.apiclient.http.jdk;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import uk.co.visalia.brightpearl.apiclient.exception.BrightpearlDeadlineExceededException;
+import uk.co.visalia.brightpearl.apiclient.exception.BrightpearlHttpException;
+import uk.co.visalia.brightpearl.apiclient.exception.ClientErrorCode;
+import uk.co.visalia.brightpearl.apiclient.http.Method;
+import uk.co.visalia.brightpearl.apiclient.http.RequestBuilder;
+import uk.co.visalia.brightpearl.apiclient.http.Response;
+import uk.co.visalia.brightpearl.apiclient.util.Deadline;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.concurrent.Executors;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.fail;
+
+public class JdkHttpClientTest {
+
+    private HttpServer server;
+
+    private String baseUrl;
+
+    private JdkHttpClientFactory factory;
+
+    @Before
+    public void setUp() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.setExecutor(Executors.newCachedThreadPool());
+        server.createContext("/", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                if (exchange.getRequestURI().getPath().equals("/slow")) {
+                    try {
+                        Thread.sleep(1000);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+                String requestBody = read(exchange.getRequestBody());
+                byte[] body = (exchange.getRequestMethod() + " " + exchange.getRequestURI() + " " + requestBody).getBytes("UTF-8");
+                exchange.getResponseHeaders().add("Content-Type", "application/json; charset=UTF-8");
+                exchange.getResponseHeaders().add("brightpearl-requests-remaining", "99");
+                exchange.sendResponseHeaders(200, body.length);
+                exchange.getResponseBody().write(body);
+                exchange.close();
+            }
+        });
+        server.start();
+        baseUrl = "http://127.0.0.1:" + server.getAddress().getPort();
+        factory = JdkHttpClientFactoryBuilder.jdkHttpClientFactory().withRequestTimeoutMs(500).build();
+    }
+
+    @After
+    public void tearDown() {
+        factory.shutdown();
+        server.stop(0);
+    }
+
+    @Test
+    public void testGetWithParameters() {
+
+        Response response = factory.getClient(null).execute(RequestBuilder.newRequest()
+                .withMethod(Method.GET)
+                .withUrl(baseUrl + "/public-api/account/product-service/product")
+                .withParameters(Collections.singletonMap("name", "Café au lait"))
+                .build());
+
+        assertThat(response.getStatus(), is(200));
+        assertThat(response.getBody(), is("GET /public-api/account/product-service/product?name=Caf%C3%A9+au+lait "));
+        assertThat(response.getHeaderList().getRequestsRemaining(), is("99"));
+
+    }
+
+    @Test
+    public void testPostBody() throws Exception {
+
+        Response response = factory.getAsyncClient(null).executeAsync(RequestBuilder.newRequest()
+                .withMethod(Method.POST)
+                .withUrl(baseUrl + "/order")
+                .withBody("{\"note\":\"€\"}")
+                .build()).get();
+
+        assertThat(response.getBody(), is("POST /order {\"note\":\"€\"}"));
+
+    }
+
+    @Test
+    public void testStreamedResponse() throws Exception {
+
+        factory = JdkHttpClientFactoryBuilder.jdkHttpClientFactory().withStreamResponses(true).build();
+
+        Response response = factory.getClient(null).execute(RequestBuilder.newRequest()
+                .withMethod(Method.GET)
+                .withUrl(baseUrl + "/order")
+                .build());
+
+        assertThat(response.isStreamed(), is(true));
+        assertThat(response.getCharset(), is(StandardCharsets.UTF_8));
+        assertThat(read(response.getBodyStream()), is("GET /order "));
+        response.close();
+
+    }
+
+    @Test
+    public void testSocketTimeout() {
+
+        try {
+            factory.getClient(null).execute(RequestBuilder.newRequest().withMethod(Method.GET).withUrl(baseUrl + "/slow").build());
+            fail("Expected socket timeout");
+        } catch (BrightpearlHttpException e) {
+            assertThat(e.getClientErrorCode(), is(ClientErrorCode.SOCKET_TIMEOUT));
+        }
+
+    }
+
+    @Test
+    public void testDeadlineExceeded() throws Exception {
+
+        try {
+            factory.getAsyncClient(null).executeAsync(RequestBuilder.newRequest()
+                    .withMethod(Method.GET)
+                    .withUrl(baseUrl + "/slow")
+                    .withDeadline(Deadline.start(100))
+                    .build()).join();
+            fail("Expected deadline exceeded");
+        } catch (RuntimeException e) {
+            assertThat(e.getCause(), is(instanceOf(BrightpearlDeadlineExceededException.class)));
+        }
+
+    }
+
+    @Test
+    public void testConnectionRefused() throws IOException {
+
+        ServerSocket closed = new ServerSocket(0);
+        int port = closed.getLocalPort();
+        closed.close();
+
+        try {
+            factory.getClient(null).execute(RequestBuilder.newRequest().withMethod(Method.GET).withUrl("http://127.0.0.1:" + port + "/").build());
+            fail("Expected socket error");
+        } catch (BrightpearlHttpException e) {
+            assertThat(e.getClientErrorCode(), is(ClientErrorCode.SOCKET_ERROR));
+        }
+
+    }
+
+    private static String read(InputStream inputStream) throws IOException {
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        byte[] buffer = new byte[1024];
+        int read;
+        while ((read = inputStream.read(buffer)) != -1) {
+            outputStream.write(buffer, 0, read);
+        }
+        return new String(outputStream.toByteArray(), "UTF-8");
+    }
+
+}
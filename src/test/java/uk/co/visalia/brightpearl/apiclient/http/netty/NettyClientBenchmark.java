@@ -0,0 +1,176 @@
+/*
+ * Copyright 2014 David Morrissey
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package uk.co.visalia.brightpearl.apiclient.http.netty;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import uk.co.visalia.brightpearl.apiclient.account.Account;
+import uk.co.visalia.brightpearl.apiclient.account.Datacenter;
+import uk.co.visalia.brightpearl.apiclient.http.AsyncClient;
+import uk.co.visalia.brightpearl.apiclient.http.Client;
+import uk.co.visalia.brightpearl.apiclient.http.ClientFactory;
+import uk.co.visalia.brightpearl.apiclient.http.Method;
+import uk.co.visalia.brightpearl.apiclient.http.Request;
+import uk.co.visalia.brightpearl.apiclient.http.RequestBuilder;
+import uk.co.visalia.brightpearl.apiclient.http.httpclient4.HttpClient4ClientFactoryBuilder;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.net.InetSocketAddress;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Compares the HttpClient 4 and Netty transports against a local mock server that responds after a fixed delay,
+ * reporting throughput, mean latency and the peak number of live threads in the JVM. Blocking clients use one caller
+ * thread per connection, and the Netty async client keeps the same number of connections busy from a single thread.
+ * The mock server runs in the same JVM, so its threads are included in the counts. Run with the test classpath; this
+ * is not a unit test.
+ */
+public class NettyClientBenchmark {
+
+    private static final int CONNECTIONS = 32;
+
+    private static final int SERVER_DELAY_MS = 5;
+
+    private static final long WARM_UP_MS = 3000;
+
+    private static final long RUN_MS = 10000;
+
+    public static void main(String[] args) throws Exception {
+
+        // Without this the mock server's separate header and body writes are delayed by Nagle's algorithm
+        System.setProperty("sun.net.httpserver.nodelay", "true");
+        HttpServer server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 1024);
+        server.setExecutor(Executors.newFixedThreadPool(CONNECTIONS));
+        final byte[] body = "{\"response\":[{\"productId\":1001,\"productName\":\"Blue widget\",\"SKU\":\"BW-1\"}]}".getBytes("UTF-8");
+        server.createContext("/", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                try {
+                    Thread.sleep(SERVER_DELAY_MS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                exchange.getResponseHeaders().add("Content-Type", "application/json; charset=UTF-8");
+                exchange.sendResponseHeaders(200, body.length);
+                exchange.getResponseBody().write(body);
+                exchange.close();
+            }
+        });
+        server.start();
+
+        String baseUrl = "http://127.0.0.1:" + server.getAddress().getPort();
+        Account account = new Account(new Datacenter("LOCAL", baseUrl), "benchmark");
+        Request request = RequestBuilder.newRequest()
+                .withMethod(Method.GET)
+                .withUrl(baseUrl + "/public-api/benchmark/product-service/product/1001")
+                .build();
+
+        ClientFactory httpClient4 = HttpClient4ClientFactoryBuilder.httpClient4ClientFactory()
+                .withMaxConnections(CONNECTIONS)
+                .withMaxConnectionsPerRoute(CONNECTIONS)
+                .build();
+        NettyClientFactory netty = NettyClientFactoryBuilder.nettyClientFactory()
+                .withMaxConnectionsPerHost(CONNECTIONS)
+                .build();
+
+        runBlocking("HttpClient 4, blocking", httpClient4.getClient(account), request);
+        runBlocking("Netty, blocking", netty.getClient(account), request);
+        runAsync("Netty, async", netty.getAsyncClient(account), request);
+
+        httpClient4.shutdown();
+        netty.shutdown();
+        server.stop(0);
+        System.exit(0);
+
+    }
+
+    private static void runBlocking(String name, final Client client, final Request request) throws Exception {
+        final AtomicLong count = new AtomicLong();
+        final AtomicLong latencyNanos = new AtomicLong();
+        final long start = System.currentTimeMillis();
+        final long end = start + WARM_UP_MS + RUN_MS;
+        ExecutorService callers = Executors.newFixedThreadPool(CONNECTIONS);
+        for (int i = 0; i < CONNECTIONS; i++) {
+            callers.execute(new Runnable() {
+                @Override
+                public void run() {
+                    while (System.currentTimeMillis() < end) {
+                        long requestStart = System.nanoTime();
+                        client.execute(request);
+                        if (System.currentTimeMillis() >= start + WARM_UP_MS) {
+                            latencyNanos.addAndGet(System.nanoTime() - requestStart);
+                            count.incrementAndGet();
+                        }
+                    }
+                }
+            });
+        }
+        int peakThreads = awaitEnd(end);
+        callers.shutdown();
+        callers.awaitTermination(10, TimeUnit.SECONDS);
+        report(name, count.get(), latencyNanos.get(), peakThreads);
+    }
+
+    private static void runAsync(String name, final AsyncClient client, final Request request) throws Exception {
+        final AtomicLong count = new AtomicLong();
+        final AtomicLong latencyNanos = new AtomicLong();
+        final long start = System.currentTimeMillis();
+        final long end = start + WARM_UP_MS + RUN_MS;
+        final Semaphore outstanding = new Semaphore(CONNECTIONS);
+        Thread caller = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                while (System.currentTimeMillis() < end) {
+                    outstanding.acquireUninterruptibly();
+                    final long requestStart = System.nanoTime();
+                    client.executeAsync(request).whenComplete((response, throwable) -> {
+                        if (throwable == null && System.currentTimeMillis() >= start + WARM_UP_MS) {
+                            latencyNanos.addAndGet(System.nanoTime() - requestStart);
+                            count.incrementAndGet();
+                        }
+                        outstanding.release();
+                    });
+                }
+            }
+        });
+        caller.start();
+        int peakThreads = awaitEnd(end);
+        caller.join();
+        outstanding.acquireUninterruptibly(CONNECTIONS);
+        report(name, count.get(), latencyNanos.get(), peakThreads);
+    }
+
+    private static int awaitEnd(long end) throws InterruptedException {
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        threads.resetPeakThreadCount();
+        while (System.currentTimeMillis() < end) {
+            Thread.sleep(100);
+        }
+        return threads.getPeakThreadCount();
+    }
+
+    private static void report(String name, long count, long latencyNanos, int peakThreads) {
+        System.out.println(String.format("%-24s %8.0f req/s %8.2f ms mean latency %5d peak threads",
+                name, count * 1000.0 / RUN_MS, count == 0 ? 0 : latencyNanos / 1000000.0 / count, peakThreads));
+    }
+
+}
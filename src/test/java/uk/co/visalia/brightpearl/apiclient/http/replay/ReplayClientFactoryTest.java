@@ -0,0 +1,191 @@
+/*
+ * Copyright 2014 David Morrissey
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package uk.co.visalia.brightpearl.apiclient.http.replay;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import uk.co.visalia.brightpearl.apiclient.BrightpearlApiClient;
+import uk.co.visalia.brightpearl.apiclient.BrightpearlApiClientFactory;
+import uk.co.visalia.brightpearl.apiclient.account.Account;
+import uk.co.visalia.brightpearl.apiclient.account.Datacenter;
+import uk.co.visalia.brightpearl.apiclient.account.UserCredentials;
+import uk.co.visalia.brightpearl.apiclient.auth.PrivateAppIdentity;
+import uk.co.visalia.brightpearl.apiclient.exception.BrightpearlHttpException;
+import uk.co.visalia.brightpearl.apiclient.http.Client;
+import uk.co.visalia.brightpearl.apiclient.http.Method;
+import uk.co.visalia.brightpearl.apiclient.http.Request;
+import uk.co.visalia.brightpearl.apiclient.http.RequestBuilder;
+import uk.co.visalia.brightpearl.apiclient.http.Response;
+import uk.co.visalia.brightpearl.apiclient.http.ResponseBuilder;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.fail;
+
+public class ReplayClientFactoryTest {
+
+    private final Account account = new Account(Datacenter.EU1, "visalia");
+
+    private File traceFile;
+
+    @Before
+    public void setup() throws Exception {
+        traceFile = File.createTempFile("brightpearl", ".trace");
+    }
+
+    @After
+    public void teardown() {
+        traceFile.delete();
+    }
+
+    @Test
+    public void testReplayMatchesRecordedResponses() throws Exception {
+
+        final AtomicInteger counter = new AtomicInteger();
+        Client recorded = request -> ResponseBuilder.newResponse()
+                .withStatus(200)
+                .withHeader("brightpearl-requests-remaining", "199")
+                .withBody("{\"response\":" + counter.incrementAndGet() + "}")
+                .build();
+
+        RecordingClientFactory recordingFactory = RecordingClientFactoryBuilder.recordingClientFactory()
+                .withClientFactory(account -> recorded)
+                .withTraceFile(traceFile)
+                .build();
+        recordingFactory.getClient(account).execute(get("/product", "a", "1", "b", "2"));
+        recordingFactory.getClient(account).execute(get("/product", "a", "1", "b", "2"));
+        recordingFactory.getClient(account).execute(get("/order"));
+        recordingFactory.shutdown();
+
+        ReplayClientFactory replayFactory = ReplayClientFactoryBuilder.replayClientFactory()
+                .withTraceFile(traceFile)
+                .build();
+        assertThat(replayFactory.getExchangeCount(), is(3));
+
+        Client client = replayFactory.getClient(account);
+        Response response = client.execute(get("/order"));
+        assertThat(response.getStatus(), is(200));
+        assertThat(response.getBody(), is("{\"response\":3}"));
+        assertThat(response.getHeader("brightpearl-requests-remaining"), is("199"));
+
+        // Parameters are matched regardless of order, and repeated requests cycle through their responses.
+        assertThat(client.execute(get("/product", "b", "2", "a", "1")).getBody(), is("{\"response\":1}"));
+        assertThat(client.execute(get("/product", "a", "1", "b", "2")).getBody(), is("{\"response\":2}"));
+        assertThat(replayFactory.getAsyncClient(account).executeAsync(get("/product", "a", "1", "b", "2")).get().getBody(), is("{\"response\":1}"));
+
+        try {
+            client.execute(get("/contact"));
+            fail("Expected exception for unrecorded request");
+        } catch (BrightpearlHttpException e) {
+            // Expected
+        }
+
+    }
+
+    @Test
+    public void testReplayOriginalLatency() throws Exception {
+
+        Client recorded = request -> {
+            try {
+                Thread.sleep(100);
+            } catch (InterruptedException e) {
+                throw new IllegalStateException(e);
+            }
+            return ResponseBuilder.newResponse().withStatus(200).withBody("{}").build();
+        };
+
+        RecordingClientFactory recordingFactory = RecordingClientFactoryBuilder.recordingClientFactory()
+                .withClientFactory(account -> recorded)
+                .withTraceFile(traceFile)
+                .build();
+        recordingFactory.getClient(account).execute(get("/product"));
+        recordingFactory.shutdown();
+
+        Client immediate = ReplayClientFactoryBuilder.replayClientFactory()
+                .withTraceFile(traceFile)
+                .build()
+                .getClient(account);
+        long start = System.currentTimeMillis();
+        immediate.execute(get("/product"));
+        assertThat(System.currentTimeMillis() - start, is(lessThan(50L)));
+
+        Client delayed = ReplayClientFactoryBuilder.replayClientFactory()
+                .withTraceFile(traceFile)
+                .withOriginalLatency(true)
+                .withLatencyScale(0.5)
+                .build()
+                .getClient(account);
+        start = System.currentTimeMillis();
+        delayed.execute(get("/product"));
+        assertThat(System.currentTimeMillis() - start, is(greaterThanOrEqualTo(45L)));
+
+    }
+
+    @Test
+    public void testStaffTokenNotRecorded() throws Exception {
+
+        Client recorded = request -> ResponseBuilder.newResponse()
+                .withStatus(200)
+                .withHeader("Content-Type", "application/json")
+                .withBody("{\"response\":\"0123456789abcdef-staff-token\"}")
+                .build();
+
+        RecordingClientFactory recordingFactory = RecordingClientFactoryBuilder.recordingClientFactory()
+                .withClientFactory(account -> recorded)
+                .withTraceFile(traceFile)
+                .build();
+        PrivateAppIdentity appIdentity = PrivateAppIdentity.create(account, "visalia_unittest");
+        UserCredentials userCredentials = new UserCredentials("user@visalia.co.uk", "secret-password");
+        BrightpearlApiClient recordingClient = BrightpearlApiClientFactory.brightpearlApiClient()
+                .withClientFactory(recordingFactory)
+                .build();
+        assertThat(recordingClient.fetchStaffToken(appIdentity, userCredentials), is("0123456789abcdef-staff-token"));
+        recordingFactory.shutdown();
+
+        String trace = new String(Files.readAllBytes(traceFile.toPath()), "UTF-8");
+        assertThat(trace, containsString("/authorise"));
+        assertThat(trace, not(containsString("0123456789abcdef-staff-token")));
+        assertThat(trace, not(containsString("secret-password")));
+
+        // The placeholder is replayed as the token.
+        BrightpearlApiClient replayClient = BrightpearlApiClientFactory.brightpearlApiClient()
+                .withClientFactory(ReplayClientFactoryBuilder.replayClientFactory().withTraceFile(traceFile).build())
+                .build();
+        assertThat(replayClient.fetchStaffToken(appIdentity, userCredentials), is("redacted"));
+
+    }
+
+    private Request get(String path, String... params) {
+        Map<String, String> parameters = new HashMap<String, String>();
+        for (int i = 0; i < params.length; i += 2) {
+            parameters.put(params[i], params[i + 1]);
+        }
+        return RequestBuilder.newRequest()
+                .withMethod(Method.GET)
+                .withUrl("https://ws-eu1.brightpearl.com/public-api/visalia/product-service" + path)
+                .withParameters(parameters)
+                .build();
+    }
+
+}
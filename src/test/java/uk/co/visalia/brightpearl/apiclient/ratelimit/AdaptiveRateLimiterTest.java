@@ -0,0 +1,175 @@
+/*
+ * Copyright 2014 David Morrissey
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package uk.co.visalia.brightpearl.apiclient.ratelimit;
+
+import org.junit.Before;
+import org.junit.Test;
+import uk.co.visalia.brightpearl.apiclient.account.Account;
+import uk.co.visalia.brightpearl.apiclient.account.Datacenter;
+import uk.co.visalia.brightpearl.apiclient.exception.BrightpearlDeadlineExceededException;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.fail;
+
+public class AdaptiveRateLimiterTest {
+
+    private AdaptiveRateLimiter limiter;
+    private Account account1;
+    private Account account2;
+
+    @Before
+    public void setup() {
+
+        limiter = new AdaptiveRateLimiter(20, 1, TimeUnit.SECONDS, 5);
+        account1 = new Account(Datacenter.EU1, "visalia1");
+        account2 = new Account(Datacenter.EU1, "visalia2");
+
+    }
+
+    @Test
+    public void testFullSpeedWithPlentifulBudget() {
+
+        limiter.requestCompleted(account1, 100, 60000);
+
+        long start = System.currentTimeMillis();
+        for (int i = 0; i < 50; i++) {
+            limiter.rateLimit(account1);
+        }
+        long end = System.currentTimeMillis();
+
+        assertThat((end - start), is(lessThan(50L)));
+
+    }
+
+    @Test
+    public void testPacedWhenBudgetLow() {
+
+        limiter.requestCompleted(account1, 3, 800);
+
+        long start = System.currentTimeMillis();
+        for (int i = 0; i < 3; i++) {
+            limiter.rateLimit(account1);
+        }
+        long end = System.currentTimeMillis();
+
+        // Each request leaves an even share of the time left for those remaining, so the last is sent 533ms in.
+        assertThat((end - start), is(greaterThan(480L)));
+        assertThat((end - start), is(lessThan(680L)));
+
+    }
+
+    @Test
+    public void testWaitsForNextPeriodWhenBudgetUsed() {
+
+        limiter.requestCompleted(account1, 0, 400);
+
+        long start = System.currentTimeMillis();
+        limiter.rateLimit(account1);
+        long end = System.currentTimeMillis();
+
+        assertThat((end - start), is(greaterThan(350L)));
+        assertThat((end - start), is(lessThan(500L)));
+
+    }
+
+    @Test
+    public void testAllWaitForNextPeriodWhenBudgetUsed() {
+
+        limiter.requestCompleted(account1, 0, 60000);
+
+        long first = limiter.acquire(account1, Long.MAX_VALUE);
+        assertThat(first, is(greaterThan(59000L)));
+        for (int i = 0; i < 4; i++) {
+            assertThat(limiter.acquire(account1, Long.MAX_VALUE), is(greaterThan(first - 100)));
+        }
+        assertThat(limiter.tryRateLimit(account1), is(false));
+
+    }
+
+    @Test
+    public void testFirstResponseReplacesAssumedPeriod() {
+
+        AdaptiveRateLimiter limiter = new AdaptiveRateLimiter(200, 1, TimeUnit.MINUTES, 50);
+
+        // The first request is sent before any response, in a period assumed to last a minute.
+        assertThat(limiter.acquire(account1, Long.MAX_VALUE), is(0L));
+        limiter.requestCompleted(account1, 0, 5000);
+
+        long wait = limiter.acquire(account1, Long.MAX_VALUE);
+        assertThat(wait, is(greaterThan(4900L)));
+        assertThat(wait, is(lessThanOrEqualTo(5000L)));
+
+        limiter.requestCapExceeded(account1);
+        assertThat(limiter.acquire(account1, Long.MAX_VALUE), is(lessThanOrEqualTo(5000L)));
+
+    }
+
+    @Test
+    public void testRequestCapExceededAfterFirstResponseWaitsForReportedPeriod() {
+
+        AdaptiveRateLimiter limiter = new AdaptiveRateLimiter(200, 1, TimeUnit.MINUTES, 50);
+
+        assertThat(limiter.acquire(account1, Long.MAX_VALUE), is(0L));
+        limiter.requestCompleted(account1, 100, 5000);
+        limiter.requestCapExceeded(account1);
+
+        long wait = limiter.acquire(account1, Long.MAX_VALUE);
+        assertThat(wait, is(greaterThan(4900L)));
+        assertThat(wait, is(lessThanOrEqualTo(5000L)));
+
+    }
+
+    @Test
+    public void testAccountsIndependent() {
+
+        limiter.requestCompleted(account1, 0, 60000);
+
+        assertThat(limiter.tryRateLimit(account1), is(false));
+        assertThat(limiter.tryRateLimit(account2), is(true));
+
+    }
+
+    @Test
+    public void testRequestCapExceeded() {
+
+        limiter.requestCompleted(account1, 100, 60000);
+        limiter.requestCapExceeded(account1);
+
+        assertThat(limiter.tryRateLimit(account1), is(false));
+
+    }
+
+    @Test
+    public void testDeadlineFailsWithoutSleeping() {
+
+        limiter.requestCompleted(account1, 0, 60000);
+
+        long start = System.currentTimeMillis();
+        try {
+            limiter.rateLimit(account1, 100);
+            fail("Expected deadline exception");
+        } catch (BrightpearlDeadlineExceededException e) {
+            // Expected
+        }
+        assertThat((System.currentTimeMillis() - start), is(lessThan(50L)));
+
+    }
+
+}
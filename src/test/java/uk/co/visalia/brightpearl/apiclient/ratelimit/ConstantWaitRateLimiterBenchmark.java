@@ -0,0 +1,125 @@
+/*
+ * Copyright 2014 David Morrissey
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package uk.co.visalia.brightpearl.apiclient.ratelimit;
+
+import uk.co.visalia.brightpearl.apiclient.account.Account;
+import uk.co.visalia.brightpearl.apiclient.account.Datacenter;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Compares slot reservation throughput with many threads sending to many accounts, for the previous approach, which
+ * reserved every slot under one monitor, against the per-account compare-and-set in {@link ConstantWaitRateLimiter}.
+ * Threads call {@link RateLimiter#tryRateLimit(Account)} so the time measured is reservation alone, without sleeping.
+ * Run with the test classpath; this is not a unit test.
+ */
+public class ConstantWaitRateLimiterBenchmark {
+
+    private static final int THREADS = 64;
+
+    private static final int ACCOUNTS = 1000;
+
+    private static final long DURATION_MS = 3000;
+
+    public static void main(String[] args) throws Exception {
+
+        final Account[] accounts = new Account[ACCOUNTS];
+        for (int i = 0; i < ACCOUNTS; i++) {
+            accounts[i] = new Account(Datacenter.EU1, "account" + i);
+        }
+
+        for (int round = 0; round < 3; round++) {
+            run("synchronized", new SynchronizedRateLimiter(200, TimeUnit.MINUTES.toMillis(1)), accounts);
+            run("compare-and-set", new ConstantWaitRateLimiter(), accounts);
+        }
+
+    }
+
+    private static void run(String name, final RateLimiter rateLimiter, final Account[] accounts) throws InterruptedException {
+        final AtomicBoolean running = new AtomicBoolean(true);
+        final LongAdder operations = new LongAdder();
+        final LongAdder allowed = new LongAdder();
+        final CountDownLatch start = new CountDownLatch(1);
+        final CountDownLatch done = new CountDownLatch(THREADS);
+        for (int i = 0; i < THREADS; i++) {
+            Thread thread = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        start.await();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                    ThreadLocalRandom random = ThreadLocalRandom.current();
+                    long count = 0;
+                    long sent = 0;
+                    while (running.get()) {
+                        if (rateLimiter.tryRateLimit(accounts[random.nextInt(accounts.length)])) {
+                            sent++;
+                        }
+                        count++;
+                    }
+                    operations.add(count);
+                    allowed.add(sent);
+                    done.countDown();
+                }
+            });
+            thread.setDaemon(true);
+            thread.start();
+        }
+        long started = System.nanoTime();
+        start.countDown();
+        Thread.sleep(DURATION_MS);
+        running.set(false);
+        done.await();
+        double elapsedMs = (System.nanoTime() - started) / 1000000.0;
+        System.out.println(String.format("%-16s %8.2f M ops/s %8d allowed", name, operations.sum() / (elapsedMs * 1000.0), allowed.sum()));
+    }
+
+    /*
+     * The previous reservation, with all accounts sharing the limiter's monitor.
+     */
+    private static class SynchronizedRateLimiter extends NoOpRateLimiter {
+
+        private final long minimumPeriod;
+
+        private final Map<String, Long> lastRequestMap = new HashMap<String, Long>();
+
+        private SynchronizedRateLimiter(int cap, long periodMs) {
+            this.minimumPeriod = periodMs / cap;
+        }
+
+        @Override
+        public synchronized boolean tryRateLimit(Account account) {
+            long timeNow = System.currentTimeMillis();
+            Long lastRequest = lastRequestMap.get(account.getAccountCode());
+            if (lastRequest != null && (timeNow - lastRequest < minimumPeriod)) {
+                return false;
+            }
+            lastRequestMap.put(account.getAccountCode(), timeNow);
+            return true;
+        }
+
+    }
+
+}
@@ -20,12 +20,17 @@ import org.junit.Before;
 import org.junit.Test;
 import uk.co.visalia.brightpearl.apiclient.account.Account;
 import uk.co.visalia.brightpearl.apiclient.account.Datacenter;
+import uk.co.visalia.brightpearl.apiclient.exception.BrightpearlDeadlineExceededException;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.TimeUnit;
 
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.fail;
 
 public class ConstantWaitRateLimiterTest {
 
@@ -135,4 +140,112 @@ public class ConstantWaitRateLimiterTest {
 
     }
 
+    @Test
+    public void testDeadlineFailsWithoutSleeping() {
+
+        limiter.rateLimit(account1);
+
+        long start = System.currentTimeMillis();
+        try {
+            limiter.rateLimit(account1, 100L);
+            fail("Expected deadline exception");
+        } catch (BrightpearlDeadlineExceededException e) {
+            // Expected
+        }
+        long end = System.currentTimeMillis();
+        assertThat((end - start), is(lessThan(20L)));
+
+        // The rejected request did not take a slot, so the next waits only for the first.
+        start = System.currentTimeMillis();
+        limiter.rateLimit(account1, 1000L);
+        end = System.currentTimeMillis();
+        assertThat((end - start), is(lessThan(320L)));
+
+    }
+
+    @Test
+    public void testAcquireReturnsDelayWithoutSleeping() {
+
+        long start = System.currentTimeMillis();
+        assertThat(limiter.acquire(account1), is(0L));
+        long delay = limiter.acquire(account1);
+        assertThat(delay, is(greaterThan(250L)));
+        assertThat(delay, is(lessThanOrEqualTo(300L)));
+        assertThat(limiter.acquire(account1, 100), is(-1L));
+        assertThat((System.currentTimeMillis() - start), is(lessThan(20L)));
+
+    }
+
+    @Test
+    public void testConcurrentAcquiresTakeDistinctSlots() throws Exception {
+
+        final int threadCount = 20;
+        final CyclicBarrier barrier = new CyclicBarrier(threadCount);
+        final List<Long> slots = Collections.synchronizedList(new ArrayList<Long>());
+        List<Thread> threads = new ArrayList<Thread>();
+        for (int i = 0; i < threadCount; i++) {
+            Thread thread = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        barrier.await();
+                    } catch (Exception e) {
+                        throw new IllegalStateException(e);
+                    }
+                    long now = System.currentTimeMillis();
+                    slots.add(now + limiter.acquire(account1));
+                }
+            });
+            threads.add(thread);
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        // Each slot is the previous one plus the minimum period of 300ms, give or take the time between reading the
+        // clock and reserving the slot.
+        assertThat(slots.size(), is(threadCount));
+        List<Long> sorted = new ArrayList<Long>(slots);
+        Collections.sort(sorted);
+        for (int i = 1; i < sorted.size(); i++) {
+            long gap = sorted.get(i) - sorted.get(i - 1);
+            assertThat(gap, is(greaterThan(250L)));
+            assertThat(gap, is(lessThan(350L)));
+        }
+
+    }
+
+    @Test
+    public void testRejectedAcquireDoesNotAdvanceSlot() {
+
+        assertThat(limiter.acquire(account1), is(0L));
+        for (int i = 0; i < 5; i++) {
+            assertThat(limiter.acquire(account1, 100), is(-1L));
+        }
+
+        long delay = limiter.acquire(account1);
+        assertThat(delay, is(greaterThan(250L)));
+        assertThat(delay, is(lessThanOrEqualTo(300L)));
+
+    }
+
+    @Test
+    public void testTryRateLimitOncePerPeriod() throws InterruptedException {
+
+        limiter = new ConstantWaitRateLimiter(10, 1, TimeUnit.SECONDS);
+
+        assertThat(limiter.tryRateLimit(account1), is(true));
+        for (int i = 0; i < 5; i++) {
+            assertThat(limiter.tryRateLimit(account1), is(false));
+        }
+        assertThat(limiter.tryRateLimit(account2), is(true));
+
+        Thread.sleep(110L);
+
+        assertThat(limiter.tryRateLimit(account1), is(true));
+        assertThat(limiter.tryRateLimit(account1), is(false));
+
+    }
+
 }
@@ -0,0 +1,138 @@
+/*
+ * Copyright 2014 David Morrissey
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package uk.co.visalia.brightpearl.apiclient.ratelimit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import uk.co.visalia.brightpearl.apiclient.exception.BrightpearlClientException;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.fail;
+
+public class MappedFileRateLimitStoreTest {
+
+    private File storeFile;
+    private List<MappedFileRateLimitStore> stores;
+
+    @Before
+    public void setup() throws Exception {
+        storeFile = File.createTempFile("brightpearl", ".ratelimit");
+        stores = new ArrayList<MappedFileRateLimitStore>();
+    }
+
+    @After
+    public void cleanup() throws Exception {
+        for (MappedFileRateLimitStore store : stores) {
+            store.close();
+        }
+        storeFile.delete();
+    }
+
+    @Test
+    public void testValuesSharedBetweenStores() {
+
+        MappedFileRateLimitStore store1 = open(16);
+        MappedFileRateLimitStore store2 = open(16);
+
+        assertThat(store1.get("visalia1"), is(0L));
+        assertThat(store1.compareAndSet("visalia1", 0, 100), is(true));
+        assertThat(store1.compareAndSet("visalia2", 0, 200), is(true));
+
+        assertThat(store2.get("visalia1"), is(100L));
+        assertThat(store2.get("visalia2"), is(200L));
+        assertThat(store2.compareAndSet("visalia1", 0, 300), is(false));
+        assertThat(store2.compareAndSet("visalia1", 100, 300), is(true));
+        assertThat(store1.get("visalia1"), is(300L));
+
+    }
+
+    @Test
+    public void testSlotCountFixedByCreator() {
+
+        MappedFileRateLimitStore store1 = open(2);
+        MappedFileRateLimitStore store2 = open(1000);
+
+        store1.compareAndSet("visalia1", 0, 1);
+        store2.compareAndSet("visalia2", 0, 2);
+
+        try {
+            store2.compareAndSet("visalia3", 0, 3);
+            fail("Expected full store exception");
+        } catch (BrightpearlClientException e) {
+            // Expected
+        }
+
+    }
+
+    @Test
+    public void testConcurrentUpdatesAreAtomic() throws Exception {
+
+        final MappedFileRateLimitStore store1 = open(16);
+        final MappedFileRateLimitStore store2 = open(16);
+
+        List<Thread> threads = new ArrayList<Thread>();
+        for (int i = 0; i < 8; i++) {
+            final MappedFileRateLimitStore store = i % 2 == 0 ? store1 : store2;
+            Thread thread = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    for (int j = 0; j < 500; j++) {
+                        long value;
+                        do {
+                            value = store.get("visalia");
+                        } while (!store.compareAndSet("visalia", value, value + 1));
+                    }
+                }
+            });
+            threads.add(thread);
+        }
+        for (Thread thread : threads) {
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        assertThat(store1.get("visalia"), is(4000L));
+
+    }
+
+    @Test(expected=BrightpearlClientException.class)
+    public void testOtherFileRejected() throws Exception {
+
+        FileOutputStream outputStream = new FileOutputStream(storeFile);
+        outputStream.write("Not a rate limit store".getBytes("UTF-8"));
+        outputStream.close();
+
+        open(16);
+
+    }
+
+    private MappedFileRateLimitStore open(int slots) {
+        MappedFileRateLimitStore store = new MappedFileRateLimitStore(storeFile, slots);
+        stores.add(store);
+        return store;
+    }
+
+}
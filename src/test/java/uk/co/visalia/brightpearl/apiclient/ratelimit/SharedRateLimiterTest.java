@@ -0,0 +1,121 @@
+/*
+ * Copyright 2014 David Morrissey
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package uk.co.visalia.brightpearl.apiclient.ratelimit;
+
+import org.junit.Before;
+import org.junit.Test;
+import uk.co.visalia.brightpearl.apiclient.account.Account;
+import uk.co.visalia.brightpearl.apiclient.account.Datacenter;
+
+import java.io.File;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+
+public class SharedRateLimiterTest {
+
+    private Account account1;
+    private Account account2;
+
+    @Before
+    public void setup() {
+
+        account1 = new Account(Datacenter.EU1, "visalia1");
+        account2 = new Account(Datacenter.EU1, "visalia2");
+
+    }
+
+    @Test
+    public void testBucketSharedBetweenLimiters() {
+
+        RateLimitStore store = new InMemoryRateLimitStore();
+        SharedRateLimiter limiter1 = new SharedRateLimiter(store, 10, 10, 1, TimeUnit.SECONDS);
+        SharedRateLimiter limiter2 = new SharedRateLimiter(store, 10, 10, 1, TimeUnit.SECONDS);
+
+        for (int i = 0; i < 5; i++) {
+            assertThat(limiter1.tryRateLimit(account1), is(true));
+            assertThat(limiter2.tryRateLimit(account1), is(true));
+        }
+        assertThat(limiter1.tryRateLimit(account1), is(false));
+        assertThat(limiter2.tryRateLimit(account1), is(false));
+        assertThat(limiter2.tryRateLimit(account2), is(true));
+
+        long delay = limiter2.acquire(account1);
+        assertThat(delay, is(greaterThan(50L)));
+        assertThat(delay, is(lessThanOrEqualTo(100L)));
+
+    }
+
+    @Test
+    public void testRefillRateAcrossLimiters() {
+
+        RateLimitStore store = new InMemoryRateLimitStore();
+        SharedRateLimiter limiter1 = new SharedRateLimiter(store, 10, 10, 1, TimeUnit.SECONDS);
+        SharedRateLimiter limiter2 = new SharedRateLimiter(store, 10, 10, 1, TimeUnit.SECONDS);
+
+        long start = System.currentTimeMillis();
+        for (int i = 0; i < 8; i++) {
+            limiter1.rateLimit(account1);
+            limiter2.rateLimit(account1);
+        }
+        long end = System.currentTimeMillis();
+
+        // 16 requests; 10 from the bucket and 6 at the refill rate.
+        assertThat((end - start), is(greaterThan(550L)));
+        assertThat((end - start), is(lessThan(750L)));
+
+    }
+
+    @Test
+    public void testRequestCapExceededEmptiesSharedBucket() {
+
+        RateLimitStore store = new InMemoryRateLimitStore();
+        SharedRateLimiter limiter1 = new SharedRateLimiter(store, 10, 10, 1, TimeUnit.SECONDS);
+        SharedRateLimiter limiter2 = new SharedRateLimiter(store, 10, 10, 1, TimeUnit.SECONDS);
+
+        limiter1.requestCapExceeded(account1);
+
+        assertThat(limiter2.tryRateLimit(account1), is(false));
+
+    }
+
+    @Test
+    public void testMappedFileStore() throws Exception {
+
+        File storeFile = File.createTempFile("brightpearl", ".ratelimit");
+        MappedFileRateLimitStore store1 = new MappedFileRateLimitStore(storeFile);
+        MappedFileRateLimitStore store2 = new MappedFileRateLimitStore(storeFile);
+        try {
+            SharedRateLimiter limiter1 = new SharedRateLimiter(store1, 4, 10, 1, TimeUnit.SECONDS);
+            SharedRateLimiter limiter2 = new SharedRateLimiter(store2, 4, 10, 1, TimeUnit.SECONDS);
+
+            assertThat(limiter1.tryRateLimit(account1), is(true));
+            assertThat(limiter2.tryRateLimit(account1), is(true));
+            assertThat(limiter1.tryRateLimit(account1), is(true));
+            assertThat(limiter2.tryRateLimit(account1), is(true));
+            assertThat(limiter1.tryRateLimit(account1), is(false));
+            assertThat(limiter2.tryRateLimit(account1), is(false));
+        } finally {
+            store1.close();
+            store2.close();
+            storeFile.delete();
+        }
+
+    }
+
+}
@@ -0,0 +1,157 @@
+/*
+ * Copyright 2014 David Morrissey
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package uk.co.visalia.brightpearl.apiclient.ratelimit;
+
+import org.junit.Before;
+import org.junit.Test;
+import uk.co.visalia.brightpearl.apiclient.account.Account;
+import uk.co.visalia.brightpearl.apiclient.account.Datacenter;
+import uk.co.visalia.brightpearl.apiclient.exception.BrightpearlDeadlineExceededException;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.fail;
+
+public class TokenBucketRateLimiterTest {
+
+    private TokenBucketRateLimiter limiter;
+    private Account account1;
+    private Account account2;
+
+    @Before
+    public void setup() {
+
+        limiter = new TokenBucketRateLimiter(10, 10, 1, TimeUnit.SECONDS);
+        account1 = new Account(Datacenter.EU1, "visalia1");
+        account2 = new Account(Datacenter.EU1, "visalia2");
+
+    }
+
+    @Test
+    public void testBurstFromIdle() {
+
+        long start = System.currentTimeMillis();
+        for (int i = 0; i < 10; i++) {
+            limiter.rateLimit(account1);
+        }
+        long end = System.currentTimeMillis();
+
+        assertThat((end - start), is(lessThan(50L)));
+
+    }
+
+    @Test
+    public void testRefillRateAfterBurst() {
+
+        long start = System.currentTimeMillis();
+        for (int i = 0; i < 15; i++) {
+            limiter.rateLimit(account1);
+        }
+        long end = System.currentTimeMillis();
+
+        assertThat((end - start), is(greaterThan(450L)));
+        assertThat((end - start), is(lessThan(650L)));
+
+    }
+
+    @Test
+    public void testRefillWhileIdle() throws InterruptedException {
+
+        for (int i = 0; i < 10; i++) {
+            limiter.rateLimit(account1);
+        }
+
+        Thread.sleep(310L);
+
+        long start = System.currentTimeMillis();
+        for (int i = 0; i < 3; i++) {
+            limiter.rateLimit(account1);
+        }
+        long end = System.currentTimeMillis();
+        assertThat((end - start), is(lessThan(50L)));
+        assertThat(limiter.tryRateLimit(account1), is(false));
+
+    }
+
+    @Test
+    public void testThreadedTwoAccounts() throws Exception {
+
+        List<Thread> threads = new ArrayList<Thread>();
+        for (int i = 0; i < 10; i++) {
+            final Account account = i < 5 ? account1 : account2;
+            Thread thread = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    for (int j = 0; j < 3; j++) {
+                        limiter.rateLimit(account);
+                    }
+                }
+            });
+            threads.add(thread);
+        }
+
+        long start = System.currentTimeMillis();
+
+        for (Thread thread : threads) {
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        long end = System.currentTimeMillis();
+
+        // 15 requests per account; 10 from the bucket and 5 at the refill rate.
+        assertThat((end - start), is(greaterThan(450L)));
+        assertThat((end - start), is(lessThan(650L)));
+
+    }
+
+    @Test
+    public void testRequestCapExceededEmptiesBucket() {
+
+        limiter.requestCapExceeded(account1);
+
+        assertThat(limiter.tryRateLimit(account1), is(false));
+        assertThat(limiter.tryRateLimit(account2), is(true));
+        long delay = limiter.acquire(account1);
+        assertThat(delay, is(greaterThan(50L)));
+        assertThat(delay, is(lessThanOrEqualTo(100L)));
+
+    }
+
+    @Test
+    public void testDeadlineFailsWithoutSleeping() {
+
+        limiter.requestCapExceeded(account1);
+
+        long start = System.currentTimeMillis();
+        try {
+            limiter.rateLimit(account1, 50);
+            fail("Expected deadline exception");
+        } catch (BrightpearlDeadlineExceededException e) {
+            // Expected
+        }
+        assertThat((System.currentTimeMillis() - start), is(lessThan(20L)));
+
+    }
+
+}
@@ -0,0 +1,322 @@
+/*
+ * Copyright 2014 David Morrissey
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package uk.co.visalia.brightpearl.apiclient.simulator;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.google.gson.JsonPrimitive;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import uk.co.visalia.brightpearl.apiclient.account.Account;
+import uk.co.visalia.brightpearl.apiclient.account.Datacenter;
+import uk.co.visalia.brightpearl.apiclient.http.Headers;
+import uk.co.visalia.brightpearl.apiclient.http.Method;
+import uk.co.visalia.brightpearl.apiclient.util.Futures;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.Charset;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * <p>
+ * An embedded HTTP server that simulates the Brightpearl public API for load testing rate limiters, batching and
+ * transports on one machine. Unlike the rest-driver stubs, it answers any number of concurrent requests, each on its
+ * own thread. It supports the URL scheme used by the client:
+ * </p>
+ * <ul>
+ *     <li>{@code /public-api/{account}/{service}/...} returns the response stubbed with
+ *     {@link #withResponse(Method, String, String)}, or 404 if there is none.</li>
+ *     <li>{@code /public-api/{account}/multi-message} runs each message against the stubs and returns a multi-message
+ *     response. It counts as one request against the cap.</li>
+ *     <li>{@code /{account}/authorise} returns a new token and is not counted against the cap.</li>
+ * </ul>
+ * <p>
+ * Each account has a request cap per throttle period, 200 per minute by default. Every counted response includes the
+ * brightpearl-requests-remaining and brightpearl-next-throttle-period headers, and once the cap is reached, requests
+ * are rejected with a 503 "too many requests" response until the period ends. A random latency between the configured
+ * minimum and maximum is added to every response.
+ * </p>
+ */
+public class BrightpearlSimulator {
+
+    public static final int DEFAULT_REQUEST_CAP = 200;
+    public static final long DEFAULT_THROTTLE_PERIOD_MS = 60000;
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static final String PUBLIC_API = "/public-api/";
+    private static final String MULTI_MESSAGE = "multi-message";
+    private static final String AUTHORISE = "authorise";
+    private static final String REQUEST_CAP_RESPONSE = "{\"response\":\"You have sent too many requests. Please wait before sending another request\"}";
+    private static final String NOT_FOUND_RESPONSE = "{\"errors\":[{\"code\":\"CMNC-404\",\"message\":\"Resource not found\"}]}";
+
+    private final ConcurrentMap<String, String> responses = new ConcurrentHashMap<String, String>();
+    private final ConcurrentMap<String, Throttle> throttles = new ConcurrentHashMap<String, Throttle>();
+
+    private volatile int requestCap = DEFAULT_REQUEST_CAP;
+    private volatile long throttlePeriodMs = DEFAULT_THROTTLE_PERIOD_MS;
+    private volatile long minLatencyMs;
+    private volatile long maxLatencyMs;
+
+    private HttpServer server;
+    private ExecutorService executor;
+
+    /**
+     * Sets the number of requests each account may make in each throttle period. Brightpearl allows 200 per minute.
+     * @param requestCap requests allowed per period.
+     * @param throttlePeriodMs length of the period in milliseconds.
+     * @return this simulator for method chaining.
+     */
+    public BrightpearlSimulator withRequestCap(int requestCap, long throttlePeriodMs) {
+        this.requestCap = requestCap;
+        this.throttlePeriodMs = throttlePeriodMs;
+        return this;
+    }
+
+    /**
+     * Sets the range of latency added to every response, chosen at random for each.
+     * @param minLatencyMs minimum latency in milliseconds.
+     * @param maxLatencyMs maximum latency in milliseconds.
+     * @return this simulator for method chaining.
+     */
+    public BrightpearlSimulator withLatency(long minLatencyMs, long maxLatencyMs) {
+        this.minLatencyMs = minLatencyMs;
+        this.maxLatencyMs = Math.max(minLatencyMs, maxLatencyMs);
+        return this;
+    }
+
+    /**
+     * Stubs the response element returned for a resource, in all accounts.
+     * @param method HTTP method.
+     * @param path service and resource path, for example "/product-service/product/1001".
+     * @param responseJson JSON of the response element, for example "[{\"id\":1001}]".
+     * @return this simulator for method chaining.
+     */
+    public BrightpearlSimulator withResponse(Method method, String path, String responseJson) {
+        responses.put(method + " " + path, "{\"response\":" + responseJson + "}");
+        return this;
+    }
+
+    /**
+     * Starts the server on a free local port.
+     * @return this simulator for method chaining.
+     */
+    public BrightpearlSimulator start() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 1000);
+        executor = Futures.daemonExecutor("brightpearl-simulator");
+        server.setExecutor(executor);
+        server.createContext("/", this::handle);
+        server.start();
+        return this;
+    }
+
+    /**
+     * Stops the server, closing open connections.
+     */
+    public void stop() {
+        if (server != null) {
+            server.stop(0);
+            executor.shutdownNow();
+            server = null;
+        }
+    }
+
+    /**
+     * Returns a datacenter for the server, for creating accounts that send requests to it.
+     * @return simulator datacenter.
+     */
+    public Datacenter getDatacenter() {
+        return new Datacenter("SIMULATOR", "http://localhost:" + server.getAddress().getPort());
+    }
+
+    /**
+     * Returns the number of requests to an account that were counted against its cap, including those rejected.
+     * @param account an account.
+     * @return number of requests received.
+     */
+    public long getRequestCount(Account account) {
+        Throttle throttle = throttles.get(account.getAccountCode());
+        return throttle == null ? 0 : throttle.requests.sum();
+    }
+
+    /**
+     * Returns the number of requests to an account that were rejected with a 503 because the cap had been reached.
+     * @param account an account.
+     * @return number of requests rejected.
+     */
+    public long getRejectedCount(Account account) {
+        Throttle throttle = throttles.get(account.getAccountCode());
+        return throttle == null ? 0 : throttle.rejected.sum();
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try {
+            String path = exchange.getRequestURI().getPath();
+            Method method = Method.valueOf(exchange.getRequestMethod());
+            String body = readBody(exchange.getRequestBody());
+            delay();
+
+            if (path.startsWith(PUBLIC_API)) {
+                String[] parts = path.substring(PUBLIC_API.length()).split("/", 2);
+                if (parts.length < 2) {
+                    send(exchange, 404, NOT_FOUND_RESPONSE);
+                    return;
+                }
+                String account = parts[0];
+                String resource = "/" + parts[1];
+                Throttle throttle = getThrottle(account);
+                long remaining = throttle.acquire();
+                exchange.getResponseHeaders().set(Headers.REQUESTS_REMAINING, Long.toString(Math.max(0, remaining)));
+                exchange.getResponseHeaders().set(Headers.NEXT_THROTTLE_PERIOD, Long.toString(throttle.nextPeriodMs()));
+                if (remaining < 0) {
+                    send(exchange, 503, REQUEST_CAP_RESPONSE);
+                } else if (method == Method.POST && parts[1].equals(MULTI_MESSAGE)) {
+                    send(exchange, 200, multiMessage(body));
+                } else {
+                    String response = responses.get(method + " " + resource);
+                    send(exchange, response == null ? 404 : 200, response == null ? NOT_FOUND_RESPONSE : response);
+                }
+            } else if (method == Method.POST && path.endsWith("/" + AUTHORISE)) {
+                send(exchange, 200, "{\"response\":\"" + UUID.randomUUID() + "\"}");
+            } else {
+                send(exchange, 404, NOT_FOUND_RESPONSE);
+            }
+        } catch (RuntimeException e) {
+            send(exchange, 500, "{\"errors\":[{\"code\":\"CMNU-003\",\"message\":\"Internal Server Error\"}]}");
+        } finally {
+            exchange.close();
+        }
+    }
+
+    /*
+     * Runs each message against the stubs. All messages are processed, regardless of the on fail option.
+     */
+    private String multiMessage(String body) {
+        JsonObject request = new JsonParser().parse(body).getAsJsonObject();
+        JsonArray processed = new JsonArray();
+        for (JsonElement element : request.getAsJsonArray("messages")) {
+            JsonObject message = element.getAsJsonObject();
+            String uri = message.get("uri").getAsString();
+            int query = uri.indexOf('?');
+            String response = responses.get(message.get("httpMethod").getAsString() + " " + (query < 0 ? uri : uri.substring(0, query)));
+            JsonObject item = new JsonObject();
+            item.add("label", message.get("label"));
+            item.add("statusCode", new JsonPrimitive(response == null ? 404 : 200));
+            JsonObject itemBody = new JsonObject();
+            itemBody.add("content", new JsonPrimitive(response == null ? NOT_FOUND_RESPONSE : response));
+            item.add("body", itemBody);
+            processed.add(item);
+        }
+        JsonObject multiResponse = new JsonObject();
+        multiResponse.add("processedMessages", processed);
+        multiResponse.add("unprocessedMessages", new JsonArray());
+        JsonObject wrapper = new JsonObject();
+        wrapper.add("response", multiResponse);
+        return wrapper.toString();
+    }
+
+    private void delay() {
+        long latencyMs = minLatencyMs == maxLatencyMs ? minLatencyMs : ThreadLocalRandom.current().nextLong(minLatencyMs, maxLatencyMs + 1);
+        if (latencyMs > 0) {
+            try {
+                Thread.sleep(latencyMs);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private Throttle getThrottle(String account) {
+        Throttle throttle = throttles.get(account);
+        if (throttle == null) {
+            throttles.putIfAbsent(account, new Throttle());
+            throttle = throttles.get(account);
+        }
+        return throttle;
+    }
+
+    private static String readBody(InputStream inputStream) throws IOException {
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        byte[] buffer = new byte[4096];
+        int read;
+        while ((read = inputStream.read(buffer)) != -1) {
+            outputStream.write(buffer, 0, read);
+        }
+        return new String(outputStream.toByteArray(), UTF_8);
+    }
+
+    private static void send(HttpExchange exchange, int status, String json) throws IOException {
+        byte[] bytes = json.getBytes(UTF_8);
+        exchange.getResponseHeaders().set(Headers.CONTENT_TYPE, "application/json;charset=UTF-8");
+        exchange.sendResponseHeaders(status, bytes.length);
+        OutputStream outputStream = exchange.getResponseBody();
+        outputStream.write(bytes);
+        outputStream.close();
+    }
+
+    /*
+     * Counts requests to an account in fixed periods, as Brightpearl does.
+     */
+    private final class Throttle {
+
+        private final LongAdder requests = new LongAdder();
+        private final LongAdder rejected = new LongAdder();
+
+        private long periodStart = System.currentTimeMillis();
+        private int count;
+
+        /*
+         * Returns the requests remaining in the period after this one, or -1 if this request is over the cap.
+         */
+        private synchronized long acquire() {
+            rollPeriod();
+            requests.increment();
+            if (count >= requestCap) {
+                rejected.increment();
+                return -1;
+            }
+            count++;
+            return requestCap - count;
+        }
+
+        private synchronized long nextPeriodMs() {
+            rollPeriod();
+            return periodStart + throttlePeriodMs - System.currentTimeMillis();
+        }
+
+        private void rollPeriod() {
+            long now = System.currentTimeMillis();
+            if (now - periodStart >= throttlePeriodMs) {
+                periodStart = now - ((now - periodStart) % throttlePeriodMs);
+                count = 0;
+            }
+        }
+
+    }
+
+}
@@ -0,0 +1,149 @@
+/*
+ * Copyright 2014 David Morrissey
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package uk.co.visalia.brightpearl.apiclient.simulator;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import uk.co.visalia.brightpearl.apiclient.BrightpearlApiClient;
+import uk.co.visalia.brightpearl.apiclient.BrightpearlApiClient.ApiSession;
+import uk.co.visalia.brightpearl.apiclient.BrightpearlApiClientFactory;
+import uk.co.visalia.brightpearl.apiclient.ServiceName;
+import uk.co.visalia.brightpearl.apiclient.account.Account;
+import uk.co.visalia.brightpearl.apiclient.auth.PrivateAppAuthorisation;
+import uk.co.visalia.brightpearl.apiclient.auth.PrivateAppIdentity;
+import uk.co.visalia.brightpearl.apiclient.exception.BrightpearlRequestCapException;
+import uk.co.visalia.brightpearl.apiclient.http.Method;
+import uk.co.visalia.brightpearl.apiclient.http.httpclient4.HttpClient4ClientFactoryBuilder;
+import uk.co.visalia.brightpearl.apiclient.multimessage.MultiRequestBuilder;
+import uk.co.visalia.brightpearl.apiclient.multimessage.MultiResponse;
+import uk.co.visalia.brightpearl.apiclient.ratelimit.RateLimiter;
+import uk.co.visalia.brightpearl.apiclient.request.ServiceReadRequestBuilder;
+import uk.co.visalia.brightpearl.apiclient.request.ServiceWriteRequestBuilder;
+
+import java.util.Collections;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.greaterThanOrEqualTo;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
+import static org.junit.Assert.fail;
+
+public class BrightpearlSimulatorTest {
+
+    private BrightpearlSimulator simulator;
+    private Account account;
+    private RecordingRateLimiter rateLimiter;
+    private ApiSession session;
+
+    @Before
+    public void start() throws Exception {
+        simulator = new BrightpearlSimulator()
+                .withRequestCap(3, 60000)
+                .withResponse(Method.GET, "/product-service/brand/1", "\"Nokia\"")
+                .withResponse(Method.POST, "/product-service/brand", "123")
+                .start();
+        account = new Account(simulator.getDatacenter(), "visalia");
+        rateLimiter = new RecordingRateLimiter();
+        BrightpearlApiClient client = BrightpearlApiClientFactory.brightpearlApiClient()
+                .withClientFactory(HttpClient4ClientFactoryBuilder.httpClient4ClientFactory().build())
+                .withRateLimiter(rateLimiter)
+                .build();
+        session = client.createSession(PrivateAppAuthorisation.system(PrivateAppIdentity.create(account, "visalia_unittest"), "abcd1234"));
+    }
+
+    @After
+    public void stop() {
+        simulator.stop();
+    }
+
+    @Test
+    public void testThrottleHeadersAndRequestCap() {
+
+        String response = session.get(ServiceReadRequestBuilder.newGetRequest(ServiceName.PRODUCT, "/brand/1", String.class));
+        assertThat(response, is("Nokia"));
+        assertThat(rateLimiter.requestsRemaining.get(), is(2));
+        assertThat(rateLimiter.nextThrottlePeriod.get(), greaterThan(0L));
+        assertThat(rateLimiter.nextThrottlePeriod.get(), lessThanOrEqualTo(60000L));
+
+        session.get(ServiceReadRequestBuilder.newGetRequest(ServiceName.PRODUCT, "/brand/1", String.class));
+        session.get(ServiceReadRequestBuilder.newGetRequest(ServiceName.PRODUCT, "/brand/1", String.class));
+        assertThat(rateLimiter.requestsRemaining.get(), is(0));
+
+        try {
+            session.get(ServiceReadRequestBuilder.newGetRequest(ServiceName.PRODUCT, "/brand/1", String.class));
+            fail("Expected request cap exception");
+        } catch (BrightpearlRequestCapException e) {
+            // Expected
+        }
+        assertThat(simulator.getRequestCount(account), is(4L));
+        assertThat(simulator.getRejectedCount(account), is(1L));
+
+    }
+
+    @Test
+    public void testMultiMessageCountsAsOneRequest() {
+
+        MultiRequestBuilder request = MultiRequestBuilder.newMultiRequest()
+                .withAddedRequest(ServiceWriteRequestBuilder.newPostRequest(ServiceName.PRODUCT, "/brand", Collections.singletonMap("name", "Nokia"), Integer.class).withRuid("1"))
+                .withAddedRequest(ServiceWriteRequestBuilder.newPostRequest(ServiceName.PRODUCT, "/brand", Collections.singletonMap("name", "Samsung"), Integer.class).withRuid("2"));
+
+        MultiResponse response = session.execute(request);
+
+        assertThat(response.getStatus(), is(200));
+        assertThat(response.getServiceResponse("2").getResponse(), is((Object)123));
+        assertThat(simulator.getRequestCount(account), is(1L));
+
+    }
+
+    @Test
+    public void testLatency() {
+
+        simulator.withLatency(100, 150);
+
+        long start = System.currentTimeMillis();
+        session.get(ServiceReadRequestBuilder.newGetRequest(ServiceName.PRODUCT, "/brand/1", String.class));
+
+        assertThat(System.currentTimeMillis() - start, greaterThanOrEqualTo(100L));
+
+    }
+
+    private static class RecordingRateLimiter implements RateLimiter {
+
+        private final AtomicInteger requestsRemaining = new AtomicInteger(-1);
+        private final AtomicLong nextThrottlePeriod = new AtomicLong(-1);
+
+        @Override
+        public void rateLimit(Account account) {
+        }
+
+        @Override
+        public void requestCompleted(Account account, int requestsRemaining, long nextThrottlePeriod) {
+            this.requestsRemaining.set(requestsRemaining);
+            this.nextThrottlePeriod.set(nextThrottlePeriod);
+        }
+
+        @Override
+        public void requestCapExceeded(Account account) {
+        }
+
+    }
+
+}